@@ -0,0 +1,124 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.*;
+
+import atnf.atoms.mon.archiver.PointArchiver;
+import atnf.atoms.time.AbsTime;
+import atnf.atoms.time.RelTime;
+
+/**
+ * Iterates through the data for a point over a time range, fetching it from the memory buffer and archive one chunk at a time. The
+ * archive limits the number of records returned by each query, so rather than collecting the whole range before anything can be
+ * sent, servers can pass on each chunk as soon as it has been read and only one chunk is held in memory at once.
+ *
+ * <P>
+ * Each chunk is obtained with <tt>PointBuffer.getPointData</tt>, starting just after the last record of the previous chunk. The
+ * cursor is finished once a chunk is returned which wasn't clipped by the archive.
+ *
+ * @author David Brodrick
+ */
+public class ArchiveCursor implements Iterator<PointData> {
+  /** The point the data is for. */
+  private PointDescription itsPoint;
+
+  /** Start time of the next chunk to fetch. */
+  private AbsTime itsNext;
+
+  /** End of the time range of interest. */
+  private AbsTime itsEnd;
+
+  /** The current chunk. */
+  private Vector<PointData> itsChunk = null;
+
+  /** Index of the next record to return from the current chunk. */
+  private int itsIndex = 0;
+
+  /** Set once the last chunk has been fetched. */
+  private boolean itsFinished = false;
+
+  /**
+   * Constructor.
+   *
+   * @param pm
+   *          The point to get the data for.
+   * @param start
+   *          The earliest time in the range of interest.
+   * @param end
+   *          The most recent time in the range of interest.
+   */
+  public ArchiveCursor(PointDescription pm, AbsTime start, AbsTime end) {
+    itsPoint = pm;
+    itsNext = start;
+    itsEnd = end;
+  }
+
+  /** Check if there is more data to return, fetching the next chunk if required. */
+  public boolean hasNext() {
+    while ((itsChunk == null || itsIndex >= itsChunk.size()) && !itsFinished) {
+      fetch();
+    }
+    return itsChunk != null && itsIndex < itsChunk.size();
+  }
+
+  /** Get the next record. */
+  public PointData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return itsChunk.get(itsIndex++);
+  }
+
+  /**
+   * Get the rest of the current chunk, fetching the next chunk if the current one has been used up. This allows the data to be
+   * processed a chunk at a time rather than a record at a time.
+   *
+   * @return The records, or null if there is no more data.
+   */
+  public Vector<PointData> nextChunk() {
+    if (!hasNext()) {
+      return null;
+    }
+    Vector<PointData> res;
+    if (itsIndex == 0) {
+      res = itsChunk;
+    } else {
+      res = new Vector<PointData>(itsChunk.subList(itsIndex, itsChunk.size()));
+    }
+    itsIndex = itsChunk.size();
+    return res;
+  }
+
+  /** Records can't be removed from the archive. */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Fetch the next chunk of data. */
+  private void fetch() {
+    itsChunk = null;
+    itsIndex = 0;
+    if (itsNext.isAfter(itsEnd)) {
+      itsFinished = true;
+      return;
+    }
+    Vector<PointData> chunk = PointBuffer.getPointData(itsPoint, itsNext, itsEnd, 0);
+    if (chunk == null || chunk.isEmpty()) {
+      itsFinished = true;
+      return;
+    }
+    itsChunk = chunk;
+    itsNext = chunk.lastElement().getTimestamp().add(RelTime.factory(1));
+    PointArchiver arc = PointArchiver.getPointArchiver();
+    if (arc == null || chunk.size() < arc.getMaxNumRecords()) {
+      // The archive didn't clip the result so we have everything
+      itsFinished = true;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.util.MonitorConfig;
+import atnf.atoms.time.AbsTime;
+
+/**
+ * Thread pool which retrieves historical data for several points in parallel. Each point's data is read from the buffer and archive
+ * with <tt>PointBuffer.getPointData</tt>, so a request for many points takes about as long as the slowest point rather than the
+ * sum of them all.
+ *
+ * <P>
+ * The pool has <tt>ArchiveQueryThreads</tt> threads which are shared by all requests, and each request has at most
+ * <tt>ArchiveRequestConcurrency</tt> points being retrieved at once so that one large request can't hold up everyone else. If the
+ * pool is disabled by setting <tt>ArchiveQueryThreads</tt> to zero then the points are retrieved one after another by the calling
+ * thread.
+ *
+ * @author David Brodrick
+ */
+public class ArchiveQueryPool {
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(ArchiveQueryPool.class.getName());
+
+  /** Number of threads in the pool. */
+  private static int theirNumThreads = 8;
+
+  /** Maximum number of points from one request retrieved at once. */
+  private static int theirConcurrency = 4;
+
+  /** Default time (ms) to wait for a request before abandoning it, or 0 for no limit. */
+  private static long theirDefaultTimeout = 120000;
+
+  /** The thread pool, or null until it is first needed. */
+  private static ThreadPoolExecutor theirExecutor = null;
+
+  /** Static block to parse configuration parameters. */
+  static {
+    try {
+      theirNumThreads = Integer.parseInt(MonitorConfig.getProperty("ArchiveQueryThreads", "8"));
+      if (theirNumThreads < 0) {
+        theirNumThreads = 0;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ArchiveQueryThreads configuration parameter: " + e);
+      theirNumThreads = 8;
+    }
+    try {
+      theirConcurrency = Integer.parseInt(MonitorConfig.getProperty("ArchiveRequestConcurrency", "4"));
+      if (theirConcurrency < 1) {
+        theirConcurrency = 1;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ArchiveRequestConcurrency configuration parameter: " + e);
+      theirConcurrency = 4;
+    }
+    try {
+      theirDefaultTimeout = 1000 * Long.parseLong(MonitorConfig.getProperty("ArchiveRequestTimeout", "120"));
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ArchiveRequestTimeout configuration parameter: " + e);
+      theirDefaultTimeout = 120000;
+    }
+  }
+
+  /** Get the default time (ms) to wait for a request, set by the <tt>ArchiveRequestTimeout</tt> option, or 0 for no limit. */
+  public static long getDefaultTimeout() {
+    return theirDefaultTimeout;
+  }
+
+  /**
+   * Retrieve the data for each of the points over a time range.
+   *
+   * @param points
+   *          The points to get data for. A null entry will give a null result.
+   * @param start
+   *          The earliest time in the range of interest.
+   * @param end
+   *          The most recent time in the range of interest.
+   * @param maxsamples
+   *          The maximum number of samples to be returned for each point, 0 for no limit.
+   * @param algorithm
+   *          Name of the <tt>Downsampler</tt> algorithm used to reduce the data to <i>maxsamples</i>, or null for the default.
+   * @param timeout
+   *          Maximum time (ms) to wait for all of the data, or 0 to wait indefinitely.
+   * @return The data for each point, in the same order as the points. An entry will be null if no data were found.
+   * @throws TimeoutException
+   *           If the data could not be retrieved within the timeout, in which case any outstanding retrievals are cancelled.
+   * @throws InterruptedException
+   *           If the calling thread was interrupted, in which case any outstanding retrievals are cancelled.
+   */
+  public static Vector<PointData>[] getPointData(PointDescription[] points, final AbsTime start, final AbsTime end,
+      final int maxsamples, final String algorithm, long timeout) throws TimeoutException, InterruptedException {
+    @SuppressWarnings("unchecked")
+    Vector<PointData>[] res = new Vector[points.length];
+    if (points.length < 2 || theirNumThreads == 0) {
+      // Nothing to be gained from using the pool
+      for (int i = 0; i < points.length; i++) {
+        if (points[i] != null) {
+          res[i] = PointBuffer.getPointData(points[i], start, end, maxsamples, algorithm);
+        }
+      }
+      return res;
+    }
+
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(getExecutor());
+    Vector<Future<Integer>> futures = new Vector<Future<Integer>>();
+    final Vector<PointData>[] results = res;
+    int next = 0;
+    int outstanding = 0;
+    try {
+      while (next < points.length || outstanding > 0) {
+        // Keep up to the allowed number of points in progress
+        while (next < points.length && outstanding < theirConcurrency) {
+          final int index = next++;
+          final PointDescription pm = points[index];
+          if (pm == null) {
+            continue;
+          }
+          futures.add(completion.submit(new Callable<Integer>() {
+            public Integer call() {
+              results[index] = PointBuffer.getPointData(pm, start, end, maxsamples, algorithm);
+              return new Integer(index);
+            }
+          }));
+          outstanding++;
+        }
+        if (outstanding == 0) {
+          break;
+        }
+
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          throw new TimeoutException("Archive request for " + points.length + " points timed out");
+        }
+        Future<Integer> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+        if (done == null) {
+          throw new TimeoutException("Archive request for " + points.length + " points timed out");
+        }
+        outstanding--;
+        try {
+          done.get();
+        } catch (ExecutionException e) {
+          theirLogger.error("While retrieving archive data: " + e.getCause());
+        }
+      }
+    } catch (TimeoutException e) {
+      cancel(futures);
+      throw e;
+    } catch (InterruptedException e) {
+      cancel(futures);
+      throw e;
+    }
+    return res;
+  }
+
+  /** Cancel any retrievals which haven't yet completed. */
+  private static void cancel(Vector<Future<Integer>> futures) {
+    for (int i = 0; i < futures.size(); i++) {
+      futures.get(i).cancel(true);
+    }
+  }
+
+  /** Get the thread pool, creating it if required. */
+  private static synchronized ThreadPoolExecutor getExecutor() {
+    if (theirExecutor == null) {
+      theirExecutor = new ThreadPoolExecutor(theirNumThreads, theirNumThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private int itsCount = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "ArchiveQuery " + itsCount++);
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      // Let the threads exit when the server is idle
+      theirExecutor.allowCoreThreadTimeOut(true);
+    }
+    return theirExecutor;
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.util.MonitorConfig;
+
+/**
+ * Thread pool which recalculates derived points. Pending recalculations are ordered by the level of the point in the
+ * <tt>PointDependencyGraph</tt>, so when a burst of updates arrives the derived points are evaluated in topological waves, with
+ * the points in each wave calculated in parallel. Callers are expected to coalesce updates, so that a point which receives several
+ * input updates before its recalculation runs is only recalculated once.
+ *
+ * <P>
+ * The number of threads is set by the <tt>DerivedPointThreads</tt> option. If it is zero then derived points are recalculated on
+ * the thread which delivered the input update.
+ *
+ * @author David Brodrick
+ */
+public class DerivedPointEvaluator {
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(DerivedPointEvaluator.class.getName());
+
+  /** Number of threads used for recalculation. */
+  private static int theirNumThreads = 2;
+
+  /** The thread pool, or null until it is first needed. */
+  private static volatile ThreadPoolExecutor theirExecutor = null;
+
+  /** Sequence number used to keep tasks of the same level in submission order. */
+  private static AtomicLong theirSequence = new AtomicLong(0);
+
+  /** Static block to parse configuration parameters. */
+  static {
+    try {
+      theirNumThreads = Integer.parseInt(MonitorConfig.getProperty("DerivedPointThreads", "2"));
+      if (theirNumThreads < 0) {
+        theirNumThreads = 0;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing DerivedPointThreads configuration parameter: " + e);
+      theirNumThreads = 2;
+    }
+  }
+
+  /** Check whether recalculations are performed by the thread pool. */
+  public static boolean isEnabled() {
+    return theirNumThreads > 0;
+  }
+
+  /** Get the number of recalculations waiting to be run. */
+  public static int getQueueDepth() {
+    ThreadPoolExecutor executor = theirExecutor;
+    if (executor == null) {
+      return 0;
+    }
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Queue a recalculation of a derived point.
+   *
+   * @param pm
+   *          The point which is to be recalculated.
+   * @param task
+   *          The recalculation to run.
+   */
+  public static void submit(PointDescription pm, Runnable task) {
+    getExecutor().execute(new LevelTask(PointDependencyGraph.getLevel(pm), task));
+  }
+
+  /** Get the thread pool, creating it if required. */
+  private static ThreadPoolExecutor getExecutor() {
+    ThreadPoolExecutor res = theirExecutor;
+    if (res == null) {
+      synchronized (DerivedPointEvaluator.class) {
+        if (theirExecutor == null) {
+          theirExecutor = new ThreadPoolExecutor(theirNumThreads, theirNumThreads, 60, TimeUnit.SECONDS,
+              new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int itsCount = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "DerivedPoint " + itsCount++);
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+        }
+        res = theirExecutor;
+      }
+    }
+    return res;
+  }
+
+  /** Recalculation task which is ordered by the level of its point, then by submission order. */
+  private static class LevelTask implements Runnable, Comparable<LevelTask> {
+    private final int itsLevel;
+
+    private final long itsSequence = theirSequence.getAndIncrement();
+
+    private final Runnable itsTask;
+
+    public LevelTask(int level, Runnable task) {
+      // Points in cycles have no meaningful level, so run them last
+      itsLevel = level < 0 ? Integer.MAX_VALUE : level;
+      itsTask = task;
+    }
+
+    public int compareTo(LevelTask other) {
+      if (itsLevel != other.itsLevel) {
+        return itsLevel < other.itsLevel ? -1 : 1;
+      }
+      if (itsSequence != other.itsSequence) {
+        return itsSequence < other.itsSequence ? -1 : 1;
+      }
+      return 0;
+    }
+
+    public void run() {
+      try {
+        itsTask.run();
+      } catch (Throwable e) {
+        theirLogger.error("While recalculating derived point: " + e);
+        e.printStackTrace();
+      }
+    }
+  }
+}
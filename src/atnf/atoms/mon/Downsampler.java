@@ -0,0 +1,337 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.*;
+
+import atnf.atoms.time.AbsTime;
+
+/**
+ * Reduces the data for a point over a time range to a limited number of samples, for instance so that a plot can be drawn without
+ * transferring every record. The records are passed to <tt>add</tt> in time order as they are read from the archive, and only a
+ * small amount of state is kept, so the full data never needs to be held in memory. The selected records are then obtained with
+ * <tt>finish</tt>. Records are returned unmodified, so their timestamps and alarm states are preserved.
+ *
+ * <P>
+ * The time range is divided into evenly spaced buckets and the available algorithms are:
+ * <ul>
+ * <li><b>first</b> Keep the first record at or after the start of each bucket. This is cheap but can miss short spikes.
+ * <li><b>m4</b> Keep the first, last, minimum and maximum records of each bucket, using a quarter as many buckets as the maximum
+ * number of samples. Drawn as a line this gives the same plot as the full data at that many pixels, including any spikes.
+ * <li><b>lttb</b> Largest-Triangle-Three-Buckets, which keeps the record in each bucket forming the largest triangle with the record
+ * kept from the previous bucket and the average of the next bucket. This gives a visually similar line with fewer samples.
+ * </ul>
+ * Records whose values aren't numeric can't be compared, so m4 and lttb keep the first record of each bucket for them.
+ *
+ * @author David Brodrick
+ */
+public abstract class Downsampler {
+  /** Name of the algorithm which keeps the first record of each bucket. */
+  public static final String FIRST = "first";
+
+  /** Name of the algorithm which keeps the first, last, minimum and maximum record of each bucket. */
+  public static final String M4 = "m4";
+
+  /** Name of the Largest-Triangle-Three-Buckets algorithm. */
+  public static final String LTTB = "lttb";
+
+  /** Start of the time range (us). */
+  protected long itsStart;
+
+  /** Length of the time range (us). */
+  protected long itsSpan;
+
+  /** Number of buckets the time range is divided into. */
+  protected int itsNumBuckets;
+
+  /** The maximum number of records to select. */
+  protected int itsMaxSamples;
+
+  /** The selected records. */
+  protected Vector<PointData> itsResult;
+
+  /**
+   * Create a downsampler.
+   *
+   * @param algorithm
+   *          Name of the algorithm to use, as described above.
+   * @param start
+   *          The earliest time in the range of interest.
+   * @param end
+   *          The most recent time in the range of interest.
+   * @param maxsamples
+   *          The maximum number of samples to be returned.
+   * @return The new downsampler.
+   * @throws IllegalArgumentException
+   *           If the algorithm is not recognised.
+   */
+  public static Downsampler factory(String algorithm, AbsTime start, AbsTime end, int maxsamples) {
+    if (algorithm == null || algorithm.equalsIgnoreCase(FIRST)) {
+      return new First(start, end, maxsamples);
+    } else if (algorithm.equalsIgnoreCase(M4) || algorithm.equalsIgnoreCase("minmax")) {
+      return new MinMax(start, end, maxsamples);
+    } else if (algorithm.equalsIgnoreCase(LTTB)) {
+      return new LargestTriangle(start, end, maxsamples);
+    }
+    throw new IllegalArgumentException("Unknown downsampling algorithm \"" + algorithm + "\"");
+  }
+
+  /** Check if the named algorithm is available. */
+  public static boolean isSupported(String algorithm) {
+    return algorithm == null || algorithm.equalsIgnoreCase(FIRST) || algorithm.equalsIgnoreCase(M4) || algorithm.equalsIgnoreCase("minmax")
+        || algorithm.equalsIgnoreCase(LTTB);
+  }
+
+  protected Downsampler(AbsTime start, AbsTime end, int maxsamples, int numbuckets) {
+    itsStart = start.getValue();
+    itsSpan = Math.max(1, end.getValue() - itsStart);
+    itsNumBuckets = Math.max(1, numbuckets);
+    itsMaxSamples = Math.max(1, maxsamples);
+    itsResult = new Vector<PointData>(maxsamples);
+  }
+
+  /** Process the next record. Records must be added in time order. */
+  public abstract void add(PointData pd);
+
+  /**
+   * Get the selected records once all records have been added.
+   *
+   * @return The records in time order, or null if no records were added.
+   */
+  public Vector<PointData> finish() {
+    if (itsResult.isEmpty()) {
+      return null;
+    }
+    return itsResult;
+  }
+
+  /** Get the bucket which a record falls into. */
+  protected int getBucket(PointData pd) {
+    long offset = pd.getTimestamp().getValue() - itsStart;
+    if (offset <= 0) {
+      return 0;
+    }
+    return (int) Math.min(itsNumBuckets - 1, (double) offset * itsNumBuckets / itsSpan);
+  }
+
+  /** Get the value of a record as a number, or NaN if it isn't numeric. */
+  protected static double getValue(PointData pd) {
+    if (pd.isNumeric()) {
+      return pd.doubleValue();
+    }
+    return Double.NaN;
+  }
+
+  /** Keeps the first record at or after the start of each bucket. */
+  private static class First extends Downsampler {
+    /** Time (us) of the start of the next bucket. */
+    private long itsNext;
+
+    /** Length (us) of each bucket. */
+    private long itsIncrement;
+
+    public First(AbsTime start, AbsTime end, int maxsamples) {
+      super(start, end, maxsamples, maxsamples);
+      itsNext = itsStart;
+      itsIncrement = Math.max(1, itsSpan / itsNumBuckets);
+    }
+
+    public void add(PointData pd) {
+      long t = pd.getTimestamp().getValue();
+      if (t >= itsNext && t <= itsStart + itsSpan && itsResult.size() < itsMaxSamples) {
+        itsResult.add(pd);
+        itsNext += itsIncrement;
+      }
+    }
+  }
+
+  /**
+   * Keeps the first, last, minimum and maximum records of each bucket. With fewer than four samples allowed there is a single bucket
+   * and the minimum and maximum are preferred over the first and last records.
+   */
+  private static class MinMax extends Downsampler {
+    /** The bucket currently being processed, or -1 before the first record. */
+    private int itsBucket = -1;
+
+    private PointData itsFirst;
+
+    private PointData itsLast;
+
+    private PointData itsMin;
+
+    private PointData itsMax;
+
+    /** Value of <i>itsMin</i>. */
+    private double itsMinValue;
+
+    /** Value of <i>itsMax</i>. */
+    private double itsMaxValue;
+
+    public MinMax(AbsTime start, AbsTime end, int maxsamples) {
+      super(start, end, maxsamples, maxsamples / 4);
+    }
+
+    public void add(PointData pd) {
+      int bucket = getBucket(pd);
+      if (bucket != itsBucket) {
+        flush();
+        itsBucket = bucket;
+        itsFirst = pd;
+      }
+      itsLast = pd;
+      double value = getValue(pd);
+      if (!Double.isNaN(value)) {
+        if (itsMin == null || value < itsMinValue) {
+          itsMin = pd;
+          itsMinValue = value;
+        }
+        if (itsMax == null || value > itsMaxValue) {
+          itsMax = pd;
+          itsMaxValue = value;
+        }
+      }
+    }
+
+    public Vector<PointData> finish() {
+      flush();
+      return super.finish();
+    }
+
+    /** Add the selected records from the current bucket to the result, in time order and without duplicates. */
+    private void flush() {
+      if (itsFirst == null) {
+        return;
+      }
+      // Candidates in order of preference, in case the limit doesn't allow all of them
+      PointData[] candidates = new PointData[] { itsMin, itsMax, itsFirst, itsLast };
+      int space = itsMaxSamples - itsResult.size();
+      Vector<PointData> selected = new Vector<PointData>(4);
+      for (int i = 0; i < candidates.length && selected.size() < space; i++) {
+        if (candidates[i] != null && !selected.contains(candidates[i])) {
+          selected.add(candidates[i]);
+        }
+      }
+      Collections.sort(selected, new Comparator<PointData>() {
+        public int compare(PointData a, PointData b) {
+          return a.getTimestamp().compare(b.getTimestamp());
+        }
+      });
+      itsResult.addAll(selected);
+      itsFirst = itsLast = itsMin = itsMax = null;
+    }
+  }
+
+  /**
+   * Largest-Triangle-Three-Buckets. The first and last records are always kept and the records in between are divided into
+   * buckets. Choosing the record from a bucket requires the average of the following bucket, so the records of two buckets are
+   * held until the one after them begins.
+   */
+  private static class LargestTriangle extends Downsampler {
+    /** The most recently selected record. */
+    private PointData itsAnchor = null;
+
+    /** Records of the oldest bucket which hasn't yet been processed. */
+    private Vector<PointData> itsPending = new Vector<PointData>();
+
+    /** Bucket of the records in <i>itsPending</i>. */
+    private int itsPendingBucket = -1;
+
+    /** Records of the bucket after <i>itsPending</i>. */
+    private Vector<PointData> itsNext = new Vector<PointData>();
+
+    /** Bucket of the records in <i>itsNext</i>. */
+    private int itsNextBucket = -1;
+
+    public LargestTriangle(AbsTime start, AbsTime end, int maxsamples) {
+      super(start, end, maxsamples, maxsamples - 2);
+    }
+
+    public void add(PointData pd) {
+      if (itsAnchor == null) {
+        itsAnchor = pd;
+        itsResult.add(pd);
+        return;
+      }
+      int bucket = getBucket(pd);
+      if (itsPendingBucket == -1 || bucket == itsPendingBucket) {
+        itsPendingBucket = bucket;
+        itsPending.add(pd);
+      } else if (itsNextBucket == -1 || bucket == itsNextBucket) {
+        itsNextBucket = bucket;
+        itsNext.add(pd);
+      } else {
+        // The next bucket is complete so the pending one can be processed
+        select(itsPending, average(itsNext));
+        itsPending = itsNext;
+        itsPendingBucket = itsNextBucket;
+        itsNext = new Vector<PointData>();
+        itsNext.add(pd);
+        itsNextBucket = bucket;
+      }
+    }
+
+    public Vector<PointData> finish() {
+      // The last record is always kept, so take it out of its bucket
+      Vector<PointData> last = itsNext.isEmpty() ? itsPending : itsNext;
+      if (!last.isEmpty()) {
+        PointData lastpd = last.remove(last.size() - 1);
+        double[] lastpoint = new double[] { lastpd.getTimestamp().getValue(), getValue(lastpd) };
+        if (!itsNext.isEmpty()) {
+          select(itsPending, average(itsNext));
+          select(itsNext, lastpoint);
+        } else {
+          select(itsPending, lastpoint);
+        }
+        itsResult.add(lastpd);
+      }
+      // With fewer than three samples allowed, drop the records selected from between the first and last
+      while (itsResult.size() > itsMaxSamples) {
+        itsResult.remove(itsResult.size() > 2 ? 1 : itsResult.size() - 1);
+      }
+      return super.finish();
+    }
+
+    /** Get the average time and value of some records. */
+    private static double[] average(Vector<PointData> records) {
+      double t = 0;
+      double v = 0;
+      int numvalues = 0;
+      for (int i = 0; i < records.size(); i++) {
+        t += records.get(i).getTimestamp().getValue();
+        double value = getValue(records.get(i));
+        if (!Double.isNaN(value)) {
+          v += value;
+          numvalues++;
+        }
+      }
+      return new double[] { t / records.size(), numvalues > 0 ? v / numvalues : Double.NaN };
+    }
+
+    /** Select the record from a bucket which forms the largest triangle with the anchor and the given point. */
+    private void select(Vector<PointData> bucket, double[] next) {
+      if (bucket.isEmpty()) {
+        return;
+      }
+      double ax = itsAnchor.getTimestamp().getValue();
+      double ay = getValue(itsAnchor);
+      PointData best = bucket.get(0);
+      double bestarea = -1;
+      for (int i = 0; i < bucket.size(); i++) {
+        PointData pd = bucket.get(i);
+        double area = Math.abs((ax - next[0]) * (getValue(pd) - ay) - (ax - pd.getTimestamp().getValue()) * (next[1] - ay));
+        // Comparisons with NaN are false, so non-numeric data keeps the first record
+        if (area > bestarea) {
+          best = pd;
+          bestarea = area;
+        }
+      }
+      itsResult.add(best);
+      itsAnchor = best;
+    }
+  }
+}
@@ -353,6 +353,12 @@ public class MoniCAMain {
     }
     theirLogger.debug("PointDescriptions created");
 
+    // Work out the dependencies between derived points
+    PointDependencyGraph.build();
+
+    // Recover any data which hadn't been archived when we last stopped
+    pa.replayLog();
+
     // Recover all the SavedSetups
     theirLogger.debug("Creating SavedSetups");
     if (!createSetups()) {
@@ -370,6 +376,7 @@ public class MoniCAMain {
     Runtime.getRuntime().addShutdownHook(new Thread() {
       public void run() {
         ExternalSystem.stopAll();
+        PointEventPipeline.drain(5000);
         PointArchiver.getPointArchiver().flushArchive();
       }
     });
@@ -9,20 +9,26 @@
 package atnf.atoms.mon;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
 import atnf.atoms.time.*;
 import atnf.atoms.mon.util.MonitorConfig;
+import atnf.atoms.mon.util.PointDataRingBuffer;
 import atnf.atoms.mon.archiver.PointArchiver;
 
 /**
  * Maintains a buffer of the most recent data updates for each point.
  * 
+ * <P>
+ * Each point has its own bounded ring buffer. Updates for a point are written by a single thread at a time, while readers access
+ * the buffers without taking any locks.
+ * 
  * @author David Brodrick
  * @author Le Cuong Nguyen
  */
 public class PointBuffer {
   /** Stores the buffers of recently collected data for each point. */
-  private static Hashtable<PointDescription, LinkedList<PointData>> theirBufferTable = new Hashtable<PointDescription, LinkedList<PointData>>(1000, 1000);
+  private static ConcurrentHashMap<PointDescription, PointDataRingBuffer> theirBufferTable = new ConcurrentHashMap<PointDescription, PointDataRingBuffer>(1000);
 
   /** The maximum number of records to be buffered for a single point. */
   private static int theirMaxBufferSize;
@@ -61,28 +67,21 @@ public class PointBuffer {
    */
   public static void updateData(PointDescription pm, PointData data) {
     if (data != null) {
-      LinkedList<PointData> thisbuf = theirBufferTable.get(pm);
+      PointDataRingBuffer thisbuf = theirBufferTable.get(pm);
       if (thisbuf == null) {
-        synchronized (theirBufferTable) {
-          // Lock buffer and try again or create if need be
-          thisbuf = theirBufferTable.get(pm);
-          if (thisbuf == null) {
-            // New point, add it to the table
-            thisbuf = new LinkedList<PointData>();
-            theirBufferTable.put(pm, thisbuf);
-          }
+        // New point, add it to the table unless another thread beat us to it
+        thisbuf = new PointDataRingBuffer(theirMaxBufferSize);
+        PointDataRingBuffer existing = theirBufferTable.putIfAbsent(pm, thisbuf);
+        if (existing != null) {
+          thisbuf = existing;
         }
       }
 
-      synchronized (thisbuf) {
-        // Remove any old data from the buffer
-        AbsTime agecutoff = AbsTime.factory().add(theirMaxBufferAge.negate());
-        while (thisbuf.size() > 0 && (thisbuf.size() > theirMaxBufferSize || thisbuf.getFirst().getTimestamp().isBeforeOrEquals(agecutoff))) {
-          thisbuf.removeFirst();
-        }
-
-        // Add the new data to the buffer
-        thisbuf.add(data);
+      // Add the new data, expiring any old data from the buffer
+      AbsTime agecutoff = AbsTime.factory().add(theirMaxBufferAge.negate());
+      if (!thisbuf.add(data, agecutoff)) {
+        // Late updates are still archived, but the buffer only holds data in time order
+        theirLogger.debug("Not buffering out of order update for " + pm.getFullName() + " at " + data.getTimestamp());
       }
     }
   }
@@ -112,13 +111,9 @@ public class PointBuffer {
   public static PointData getPointData(PointDescription pm) {
     PointData res = null;
     if (pm != null) {
-      LinkedList<PointData> thisbuf = theirBufferTable.get(pm);
+      PointDataRingBuffer thisbuf = theirBufferTable.get(pm);
       if (thisbuf != null) {
-        synchronized (thisbuf) {
-          if (!thisbuf.isEmpty()) {
-            res = thisbuf.getLast();
-          }
-        }
+        res = thisbuf.getLatest();
       }
     }
     return res;
@@ -158,16 +153,18 @@ public class PointBuffer {
    */
   public static Vector<PointData> getPointData(PointDescription pm, AbsTime start_time, AbsTime end_time, int maxsamples) {
     Vector<PointData> bufdata = null;
-    LinkedList<PointData> databuffer = theirBufferTable.get(pm);
+    PointDataRingBuffer databuffer = theirBufferTable.get(pm);
     if (databuffer != null) {
-      synchronized (databuffer) {
+      // Take a consistent copy of the buffer contents
+      PointData[] snapshot = databuffer.getAll();
+      if (snapshot.length > 0) {
         // If all data is in memory buffer then return it from there
-        if (isAfterOrEqualsFirstData(pm, start_time)) {
-          return getPointDataBuffer(pm, start_time, end_time);
+        if (start_time.isAfterOrEquals(snapshot[0].getTimestamp())) {
+          return PointDataRingBuffer.getRange(snapshot, start_time, end_time);
         }
 
         // Some data may be in memory buffer so try there first
-        bufdata = getPointDataBuffer(pm, start_time, end_time);
+        bufdata = PointDataRingBuffer.getRange(snapshot, start_time, end_time);
       }
     }
 
@@ -178,14 +175,24 @@ public class PointBuffer {
 
     // Then request rest of data from disk archive
     PointArchiver arc = PointArchiver.getPointArchiver();
-    Vector<PointData> arcdata = arc.extract(pm, start_time, end_time);
+    Vector<PointData> arcdata = null;
+    boolean mergebuffer = true;
+    if (maxsamples > 1) {
+      // Use the archive's rollup summaries if they are detailed enough, rather than reading every record
+      arcdata = arc.extractRollup(pm, start_time, end_time, maxsamples);
+      if (arcdata != null) {
+        mergebuffer = false;
+      }
+    }
+    if (arcdata == null) {
+      arcdata = arc.extract(pm, start_time, end_time);
+    }
 
     if (arcdata == null) {
       arcdata = new Vector<PointData>(); // Ensure not null
     }
 
-    boolean mergebuffer = true;
-    if (arcdata.size() > 0) {
+    if (mergebuffer && arcdata.size() > 0) {
       // This is what goes on here:
       // The archive may have a limit on the maximum number of points
       // it can return to a single query, therefore the data that has
@@ -250,6 +257,50 @@ public class PointBuffer {
     return arcdata;
   }
 
+  /**
+   * Return the data in the specified time range for the given point, reduced to at most <i>maxsamples</i> records with the named
+   * <tt>Downsampler</tt> algorithm. The data is passed through the downsampler as it is read from the archive rather than being
+   * collected first, and unlike the method above the result covers the whole time range even if the archive limits the number of
+   * records returned to each query. For m4 the extremes of the archive's rollup summaries are used instead of the raw records when a
+   * rollup tier is detailed enough.
+   * 
+   * @param pm
+   *          The point to get the data for.
+   * @param start_time
+   *          The earliest time in the range of interest.
+   * @param end_time
+   *          The most recent time in the range of interest.
+   * @param maxsamples
+   *          The maximum number of samples to be returned. 0 for no limit.
+   * @param algorithm
+   *          Name of the downsampling algorithm, or null to use the method above.
+   * @return Vector containing the selected data. <tt>null</tt> will be returned if no data were found.
+   * @throws IllegalArgumentException
+   *           If the algorithm is not recognised.
+   */
+  public static Vector<PointData> getPointData(PointDescription pm, AbsTime start_time, AbsTime end_time, int maxsamples, String algorithm) {
+    if (maxsamples <= 1 || algorithm == null) {
+      return getPointData(pm, start_time, end_time, maxsamples);
+    }
+    Downsampler sampler = Downsampler.factory(algorithm, start_time, end_time, maxsamples);
+    if (algorithm.equalsIgnoreCase(Downsampler.M4) || algorithm.equalsIgnoreCase("minmax")) {
+      // The extremes of each rollup bucket are enough for m4 if a rollup tier is detailed enough
+      PointArchiver arc = PointArchiver.getPointArchiver();
+      Vector<PointData> rollups = arc == null ? null : arc.extractRollup(pm, start_time, end_time, maxsamples, true);
+      if (rollups != null) {
+        for (int i = 0; i < rollups.size(); i++) {
+          sampler.add(rollups.get(i));
+        }
+        return sampler.finish();
+      }
+    }
+    ArchiveCursor cursor = new ArchiveCursor(pm, start_time, end_time);
+    while (cursor.hasNext()) {
+      sampler.add(cursor.next());
+    }
+    return sampler.finish();
+  }
+
   /**
    * Return all data in the specified time range for the given point. This will access the memory buffer and/or the data archive on
    * disk in order to gather all data between the specified times. A <tt>sample_rate</tt> parameter can be used to undersample the
@@ -294,27 +345,11 @@ public class PointBuffer {
 
     PointData res = null;
 
-    // Check if the requested data is still in our memory buffer
-    LinkedList<PointData> bufferdata = theirBufferTable.get(pm);
+    // Check if the requested data is still in our memory buffer. This will
+    // only find a match if the oldest buffered data precedes the timestamp.
+    PointDataRingBuffer bufferdata = theirBufferTable.get(pm);
     if (bufferdata != null) {
-      synchronized (bufferdata) {
-        if (!bufferdata.isEmpty() && bufferdata.getFirst().getTimestamp().isBeforeOrEquals(timestamp)) {
-          // That which we seek is buffered
-          Iterator<PointData> i = bufferdata.iterator();
-          res = i.next();
-          while (i.hasNext()) {
-            PointData pd = i.next();
-            if (pd.getTimestamp().isAfter(timestamp)) {
-              break;
-            }
-            res = pd;
-          }
-          if (res == null) {
-            // Data must not exist
-            return null;
-          }
-        }
-      }
+      res = bufferdata.getPreceding(timestamp);
     }
 
     if (res == null) {
@@ -346,29 +381,17 @@ public class PointBuffer {
     PointData temp = null;
 
     // Check if the requested data is still in our memory buffer
-    LinkedList<PointData> bufferdata = theirBufferTable.get(pm);
+    PointDataRingBuffer bufferdata = theirBufferTable.get(pm);
     if (bufferdata != null) {
-      synchronized (bufferdata) {
-
-        if (!bufferdata.isEmpty()) {
-          if (bufferdata.getFirst().getTimestamp().isBeforeOrEquals(timestamp)) {
-            // That which we seek is certainly in the buffer
-            // Could use descendingIterator, but only since 1.6.
-            for (int i = bufferdata.size() - 1; i >= 0; i--) {
-              PointData pd = ((PointData) bufferdata.get(i));
-              if (pd.getTimestamp().isBefore(timestamp)) {
-                // Stop now
-                break;
-              } else {
-                // This record satisfies our criteria
-                res = pd;
-              }
-            }
-          } else {
-            // Can't be certain it is in buffer, but might be depending on what
-            // data the archive contains.
-            temp = bufferdata.getFirst();
-          }
+      PointData first = bufferdata.getFirst();
+      if (first != null) {
+        if (first.getTimestamp().isBeforeOrEquals(timestamp)) {
+          // That which we seek is certainly in the buffer
+          res = bufferdata.getFollowing(timestamp);
+        } else {
+          // Can't be certain it is in buffer, but might be depending on what
+          // data the archive contains.
+          temp = first;
         }
       }
     }
@@ -385,67 +408,4 @@ public class PointBuffer {
 
     return res;
   }
-
-  /**
-   * Check if the specified timestamp is after or equal to the oldest data in the buffer for the specified point.
-   * 
-   * @param pm
-   *          The point to check.
-   * @param time
-   *          The timestamp to be checked against the buffer.
-   * @return True if the timestamp is equal to or more recent than the oldest buffered data, False otherwise.
-   */
-  private static boolean isAfterOrEqualsFirstData(PointDescription pm, AbsTime time) {
-    boolean res = false;
-    LinkedList<PointData> databuffer = theirBufferTable.get(pm);
-    if (databuffer != null) {
-      synchronized (databuffer) {
-        if (!databuffer.isEmpty() && time.isAfterOrEquals(databuffer.getFirst().getTimestamp())) {
-          res = true;
-        }
-      }
-    }
-    return res;
-  }
-
-  /**
-   * Return data for the given point from the memory buffer between the specified times. NOTE: This data is from the memory buffer
-   * only, the disk archive is not accessed for this operation.
-   * 
-   * @param pm
-   *          The point to get the data for.
-   * @param start_time
-   *          The earliest time in the range of interest.
-   * @param end_time
-   *          The most recent time in the range of interest.
-   * @return Vector of buffer data in the given time range. <tt>null</tt> will be returned if no data were found.
-   */
-  private static Vector<PointData> getPointDataBuffer(PointDescription pm, AbsTime start_time, AbsTime end_time) {
-    Vector<PointData> res = null;
-    LinkedList<PointData> databuffer = theirBufferTable.get(pm);
-    if (databuffer != null) {
-      synchronized (databuffer) {
-        if (!databuffer.isEmpty()) {
-          res = new Vector<PointData>(databuffer.size());
-          Iterator<PointData> i = databuffer.iterator();
-          while (i.hasNext()) {
-            PointData pd = i.next();
-            AbsTime thistime = pd.getTimestamp();
-            if (thistime.isAfter(end_time)) {
-              // We've moved into the realm of data that is too recent
-              break;
-            }
-            if (thistime.isAfterOrEquals(start_time)) {
-              res.add(pd);
-            }
-          }
-          if (res.isEmpty()) {
-            // Didn't find anything
-            res = null;
-          }
-        }
-      }
-    }
-    return res;
-  }
 }
@@ -14,27 +14,62 @@ import java.io.*;
  * Class: PointData
  * <P>
  * Description: Used to store data for a monitor/control point
+ * <P>
+ * Numeric and boolean values can be stored as primitives, using the constructors and <i>setData</i> methods which take primitive
+ * arguments, so that no wrapper object needs to be created for each sample. Code which understands primitive values can use
+ * <i>getValueType</i>, <i>doubleValue</i>, <i>longValue</i> and <i>booleanValue</i> to read them, while <i>getData</i> still returns
+ * the equivalent wrapper object, which is created the first time it is needed.
  * @author Le Cuong Nguyen
  * @author David Brodrick
  */
 public class PointData implements Serializable {
+  /** Value type indicating the value is held as an object, which may be null. */
+  public static final byte TYPE_OBJECT = 0;
+
+  /** Value type indicating the value is a primitive double. */
+  public static final byte TYPE_DOUBLE = 1;
+
+  /** Value type indicating the value is a primitive float. */
+  public static final byte TYPE_FLOAT = 2;
+
+  /** Value type indicating the value is a primitive long. */
+  public static final byte TYPE_LONG = 3;
+
+  /** Value type indicating the value is a primitive int. */
+  public static final byte TYPE_INT = 4;
+
+  /** Value type indicating the value is a primitive boolean. */
+  public static final byte TYPE_BOOLEAN = 5;
+
   /** Name of the point that we contain data for. */
   private String itsName = null;
 
+  /** ID of the point that we contain data for, or -1 if it isn't known. IDs are only meaningful within this process. */
+  private transient int itsPointID = -1;
+
   /** Timestamp for when the data was collected. */
   private AbsTime itsTimestamp = null;
 
-  /** The data value. */
+  /** The data value, or the wrapper for the primitive value once it has been requested. */
   private Object itsData = null;
 
+  /** The type of value held. */
+  private byte itsType = TYPE_OBJECT;
+
+  /** The primitive value. Floating point values are held as the bits of a double and booleans as 0 or 1. */
+  private long itsBits;
+
   /** Indicates if this data represents an alarm condition. A value of True indicates
    * an alarm, a value of False indicates no alarm. */
   private boolean itsAlarm;
 
   public PointData(PointData orig) {
     itsName = orig.getName();
+    itsPointID = orig.itsPointID;
     itsTimestamp = orig.getTimestamp();
-    itsData = orig.getData();
+    itsData = orig.itsData;
+    itsType = orig.itsType;
+    itsBits = orig.itsBits;
     itsAlarm = orig.getAlarm();
   }
 
@@ -51,6 +86,36 @@ public class PointData implements Serializable {
     itsData = data;
   }
 
+  public PointData(String name, AbsTime timestamp, double data) {
+    itsName = name;
+    itsTimestamp = timestamp;
+    setData(data);
+  }
+
+  public PointData(String name, AbsTime timestamp, float data) {
+    itsName = name;
+    itsTimestamp = timestamp;
+    setData(data);
+  }
+
+  public PointData(String name, AbsTime timestamp, long data) {
+    itsName = name;
+    itsTimestamp = timestamp;
+    setData(data);
+  }
+
+  public PointData(String name, AbsTime timestamp, int data) {
+    itsName = name;
+    itsTimestamp = timestamp;
+    setData(data);
+  }
+
+  public PointData(String name, AbsTime timestamp, boolean data) {
+    itsName = name;
+    itsTimestamp = timestamp;
+    setData(data);
+  }
+
   public PointData(String name, Object data) {
     itsName = name;
     itsData = data;
@@ -65,6 +130,21 @@ public class PointData implements Serializable {
   /** Specify the name of the monitor point for which we hold data. */
   public void setName(String name) {
     itsName = name;
+    itsPointID = -1;
+  }
+
+  /**
+   * Specify the monitor point for which we hold data. This sets the name and also records the point's ID, so that the source and
+   * name parts of the name can be obtained without parsing it.
+   */
+  public void setPoint(PointDescription point) {
+    itsName = point.getFullName();
+    itsPointID = point.getID();
+  }
+
+  /** Get the ID of the point for which we hold data, or -1 if it isn't known. */
+  public int getPointID() {
+    return itsPointID;
   }
 
   /** Specify the timestamp for the data value we hold. */
@@ -75,6 +155,42 @@ public class PointData implements Serializable {
   /** Specify the actual data to be stored. */
   public void setData(Object data) {
     itsData = data;
+    itsType = TYPE_OBJECT;
+  }
+
+  /** Store a double value without creating a wrapper. */
+  public void setData(double data) {
+    itsData = null;
+    itsType = TYPE_DOUBLE;
+    itsBits = Double.doubleToRawLongBits(data);
+  }
+
+  /** Store a float value without creating a wrapper. */
+  public void setData(float data) {
+    itsData = null;
+    itsType = TYPE_FLOAT;
+    itsBits = Double.doubleToRawLongBits(data);
+  }
+
+  /** Store a long value without creating a wrapper. */
+  public void setData(long data) {
+    itsData = null;
+    itsType = TYPE_LONG;
+    itsBits = data;
+  }
+
+  /** Store an int value without creating a wrapper. */
+  public void setData(int data) {
+    itsData = null;
+    itsType = TYPE_INT;
+    itsBits = data;
+  }
+
+  /** Store a boolean value without creating a wrapper. */
+  public void setData(boolean data) {
+    itsData = null;
+    itsType = TYPE_BOOLEAN;
+    itsBits = data ? 1 : 0;
   }
 
   /** Get the name of the point for which we hold data. */
@@ -84,14 +200,35 @@ public class PointData implements Serializable {
 
   /** Get the name part of the point without the source. */
   public String getNameOnly() {
+    PointDescription point = getPoint();
+    if (point != null) {
+      return point.getName();
+    }
     return itsName.substring(itsName.indexOf(".") + 1, itsName.length());
   }
 
   /** Get the name of the source that this data relates to. */
   public String getSource() {
+    PointDescription point = getPoint();
+    if (point != null) {
+      return point.getSource();
+    }
     return itsName.substring(0, itsName.indexOf("."));
   }
 
+  /** Get the point for which we hold data, if it is known from the ID. */
+  private PointDescription getPoint() {
+    if (itsPointID == -1) {
+      return null;
+    }
+    PointDescription res = PointDescription.getPoint(itsPointID);
+    // Check the name in case the ID isn't valid, for instance after deserialisation
+    if (res != null && res.getFullName() != itsName && !res.getFullName().equals(itsName)) {
+      res = null;
+    }
+    return res;
+  }
+
   /** Get the timestamp for the data value we hold. */
   public AbsTime getTimestamp() {
     return itsTimestamp;
@@ -99,7 +236,83 @@ public class PointData implements Serializable {
 
   /** Get the actual translated data stored by this PointData. */
   public Object getData() {
-    return itsData;
+    Object res = itsData;
+    if (res == null && itsType != TYPE_OBJECT) {
+      // Create the wrapper for the primitive value and keep it in case it is requested again
+      switch (itsType) {
+      case TYPE_DOUBLE:
+        res = new Double(Double.longBitsToDouble(itsBits));
+        break;
+      case TYPE_FLOAT:
+        res = new Float((float) Double.longBitsToDouble(itsBits));
+        break;
+      case TYPE_LONG:
+        res = new Long(itsBits);
+        break;
+      case TYPE_INT:
+        res = new Integer((int) itsBits);
+        break;
+      case TYPE_BOOLEAN:
+        res = Boolean.valueOf(itsBits != 0);
+        break;
+      }
+      itsData = res;
+    }
+    return res;
+  }
+
+  /**
+   * Get the type of value held. If this is <tt>TYPE_OBJECT</tt> the value must be obtained using <i>getData</i>, otherwise it can
+   * be obtained without creating a wrapper using the method for the primitive type.
+   */
+  public byte getValueType() {
+    return itsType;
+  }
+
+  /** Check if the value is a number, whether it is held as a primitive or as a <tt>Number</tt> object. */
+  public boolean isNumeric() {
+    if (itsType == TYPE_OBJECT) {
+      return itsData instanceof Number;
+    } else {
+      return itsType != TYPE_BOOLEAN;
+    }
+  }
+
+  /** Get the value as a double. The value must be numeric. */
+  public double doubleValue() {
+    switch (itsType) {
+    case TYPE_DOUBLE:
+    case TYPE_FLOAT:
+      return Double.longBitsToDouble(itsBits);
+    case TYPE_LONG:
+    case TYPE_INT:
+      return itsBits;
+    default:
+      return ((Number) getData()).doubleValue();
+    }
+  }
+
+  /** Get the value as a long. The value must be numeric. */
+  public long longValue() {
+    switch (itsType) {
+    case TYPE_DOUBLE:
+    case TYPE_FLOAT:
+      return (long) Double.longBitsToDouble(itsBits);
+    case TYPE_LONG:
+    case TYPE_INT:
+      return itsBits;
+    default:
+      return ((Number) getData()).longValue();
+    }
+  }
+
+  /** Get the value as a boolean. The value must be a boolean. */
+  public boolean booleanValue() {
+    if (itsType == TYPE_BOOLEAN) {
+      return itsBits != 0;
+    } else {
+      return ((Boolean) getData()).booleanValue();
+    }
   }
 
   /** Get the alarm status for this data. A value of True indicates an alarm, 
@@ -121,7 +334,7 @@ public class PointData implements Serializable {
    * point.
    */
   public boolean isValid() {
-    if (itsData == null) {
+    if (itsData == null && itsType == TYPE_OBJECT) {
       return false;
     } else {
       return true;
@@ -0,0 +1,213 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.util.MonitorConfig;
+
+/**
+ * Graph of the dependencies between points, built from the Translations and input Transactions which implement
+ * <tt>PointDependent</tt>.
+ *
+ * <P>
+ * Each point is assigned a level: points which don't depend on any other point are level 0 and a derived point is one level higher
+ * than the highest of the points it depends on. The level is used by the <tt>DerivedPointEvaluator</tt> to evaluate derived points
+ * in topological waves. Points which are part of a dependency cycle are reported and given level -1.
+ *
+ * <P>
+ * If the <tt>DependencyGraphFile</tt> option is set then the graph is written to that file in Graphviz "dot" format when it is
+ * built.
+ *
+ * @author David Brodrick
+ */
+public class PointDependencyGraph {
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(PointDependencyGraph.class.getName());
+
+  /** Level of each point in the graph. */
+  private static ConcurrentHashMap<PointDescription, Integer> theirLevels = new ConcurrentHashMap<PointDescription, Integer>();
+
+  /** Points each point depends on. */
+  private static Hashtable<PointDescription, Vector<PointDescription>> theirDependencies = new Hashtable<PointDescription, Vector<PointDescription>>();
+
+  /** Points which are part of a dependency cycle. */
+  private static Vector<PointDescription> theirCycles = new Vector<PointDescription>();
+
+  /**
+   * Build the graph from all of the points which have been created, replacing any previous graph. This should be called once all
+   * points have been created.
+   */
+  public static synchronized void build() {
+    PointDescription[] points = PointDescription.getAllUniquePoints();
+    Hashtable<PointDescription, Vector<PointDescription>> deps = new Hashtable<PointDescription, Vector<PointDescription>>();
+    Hashtable<PointDescription, Vector<PointDescription>> dependents = new Hashtable<PointDescription, Vector<PointDescription>>();
+    for (int i = 0; i < points.length; i++) {
+      Vector<PointDescription> thesedeps = getDependencies(points[i]);
+      deps.put(points[i], thesedeps);
+      for (int j = 0; j < thesedeps.size(); j++) {
+        Vector<PointDescription> d = dependents.get(thesedeps.get(j));
+        if (d == null) {
+          d = new Vector<PointDescription>();
+          dependents.put(thesedeps.get(j), d);
+        }
+        d.add(points[i]);
+      }
+    }
+
+    // Assign levels in topological order (Kahn's algorithm)
+    HashMap<PointDescription, Integer> levels = new HashMap<PointDescription, Integer>();
+    HashMap<PointDescription, Integer> remaining = new HashMap<PointDescription, Integer>();
+    LinkedList<PointDescription> ready = new LinkedList<PointDescription>();
+    for (int i = 0; i < points.length; i++) {
+      int numdeps = deps.get(points[i]).size();
+      remaining.put(points[i], new Integer(numdeps));
+      if (numdeps == 0) {
+        levels.put(points[i], new Integer(0));
+        ready.add(points[i]);
+      }
+    }
+    int maxlevel = 0;
+    while (!ready.isEmpty()) {
+      PointDescription p = ready.removeFirst();
+      int level = levels.get(p).intValue();
+      Vector<PointDescription> d = dependents.get(p);
+      if (d == null) {
+        continue;
+      }
+      for (int i = 0; i < d.size(); i++) {
+        PointDescription dep = d.get(i);
+        Integer prev = levels.get(dep);
+        if (prev == null || prev.intValue() < level + 1) {
+          levels.put(dep, new Integer(level + 1));
+          maxlevel = Math.max(maxlevel, level + 1);
+        }
+        int left = remaining.get(dep).intValue() - 1;
+        remaining.put(dep, new Integer(left));
+        if (left == 0) {
+          ready.add(dep);
+        }
+      }
+    }
+
+    // Anything with unresolved dependencies is part of, or downstream of, a cycle
+    Vector<PointDescription> cycles = new Vector<PointDescription>();
+    for (int i = 0; i < points.length; i++) {
+      if (remaining.get(points[i]).intValue() > 0) {
+        levels.put(points[i], new Integer(-1));
+        cycles.add(points[i]);
+      }
+    }
+
+    theirDependencies = deps;
+    theirCycles = cycles;
+    theirLevels.clear();
+    theirLevels.putAll(levels);
+
+    int numderived = 0;
+    for (int i = 0; i < points.length; i++) {
+      if (!deps.get(points[i]).isEmpty()) {
+        numderived++;
+      }
+    }
+    theirLogger.info("Dependency graph has " + numderived + " derived points with a maximum depth of " + maxlevel);
+    if (!cycles.isEmpty()) {
+      StringBuffer names = new StringBuffer();
+      for (int i = 0; i < cycles.size(); i++) {
+        names.append(" " + cycles.get(i).getFullName());
+      }
+      theirLogger.warn("Points are part of, or depend on, a dependency cycle:" + names);
+    }
+
+    String dumpfile = MonitorConfig.getProperty("DependencyGraphFile");
+    if (dumpfile != null) {
+      try {
+        PrintWriter out = new PrintWriter(new FileWriter(dumpfile));
+        out.print(toDot());
+        out.close();
+      } catch (IOException e) {
+        theirLogger.warn("Could not write dependency graph to " + dumpfile + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * Get the level of a point in the graph.
+   *
+   * @param pm
+   *          The point of interest.
+   * @return The level, 0 if the point is not in the graph or -1 if it is part of a cycle.
+   */
+  public static int getLevel(PointDescription pm) {
+    Integer res = theirLevels.get(pm);
+    if (res == null) {
+      return 0;
+    }
+    return res.intValue();
+  }
+
+  /** Get the points which are part of, or depend on, a dependency cycle. */
+  public static synchronized PointDescription[] getCycles() {
+    return theirCycles.toArray(new PointDescription[0]);
+  }
+
+  /** Get the graph in Graphviz "dot" format. Points are grouped by level and cycles are shown in red. */
+  public static synchronized String toDot() {
+    StringBuffer res = new StringBuffer();
+    res.append("digraph monica {\n");
+    res.append("  rankdir=LR;\n");
+    Iterator<PointDescription> i = theirDependencies.keySet().iterator();
+    while (i.hasNext()) {
+      PointDescription p = i.next();
+      Vector<PointDescription> deps = theirDependencies.get(p);
+      if (deps.isEmpty()) {
+        continue;
+      }
+      res.append("  \"" + p.getFullName() + "\" [label=\"" + p.getFullName() + "\\nlevel " + getLevel(p) + "\"");
+      if (getLevel(p) == -1) {
+        res.append(", color=red");
+      }
+      res.append("];\n");
+      for (int j = 0; j < deps.size(); j++) {
+        res.append("  \"" + deps.get(j).getFullName() + "\" -> \"" + p.getFullName() + "\";\n");
+      }
+    }
+    res.append("}\n");
+    return res.toString();
+  }
+
+  /** Get the points which the given point depends on, without duplicates. */
+  private static Vector<PointDescription> getDependencies(PointDescription pm) {
+    Vector<PointDescription> res = new Vector<PointDescription>();
+    Vector<Object> sources = new Vector<Object>();
+    if (pm.getTranslations() != null) {
+      sources.addAll(Arrays.asList(pm.getTranslations()));
+    }
+    if (pm.getInputTransactions() != null) {
+      sources.addAll(Arrays.asList(pm.getInputTransactions()));
+    }
+    for (int i = 0; i < sources.size(); i++) {
+      if (sources.get(i) instanceof PointDependent) {
+        String[] names = ((PointDependent) sources.get(i)).getDependencies();
+        for (int j = 0; names != null && j < names.length; j++) {
+          PointDescription dep = PointDescription.getPoint(names[j]);
+          if (dep != null && dep != pm && !res.contains(dep)) {
+            res.add(dep);
+          } else if (dep == pm) {
+            theirLogger.warn("(" + pm.getFullName() + ") depends on itself");
+          }
+        }
+      }
+    }
+    return res;
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+/**
+ * Implemented by Translations and Transactions whose output depends on the values of other points, so that the
+ * <tt>PointDependencyGraph</tt> can be built.
+ * 
+ * @author David Brodrick
+ */
+public interface PointDependent {
+  /**
+   * Get the names of the points this object depends on.
+   * 
+   * @return Array of point names, with any macros already expanded.
+   */
+  public String[] getDependencies();
+}
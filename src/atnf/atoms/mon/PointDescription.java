@@ -8,6 +8,7 @@
 package atnf.atoms.mon;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 import java.awt.event.*;
 import javax.swing.event.*;
@@ -44,6 +45,12 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
   /** The source name of the system this point relates to. */
   protected String itsSource = null;
 
+  /** Cached full source.name name of the point, so that the same instance can be used for all of the point's data. */
+  private String itsFullName = null;
+
+  /** Compact numeric ID of the point, assigned when it is added to the system, or -1 if it hasn't been added. */
+  private int itsID = -1;
+
   /** The description of what this monitor point represents. */
   protected String itsLongDesc = "";
 
@@ -354,6 +361,7 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
 
   public void setSource(String source) {
     itsSource = source;
+    itsFullName = null;
   }
 
   /**
@@ -362,6 +370,7 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
    */
   protected void setNames(String[] newnames) {
     itsNames = newnames;
+    itsFullName = null;
   }
 
   public String[] getAllNames() {
@@ -388,9 +397,24 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
     return itsNames[0];
   }
 
-  /** Gets the full source.name name of this point. */
+  /** Gets the full source.name name of this point. The same String instance is returned each time. */
   public String getFullName() {
-    return itsSource + "." + itsNames[0];
+    String res = itsFullName;
+    if (res == null) {
+      res = itsSource + "." + itsNames[0];
+      itsFullName = res;
+    }
+    return res;
+  }
+
+  /**
+   * Get the compact numeric ID of this point, which can be used to look the point up with <i>getPoint(int)</i> without using its
+   * name.
+   * 
+   * @return The ID, or -1 if the point hasn't been added to the system.
+   */
+  public int getID() {
+    return itsID;
   }
 
   /** Other unique Strings that you might use */
@@ -859,7 +883,7 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
   }
 
   /** Distribute data to listeners. */
-  public synchronized void distributeData(PointEvent pe) {
+  public void distributeData(PointEvent pe) {
     // Pass the event on to all listeners
     Object[] listeners = itsListenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2) {
@@ -874,117 +898,157 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
     }
   }
 
-  /** OK, maybe new raw data has been collected */
-  public synchronized void firePointEvent(PointEvent pe) {
-    PointData data = pe.getPointData();
-    if (pe.isRaw()) {
-      // This is a raw event, we need to translate the data
-      // Don't translate if there was nothing to translate
-      if (data != null && itsTranslations != null) {
-        for (int i = 0; i < itsTranslations.length; i++) {
-          try {
-            // Apply the next translation if it is defined
-            if (itsTranslations[i] != null) {
-              data = itsTranslations[i].translate(data);
+  /**
+   * OK, maybe new raw data has been collected. Raw data is translated and the next collection is scheduled on the calling thread,
+   * then the update is passed to the <tt>PointEventPipeline</tt> for alarm checking, archiving and distribution to listeners.
+   */
+  public void firePointEvent(PointEvent pe) {
+    boolean pipeline = PointEventPipeline.isEnabled();
+    if (pipeline) {
+      // Wait for space before locking, so listeners in the pipeline can still fire us
+      PointEventPipeline.waitForSpace(this);
+    }
+
+    synchronized (this) {
+      PointData data = pe.getPointData();
+      if (pe.isRaw()) {
+        // This is a raw event, we need to translate the data
+        // Don't translate if there was nothing to translate
+        if (data != null && itsTranslations != null) {
+          for (int i = 0; i < itsTranslations.length; i++) {
+            try {
+              // Apply the next translation if it is defined
+              if (itsTranslations[i] != null) {
+                data = itsTranslations[i].translate(data);
+              }
+            } catch (Throwable e) {
+              theirLogger.error("(" + getFullName() + ") Error on Translation " + (i + 1) + "/" + itsTranslations.length + ": " + e);
+              e.printStackTrace();
+              data = null;
+            }
+            // If null was returned then stop translation process
+            if (data == null) {
+              break;
             }
-          } catch (Throwable e) {
-            theirLogger.error("(" + getFullName() + ") Error on Translation " + (i + 1) + "/" + itsTranslations.length + ": " + e);
-            e.printStackTrace();
-            data = null;
           }
-          // If null was returned then stop translation process
-          if (data == null) {
-            break;
+        }
+        // Ensure data has our name on it (eg not name of a listened-to point)
+        if (data != null) {
+          String fullname = getFullName();
+          if (data.getName() != fullname && !fullname.equals(data.getName())) {
+            data = new PointData(data);
           }
+          data.setPoint(this);
         }
-      }
-      // Ensure data has our name on it (eg not name of a listened-to point)
-      if (data != null && !data.getName().equals(getFullName())) {
-        data = new PointData(data);
-        data.setName(getFullName());
-      }
 
-      // Translation has been completed so prepare new event and fire
-      pe = new PointEvent(this, data, false);
-    }
+        // Translation has been completed so prepare new event and fire
+        pe = new PointEvent(this, data, false);
+      }
 
-    if (data != null && data.isValid()) {
-      // Check alarm criteria    
-      evaluateAlarms(data);
-
-      // Perform any required output transactions
-      if (getEnabled() && itsOutputTransactions != null && itsOutputTransactions.length > 0) {
-        for (int i = 0; i < itsOutputTransactions.length; i++) {
-          Transaction thistrans = itsOutputTransactions[i];
-          if (thistrans != null) {
-            // Find the ExternalSystem responsible for handling this control operation
-            ExternalSystem ds = ExternalSystem.getExternalSystem(thistrans.getChannel());
-            if (ds == null) {
-              theirLogger.warn("(" + getFullName() + ") No ExternalSystem for output Transaction channel " + thistrans.getChannel());
-            } else if (!ds.isConnected()) {
-              // Could connect here but might block for too long?
-              theirLogger.warn("(" + getFullName() + ") While writing output data: ExternalSystem " + thistrans.getChannel() + " is not connected");
-            } else {
-              try {
-                ds.putData(this, data);
-              } catch (Exception e) {
-                //e.printStackTrace();
-                theirLogger.warn("(" + getFullName() + ") while writing output data, ExternalSystem " + ds.getName() + " threw exception \"" + e + "\"");
-              }
-            }
-          }
+      // Schedule the next collection
+      if (itsPeriod > 0) {
+        if (data != null && data.isValid()) {
+          itsNextEpoch = data.getTimestamp().getValue() + itsPeriod;
+        } else {
+          itsNextEpoch = (new AbsTime()).getValue() + itsPeriod;
         }
       }
 
-      // Change registered alarm status if required
-      if (itsPriority > -1) {
-        AlarmManager.setAlarm(this, data);
+      if (pipeline) {
+        // Submitted while locked so that updates enter the pipeline in the order they were translated
+        PointEventPipeline.submit(this, pe);
+      } else {
+        processAlarms(data);
+        processArchive(data);
+        distributeData(pe);
       }
+    }
+  }
+
+  /**
+   * Check alarm criteria, perform output transactions, update the alarm status and send notifications for a translated update.
+   *
+   * @param data
+   *          The translated data, which may be null.
+   */
+  void processAlarms(PointData data) {
+    if (data == null || !data.isValid()) {
+      return;
+    }
 
-      // Send any required notifications, unless acknowledged or shelved
-      if (itsNotifications != null && itsNotifications.length > 0) {
-        Alarm alarm = AlarmManager.getAlarm(this);
-        if (alarm == null || (!alarm.isAcknowledged() && !alarm.isShelved())) {
-          for (int i = 0; i < itsNotifications.length; i++) {
+    // Check alarm criteria
+    evaluateAlarms(data);
+
+    // Perform any required output transactions
+    if (getEnabled() && itsOutputTransactions != null && itsOutputTransactions.length > 0) {
+      for (int i = 0; i < itsOutputTransactions.length; i++) {
+        Transaction thistrans = itsOutputTransactions[i];
+        if (thistrans != null) {
+          // Find the ExternalSystem responsible for handling this control operation
+          ExternalSystem ds = ExternalSystem.getExternalSystem(thistrans.getChannel());
+          if (ds == null) {
+            theirLogger.warn("(" + getFullName() + ") No ExternalSystem for output Transaction channel " + thistrans.getChannel());
+          } else if (!ds.isConnected()) {
+            // Could connect here but might block for too long?
+            theirLogger.warn("(" + getFullName() + ") While writing output data: ExternalSystem " + thistrans.getChannel() + " is not connected");
+          } else {
             try {
-              if (itsNotifications[i] != null) {
-                itsNotifications[i].checkNotify(data);
-              }
+              ds.putData(this, data);
             } catch (Exception e) {
-              theirLogger.error("(" + getFullName() + ") Error on Notification " + (i + 1) + "/" + itsNotifications.length + ": " + e);
-              e.printStackTrace();
+              //e.printStackTrace();
+              theirLogger.warn("(" + getFullName() + ") while writing output data, ExternalSystem " + ds.getName() + " threw exception \"" + e + "\"");
             }
           }
         }
       }
+    }
 
-      // Archive data
-      if (itsArchiver != null && itsEnabled) {
-        for (int i = 0; i < itsArchive.length; i++) {
-          if (itsArchive[i] != null && itsArchive[i].checkArchiveThis(data)) {
-            itsArchiver.archiveData(this, data);
-            break;
+    // Change registered alarm status if required
+    if (itsPriority > -1) {
+      AlarmManager.setAlarm(this, data);
+    }
+
+    // Send any required notifications, unless acknowledged or shelved
+    if (itsNotifications != null && itsNotifications.length > 0) {
+      Alarm alarm = AlarmManager.getAlarm(this);
+      if (alarm == null || (!alarm.isAcknowledged() && !alarm.isShelved())) {
+        for (int i = 0; i < itsNotifications.length; i++) {
+          try {
+            if (itsNotifications[i] != null) {
+              itsNotifications[i].checkNotify(data);
+            }
+          } catch (Exception e) {
+            theirLogger.error("(" + getFullName() + ") Error on Notification " + (i + 1) + "/" + itsNotifications.length + ": " + e);
+            e.printStackTrace();
           }
         }
       }
     }
+  }
 
-    // Add the updated value to the data buffer
-    if (data != null) {
-      PointBuffer.updateData(this, data);
+  /**
+   * Archive a translated update if required and add it to the memory buffer.
+   *
+   * @param data
+   *          The translated data, which may be null.
+   */
+  void processArchive(PointData data) {
+    if (data == null) {
+      return;
     }
 
-    // Pass the event on to all listeners
-    distributeData(pe);
-
-    // Schedule the next collection
-    if (itsPeriod > 0) {
-      if (data != null && data.isValid()) {
-        itsNextEpoch = data.getTimestamp().getValue() + itsPeriod;
-      } else {
-        itsNextEpoch = (new AbsTime()).getValue() + itsPeriod;
+    // Archive data
+    if (data.isValid() && itsArchiver != null && itsEnabled) {
+      for (int i = 0; i < itsArchive.length; i++) {
+        if (itsArchive[i] != null && itsArchive[i].checkArchiveThis(data)) {
+          itsArchiver.archiveData(this, data);
+          break;
+        }
       }
     }
+
+    // Add the updated value to the data buffer
+    PointBuffer.updateData(this, data);
   }
 
   /**
@@ -1065,51 +1129,190 @@ public class PointDescription implements ActionListener, NamedObject, Comparable
     return "{" + itsSource + "." + itsNames[0] + " " + getNextEpoch_AbsTime().toString(AbsTime.Format.UTC_STRING) + "}";
   }
 
+  /*
+   * The point registry. Lookups by name or ID don't lock, so they can be made freely by request threads. Points are added under the
+   * class lock, which also guards rebuilding the cached snapshots used for listing names.
+   */
+
   /** Map of all points (including aliases) indexed by name. */
-  private static TreeMap<String, PointDescription> theirPoints = new TreeMap<String, PointDescription>();
+  private static ConcurrentHashMap<String, PointDescription> theirPoints = new ConcurrentHashMap<String, PointDescription>();
 
   /** Map of all points (excluding aliases) indexed by name. */
-  private static TreeMap<String, PointDescription> theirUniquePoints = new TreeMap<String, PointDescription>();
+  private static ConcurrentHashMap<String, PointDescription> theirUniquePoints = new ConcurrentHashMap<String, PointDescription>();
+
+  /** All points (including aliases) sorted by name, for listing and prefix queries. */
+  private static ConcurrentSkipListMap<String, PointDescription> theirSortedPoints = new ConcurrentSkipListMap<String, PointDescription>();
+
+  /** All points (excluding aliases) sorted by name. */
+  private static ConcurrentSkipListMap<String, PointDescription> theirSortedUniquePoints = new ConcurrentSkipListMap<String, PointDescription>();
+
+  /** Hierarchical index of all point names (including aliases), for browsing and wildcard queries. */
+  private static PointNameIndex theirNameIndex = new PointNameIndex();
+
+  /** All points, indexed by ID. Entries below <i>theirNumIDs</i> are never changed once published. */
+  private static volatile PointDescription[] theirPointsByID = new PointDescription[1024];
+
+  /** The number of IDs which have been assigned. */
+  private static volatile int theirNumIDs = 0;
+
+  /** Sorted names of all points (including aliases), or null if it needs to be rebuilt. */
+  private static volatile String[] theirNamesSnapshot = null;
+
+  /** Sorted names of all points (excluding aliases), or null if it needs to be rebuilt. */
+  private static volatile String[] theirUniqueNamesSnapshot = null;
+
+  /** All points (excluding aliases) sorted by name, or null if it needs to be rebuilt. */
+  private static volatile PointDescription[] theirUniquePointsSnapshot = null;
 
   /** Add a new point to the running system. */
   public static synchronized void addPoint(PointDescription pm) {
     String[] names = pm.getFullNames();
-    if (!theirUniquePoints.containsKey(names[0])) {
-      theirUniquePoints.put(names[0], pm);
+    if (theirUniquePoints.putIfAbsent(names[0], pm) == null) {
+      theirSortedUniquePoints.put(names[0], pm);
+    }
+    if (pm.itsID == -1) {
+      int id = theirNumIDs;
+      if (id == theirPointsByID.length) {
+        theirPointsByID = Arrays.copyOf(theirPointsByID, 2 * id);
+      }
+      theirPointsByID[id] = pm;
+      pm.itsID = id;
+      // Publish the new entry
+      theirNumIDs = id + 1;
     }
     for (int i = 0; i < names.length; i++) {
-      if (!theirPoints.containsKey(names[i])) {
-        theirPoints.put(names[i], pm);
+      if (theirPoints.putIfAbsent(names[i], pm) == null) {
+        theirSortedPoints.put(names[i], pm);
+        theirNameIndex.add(names[i]);
       }
     }
+    theirNamesSnapshot = null;
+    theirUniqueNamesSnapshot = null;
+    theirUniquePointsSnapshot = null;
   }
 
   /** Returns all the point names (including aliases) in the system */
-  public static synchronized String[] getAllPointNames() {
-    return MonitorUtils.toStringArray(theirPoints.keySet().toArray());
+  public static String[] getAllPointNames() {
+    String[] res = theirNamesSnapshot;
+    if (res == null) {
+      synchronized (PointDescription.class) {
+        if (theirNamesSnapshot == null) {
+          theirNamesSnapshot = theirSortedPoints.keySet().toArray(new String[0]);
+        }
+        res = theirNamesSnapshot;
+      }
+    }
+    return res.clone();
   }
 
   /** Returns all the point names (excluding aliases) in the system */
-  public static synchronized String[] getAllUniqueNames() {
-    return MonitorUtils.toStringArray(theirUniquePoints.keySet().toArray());
+  public static String[] getAllUniqueNames() {
+    String[] res = theirUniqueNamesSnapshot;
+    if (res == null) {
+      synchronized (PointDescription.class) {
+        if (theirUniqueNamesSnapshot == null) {
+          theirUniqueNamesSnapshot = theirSortedUniquePoints.keySet().toArray(new String[0]);
+        }
+        res = theirUniqueNamesSnapshot;
+      }
+    }
+    return res.clone();
+  }
+
+  /**
+   * Get the names of all points (including aliases) which start with the given prefix, in sorted order.
+   * 
+   * @param prefix
+   *          The prefix to match, for instance a source name followed by a full stop.
+   * @return The matching names.
+   */
+  public static String[] getPointNames(String prefix) {
+    Vector<String> res = new Vector<String>();
+    Iterator<String> i = theirSortedPoints.tailMap(prefix).keySet().iterator();
+    while (i.hasNext()) {
+      String name = i.next();
+      if (!name.startsWith(prefix)) {
+        break;
+      }
+      res.add(name);
+    }
+    return res.toArray(new String[0]);
+  }
+
+  /**
+   * Get the immediate children of a node in the point name hierarchy. Children which are points are returned as their full name,
+   * children which contain further points are returned with a trailing full stop.
+   * 
+   * @param node
+   *          The node of interest, for instance <tt>site.ups</tt>, or an empty string for the list of sources.
+   * @return The children in sorted order.
+   */
+  public static String[] getChildNames(String node) {
+    return theirNameIndex.getChildren(node);
+  }
+
+  /**
+   * Get the names of all points (including aliases) which match a glob pattern such as <tt>site.*.ups.*.voltage</tt>. See
+   * <tt>PointNameIndex</tt> for the pattern syntax.
+   * 
+   * @param pattern
+   *          The glob pattern to match.
+   * @return The matching names in sorted order.
+   */
+  public static String[] findPointNames(String pattern) {
+    return theirNameIndex.findGlob(pattern);
+  }
+
+  /**
+   * Get the names of all points (including aliases) which match a regular expression.
+   * 
+   * @param regex
+   *          The regular expression, which must match the whole name.
+   * @return The matching names in sorted order.
+   * @throws java.util.regex.PatternSyntaxException
+   *           If the expression is invalid.
+   */
+  public static String[] findPointNamesRegex(String regex) {
+    return theirNameIndex.findRegex(regex);
   }
 
   /** Get the point with the specified name. */
-  public static synchronized PointDescription getPoint(String name) {
+  public static PointDescription getPoint(String name) {
     return theirPoints.get(name);
   }
 
-  /** Get all points (including aliases). */
-  public static synchronized Collection<PointDescription> getAllPoints() {
-    return theirPoints.values();
+  /**
+   * Get the point with the specified ID.
+   * 
+   * @param id
+   *          The ID returned by the point's <i>getID</i> method.
+   * @return The point, or null if there is no point with that ID.
+   */
+  public static PointDescription getPoint(int id) {
+    // Read the count first so that the array is at least as new as the count
+    if (id < 0 || id >= theirNumIDs) {
+      return null;
+    }
+    return theirPointsByID[id];
+  }
+
+  /** Get all points (including aliases), sorted by name. */
+  public static Collection<PointDescription> getAllPoints() {
+    return Collections.unmodifiableCollection(theirSortedPoints.values());
   }
 
   /** Get all points (excluding aliases). */
-  public static synchronized PointDescription[] getAllUniquePoints() {
-    Collection<PointDescription> values = theirUniquePoints.values();
-    PointDescription[] res = new PointDescription[values.size()];
-    theirUniquePoints.values().toArray(res);
-    return res;
+  public static PointDescription[] getAllUniquePoints() {
+    PointDescription[] res = theirUniquePointsSnapshot;
+    if (res == null) {
+      synchronized (PointDescription.class) {
+        if (theirUniquePointsSnapshot == null) {
+          theirUniquePointsSnapshot = theirSortedUniquePoints.values().toArray(new PointDescription[0]);
+        }
+        res = theirUniquePointsSnapshot;
+      }
+    }
+    return res.clone();
   }
 
   /** Check if the point with the specified name exists */
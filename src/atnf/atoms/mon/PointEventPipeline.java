@@ -0,0 +1,324 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.util.MonitorConfig;
+
+/**
+ * Processes translated point updates in a series of stages so that slow alarm notifications, output transactions, archiving or
+ * listeners do not hold up the thread which collected the data.
+ *
+ * <P>
+ * Updates pass through the following stages in order:
+ * <ul>
+ * <li><b>alarm</b> Evaluate alarm criteria, perform output transactions, update the alarm manager and send notifications.
+ * <li><b>archive</b> Give the data to the archiver and update the memory buffer.
+ * <li><b>distribute</b> Pass the update on to the point's listeners.
+ * </ul>
+ *
+ * <P>
+ * Each stage has <tt>PointEventThreads</tt> workers, each with its own queue, and a point is always handled by the worker with the
+ * same index in every stage. Updates for a given point are therefore processed in the order they were submitted. If a worker's
+ * queue in the first stage holds <tt>PointEventQueueSize</tt> updates then threads submitting new data for points handled by that
+ * worker block until there is space, and later stages likewise block the stage feeding them. Updates generated by listeners in the
+ * distribute stage never block, since they may be waiting on the stages they feed.
+ *
+ * <P>
+ * If <tt>PointEventThreads</tt> is zero then updates are processed entirely on the calling thread.
+ *
+ * @author David Brodrick
+ */
+public class PointEventPipeline {
+  /** Index of the alarm stage. */
+  public static final int ALARM = 0;
+
+  /** Index of the archive stage. */
+  public static final int ARCHIVE = 1;
+
+  /** Index of the distribute stage. */
+  public static final int DISTRIBUTE = 2;
+
+  /** Names of the stages. */
+  private static final String[] theirStageNames = { "alarm", "archive", "distribute" };
+
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(PointEventPipeline.class.getName());
+
+  /** Number of workers in each stage. */
+  private static int theirNumThreads = 4;
+
+  /** Maximum number of updates queued for each worker before producers block. */
+  private static int theirQueueSize = 10000;
+
+  /** The workers for each stage, or null until the pipeline has been started. */
+  private static volatile Worker[][] theirWorkers = null;
+
+  /** Static block to parse pipeline parameters. */
+  static {
+    try {
+      theirNumThreads = Integer.parseInt(MonitorConfig.getProperty("PointEventThreads", "4"));
+      if (theirNumThreads < 0) {
+        theirNumThreads = 0;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing PointEventThreads configuration parameter: " + e);
+      theirNumThreads = 4;
+    }
+    try {
+      theirQueueSize = Integer.parseInt(MonitorConfig.getProperty("PointEventQueueSize", "10000"));
+      if (theirQueueSize < 1) {
+        theirQueueSize = 1;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing PointEventQueueSize configuration parameter: " + e);
+      theirQueueSize = 10000;
+    }
+  }
+
+  /** Check whether updates are processed by the pipeline rather than on the calling thread. */
+  public static boolean isEnabled() {
+    return theirNumThreads > 0;
+  }
+
+  /** Get the names of the stages. */
+  public static String[] getStageNames() {
+    return theirStageNames.clone();
+  }
+
+  /**
+   * Get the number of updates waiting to be processed by a stage.
+   *
+   * @param stage
+   *          Name of the stage.
+   * @return Number of queued updates, or -1 if there is no such stage.
+   */
+  public static int getQueueDepth(String stage) {
+    for (int i = 0; i < theirStageNames.length; i++) {
+      if (theirStageNames[i].equals(stage)) {
+        return getQueueDepth(i);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get the number of updates waiting to be processed by a stage.
+   *
+   * @param stage
+   *          Index of the stage.
+   * @return Number of queued updates.
+   */
+  public static int getQueueDepth(int stage) {
+    Worker[][] workers = theirWorkers;
+    int res = 0;
+    if (workers != null) {
+      for (int i = 0; i < workers[stage].length; i++) {
+        res += workers[stage][i].size();
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Block the calling thread while the queue which will receive the point's next update is full. This must be called without
+   * holding any locks which the pipeline's workers may need.
+   *
+   * @param pm
+   *          The point which is about to be updated.
+   */
+  public static void waitForSpace(PointDescription pm) {
+    if (Thread.currentThread() instanceof Worker) {
+      // Pipeline threads are never held up, to avoid a cycle of full queues
+      return;
+    }
+    getWorkers()[ALARM][getIndex(pm)].waitForSpace();
+  }
+
+  /**
+   * Submit a translated update to the first stage of the pipeline. This never blocks, <tt>waitForSpace</tt> should be called
+   * first to apply back-pressure to the producer.
+   *
+   * @param pm
+   *          The point which has been updated.
+   * @param pe
+   *          The translated event.
+   */
+  public static void submit(PointDescription pm, PointEvent pe) {
+    getWorkers()[ALARM][getIndex(pm)].add(new Task(pm, pe));
+  }
+
+  /**
+   * Wait for all queued updates to be processed, so that they can be archived before the server shuts down.
+   *
+   * @param timeout
+   *          Maximum time to wait (ms).
+   */
+  public static void drain(long timeout) {
+    Worker[][] workers = theirWorkers;
+    if (workers == null) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + timeout;
+    while (System.currentTimeMillis() < deadline) {
+      boolean idle = true;
+      for (int s = 0; s < workers.length && idle; s++) {
+        for (int i = 0; i < workers[s].length && idle; i++) {
+          idle = workers[s][i].isIdle();
+        }
+      }
+      if (idle) {
+        return;
+      }
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    theirLogger.warn("Timed out waiting for point updates to be processed");
+  }
+
+  /** Get the index of the worker which handles the point. */
+  private static int getIndex(PointDescription pm) {
+    return Math.abs(pm.getFullName().hashCode() % theirNumThreads);
+  }
+
+  /** Get the workers, starting them if required. */
+  private static Worker[][] getWorkers() {
+    Worker[][] res = theirWorkers;
+    if (res == null) {
+      res = startWorkers();
+    }
+    return res;
+  }
+
+  /** Create and start the workers if this hasn't already been done. */
+  private static synchronized Worker[][] startWorkers() {
+    if (theirWorkers == null) {
+      Worker[][] workers = new Worker[theirStageNames.length][theirNumThreads];
+      for (int s = theirStageNames.length - 1; s >= 0; s--) {
+        for (int i = 0; i < theirNumThreads; i++) {
+          workers[s][i] = new Worker(s, i, s + 1 < theirStageNames.length ? workers[s + 1][i] : null);
+          workers[s][i].start();
+        }
+      }
+      theirWorkers = workers;
+    }
+    return theirWorkers;
+  }
+
+  /** An update waiting to be processed. */
+  private static class Task {
+    public final PointDescription itsPoint;
+
+    public final PointEvent itsEvent;
+
+    public Task(PointDescription point, PointEvent event) {
+      itsPoint = point;
+      itsEvent = event;
+    }
+  }
+
+  /** Worker which processes the updates for a subset of points through one stage. */
+  private static class Worker extends Thread {
+    /** The stage this worker belongs to. */
+    private int itsStage;
+
+    /** The worker in the next stage which handles the same points, or null for the last stage. */
+    private Worker itsNext;
+
+    /** Updates waiting to be processed. */
+    private LinkedList<Task> itsQueue = new LinkedList<Task>();
+
+    /** True while an update is being processed. */
+    private boolean itsBusy = false;
+
+    public Worker(int stage, int num, Worker next) {
+      super("PointEvent " + theirStageNames[stage] + " " + num);
+      setDaemon(true);
+      itsStage = stage;
+      itsNext = next;
+    }
+
+    /** Get the number of queued updates. */
+    public synchronized int size() {
+      return itsQueue.size();
+    }
+
+    /** Check if the queue is empty and no update is being processed. */
+    public synchronized boolean isIdle() {
+      return !itsBusy && itsQueue.isEmpty();
+    }
+
+    /** Block while the queue is full. */
+    public synchronized void waitForSpace() {
+      while (itsQueue.size() >= theirQueueSize) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+
+    /** Add an update to the queue. */
+    public synchronized void add(Task task) {
+      itsQueue.add(task);
+      if (itsQueue.size() == 1) {
+        notifyAll();
+      }
+    }
+
+    /** Get the next update, blocking until one is available. */
+    private synchronized Task next() throws InterruptedException {
+      itsBusy = false;
+      while (itsQueue.isEmpty()) {
+        wait();
+      }
+      Task res = itsQueue.removeFirst();
+      itsBusy = true;
+      if (itsQueue.size() == theirQueueSize - 1) {
+        // Was full, so producers may be waiting
+        notifyAll();
+      }
+      return res;
+    }
+
+    public void run() {
+      while (true) {
+        Task task;
+        try {
+          task = next();
+        } catch (InterruptedException e) {
+          continue;
+        }
+        try {
+          PointDescription pm = task.itsPoint;
+          if (itsStage == ALARM) {
+            pm.processAlarms(task.itsEvent.getPointData());
+          } else if (itsStage == ARCHIVE) {
+            pm.processArchive(task.itsEvent.getPointData());
+          } else {
+            pm.distributeData(task.itsEvent);
+          }
+        } catch (Throwable e) {
+          theirLogger.error("(" + task.itsPoint.getFullName() + ") Error in " + theirStageNames[itsStage] + " stage: " + e);
+          e.printStackTrace();
+        }
+        if (itsNext != null) {
+          itsNext.waitForSpace();
+          itsNext.add(task);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Hierarchical index of point names. Each full name, for instance <tt>site.ups.1.voltage</tt>, is split into its full stop
+ * separated components and stored in a tree, so that clients can browse the point hierarchy one level at a time and search for
+ * points without retrieving the full list of names.
+ *
+ * <P>
+ * Names are added as points are created and the index can be read concurrently while this happens.
+ *
+ * <P>
+ * Glob patterns are matched one component at a time. Within a component <tt>*</tt> matches any sequence of characters and
+ * <tt>?</tt> matches any single character, while a component which is just <tt>**</tt> matches any number of components, including
+ * none. So <tt>site.*.ups.*.voltage</tt> matches <tt>site.a.ups.1.voltage</tt> and <tt>site.**.voltage</tt> matches every voltage
+ * point for the site. Components without wildcards are looked up directly, so only the relevant parts of the tree are visited.
+ *
+ * @author David Brodrick
+ */
+public class PointNameIndex {
+  /** A node in the tree, corresponding to a prefix of one or more point names. */
+  private static class Node {
+    /** Child nodes indexed by name component. */
+    public final ConcurrentSkipListMap<String, Node> itsChildren = new ConcurrentSkipListMap<String, Node>();
+
+    /** Set if a point has the full name leading to this node. */
+    public volatile boolean itsIsPoint = false;
+  }
+
+  /** Marks a pattern component which matches any number of name components. */
+  private static final Object ANY_COMPONENTS = new Object();
+
+  /** The root of the tree, which has the sources as its children. */
+  private Node itsRoot = new Node();
+
+  /** The number of names in the index. */
+  private volatile int itsSize = 0;
+
+  /**
+   * Add a name to the index.
+   *
+   * @param name
+   *          The full name of the point, including the source.
+   */
+  public synchronized void add(String name) {
+    String[] components = name.split("\\.", -1);
+    Node node = itsRoot;
+    for (int i = 0; i < components.length; i++) {
+      Node child = node.itsChildren.get(components[i]);
+      if (child == null) {
+        child = new Node();
+        node.itsChildren.put(components[i], child);
+      }
+      node = child;
+    }
+    if (!node.itsIsPoint) {
+      node.itsIsPoint = true;
+      itsSize++;
+    }
+  }
+
+  /** Get the number of names in the index. */
+  public int size() {
+    return itsSize;
+  }
+
+  /**
+   * Get the immediate children of a node in the hierarchy. Children which are points are returned as their full name, while children
+   * which have children of their own are returned as their full name followed by a full stop. A child which is both a point and
+   * the parent of other points is returned in both forms.
+   *
+   * @param parent
+   *          The node of interest, for instance <tt>site.ups</tt>, or an empty string for the top level.
+   * @return The children in sorted order, which will be empty if the node doesn't exist.
+   */
+  public String[] getChildren(String parent) {
+    Vector<String> res = new Vector<String>();
+    String prefix = "";
+    Node node = itsRoot;
+    if (parent != null && parent.length() > 0) {
+      if (parent.endsWith(".")) {
+        parent = parent.substring(0, parent.length() - 1);
+      }
+      node = find(parent);
+      prefix = parent + ".";
+    }
+    if (node != null) {
+      Iterator<Map.Entry<String, Node>> i = node.itsChildren.entrySet().iterator();
+      while (i.hasNext()) {
+        Map.Entry<String, Node> entry = i.next();
+        String name = prefix + entry.getKey();
+        if (entry.getValue().itsIsPoint) {
+          res.add(name);
+        }
+        if (!entry.getValue().itsChildren.isEmpty()) {
+          res.add(name + ".");
+        }
+      }
+    }
+    return res.toArray(new String[0]);
+  }
+
+  /**
+   * Get the names of all points which match a glob pattern.
+   *
+   * @param pattern
+   *          The pattern to match, as described above.
+   * @return The matching names in sorted order.
+   */
+  public String[] findGlob(String pattern) {
+    String[] components = pattern.split("\\.", -1);
+    Object[] matchers = new Object[components.length];
+    for (int i = 0; i < components.length; i++) {
+      if (components[i].equals("**")) {
+        matchers[i] = ANY_COMPONENTS;
+      } else if (components[i].indexOf('*') != -1 || components[i].indexOf('?') != -1) {
+        matchers[i] = globToPattern(components[i]);
+      } else {
+        matchers[i] = components[i];
+      }
+    }
+    // A "**" can reach the same node more than once, so collect in a set
+    TreeSet<String> res = new TreeSet<String>();
+    findGlob(itsRoot, "", components, matchers, 0, res);
+    return res.toArray(new String[0]);
+  }
+
+  /**
+   * Get the names of all points which match a regular expression.
+   *
+   * @param regex
+   *          The regular expression, which must match the whole name.
+   * @return The matching names in sorted order.
+   */
+  public String[] findRegex(String regex) {
+    Pattern pattern = Pattern.compile(regex);
+    Vector<String> res = new Vector<String>();
+    findRegex(itsRoot, "", pattern, res);
+    return res.toArray(new String[0]);
+  }
+
+  /** Get the node for the given name, or null if there isn't one. */
+  private Node find(String name) {
+    String[] components = name.split("\\.", -1);
+    Node node = itsRoot;
+    for (int i = 0; i < components.length && node != null; i++) {
+      node = node.itsChildren.get(components[i]);
+    }
+    return node;
+  }
+
+  /** Recursively match the pattern components from <i>pos</i> onwards against the children of a node. */
+  private void findGlob(Node node, String prefix, String[] components, Object[] matchers, int pos, Set<String> res) {
+    if (pos == components.length) {
+      if (node.itsIsPoint && prefix.length() > 0) {
+        res.add(prefix.substring(0, prefix.length() - 1));
+      }
+      return;
+    }
+    if (matchers[pos] == ANY_COMPONENTS) {
+      // Match no components, or consume one and stay on this pattern component
+      findGlob(node, prefix, components, matchers, pos + 1, res);
+      Iterator<Map.Entry<String, Node>> i = node.itsChildren.entrySet().iterator();
+      while (i.hasNext()) {
+        Map.Entry<String, Node> entry = i.next();
+        findGlob(entry.getValue(), prefix + entry.getKey() + ".", components, matchers, pos, res);
+      }
+    } else if (matchers[pos] instanceof Pattern) {
+      Pattern pattern = (Pattern) matchers[pos];
+      Iterator<Map.Entry<String, Node>> i = node.itsChildren.entrySet().iterator();
+      while (i.hasNext()) {
+        Map.Entry<String, Node> entry = i.next();
+        if (pattern.matcher(entry.getKey()).matches()) {
+          findGlob(entry.getValue(), prefix + entry.getKey() + ".", components, matchers, pos + 1, res);
+        }
+      }
+    } else {
+      Node child = node.itsChildren.get(components[pos]);
+      if (child != null) {
+        findGlob(child, prefix + components[pos] + ".", components, matchers, pos + 1, res);
+      }
+    }
+  }
+
+  /** Recursively add the names below a node which match the regular expression. */
+  private void findRegex(Node node, String prefix, Pattern pattern, Vector<String> res) {
+    Iterator<Map.Entry<String, Node>> i = node.itsChildren.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry<String, Node> entry = i.next();
+      String name = prefix + entry.getKey();
+      if (entry.getValue().itsIsPoint && pattern.matcher(name).matches()) {
+        res.add(name);
+      }
+      findRegex(entry.getValue(), name + ".", pattern, res);
+    }
+  }
+
+  /** Convert a glob pattern for a single name component into a regular expression. */
+  private static Pattern globToPattern(String glob) {
+    StringBuffer res = new StringBuffer();
+    StringBuffer literal = new StringBuffer();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          res.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        res.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      res.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(res.toString());
+  }
+}
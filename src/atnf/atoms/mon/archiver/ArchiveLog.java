@@ -0,0 +1,396 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.archiver;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.*;
+import atnf.atoms.time.*;
+
+/**
+ * Write-ahead log of data which has been given to the archiver but not yet written out, so that it can be recovered if the server
+ * dies before the archive buffers are flushed.
+ *
+ * <P>
+ * Records are appended to an in-memory buffer and a background thread writes the buffer to the current log segment and syncs it to
+ * disk every <tt>ArchiveLogSyncInterval</tt> milliseconds, so the cost of each sync is shared by all of the records which arrived
+ * in that interval. The log is split into segments and each segment counts the records it contains which have not yet been
+ * flushed by the archiver. Once a segment is no longer current and all of its records have been flushed it is deleted.
+ *
+ * <P>
+ * Each record is stored as a frame containing its length, a CRC and the point name followed by the record encoded by
+ * <tt>BinarySegmentCodec</tt>. When replaying the log a frame which is truncated or fails the CRC check marks the end of the valid
+ * data in that segment.
+ *
+ * @author David Brodrick
+ */
+public class ArchiveLog extends Thread {
+  /** Extension for log segment files. */
+  private static final String EXTENSION = ".wal";
+
+  /** Size (bytes) at which a new segment will be started. */
+  private static final long MAXSEGMENTSIZE = 16777216;
+
+  /** Age (ms) at which a new segment will be started, so that segments can be removed on lightly loaded systems. */
+  private static final long MAXSEGMENTAGE = 60000;
+
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(ArchiveLog.class.getName());
+
+  /** Directory containing the log segments. */
+  private File itsDir;
+
+  /** Interval (ms) between syncs of the log to disk. */
+  private long itsSyncInterval;
+
+  /** Sequence number for the next segment. */
+  private long itsNextSequence = 0;
+
+  /** The segment which new records are being appended to. */
+  private Segment itsCurrent;
+
+  /** Segments which have been closed but still contain unflushed records. */
+  private LinkedList<Segment> itsClosed = new LinkedList<Segment>();
+
+  /** Records which have been appended but not yet written to disk. */
+  private ByteArrayOutputStream itsPending = new ByteArrayOutputStream(65536);
+
+  /** Lock which serialises commits of the pending data. */
+  private Object itsCommitLock = new Object();
+
+  /** Set when the log is being closed. */
+  private volatile boolean itsClosing = false;
+
+  /** A single segment file of the log. */
+  public static class Segment {
+    /** The segment file. */
+    private File itsFile;
+
+    /** Output stream for the file, or null once the segment has been closed. */
+    private FileOutputStream itsOut;
+
+    /** Number of bytes which have been appended to the segment. */
+    private long itsSize = 0;
+
+    /** Time (ms) the segment was created. */
+    private long itsCreated = System.currentTimeMillis();
+
+    /** Number of records in the segment which have not yet been flushed by the archiver. */
+    private AtomicInteger itsUnflushed = new AtomicInteger(0);
+
+    Segment(File file) throws IOException {
+      itsFile = file;
+      itsOut = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Record that some records from the segment have now been flushed by the archiver.
+     *
+     * @param num
+     *          The number of records flushed.
+     */
+    public void release(int num) {
+      itsUnflushed.addAndGet(-num);
+    }
+  }
+
+  /**
+   * Constructor. Existing segments in the directory are left alone until <tt>replay</tt> is called.
+   *
+   * @param dir
+   *          Directory to hold the log segments.
+   * @param syncinterval
+   *          Interval (ms) between syncs of the log to disk.
+   * @throws IOException
+   *           If the log could not be created.
+   */
+  public ArchiveLog(String dir, long syncinterval) throws IOException {
+    super("Archive Log Writer");
+    setDaemon(true);
+    itsDir = new File(dir);
+    if (!itsDir.isDirectory() && !itsDir.mkdirs()) {
+      throw new IOException("Could not create archive log directory " + dir);
+    }
+    itsSyncInterval = syncinterval;
+    // Start numbering after any existing segments
+    File[] existing = getSegmentFiles();
+    if (existing.length > 0) {
+      itsNextSequence = getSequence(existing[existing.length - 1]) + 1;
+    }
+    itsCurrent = newSegment();
+    start();
+  }
+
+  /**
+   * Append a record to the log. The record will be synced to disk by the background thread.
+   *
+   * @param pm
+   *          The point the record belongs to.
+   * @param data
+   *          The record.
+   * @return The segment the record was logged to, or null if the record could not be logged.
+   */
+  public Segment append(PointDescription pm, PointData data) {
+    if (!BinarySegmentCodec.isSupported(data)) {
+      return null;
+    }
+    byte[] frame;
+    try {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+      DataOutputStream dbody = new DataOutputStream(body);
+      dbody.writeUTF(pm.getFullName());
+      Vector<PointData> one = new Vector<PointData>(1);
+      one.add(data);
+      byte[] payload = BinarySegmentCodec.encode(one);
+      dbody.writeInt(payload.length);
+      dbody.write(payload);
+      dbody.flush();
+      byte[] bytes = body.toByteArray();
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      ByteArrayOutputStream framebuf = new ByteArrayOutputStream(bytes.length + 8);
+      DataOutputStream dframe = new DataOutputStream(framebuf);
+      dframe.writeInt(bytes.length);
+      dframe.writeInt((int) crc.getValue());
+      dframe.write(bytes);
+      dframe.flush();
+      frame = framebuf.toByteArray();
+    } catch (Exception e) {
+      theirLogger.warn("Could not log record for " + pm.getFullName() + ": " + e);
+      return null;
+    }
+
+    synchronized (this) {
+      itsPending.write(frame, 0, frame.length);
+      itsCurrent.itsUnflushed.incrementAndGet();
+      return itsCurrent;
+    }
+  }
+
+  /**
+   * Write all pending records to disk and sync them, starting a new segment and removing segments which are no longer needed as
+   * required.
+   */
+  public void commit() {
+    synchronized (itsCommitLock) {
+      byte[] data;
+      Segment target;
+      synchronized (this) {
+        data = itsPending.toByteArray();
+        itsPending.reset();
+        target = itsCurrent;
+        target.itsSize += data.length;
+        if (target.itsSize > MAXSEGMENTSIZE
+            || (target.itsSize > 0 && System.currentTimeMillis() - target.itsCreated > MAXSEGMENTAGE)) {
+          // Start a new segment for subsequent records
+          try {
+            itsCurrent = newSegment();
+            itsClosed.add(target);
+          } catch (IOException e) {
+            theirLogger.error("Could not start new log segment: " + e);
+          }
+        }
+      }
+
+      if (data.length > 0) {
+        try {
+          target.itsOut.write(data);
+          target.itsOut.getFD().sync();
+        } catch (IOException e) {
+          theirLogger.error("Error writing to " + target.itsFile + ": " + e);
+        }
+      }
+
+      // Remove segments whose records have all been flushed
+      synchronized (this) {
+        Iterator<Segment> i = itsClosed.iterator();
+        while (i.hasNext()) {
+          Segment seg = i.next();
+          if (seg.itsUnflushed.get() <= 0) {
+            closeSegment(seg);
+            seg.itsFile.delete();
+            i.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Recover the records from any segments which existed when the log was created and give them back to the archiver. Records older
+   * than the most recent data already in the archive for the point are discarded, since they must already have been flushed. Once
+   * the recovered records have been logged again the old segments are deleted.
+   *
+   * @param archiver
+   *          The archiver to give the recovered records to.
+   */
+  public void replay(PointArchiver archiver) {
+    File[] files = getSegmentFiles();
+    HashMap<String, Long> lastarchived = new HashMap<String, Long>();
+    int numrecovered = 0;
+    Vector<File> oldfiles = new Vector<File>();
+    for (int i = 0; i < files.length; i++) {
+      if (getSequence(files[i]) >= getSequence(itsCurrent.itsFile)) {
+        // This segment belongs to us
+        continue;
+      }
+      oldfiles.add(files[i]);
+      DataInputStream in = null;
+      try {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(files[i]), 65536));
+        while (true) {
+          byte[] bytes;
+          try {
+            int len = in.readInt();
+            int crc = in.readInt();
+            if (len <= 0 || len > MAXSEGMENTSIZE) {
+              theirLogger.warn("Corrupt frame in " + files[i]);
+              break;
+            }
+            bytes = new byte[len];
+            in.readFully(bytes);
+            CRC32 check = new CRC32();
+            check.update(bytes);
+            if ((int) check.getValue() != crc) {
+              theirLogger.warn("CRC error in " + files[i]);
+              break;
+            }
+          } catch (EOFException e) {
+            // End of segment, possibly with a partially written frame
+            break;
+          }
+
+          DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes));
+          String name = body.readUTF();
+          byte[] payload = new byte[body.readInt()];
+          body.readFully(payload);
+          PointDescription pm = PointDescription.getPoint(name);
+          if (pm == null) {
+            continue;
+          }
+          Vector<PointData> recs = new Vector<PointData>(1);
+          BinarySegmentCodec.decode(payload, 1, name, recs);
+          PointData pd = recs.get(0);
+
+          // Skip data which has already made it into the archive
+          Long last = lastarchived.get(name);
+          if (last == null) {
+            PointData prev = archiver.getPreceding(pm, new AbsTime());
+            last = new Long(prev == null ? Long.MIN_VALUE : prev.getTimestamp().getValue());
+            lastarchived.put(name, last);
+          }
+          if (pd.getTimestamp().getValue() <= last.longValue()) {
+            continue;
+          }
+          archiver.archiveData(pm, pd);
+          numrecovered++;
+        }
+      } catch (Exception e) {
+        theirLogger.error("Error replaying " + files[i] + ": " + e);
+      } finally {
+        try {
+          if (in != null) {
+            in.close();
+          }
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    // Ensure the recovered data is safely in the new log before removing the old segments
+    commit();
+    for (int i = 0; i < oldfiles.size(); i++) {
+      oldfiles.get(i).delete();
+    }
+    if (numrecovered > 0 || !oldfiles.isEmpty()) {
+      theirLogger.info("Recovered " + numrecovered + " records from " + oldfiles.size() + " archive log segments");
+    }
+  }
+
+  /**
+   * Stop the log. Any pending records are committed first and segments whose records have all been flushed are removed.
+   */
+  public void close() {
+    itsClosing = true;
+    interrupt();
+    try {
+      join();
+    } catch (InterruptedException e) {
+    }
+    commit();
+    synchronized (this) {
+      if (itsCurrent.itsUnflushed.get() <= 0) {
+        closeSegment(itsCurrent);
+        itsCurrent.itsFile.delete();
+      }
+    }
+  }
+
+  /** Main loop which periodically commits pending records. */
+  public void run() {
+    while (!itsClosing) {
+      try {
+        Thread.sleep(itsSyncInterval);
+      } catch (InterruptedException e) {
+        break;
+      }
+      try {
+        commit();
+      } catch (Exception e) {
+        theirLogger.error("While committing archive log: " + e);
+      }
+    }
+  }
+
+  /** Create a new segment file with the next sequence number. */
+  private Segment newSegment() throws IOException {
+    String name = String.format("%019d", new Object[] { new Long(itsNextSequence++) }) + EXTENSION;
+    return new Segment(new File(itsDir, name));
+  }
+
+  /** Close the segment's output stream. */
+  private void closeSegment(Segment seg) {
+    try {
+      if (seg.itsOut != null) {
+        seg.itsOut.close();
+        seg.itsOut = null;
+      }
+    } catch (IOException e) {
+    }
+  }
+
+  /** Get all segment files in the log directory, in order. */
+  private File[] getSegmentFiles() {
+    File[] res = itsDir.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith(EXTENSION) && getSequence(new File(dir, name)) >= 0;
+      }
+    });
+    if (res == null) {
+      return new File[0];
+    }
+    Arrays.sort(res);
+    return res;
+  }
+
+  /** Get the sequence number of a segment file, or -1 if the name is invalid. */
+  private static long getSequence(File f) {
+    String name = f.getName();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
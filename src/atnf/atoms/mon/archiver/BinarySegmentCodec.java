@@ -0,0 +1,559 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.archiver;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.util.*;
+
+import atnf.atoms.mon.PointData;
+import atnf.atoms.time.*;
+import atnf.atoms.util.*;
+
+/**
+ * Compresses a time-ordered run of PointData records for a single point into a compact, self-contained binary block, and recovers
+ * the records again.
+ *
+ * <P>
+ * Timestamps are stored as delta-of-deltas, floating point values are XOR'd against the previous value in the style of Facebook's
+ * Gorilla, integral values are stored as deltas against the previous integral value and strings and enumeration items are
+ * dictionary coded so that repeated values cost only a few bits. All encoder state is reset at the start of each block so that any
+ * block can be decoded without reference to the rest of the file.
+ *
+ * @author David Brodrick
+ */
+public class BinarySegmentCodec {
+  /** Type codes for the supported data classes. */
+  private static final int TYPE_NULL = 0;
+  private static final int TYPE_DOUBLE = 1;
+  private static final int TYPE_FLOAT = 2;
+  private static final int TYPE_INT = 3;
+  private static final int TYPE_SHORT = 4;
+  private static final int TYPE_LONG = 5;
+  private static final int TYPE_BOOL = 6;
+  private static final int TYPE_STRING = 7;
+  private static final int TYPE_ENUM = 8;
+  private static final int TYPE_ABSTIME = 9;
+  private static final int TYPE_RELTIME = 10;
+  private static final int TYPE_ANGLE = 11;
+  private static final int TYPE_HOURANGLE = 12;
+  private static final int TYPE_BIGINT = 13;
+
+  /** Number of bits used to store a type code. */
+  private static final int TYPE_BITS = 4;
+
+  /**
+   * Bit widths of the buckets used for signed variable length values, after the zig-zag transformation. Timestamps are in
+   * microseconds, so even regular updates have a few milliseconds of jitter in their deltas.
+   */
+  private static final int[] BUCKET_BITS = { 14, 20, 32, 64 };
+
+  /**
+   * Encode the records into a block. The records must all belong to the same point and be in time order.
+   *
+   * @param data
+   *          The records to encode.
+   * @return The encoded block payload.
+   * @throws IllegalArgumentException
+   *           If a record contains an unsupported data type.
+   */
+  public static byte[] encode(List<PointData> data) throws IllegalArgumentException {
+    BitWriter out = new BitWriter(data.size() * 4 + 16);
+    Encoder enc = new Encoder(out);
+    for (int i = 0; i < data.size(); i++) {
+      enc.write(data.get(i));
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode the records from a block.
+   *
+   * @param payload
+   *          The block payload created by <tt>encode</tt>.
+   * @param count
+   *          The number of records in the block.
+   * @param name
+   *          The point name to assign to the recovered records.
+   * @param res
+   *          Records will be appended to this list.
+   */
+  public static void decode(byte[] payload, int count, String name, List<PointData> res) {
+    Decoder dec = new Decoder(new BitReader(payload));
+    for (int i = 0; i < count; i++) {
+      res.add(dec.read(name));
+    }
+  }
+
+  /**
+   * Check if the given data value can be encoded.
+   *
+   * @param data
+   *          The value to check.
+   * @return True if the value's class is supported, False otherwise.
+   */
+  public static boolean isSupported(Object data) {
+    try {
+      getType(data);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Check if the value of a record can be encoded.
+   *
+   * @param pd
+   *          The record to check.
+   * @return True if the record's value is supported, False otherwise.
+   */
+  public static boolean isSupported(PointData pd) {
+    return pd.getValueType() != PointData.TYPE_OBJECT || isSupported(pd.getData());
+  }
+
+  /** Get the type code for the value of a record, without creating a wrapper for primitive values. */
+  private static int getType(PointData pd) throws IllegalArgumentException {
+    switch (pd.getValueType()) {
+    case PointData.TYPE_DOUBLE:
+      return TYPE_DOUBLE;
+    case PointData.TYPE_FLOAT:
+      return TYPE_FLOAT;
+    case PointData.TYPE_LONG:
+      return TYPE_LONG;
+    case PointData.TYPE_INT:
+      return TYPE_INT;
+    case PointData.TYPE_BOOLEAN:
+      return TYPE_BOOL;
+    default:
+      return getType(pd.getData());
+    }
+  }
+
+  /** Get the type code for the given data value. */
+  private static int getType(Object data) throws IllegalArgumentException {
+    if (data == null) {
+      return TYPE_NULL;
+    } else if (data instanceof Double) {
+      return TYPE_DOUBLE;
+    } else if (data instanceof Float) {
+      return TYPE_FLOAT;
+    } else if (data instanceof Integer) {
+      return TYPE_INT;
+    } else if (data instanceof Short) {
+      return TYPE_SHORT;
+    } else if (data instanceof Long) {
+      return TYPE_LONG;
+    } else if (data instanceof Boolean) {
+      return TYPE_BOOL;
+    } else if (data instanceof String) {
+      return TYPE_STRING;
+    } else if (data instanceof EnumItem) {
+      return TYPE_ENUM;
+    } else if (data instanceof AbsTime) {
+      return TYPE_ABSTIME;
+    } else if (data instanceof RelTime) {
+      return TYPE_RELTIME;
+    } else if (data instanceof HourAngle) {
+      return TYPE_HOURANGLE;
+    } else if (data instanceof Angle) {
+      return TYPE_ANGLE;
+    } else if (data instanceof BigInteger) {
+      return TYPE_BIGINT;
+    } else {
+      throw new IllegalArgumentException("BinarySegmentCodec: Unknown Type \"" + data.getClass() + "\"");
+    }
+  }
+
+  /** Zig-zag encode a signed value so small magnitudes have few significant bits. */
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  /** Reverse the zig-zag encoding. */
+  private static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /** Holds the encoder state for one block. */
+  private static class Encoder {
+    private BitWriter itsOut;
+
+    private int itsCount = 0;
+
+    private long itsPrevTime;
+
+    private long itsPrevDelta;
+
+    private int itsPrevType = -1;
+
+    private long itsPrevBits;
+
+    private int itsPrevLeading = -1;
+
+    private int itsPrevTrailing;
+
+    private long itsPrevLong;
+
+    private HashMap<String, Integer> itsDictionary = new HashMap<String, Integer>();
+
+    Encoder(BitWriter out) {
+      itsOut = out;
+    }
+
+    void write(PointData pd) throws IllegalArgumentException {
+      int type = getType(pd);
+
+      // Timestamp as delta-of-delta
+      long ts = pd.getTimestamp().getValue();
+      if (itsCount == 0) {
+        itsOut.writeBits(ts, 64);
+      } else {
+        long delta = ts - itsPrevTime;
+        writeVarSigned(delta - itsPrevDelta);
+        itsPrevDelta = delta;
+      }
+      itsPrevTime = ts;
+      itsCount++;
+
+      // Alarm flag
+      itsOut.writeBit(pd.getAlarm());
+
+      // Type code, but only if it has changed
+      if (type == itsPrevType) {
+        itsOut.writeBit(false);
+      } else {
+        itsOut.writeBit(true);
+        itsOut.writeBits(type, TYPE_BITS);
+        itsPrevType = type;
+      }
+
+      // The value itself
+      switch (type) {
+      case TYPE_NULL:
+        break;
+      case TYPE_DOUBLE:
+      case TYPE_FLOAT:
+        writeDouble(pd.doubleValue());
+        break;
+      case TYPE_ANGLE:
+      case TYPE_HOURANGLE:
+        writeDouble(((Angle) pd.getData()).getValue());
+        break;
+      case TYPE_INT:
+      case TYPE_SHORT:
+      case TYPE_LONG:
+        writeLong(pd.longValue());
+        break;
+      case TYPE_ABSTIME:
+        writeLong(((AbsTime) pd.getData()).getValue());
+        break;
+      case TYPE_RELTIME:
+        writeLong(((RelTime) pd.getData()).getValue());
+        break;
+      case TYPE_BOOL:
+        itsOut.writeBit(pd.booleanValue());
+        break;
+      case TYPE_STRING:
+      case TYPE_ENUM:
+      case TYPE_BIGINT:
+        writeString(pd.getData().toString());
+        break;
+      }
+    }
+
+    /** Write a signed value using the smallest bucket that holds it. A zero value costs a single bit. */
+    private void writeVarSigned(long v) {
+      if (v == 0) {
+        itsOut.writeBit(false);
+        return;
+      }
+      long z = zigzag(v);
+      for (int i = 0; i < BUCKET_BITS.length; i++) {
+        itsOut.writeBit(true);
+        if (i == BUCKET_BITS.length - 1 || (z >>> BUCKET_BITS[i]) == 0) {
+          if (i != BUCKET_BITS.length - 1) {
+            itsOut.writeBit(false);
+          }
+          itsOut.writeBits(z, BUCKET_BITS[i]);
+          return;
+        }
+      }
+    }
+
+    /** Write a floating point value, XOR'd with the previous value. */
+    private void writeDouble(double d) {
+      long bits = Double.doubleToRawLongBits(d);
+      long xor = bits ^ itsPrevBits;
+      itsPrevBits = bits;
+      if (xor == 0) {
+        itsOut.writeBit(false);
+        return;
+      }
+      itsOut.writeBit(true);
+      int leading = Long.numberOfLeadingZeros(xor);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (itsPrevLeading != -1 && leading >= itsPrevLeading && trailing >= itsPrevTrailing) {
+        // Meaningful bits fit within the previous window
+        itsOut.writeBit(false);
+        itsOut.writeBits(xor >>> itsPrevTrailing, 64 - itsPrevLeading - itsPrevTrailing);
+      } else {
+        // Need to describe a new window
+        itsOut.writeBit(true);
+        int len = 64 - leading - trailing;
+        itsOut.writeBits(leading, 6);
+        itsOut.writeBits(len - 1, 6);
+        itsOut.writeBits(xor >>> trailing, len);
+        itsPrevLeading = leading;
+        itsPrevTrailing = trailing;
+      }
+    }
+
+    /** Write an integral value as the difference from the previous integral value. */
+    private void writeLong(long v) {
+      writeVarSigned(v - itsPrevLong);
+      itsPrevLong = v;
+    }
+
+    /** Write a string using the block dictionary. */
+    private void writeString(String s) {
+      Integer index = itsDictionary.get(s);
+      if (index != null) {
+        itsOut.writeBit(false);
+        writeVarSigned(index.intValue());
+      } else {
+        itsOut.writeBit(true);
+        byte[] bytes;
+        try {
+          bytes = s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+          bytes = s.getBytes();
+        }
+        writeVarSigned(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+          itsOut.writeBits(bytes[i], 8);
+        }
+        itsDictionary.put(s, new Integer(itsDictionary.size()));
+      }
+    }
+  }
+
+  /** Holds the decoder state for one block. */
+  private static class Decoder {
+    private BitReader itsIn;
+
+    private int itsCount = 0;
+
+    private long itsPrevTime;
+
+    private long itsPrevDelta;
+
+    private int itsPrevType = -1;
+
+    private long itsPrevBits;
+
+    private int itsPrevLeading;
+
+    private int itsPrevTrailing;
+
+    private long itsPrevLong;
+
+    private ArrayList<String> itsDictionary = new ArrayList<String>();
+
+    Decoder(BitReader in) {
+      itsIn = in;
+    }
+
+    PointData read(String name) {
+      // Timestamp
+      long ts;
+      if (itsCount == 0) {
+        ts = itsIn.readBits(64);
+      } else {
+        itsPrevDelta = itsPrevDelta + readVarSigned();
+        ts = itsPrevTime + itsPrevDelta;
+      }
+      itsPrevTime = ts;
+      itsCount++;
+
+      boolean alarm = itsIn.readBit();
+
+      if (itsIn.readBit()) {
+        itsPrevType = (int) itsIn.readBits(TYPE_BITS);
+      }
+
+      // Primitive values are stored without creating a wrapper
+      PointData res = new PointData(name, AbsTime.factory(ts), null, alarm);
+      Object data = null;
+      switch (itsPrevType) {
+      case TYPE_NULL:
+        break;
+      case TYPE_DOUBLE:
+        res.setData(readDouble());
+        return res;
+      case TYPE_FLOAT:
+        res.setData((float) readDouble());
+        return res;
+      case TYPE_ANGLE:
+        data = Angle.factory(readDouble());
+        break;
+      case TYPE_HOURANGLE:
+        data = new HourAngle(readDouble());
+        break;
+      case TYPE_INT:
+        res.setData((int) readLong());
+        return res;
+      case TYPE_SHORT:
+        data = new Short((short) readLong());
+        break;
+      case TYPE_LONG:
+        res.setData(readLong());
+        return res;
+      case TYPE_ABSTIME:
+        data = AbsTime.factory(readLong());
+        break;
+      case TYPE_RELTIME:
+        data = RelTime.factory(readLong());
+        break;
+      case TYPE_BOOL:
+        res.setData(itsIn.readBit());
+        return res;
+      case TYPE_STRING:
+        data = readString();
+        break;
+      case TYPE_ENUM:
+        try {
+          data = EnumItem.valueOf(readString());
+        } catch (Exception e) {
+          data = null;
+        }
+        break;
+      case TYPE_BIGINT:
+        data = new BigInteger(readString());
+        break;
+      }
+      res.setData(data);
+      return res;
+    }
+
+    private long readVarSigned() {
+      if (!itsIn.readBit()) {
+        return 0;
+      }
+      for (int i = 0; i < BUCKET_BITS.length; i++) {
+        if (i == BUCKET_BITS.length - 1 || !itsIn.readBit()) {
+          return unzigzag(itsIn.readBits(BUCKET_BITS[i]));
+        }
+      }
+      return 0;
+    }
+
+    private double readDouble() {
+      if (itsIn.readBit()) {
+        if (itsIn.readBit()) {
+          itsPrevLeading = (int) itsIn.readBits(6);
+          int len = (int) itsIn.readBits(6) + 1;
+          itsPrevTrailing = 64 - itsPrevLeading - len;
+        }
+        int len = 64 - itsPrevLeading - itsPrevTrailing;
+        itsPrevBits ^= itsIn.readBits(len) << itsPrevTrailing;
+      }
+      return Double.longBitsToDouble(itsPrevBits);
+    }
+
+    private long readLong() {
+      itsPrevLong = itsPrevLong + readVarSigned();
+      return itsPrevLong;
+    }
+
+    private String readString() {
+      if (!itsIn.readBit()) {
+        return itsDictionary.get((int) readVarSigned());
+      }
+      int len = (int) readVarSigned();
+      byte[] bytes = new byte[len];
+      for (int i = 0; i < len; i++) {
+        bytes[i] = (byte) itsIn.readBits(8);
+      }
+      String s;
+      try {
+        s = new String(bytes, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+        s = new String(bytes);
+      }
+      itsDictionary.add(s);
+      return s;
+    }
+  }
+
+  /** Accumulates a stream of bits, most significant bit first. */
+  private static class BitWriter {
+    private byte[] itsBuf;
+
+    private int itsBitPos = 0;
+
+    BitWriter(int initial) {
+      itsBuf = new byte[Math.max(initial, 16)];
+    }
+
+    void writeBit(boolean bit) {
+      ensure(1);
+      if (bit) {
+        itsBuf[itsBitPos >>> 3] |= (byte) (0x80 >>> (itsBitPos & 7));
+      }
+      itsBitPos++;
+    }
+
+    /** Write the least significant <tt>n</tt> bits of the value. */
+    void writeBits(long value, int n) {
+      ensure(n);
+      for (int i = n - 1; i >= 0; i--) {
+        if (((value >>> i) & 1) != 0) {
+          itsBuf[itsBitPos >>> 3] |= (byte) (0x80 >>> (itsBitPos & 7));
+        }
+        itsBitPos++;
+      }
+    }
+
+    private void ensure(int n) {
+      int needed = (itsBitPos + n + 7) >>> 3;
+      if (needed > itsBuf.length) {
+        itsBuf = Arrays.copyOf(itsBuf, Math.max(needed, itsBuf.length * 2));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(itsBuf, (itsBitPos + 7) >>> 3);
+    }
+  }
+
+  /** Reads a stream of bits written by a BitWriter. */
+  private static class BitReader {
+    private byte[] itsBuf;
+
+    private int itsBitPos = 0;
+
+    BitReader(byte[] buf) {
+      itsBuf = buf;
+    }
+
+    boolean readBit() {
+      boolean res = (itsBuf[itsBitPos >>> 3] & (0x80 >>> (itsBitPos & 7))) != 0;
+      itsBitPos++;
+      return res;
+    }
+
+    long readBits(int n) {
+      long res = 0;
+      for (int i = 0; i < n; i++) {
+        res = (res << 1) | (readBit() ? 1 : 0);
+      }
+      return res;
+    }
+  }
+}
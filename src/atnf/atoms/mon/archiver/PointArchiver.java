@@ -9,6 +9,8 @@
 package atnf.atoms.mon.archiver;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import atnf.atoms.time.*;
 import atnf.atoms.mon.*;
 import atnf.atoms.mon.util.*;
@@ -17,6 +19,25 @@ import org.apache.log4j.Logger;
 /**
  * Superclass for all Archiver classes, which save and retrieve data from disk, databases, etc.
  * 
+ * <P>
+ * New data is held in a per-point buffer until it is ready to be written out, either because enough records have accumulated or
+ * because the oldest buffered record has reached its age deadline. Each point is assigned to one of a number of flush shards, each
+ * with its own worker thread and a queue of points ordered by the time at which they next need to be flushed. Workers sleep until
+ * the next point falls due, so the cost of scheduling is independent of the number of points. Because a point always belongs to the
+ * same shard, its data is written by one thread at a time and in order, so <tt>saveNow</tt> implementations write synchronously.
+ * 
+ * <P>
+ * If the total amount of buffered data exceeds the <tt>ArchiveMaxBuffered</tt> limit then <tt>archiveData</tt> blocks until the
+ * flush workers have caught up.
+ * 
+ * <P>
+ * If the <tt>ArchiveLogDir</tt> option is set then all data given to the archiver is also written to an <tt>ArchiveLog</tt>, so that
+ * data which had not been flushed can be recovered with <tt>replayLog</tt> if the server stops unexpectedly.
+ * 
+ * <P>
+ * If the <tt>ArchiveRollupDir</tt> option is set then summaries of the data over coarse time buckets are maintained by a
+ * <tt>RollupArchive</tt>, and <tt>extractRollup</tt> uses them to answer down-sampled queries over long time ranges.
+ * 
  * @author Le Cuong Nguyen
  * @author David Brodrick
  */
@@ -45,12 +66,36 @@ public abstract class PointArchiver extends Thread {
   /** Maximum offset to be added to above based on hash of specific point name. */
   protected static final long theirMaxAgeOffset = 60000000;
 
+  /** Delay (ms) before the first retry after data for a point could not be written. Doubles after each further failure. */
+  protected static final long theirRetryDelay = 1000;
+
+  /** Longest delay (ms) between retries when data for a point can't be written. */
+  protected static final long theirMaxRetryDelay = 60000;
+
   /** Flag set when MoniCA has been requested to shut down. */
   protected boolean itsShuttingDown = false;
 
   /** Flag to indicate the the archive flush on shutdown is now complete. */
   protected boolean itsFlushComplete = false;
-  
+
+  /** Number of flush shards/worker threads. */
+  protected static int theirNumFlushThreads = 1;
+
+  /** Maximum number of records which may be buffered before <tt>archiveData</tt> blocks, or zero for no limit. */
+  protected static int theirMaxBuffered = 1000000;
+
+  /** Directory for the write-ahead log, or null if the log is disabled. */
+  protected static String theirLogDir = null;
+
+  /** Interval (ms) between syncs of the write-ahead log. */
+  protected static long theirLogSyncInterval = 100;
+
+  /** Directory for the rollup summaries, or null if rollups are disabled. */
+  protected static String theirRollupDir = null;
+
+  /** Width (seconds) of the buckets for each rollup tier. */
+  protected static int[] theirRollupTiers = { 60, 3600, 86400 };
+
   /** Static block to parse flush parameters. */
   static {
     try {
@@ -67,6 +112,47 @@ public abstract class PointArchiver extends Thread {
       numsecs = 240;
     }
     theirMaxAge = RelTime.factory(numsecs * -1000000);
+    try {
+      theirNumFlushThreads = Integer.parseInt(MonitorConfig.getProperty("ArchiveNumThreads", "1"));
+      if (theirNumFlushThreads < 1) {
+        theirNumFlushThreads = 1;
+      }
+    } catch (Exception e) {
+      Logger.getLogger(PointArchiver.class.getName()).warn("Error parsing ArchiveNumThreads configuration parameter: " + e);
+      theirNumFlushThreads = 1;
+    }
+    try {
+      theirMaxBuffered = Integer.parseInt(MonitorConfig.getProperty("ArchiveMaxBuffered", "1000000"));
+    } catch (Exception e) {
+      Logger.getLogger(PointArchiver.class.getName()).warn("Error parsing ArchiveMaxBuffered configuration parameter: " + e);
+      theirMaxBuffered = 1000000;
+    }
+    theirLogDir = MonitorConfig.getProperty("ArchiveLogDir");
+    try {
+      theirLogSyncInterval = Long.parseLong(MonitorConfig.getProperty("ArchiveLogSyncInterval", "100"));
+    } catch (Exception e) {
+      Logger.getLogger(PointArchiver.class.getName()).warn("Error parsing ArchiveLogSyncInterval configuration parameter: " + e);
+      theirLogSyncInterval = 100;
+    }
+    theirRollupDir = MonitorConfig.getProperty("ArchiveRollupDir");
+    String tiers = MonitorConfig.getProperty("ArchiveRollupTiers");
+    if (tiers != null) {
+      try {
+        StringTokenizer st = new StringTokenizer(tiers, " \t,");
+        int[] parsed = new int[st.countTokens()];
+        for (int i = 0; i < parsed.length; i++) {
+          parsed[i] = Integer.parseInt(st.nextToken());
+          if (parsed[i] <= 0) {
+            throw new NumberFormatException("Tier width must be positive");
+          }
+        }
+        if (parsed.length > 0) {
+          theirRollupTiers = parsed;
+        }
+      } catch (Exception e) {
+        Logger.getLogger(PointArchiver.class.getName()).warn("Error parsing ArchiveRollupTiers configuration parameter: " + e);
+      }
+    }
   }
 
   /** Specify the archiver to be used for archiving all data. */
@@ -86,11 +172,49 @@ public abstract class PointArchiver extends Thread {
   /** Data which has not yet been written out. */
   protected Hashtable<PointDescription, Vector<PointData>> itsBuffer = new Hashtable<PointDescription, Vector<PointData>>();
 
-  /** Flags which points are already queued for archiving. */
-  protected HashSet<String> itsBeingArchived = new HashSet<String>(1000, 1000);
+  /** Flush scheduling state for each point which has a buffer. */
+  private ConcurrentHashMap<PointDescription, FlushState> itsFlushStates = new ConcurrentHashMap<PointDescription, FlushState>(1000);
+
+  /** The flush shards. */
+  private FlushShard[] itsShards;
+
+  /** Total number of records buffered across all points. */
+  private AtomicInteger itsNumBuffered = new AtomicInteger(0);
+
+  /** Lock used to block producers while the buffers are full. */
+  private Object itsBackpressureLock = new Object();
+
+  /** Write-ahead log of buffered data, or null if disabled. */
+  private ArchiveLog itsLog = null;
+
+  /** Rollup summaries of the archived data, or null if disabled. */
+  private RollupArchive itsRollups = null;
 
   /** Constructor. */
   protected PointArchiver() {
+    itsShards = new FlushShard[theirNumFlushThreads];
+    for (int i = 0; i < itsShards.length; i++) {
+      itsShards[i] = new FlushShard(i);
+    }
+
+    if (theirLogDir != null) {
+      try {
+        itsLog = new ArchiveLog(theirLogDir, theirLogSyncInterval);
+      } catch (Exception e) {
+        itsLogger.error("Could not create archive log, continuing without it: " + e);
+        itsLog = null;
+      }
+    }
+
+    if (theirRollupDir != null) {
+      try {
+        itsRollups = new RollupArchive(theirRollupDir, theirRollupTiers);
+      } catch (Exception e) {
+        itsLogger.error("Could not create rollup archive, continuing without it: " + e);
+        itsRollups = null;
+      }
+    }
+
     OldDataPurger purger = new OldDataPurger(this);
     purger.start();
   }
@@ -179,6 +303,95 @@ public abstract class PointArchiver extends Thread {
     return res;
   }
 
+  /**
+   * Extract a reduced resolution view of the data from the rollup summaries. The coarsest rollup tier which still has at least
+   * <tt>maxsamples</tt> buckets over the time range is used, and the mean of each bucket is returned with a timestamp midway between
+   * the first and last records in the bucket. If that tier has too many buckets over the range to be returned without clipping at
+   * <tt>ArchiveMaxRecords</tt> then null is returned.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @param maxsamples
+   *          The number of samples required.
+   * @return Vector containing one record per bucket, or null if no rollup tier is suitable for the request, in which case the raw
+   *         data should be used.
+   */
+  public Vector<PointData> extractRollup(PointDescription pm, AbsTime start, AbsTime end, int maxsamples) {
+    return extractRollup(pm, start, end, maxsamples, false);
+  }
+
+  /**
+   * Extract a reduced resolution view of the data from the rollup summaries, as above. If <i>extremes</i> is set then a quarter as
+   * many buckets are required and the first, minimum, maximum and last values of each bucket are returned instead of the mean, so
+   * that callers which downsample can keep any spikes. The rollups don't record when the minimum and maximum occurred, so they are
+   * given the timestamp midway between the first and last records in the bucket.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @param maxsamples
+   *          The number of samples required.
+   * @param extremes
+   *          Whether to return the first, minimum, maximum and last values of each bucket rather than the mean.
+   * @return Vector containing the records for each bucket in time order, or null if no rollup tier is suitable for the request, in
+   *         which case the raw data should be used.
+   */
+  public Vector<PointData> extractRollup(PointDescription pm, AbsTime start, AbsTime end, int maxsamples, boolean extremes) {
+    if (itsRollups == null || maxsamples <= 1) {
+      return null;
+    }
+    int tier = itsRollups.getTier(start, end, extremes ? Math.max(1, maxsamples / 4) : maxsamples, MAXNUMRECORDS);
+    if (tier == -1) {
+      return null;
+    }
+    AbsTime earliest = itsRollups.getEarliest(pm, tier);
+    if (earliest == null) {
+      return null;
+    }
+    if (earliest.isAfter(start)) {
+      // Rollups may not have been kept for the whole period, make sure there's no raw data they don't cover
+      PointData first = getFollowing(pm, start);
+      if (first != null && first.getTimestamp().isBefore(earliest)) {
+        return null;
+      }
+    }
+
+    Vector<RollupArchive.Rollup> rollups = itsRollups.extract(pm, tier, start, end, MAXNUMRECORDS);
+    if (rollups == null || rollups.size() >= MAXNUMRECORDS) {
+      // The result may have been cut short, so use the raw data instead
+      return null;
+    }
+    Vector<PointData> res = new Vector<PointData>(rollups.size());
+    String name = pm.getFullName();
+    for (int i = 0; i < rollups.size(); i++) {
+      RollupArchive.Rollup r = rollups.get(i);
+      long ts = r.itsFirstTime + (r.itsLastTime - r.itsFirstTime) / 2;
+      if (!extremes) {
+        res.add(new PointData(name, AbsTime.factory(ts), new Double(r.getMean()), r.itsAlarm));
+      } else if (r.itsCount == 1) {
+        res.add(new PointData(name, AbsTime.factory(r.itsFirstTime), new Double(r.itsFirst), r.itsAlarm));
+      } else {
+        res.add(new PointData(name, AbsTime.factory(r.itsFirstTime), new Double(r.itsFirst), r.itsAlarm));
+        if (r.itsCount > 2) {
+          // Order the extremes to follow the overall trend of the bucket
+          double a = r.itsFirst <= r.itsLast ? r.itsMin : r.itsMax;
+          double b = r.itsFirst <= r.itsLast ? r.itsMax : r.itsMin;
+          res.add(new PointData(name, AbsTime.factory(ts), new Double(a), r.itsAlarm));
+          res.add(new PointData(name, AbsTime.factory(ts), new Double(b), r.itsAlarm));
+        }
+        res.add(new PointData(name, AbsTime.factory(r.itsLastTime), new Double(r.itsLast), r.itsAlarm));
+      }
+    }
+    return res;
+  }
+
   /**
    * Extract data from the archive with no undersampling.
    * 
@@ -307,95 +520,37 @@ public abstract class PointArchiver extends Thread {
    */
   public void flushArchive() {
     itsShuttingDown = true;
-    while (!itsFlushComplete) {
-      try {
-        RelTime.factory(100000).sleep();
-      } catch (Exception e) {
-      }
+    // Stop the shard workers then write out everything that remains
+    for (int i = 0; i < itsShards.length; i++) {
+      itsShards[i].shutdown();
+    }
+    Iterator<FlushState> i = itsFlushStates.values().iterator();
+    while (i.hasNext()) {
+      flush(i.next());
+    }
+    if (itsLog != null) {
+      itsLog.close();
+    }
+    itsFlushComplete = true;
+  }
+
+  /**
+   * Recover any data which was in the write-ahead log when the server last stopped. This should be called once all points have
+   * been created.
+   */
+  public void replayLog() {
+    if (itsLog != null) {
+      itsLog.replay(this);
     }
   }
 
   /**
-   * Main loop for the archiving thread. Points will be archived if there are MINWRITERECORDS waiting to be archived or if the last
-   * update for the point is older than MAXWRITETIME.
+   * Start the flush shard worker threads.
    */
   public void run() {
     setName("Point Archiver");
-
-    RelTime sleeptime1 = RelTime.factory(50000);
-    RelTime sleeptime2 = RelTime.factory(1000);
-    while (true) {
-      boolean flushing = false;
-      if (itsShuttingDown) {
-        flushing = true;
-      }
-
-      AbsTime cutoff = (new AbsTime()).add(theirMaxAge);
-      int counter = 0;
-      Enumeration<PointDescription> keys = itsBuffer.keys();
-      try {
-        while (keys.hasMoreElements()) {
-          Vector<PointData> thisdata = null;
-          PointDescription pm = keys.nextElement();
-          if (pm == null) {
-            continue;
-          }
-          thisdata = itsBuffer.get(pm);
-          if (thisdata == null || thisdata.isEmpty()) {
-            // No data to be archived
-            continue;
-          }
-
-          if (!itsShuttingDown) {
-            // Add small offsets based on hash of point name.
-            // This prevents bulk points all being flushed together each time.
-            int namehash = pm.getFullName().hashCode();
-            int minnumrecs = theirMaxRecordCount + (namehash % theirRecordCountOffset);
-            AbsTime cutoff2 = cutoff.add(namehash % theirMaxAgeOffset);
-
-            if (thisdata.size() < minnumrecs && thisdata.lastElement().getTimestamp().isAfter(cutoff2)) {
-              // Point does not meet any criteria for writing to the archive at this time
-              continue;
-            }
-          } else {
-            // itsLogger.debug("Flushing " + thisdata.size() + " records for " + pm.getFullName() + " because shutdown requested");
-          }
-
-          synchronized (itsBeingArchived) {
-            if (itsBeingArchived.contains(pm.getFullName())) {
-              // Point is already being archived
-              //itsLogger.warn(pm.getFullName() + " is already being archived");
-              continue;
-            } else {
-              // Flag that the point is now being archived
-              itsBeingArchived.add(pm.getFullName());
-            }
-          }
-
-          //itsLogger.debug("Archiving " + thisdata.size() + " records for " + pm.getFullName());
-          saveNow(pm, thisdata);
-          try {
-            sleeptime2.sleep();
-          } catch (Exception e) {
-          }
-          counter++;
-        }
-      } catch (Exception e) {
-        itsLogger.error("While archiving: " + e);
-        e.printStackTrace();
-      }
-      // if (counter > 0) {
-      // itsLogger.debug("###### Archived/flagged " + counter + " points");
-      // }
-      if (itsShuttingDown && flushing) {
-        // We've just flushed the full archive
-        itsFlushComplete = true;
-        break;
-      }
-      try {
-        sleeptime1.sleep();
-      } catch (Exception e) {
-      }
+    for (int i = 0; i < itsShards.length; i++) {
+      itsShards[i].start();
     }
   }
 
@@ -410,20 +565,17 @@ public abstract class PointArchiver extends Thread {
    */
   public void archiveData(PointDescription pm, PointData data) {
     if (!itsShuttingDown) {
-      Vector<PointData> myVec = itsBuffer.get(pm);
-      if (myVec == null) {
-        // Lock buffer then check again to avoid race
-        synchronized (itsBuffer) {
-          myVec = itsBuffer.get(pm);
-          if (myVec == null) {
-            myVec = new Vector<PointData>(100, 500);
-            itsBuffer.put(pm, myVec);
-          }
-        }
-      }
-      synchronized (myVec) {
+      waitForSpace();
+      FlushState state = getFlushState(pm);
+      synchronized (state.itsData) {
         // Add the new data to our storage buffer
-        myVec.add(data);
+        state.itsData.add(data);
+        logData(state, data);
+        if (itsRollups != null) {
+          itsRollups.update(pm, data);
+        }
+        itsNumBuffered.incrementAndGet();
+        dataAdded(state);
       }
     }
   }
@@ -434,21 +586,7 @@ public abstract class PointArchiver extends Thread {
    * @return True if data is waiting, False if not.
    */
   public boolean checkBuffer() {
-    boolean res = false;
-    synchronized (itsBuffer) {
-      Enumeration keys = itsBuffer.keys();
-      while (keys.hasMoreElements()) {
-        PointDescription pm = (PointDescription) keys.nextElement();
-        if (pm == null) {
-          continue;
-        }
-        if (itsBuffer.get(pm) != null) {
-          res = true;
-          break;
-        }
-      }
-    }
-    return res;
+    return itsNumBuffered.get() > 0;
   }
 
   /**
@@ -461,15 +599,345 @@ public abstract class PointArchiver extends Thread {
    *          The Vector of data to save to disk
    */
   public void archiveData(PointDescription pm, Vector<PointData> data) {
-    synchronized (itsBuffer) {
-      // Ensure this point has a storage buffer allocated
-      if (!(itsBuffer.get(pm) instanceof Vector)) {
-        itsBuffer.put(pm, new Vector<PointData>());
-      }
+    waitForSpace();
+    FlushState state = getFlushState(pm);
+    synchronized (state.itsData) {
       // Add the new data to our storage buffer
-      Vector<PointData> myVec = itsBuffer.get(pm);
-      myVec.addAll(data);
-      itsBuffer.notifyAll();
+      state.itsData.addAll(data);
+      for (int i = 0; i < data.size(); i++) {
+        logData(state, data.get(i));
+        if (itsRollups != null) {
+          itsRollups.update(pm, data.get(i));
+        }
+      }
+      itsNumBuffered.addAndGet(data.size());
+      dataAdded(state);
+    }
+  }
+
+  /**
+   * Get the flush state for the point, creating its buffer if required.
+   * 
+   * @param pm
+   *          The point of interest.
+   * @return The flush state for the point.
+   */
+  private FlushState getFlushState(PointDescription pm) {
+    FlushState res = itsFlushStates.get(pm);
+    if (res == null) {
+      // Lock buffer then check again to avoid race
+      synchronized (itsBuffer) {
+        res = itsFlushStates.get(pm);
+        if (res == null) {
+          Vector<PointData> myVec = itsBuffer.get(pm);
+          if (myVec == null) {
+            myVec = new Vector<PointData>(100, 500);
+            itsBuffer.put(pm, myVec);
+          }
+          res = new FlushState(pm, myVec);
+          itsFlushStates.put(pm, res);
+        }
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Write a record which has just been buffered to the write-ahead log, if enabled. Must be called while holding the lock on the
+   * point's buffer.
+   * 
+   * @param state
+   *          The flush state for the point.
+   * @param data
+   *          The new record.
+   */
+  private void logData(FlushState state, PointData data) {
+    if (itsLog == null) {
+      return;
+    }
+    ArchiveLog.Segment seg = itsLog.append(state.itsPoint, data);
+    // Keep track of which log segment each buffered record went to, in buffer order
+    LogRun last = state.itsLogRuns.isEmpty() ? null : state.itsLogRuns.getLast();
+    if (last != null && last.itsSegment == seg) {
+      last.itsCount++;
+    } else {
+      state.itsLogRuns.add(new LogRun(seg));
+    }
+  }
+
+  /**
+   * Tell the write-ahead log that records have been removed from the front of a point's buffer. Must be called while holding the
+   * lock on the point's buffer.
+   * 
+   * @param state
+   *          The flush state for the point.
+   * @param num
+   *          The number of records which were flushed.
+   */
+  private void releaseLog(FlushState state, int num) {
+    while (num > 0 && !state.itsLogRuns.isEmpty()) {
+      LogRun first = state.itsLogRuns.getFirst();
+      int thisnum = Math.min(num, first.itsCount);
+      if (first.itsSegment != null) {
+        first.itsSegment.release(thisnum);
+      }
+      first.itsCount -= thisnum;
+      num -= thisnum;
+      if (first.itsCount == 0) {
+        state.itsLogRuns.removeFirst();
+      }
+    }
+  }
+
+  /**
+   * Update the flush schedule for a point after data has been added to its buffer. Must be called while holding the lock on the
+   * point's buffer.
+   * 
+   * @param state
+   *          The flush state for the point.
+   */
+  private void dataAdded(FlushState state) {
+    if (!state.itsScheduled) {
+      // First data since the last flush, so we need to flush by the age deadline
+      state.itsScheduled = true;
+      state.itsUrgent = false;
+      itsShards[state.itsShard].schedule(state, System.currentTimeMillis() + state.itsMaxAge);
+    }
+    if (!state.itsUrgent && state.itsFailures == 0 && state.itsData.size() >= state.itsMaxRecords) {
+      // Enough data has accumulated to flush straight away
+      state.itsUrgent = true;
+      itsShards[state.itsShard].schedule(state, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Write out the buffered data for a point and update its flush schedule.
+   * 
+   * @param state
+   *          The flush state for the point.
+   */
+  private void flush(FlushState state) {
+    synchronized (state.itsData) {
+      int before = state.itsData.size();
+      if (before > 0) {
+        try {
+          saveNow(state.itsPoint, state.itsData);
+        } catch (Exception e) {
+          itsLogger.error("While archiving " + state.itsPoint.getFullName() + ": " + e);
+        }
+      }
+      int after = state.itsData.size();
+      itsNumBuffered.addAndGet(after - before);
+      if (after < before) {
+        releaseLog(state, before - after);
+      }
+
+      state.itsScheduled = false;
+      state.itsUrgent = false;
+      if (before > 0 && after >= before) {
+        state.itsFailures++;
+      } else {
+        state.itsFailures = 0;
+      }
+      if (after > 0 && !itsShuttingDown) {
+        if (state.itsFailures > 0) {
+          // Data could not be written, back off before trying again so a persistent error doesn't keep this shard busy
+          long delay = theirRetryDelay << Math.min(state.itsFailures - 1, 16);
+          state.itsScheduled = true;
+          itsShards[state.itsShard].schedule(state, System.currentTimeMillis() + Math.min(delay, theirMaxRetryDelay));
+        } else {
+          dataAdded(state);
+        }
+      }
+    }
+    if (itsRollups != null) {
+      itsRollups.persist(state.itsPoint);
+    }
+    if (theirMaxBuffered > 0) {
+      synchronized (itsBackpressureLock) {
+        itsBackpressureLock.notifyAll();
+      }
+    }
+  }
+
+  /** Block the caller while the total amount of buffered data exceeds the limit. */
+  private void waitForSpace() {
+    if (theirMaxBuffered <= 0 || itsNumBuffered.get() < theirMaxBuffered) {
+      return;
+    }
+    itsLogger.warn("Archive buffers are full (" + itsNumBuffered.get() + " records), waiting for data to be flushed");
+    synchronized (itsBackpressureLock) {
+      while (!itsShuttingDown && itsNumBuffered.get() >= theirMaxBuffered) {
+        try {
+          itsBackpressureLock.wait(1000);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+  }
+
+  /** Flush scheduling state for a single point. Fields other than the constants are guarded by the lock on the data buffer. */
+  private class FlushState {
+    /** The point. */
+    public final PointDescription itsPoint;
+
+    /** The point's buffer of data waiting to be written. */
+    public final Vector<PointData> itsData;
+
+    /** Index of the shard which flushes this point. */
+    public final int itsShard;
+
+    /** Number of records which triggers an immediate flush. */
+    public final int itsMaxRecords;
+
+    /** Maximum time (ms) that data can be buffered before it is flushed. */
+    public final long itsMaxAge;
+
+    /** True if the point is queued for flushing. */
+    public boolean itsScheduled = false;
+
+    /** True if the point is queued for immediate flushing. */
+    public boolean itsUrgent = false;
+
+    /** Number of consecutive flushes which failed to write any data. */
+    public int itsFailures = 0;
+
+    /** Deadline of the most recent queue entry for the point, older entries are ignored. */
+    public long itsDeadline = 0;
+
+    /** Write-ahead log segments holding the buffered records, in buffer order. */
+    public LinkedList<LogRun> itsLogRuns = new LinkedList<LogRun>();
+
+    public FlushState(PointDescription point, Vector<PointData> data) {
+      itsPoint = point;
+      itsData = data;
+      // Add small offsets based on hash of point name.
+      // This prevents bulk points all being flushed together each time.
+      int namehash = point.getFullName().hashCode();
+      itsShard = Math.abs(namehash % itsShards.length);
+      itsMaxRecords = theirMaxRecordCount + (namehash % theirRecordCountOffset);
+      itsMaxAge = (-theirMaxAge.getValue() + (namehash % theirMaxAgeOffset)) / 1000;
+    }
+  }
+
+  /** Run of consecutive buffered records for a point which were written to the same log segment. */
+  private static class LogRun {
+    /** The segment, or null if the records could not be logged. */
+    public final ArchiveLog.Segment itsSegment;
+
+    /** Number of records in the run. */
+    public int itsCount = 1;
+
+    public LogRun(ArchiveLog.Segment segment) {
+      itsSegment = segment;
+    }
+  }
+
+  /** Entry in a flush shard's queue. */
+  private static class FlushEntry implements Comparable<FlushEntry> {
+    /** Time (ms) at which the point should be flushed. */
+    public final long itsDeadline;
+
+    /** The point to be flushed. */
+    public final FlushState itsState;
+
+    public FlushEntry(long deadline, FlushState state) {
+      itsDeadline = deadline;
+      itsState = state;
+    }
+
+    public int compareTo(FlushEntry other) {
+      if (itsDeadline < other.itsDeadline) {
+        return -1;
+      } else if (itsDeadline > other.itsDeadline) {
+        return 1;
+      }
+      return 0;
+    }
+  }
+
+  /** Worker which flushes the points assigned to one shard as they fall due. */
+  private class FlushShard extends Thread {
+    /** Points waiting to be flushed, ordered by deadline. */
+    private PriorityQueue<FlushEntry> itsQueue = new PriorityQueue<FlushEntry>(1000);
+
+    /** Set when the worker should exit. */
+    private boolean itsStopped = false;
+
+    FlushShard(int num) {
+      super("Point Archiver Flush " + num);
+      setDaemon(true);
+    }
+
+    /**
+     * Queue the point to be flushed at the specified time. Any earlier entry for the point is superseded.
+     * 
+     * @param state
+     *          The flush state for the point, whose buffer lock must be held by the caller.
+     * @param deadline
+     *          Time (ms) at which the point should be flushed.
+     */
+    public synchronized void schedule(FlushState state, long deadline) {
+      state.itsDeadline = deadline;
+      itsQueue.add(new FlushEntry(deadline, state));
+      if (itsQueue.peek().itsState == state) {
+        // New head of the queue, so the worker may need to wake earlier
+        notifyAll();
+      }
+    }
+
+    /** Stop the worker, waiting for any flush in progress to complete. */
+    public void shutdown() {
+      synchronized (this) {
+        itsStopped = true;
+        notifyAll();
+      }
+      if (isAlive() && Thread.currentThread() != this) {
+        try {
+          join();
+        } catch (InterruptedException e) {
+        }
+      }
+    }
+
+    /** Get the next entry which is due, blocking until one is available. Returns null when the worker has been stopped. */
+    private synchronized FlushEntry next() throws InterruptedException {
+      while (!itsStopped) {
+        FlushEntry head = itsQueue.peek();
+        long now = System.currentTimeMillis();
+        if (head == null) {
+          wait();
+        } else if (head.itsDeadline > now) {
+          wait(head.itsDeadline - now);
+        } else {
+          return itsQueue.poll();
+        }
+      }
+      return null;
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          FlushEntry entry = next();
+          if (entry == null) {
+            break;
+          }
+          FlushState state = entry.itsState;
+          synchronized (state.itsData) {
+            if (!state.itsScheduled || state.itsDeadline != entry.itsDeadline) {
+              // Entry has been superseded or the data was already flushed
+              continue;
+            }
+          }
+          flush(state);
+        }
+      } catch (InterruptedException e) {
+      } catch (Exception e) {
+        itsLogger.error("While archiving: " + e);
+        e.printStackTrace();
+      }
     }
   }
 
@@ -506,6 +974,9 @@ public abstract class PointArchiver extends Thread {
           if (point != null && point.getArchiver() == itsOwner && point.getArchiveLongevity() > 0) {
             itsLogger.trace("Purging old archive data for " + point.getFullName());
             itsOwner.purgeOldData(point);
+            if (itsRollups != null) {
+              itsRollups.purge(point, AbsTime.factory(start.getValue() - 86400000000l * point.getArchiveLongevity()));
+            }
           }
           try {
             // Short sleep so as not to hog resources
@@ -27,7 +27,12 @@ import atnf.atoms.time.*;
  * file.
  * 
  * <P>
- * The compression is transparent to the user as the archiver will decompress files when a archive request is made.
+ * The compression is transparent to the user as the archiver will decompress files on the fly when a archive request is made.
+ * 
+ * <P>
+ * Each archive file has a hidden sidecar time index which maps the timestamp of every Nth record to the byte offset of that record
+ * in the uncompressed file. The index is appended to as data is written to the active file and is rebuilt when the file is
+ * compressed. It allows queries to skip directly to the part of a file which is of interest rather than parsing every record.
  * 
  * @author David Brodrick
  * @author Le Cuong Ngyuen
@@ -39,27 +44,84 @@ public class PointArchiverASCII extends PointArchiver {
   /** Base directory for the data archive. */
   private static String theirArchiveDir;
 
-  /** Directory for writing temporary files. */
-  private static File theirTempDir;
-
   /** Maximum size for an archive file. */
   private static int theirMaxFileSize;
 
   /** Max time-span for an archive data file. */
   private static int theirMaxFileAge;
 
-  /** Number of threads in the archive thread pool. */
-  private static int theirNumThreads;
+  /** Number of records between successive entries in the time index of each archive file. */
+  private static int theirIndexInterval = 100;
 
   /** Logger. */
   private static Logger theirLogger = Logger.getLogger(PointArchiverASCII.class.getName());
 
-  /** Thread pool for archiving. */
-  private ThreadPoolExecutor itsThreadPool;
-
   /** Cache of current file names to write to for each point. */
   private HashMap<String, String> itsFileNameCache = new HashMap<String, String>(1000, 1000);
 
+  /**
+   * Index of the archive files in each point's directory, mapping the start epoch of each file to its name. Each index is built
+   * from a directory listing the first time it is needed and is then kept up to date as files are created, compressed and purged.
+   */
+  private ConcurrentHashMap<String, ConcurrentSkipListMap<Long, String>> itsFileIndex = new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, String>>(1000);
+
+  /** Number of records appended to each active file since the last entry was added to its time index. */
+  private ConcurrentHashMap<String, Integer> itsIndexCounts = new ConcurrentHashMap<String, Integer>(1000);
+
+  /** Maximum number of time indices which are kept in memory. */
+  private static final int MAXCACHEDINDICES = 1000;
+
+  /** Recently used time indices, keyed by the name of the index file. */
+  private LinkedHashMap<String, TimeIndex> itsTimeIndices = new LinkedHashMap<String, TimeIndex>(MAXCACHEDINDICES, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String, TimeIndex> eldest) {
+      return size() > MAXCACHEDINDICES;
+    }
+  };
+
+  /** The entries of a time index file, sorted by time. */
+  private static class TimeIndex {
+    /** Length of the index file when it was loaded. */
+    public long itsLength;
+
+    /** Modification time of the index file when it was loaded. */
+    public long itsModified;
+
+    /** Number of entries. */
+    public int itsSize = 0;
+
+    /** Timestamp of each entry. */
+    public long[] itsTimes = new long[64];
+
+    /** Offset of the record for each entry. */
+    public long[] itsOffsets = new long[64];
+
+    /** Add an entry to the end of the index. */
+    public void add(long time, long offset) {
+      if (itsSize == itsTimes.length) {
+        itsTimes = Arrays.copyOf(itsTimes, itsSize * 2);
+        itsOffsets = Arrays.copyOf(itsOffsets, itsSize * 2);
+      }
+      itsTimes[itsSize] = time;
+      itsOffsets[itsSize] = offset;
+      itsSize++;
+    }
+
+    /** Get the offset of the last entry at or before the specified time, or zero if there is none. */
+    public long getOffset(long time) {
+      int lo = 0;
+      int hi = itsSize;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (itsTimes[mid] <= time) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo > 0 ? itsOffsets[lo - 1] : 0;
+    }
+  }
+
   static {
     theirArchiveDir = System.getProperty("MoniCA.ArchiveDir");
     if (theirArchiveDir == null) {
@@ -75,17 +137,7 @@ public class PointArchiverASCII extends PointArchiver {
       theirLogger.info("ArchiveDir overridden by system property");
     }
 
-    String temp = MonitorConfig.getProperty("ArchiveTempDir");
-    if (temp == null) {
-      temp = MonitorConfig.getProperty("TempDir");
-    }
-    if (temp != null) {
-      theirTempDir = new File(temp);
-    } else {
-      theirLogger.error("Configuration option \"ArchiveTempDir\" was not defined");
-    }
-
-    temp = MonitorConfig.getProperty("ArchiveMaxSize");
+    String temp = MonitorConfig.getProperty("ArchiveMaxSize");
     if (temp == null) {
       temp = MonitorConfig.getProperty("ArchiveSize");
     }
@@ -110,181 +162,22 @@ public class PointArchiverASCII extends PointArchiver {
       }
     }
 
-    temp = MonitorConfig.getProperty("ArchiveNumThreads");
-    if (temp == null) {
-      theirLogger.error("Configuration option \"ArchiveNumThreads\" was not defined");
-      theirNumThreads = 1;
-    } else {
-      try {
-        theirNumThreads = Integer.parseInt(temp);
-      } catch (Exception e) {
-        theirLogger.error("Error parsing configuration option \"ArchiveNumThreads\"");
-        theirNumThreads = 1;
-      }
-    }
-  }
-
-  class ASCIIArchiverWorker implements Runnable {
-    /** The point we will archive. */
-    private PointDescription itsPoint;
-
-    /** Vector of data to be archived. */
-    private Vector<PointData> itsData;
-
-    ASCIIArchiverWorker(PointDescription point, Vector<PointData> data) {
-      itsPoint = point;
-      itsData = data;
-    }
-
-    public void run() {
+    temp = MonitorConfig.getProperty("ArchiveIndexInterval");
+    if (temp != null) {
       try {
-        String fileName;
-        File file;
-        Date filedate = null;
-        // Find the file which needs to be written to
-        String path = getDir(itsPoint);
-        if (itsFileNameCache.containsKey(itsPoint.getFullName())) {
-          // We have already archived this point
-          fileName = itsFileNameCache.get(itsPoint.getFullName());
-          file = new File(fileName);
-          if (!file.exists()) {
-            itsLogger.debug("Active archive file disappeared: " + fileName);
-            // Check if whole directory vanished
-            File myDir = new File(path);
-            if (!myDir.isDirectory()) {
-              myDir.mkdirs();
-            }
-            filedate = itsData.firstElement().getTimestamp().getAsDate();
-            fileName = path + FSEP + getDateTime(filedate);
-            file = new File(fileName);
-            file.createNewFile();
-          }
-        } else {
-          // Need to find it. Find the right directory and get a listing of the files
-          fileName = path + FSEP + getDateTime(itsData.firstElement().getTimestamp().getAsDate());
-          File myDir = new File(path);
-          if (!myDir.isDirectory()) {
-            myDir.mkdirs();
-          }
-          String[] dirFiles = myDir.list();
-
-          // If there are no existing files, create a new empty one
-          if (dirFiles == null || dirFiles.length < 1) {
-            (new File(fileName)).createNewFile();
-            dirFiles = myDir.list();
-          }
-
-          // Find the most recent extant, non-archived file
-          int latest = -1;
-          Date lastdate = null;
-          for (int i = 0; i < dirFiles.length; i++) {
-            Date thisdate = null;
-            String thisfile = dirFiles[i];
-            if (thisfile.startsWith(".")) {
-              // It's a hidden file so ignore it
-              continue;
-            }
-            if (isCompressed(thisfile)) {
-              // Cut the ".zip" off the end of the string
-              thisfile = thisfile.substring(0, thisfile.length() - 4);
-            }
-            thisdate = getDateTime(thisfile);
-            if (thisdate == null) {
-              itsLogger.debug("PointArchiverASCII:saveNow: Bad file name " + dirFiles[i] + " in directory " + path);
-              continue;
-            }
-            if (latest == -1 || thisdate.after(lastdate)) {
-              latest = i;
-              lastdate = thisdate;
-            }
-          }
-
-          if (latest != -1 && isCompressed(dirFiles[latest])) {
-            // Latest file is compressed so need a new file
-            filedate = itsData.firstElement().getTimestamp().getAsDate();
-            fileName = path + FSEP + getDateTime(filedate);
-            file = new File(fileName);
-            file.createNewFile();
-          } else {
-            // Found what we were looking for
-            fileName = path + FSEP + dirFiles[latest];
-            file = new File(fileName);
-            filedate = lastdate;
-          }
-        }
-
-        // Get the timestamp corresponding to the file name
-        if (filedate == null) {
-          String[] pathelems = fileName.split(FSEP);
-          filedate = getDateTime(pathelems[pathelems.length - 1]);
-        }
-
-        // Enforce the age and size limits that apply to active files.
-        if (filedate.before(new Date(System.currentTimeMillis() - theirMaxFileAge)) || file.length() > theirMaxFileSize) {
-          // Compress old file since it's now an archival file
-          compress(fileName);
-          // Delete uncompressed version of the file - if we can
-          try {
-            file.delete();
-          } catch (Exception e) {
-            // Unable to delete it. Remove .zip so we don't duplicate this data
-            itsLogger.warn("In saveNow: Can't delete uncompressed file " + fileName + ": " + e);
-            (new File(fileName + ".zip")).delete();
-          }
-
-          // Create a new file, now, and archive to it instead.
-          filedate = itsData.firstElement().getTimestamp().getAsDate();
-          fileName = path + FSEP + getDateTime(filedate);
-          file = new File(fileName);
-          file.createNewFile();
-        }
-
-        itsFileNameCache.put(itsPoint.getFullName(), fileName);
-
-        // Finally we've identified the right file. Write out each data record.
-        FileWriter f = new FileWriter(fileName, true);
-        PrintWriter outfile = new PrintWriter(new BufferedWriter(f));
-        synchronized (itsData) {
-          boolean loggedwarning = false;
-          for (int i = 0; i < itsData.size(); i++) {
-            try {              
-              PointData pd = (PointData) itsData.elementAt(i);
-              //Do a check to look for bugs
-              if (!loggedwarning && pd.getTimestamp().getAsDate().before(filedate)) {
-                theirLogger.warn("Data for " + pd.getName() + " precedes the timestamp of the file name - there is a MoniCA bug");
-                loggedwarning = true;
-              }
-              //Write it out
-              outfile.println(getStringForPD(pd));
-            } catch (Exception e) {
-              itsLogger.warn("In saveNow: " + e.getMessage() + " (for " + ((PointData) itsData.elementAt(i)).getName() + ")");
-            }
-          }
-          // We've now archived the data that was in the buffer
-          itsData.clear();
-        }
-        // Flush buffers and close files
-        outfile.flush();
-        f.flush();
-        outfile.close();
-        f.close();
-        // Files flushed, can now flag that archive is no longer in progress
-        synchronized (itsBeingArchived) {
-          itsBeingArchived.remove(itsPoint.getFullName());
+        theirIndexInterval = Integer.parseInt(temp);
+        if (theirIndexInterval < 1) {
+          theirIndexInterval = 1;
         }
       } catch (Exception e) {
-        itsLogger.error("While archiving: " + itsPoint.getFullName() + ": " + e);
-        e.printStackTrace();
+        theirLogger.error("Error parsing configuration option \"ArchiveIndexInterval\"");
       }
-
     }
   }
 
   /** Constructor. */
   public PointArchiverASCII() {
     super();
-
-    itsThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(theirNumThreads);
   }
 
   /**
@@ -309,6 +202,8 @@ public class PointArchiverASCII extends PointArchiver {
       for (int i = 0; i < files.size() - 1; i++) {
         try {
           (new File(dir + FSEP + files.get(i))).delete();
+          (new File(getTimeIndexName(dir + FSEP + files.get(i)))).delete();
+          unindexFile(dir, files.get(i));
         } catch (Exception e) {
           // There was a problem deleting the file. Should we log a message about it?
         }
@@ -325,15 +220,121 @@ public class PointArchiverASCII extends PointArchiver {
    *          Vector of data to be archived.
    */
   protected void saveNow(PointDescription pm, Vector<PointData> data) {
-    final RelTime sleeptime = RelTime.factory(1000);
-    while (itsThreadPool.getQueue().size() > (itsThreadPool.getCorePoolSize() + 1)) {
-      // itsLogger.debug(itsThreadPool.getQueue().size() + "\t" + (itsThreadPool.getCorePoolSize()+1));
-      try {
-        sleeptime.sleep();
-      } catch (Exception e) {
+    try {
+      String fileName;
+      File file;
+      Date filedate = null;
+      // Find the file which needs to be written to
+      String path = getDir(pm);
+      if (itsFileNameCache.containsKey(pm.getFullName())) {
+        // We have already archived this point
+        fileName = itsFileNameCache.get(pm.getFullName());
+        file = new File(fileName);
+        if (!file.exists()) {
+          itsLogger.debug("Active archive file disappeared: " + fileName);
+          // Our index of the directory can no longer be trusted
+          itsFileIndex.remove(path);
+          // Check if whole directory vanished
+          File myDir = new File(path);
+          if (!myDir.isDirectory()) {
+            myDir.mkdirs();
+          }
+          filedate = data.firstElement().getTimestamp().getAsDate();
+          fileName = path + FSEP + getDateTime(filedate);
+          file = new File(fileName);
+          file.createNewFile();
+          indexFile(path, getDateTime(filedate));
+        }
+      } else {
+        // Need to find it. Find the right directory and check the index of its files
+        File myDir = new File(path);
+        if (!myDir.isDirectory()) {
+          myDir.mkdirs();
+        }
+
+        // Find the most recent extant, non-archived file
+        Map.Entry<Long, String> latest = getFileIndex(path).lastEntry();
+        if (latest == null || isCompressed(latest.getValue())) {
+          // No files yet or latest file is compressed so need a new file
+          filedate = data.firstElement().getTimestamp().getAsDate();
+          fileName = path + FSEP + getDateTime(filedate);
+          file = new File(fileName);
+          file.createNewFile();
+          indexFile(path, getDateTime(filedate));
+        } else {
+          // Found what we were looking for
+          fileName = path + FSEP + latest.getValue();
+          file = new File(fileName);
+          filedate = getDateTime(latest.getValue());
+        }
+      }
+
+      // Get the timestamp corresponding to the file name
+      if (filedate == null) {
+        String[] pathelems = fileName.split(FSEP);
+        filedate = getDateTime(pathelems[pathelems.length - 1]);
       }
+
+      // Enforce the age and size limits that apply to active files.
+      if (filedate.before(new Date(System.currentTimeMillis() - theirMaxFileAge)) || file.length() > theirMaxFileSize) {
+        // Compress old file since it's now an archival file
+        compress(fileName);
+        itsIndexCounts.remove(fileName);
+        // Delete uncompressed version of the file - if we can
+        try {
+          file.delete();
+          indexFile(path, file.getName() + ".zip");
+        } catch (Exception e) {
+          // Unable to delete it. Remove .zip so we don't duplicate this data
+          itsLogger.warn("In saveNow: Can't delete uncompressed file " + fileName + ": " + e);
+          (new File(fileName + ".zip")).delete();
+        }
+
+        // Create a new file, now, and archive to it instead.
+        filedate = data.firstElement().getTimestamp().getAsDate();
+        fileName = path + FSEP + getDateTime(filedate);
+        file = new File(fileName);
+        file.createNewFile();
+        indexFile(path, getDateTime(filedate));
+      }
+
+      itsFileNameCache.put(pm.getFullName(), fileName);
+
+      // Add an entry to the file's time index if enough records have been written since the last one
+      updateTimeIndex(fileName, file.length(), data);
+
+      // Finally we've identified the right file. Write out each data record.
+      FileWriter f = new FileWriter(fileName, true);
+      PrintWriter outfile = new PrintWriter(new BufferedWriter(f));
+      synchronized (data) {
+        boolean loggedwarning = false;
+        for (int i = 0; i < data.size(); i++) {
+          try {              
+            PointData pd = (PointData) data.elementAt(i);
+            //Do a check to look for bugs
+            if (!loggedwarning && pd.getTimestamp().getAsDate().before(filedate)) {
+              theirLogger.warn("Data for " + pd.getName() + " precedes the timestamp of the file name - there is a MoniCA bug");
+              loggedwarning = true;
+            }
+            //Write it out
+            outfile.println(getStringForPD(pd));
+          } catch (Exception e) {
+            itsLogger.warn("In saveNow: " + e.getMessage() + " (for " + ((PointData) data.elementAt(i)).getName() + ")");
+          }
+        }
+        // We've now archived the data that was in the buffer
+        data.clear();
+      }
+      // Flush buffers and close files
+      outfile.flush();
+      f.flush();
+      outfile.close();
+      f.close();
+    } catch (Exception e) {
+      itsLogger.error("While archiving: " + pm.getFullName() + ": " + e);
+      e.printStackTrace();
     }
-    itsThreadPool.execute(new ASCIIArchiverWorker(pm, data));
+
   }
 
   /**
@@ -358,7 +359,7 @@ public class PointArchiverASCII extends PointArchiver {
 
     // Try to load data from each of the files
     for (int j = 0; j < files.size(); j++) {
-      loadFile(res, pm, dir + FSEP + files.get(j), start, end, true);
+      loadFile(res, pm, dir + FSEP + files.get(j), start, end, start, MAXNUMRECORDS);
       if (res.size() >= MAXNUMRECORDS) {
         // Max size limit to prevent server bogging down
         // MonitorMap.logger.warning("MoniCA Server: Truncating archive request
@@ -396,19 +397,16 @@ public class PointArchiverASCII extends PointArchiver {
     if (preceding != null) {
       files.insertElementAt(preceding, 0);
     }
-    // Try to load data from each of the files
+    // Search back from the most recent file, only reading the tail of each file up to the argument timestamp
     Vector<PointData> tempbuf = new Vector<PointData>(1000, 1000);
-    for (int i = 0; i < files.size(); i++) {
-      loadFile(tempbuf, pm, dir + FSEP + files.get(i), null, null, false);
-    }
-
-    // Try to find the update which precedes the argument timestamp
-    PointData res = null;
-    int resi = MonitorUtils.getPrevEqualsPointData(tempbuf, ts);
-    if (resi != -1) {
-      res = tempbuf.get(resi);
+    for (int i = files.size() - 1; i >= 0; i--) {
+      loadFile(tempbuf, pm, dir + FSEP + files.get(i), null, ts, ts, Integer.MAX_VALUE);
+      if (!tempbuf.isEmpty()) {
+        // The last record loaded is the update which precedes the argument timestamp
+        return tempbuf.lastElement();
+      }
     }
-    return res;
+    return null;
   }
 
   /**
@@ -434,27 +432,15 @@ public class PointArchiverASCII extends PointArchiver {
       files.add(following);
     }
 
-    // Try to load data from each of the files
-    Vector<PointData> tempbuf = new Vector<PointData>(1000, 1000);
+    // Search forward from the earliest file, stopping at the first record at or after the argument timestamp
+    Vector<PointData> tempbuf = new Vector<PointData>(1);
     for (int i = 0; i < files.size(); i++) {
-      loadFile(tempbuf, pm, dir + FSEP + files.get(i), null, null, false);
-    }
-
-    // Try to find the update which follows the argument timestamp
-    PointData res = null;
-    int resi = MonitorUtils.getNextPointData(tempbuf, ts);
-    if (resi != -1) {
-      // We found first point after but check if index before is equal
-      if (resi != 0) {
-        PointData prev = tempbuf.get(resi - 1);
-        if (prev.getTimestamp().equiv(ts)) {
-          // Prev is equal to request time, so it is the correct result
-          resi = resi - 1;
-        }
+      loadFile(tempbuf, pm, dir + FSEP + files.get(i), ts, null, ts, 1);
+      if (!tempbuf.isEmpty()) {
+        return tempbuf.firstElement();
       }
-      res = tempbuf.get(resi);
     }
-    return res;
+    return null;
   }
 
   /** Convert the PointData to a line of ASCII text. */
@@ -627,80 +613,21 @@ public class PointArchiverASCII extends PointArchiver {
    */
   private Vector<String> getFiles(String dir, AbsTime start, AbsTime end) {
     Vector<String> res = new Vector<String>();
-    TreeMap<Long, String> map = new TreeMap<Long, String>();
-
-    // Get listing of all files in the archive dir for the given point
-    // /Should use filename filter with this .list() call
-    String[] files = (new File(dir)).list();
-    // Can't do anything if there were no files!
-    if (files == null || files.length == 0) {
+    ConcurrentSkipListMap<Long, String> index = getFileIndex(dir);
+    if (index.isEmpty()) {
       return res;
     }
 
-    // Map the filenames to dates, and sort
-    for (int i = 0; i < files.length; i++) {
-      Date date = null;
-      if (isCompressed(files[i])) {
-        // Remove the ".zip" from the file name so we can parse it
-        date = getDateTime(files[i].substring(0, files[i].length() - 4));
-      } else {
-        date = getDateTime(files[i]);
-      }
-      if (date == null) {
-        System.err.println("PointArchiverASCII:getFiles: Bad File Name " + files[i] + " in directory " + dir);
-        continue;
-      }
-      AbsTime atime = AbsTime.factory(date);
-      map.put(new Long(atime.getValue()), files[i]);
-    }
-
-    // Get an Iterator so we can look through the files
-    Iterator it = map.keySet().iterator();
-
-    boolean hit = false; // Have we found a file within the range yet
-    Object prevkey = null; // Keep reference to previous file's epoch
-
-    while (it.hasNext()) {
-      Object key = it.next();
-      AbsTime ftime = AbsTime.factory(((Long) key).longValue());
-
-      if (ftime.isBefore(start)) {
-        // Haven't caught up to the start time yet
-        prevkey = key;
-      } else if (ftime.isAfter(end)) {
-        // This file not of interest, but prev might be
-        if (!hit) {
-          // No files completely within the range
-          // but the previous file may contain useful data
-          if (prevkey != null) {
-            hit = true;
-            res.add(map.get(prevkey)); // (if there was one)
-          }
-        }
-        // No point looking further into the future
-        break;
-
-      } else {
-        // We need this file it is within the range
-        if (!hit) {
-          // This file's start time is in the range,
-          // so the previous file may also contain useful data
-          hit = true;
-          if (prevkey != null) {
-            res.add(map.get(prevkey)); // (if there was one)
-          }
-        }
-        res.add(map.get(key));
-      }
+    // The file which starts before the range may contain useful data
+    Long startkey = new Long(start.getValue());
+    Map.Entry<Long, String> prev = index.lowerEntry(startkey);
+    if (prev != null) {
+      res.add(prev.getValue());
     }
-    if (!hit) {
-      // No files completely within the range
-      // but most recent file may contain useful data
-      if (prevkey != null) {
-        res.add(map.get(prevkey)); // (if there was one)
-      }
+    // Then add all files which start within the range
+    if (!end.isBefore(start)) {
+      res.addAll(index.subMap(startkey, true, new Long(end.getValue()), true).values());
     }
-
     return res;
   }
 
@@ -714,46 +641,15 @@ public class PointArchiverASCII extends PointArchiver {
    * @return Next chronological file name, or null if none exist.
    */
   private String getFollowingFile(String dir, String fname) {
-    // Get timestamp corresponding to argument file
-    AbsTime argdate = null;
-    if (isCompressed(fname)) {
-      // Remove the ".zip" from the file name so we can parse it
-      argdate = AbsTime.factory(getDateTime(fname.substring(0, fname.length() - 4)));
-    } else {
-      argdate = AbsTime.factory(getDateTime(fname));
-    }
-
-    // Get listing of all files in the archive dir for the given point
-    String[] files = (new File(dir)).list();
-    if (files == null || files.length == 0) {
+    Long argkey = getFileEpoch(fname);
+    if (argkey == null) {
       return null;
     }
-
-    // Map the filenames to dates, and find target file
-    RelTime afterdiff = null;
-    String aftername = null;
-    for (int i = 0; i < files.length; i++) {
-      Date date = null;
-      if (isCompressed(files[i])) {
-        // Remove the ".zip" from the file name so we can parse it
-        date = getDateTime(files[i].substring(0, files[i].length() - 4));
-      } else {
-        date = getDateTime(files[i]);
-      }
-      if (date == null) {
-        System.err.println("PointArchiverASCII:getFollowingFile: Bad File Name " + files[i] + " in directory " + dir);
-        continue;
-      }
-      AbsTime thisdate = AbsTime.factory(date);
-      if (thisdate.isAfter(argdate)) {
-        RelTime thisdiff = Time.diff(thisdate, argdate);
-        if (afterdiff == null || thisdiff.getValue() < afterdiff.getValue()) {
-          afterdiff = thisdiff;
-          aftername = files[i];
-        }
-      }
+    Map.Entry<Long, String> res = getFileIndex(dir).higherEntry(argkey);
+    if (res == null) {
+      return null;
     }
-    return aftername;
+    return res.getValue();
   }
 
   /**
@@ -766,46 +662,102 @@ public class PointArchiverASCII extends PointArchiver {
    * @return Previous chronological file name, or null if none exist.
    */
   private String getPrecedingFile(String dir, String fname) {
-    // Get timestamp corresponding to argument file
-    AbsTime argdate = null;
-    if (isCompressed(fname)) {
-      // Remove the ".zip" from the file name so we can parse it
-      argdate = AbsTime.factory(getDateTime(fname.substring(0, fname.length() - 4)));
-    } else {
-      argdate = AbsTime.factory(getDateTime(fname));
+    Long argkey = getFileEpoch(fname);
+    if (argkey == null) {
+      return null;
     }
-
-    // Get listing of all files in the archive dir for the given point
-    String[] files = (new File(dir)).list();
-    if (files == null || files.length == 0) {
+    Map.Entry<Long, String> res = getFileIndex(dir).lowerEntry(argkey);
+    if (res == null) {
       return null;
     }
+    return res.getValue();
+  }
 
-    // Map the filenames to dates, and find target file
-    RelTime beforediff = null;
-    String beforename = null;
-    for (int i = 0; i < files.length; i++) {
-      Date date = null;
-      if (isCompressed(files[i])) {
-        // Remove the ".zip" from the file name so we can parse it
-        date = getDateTime(files[i].substring(0, files[i].length() - 4));
-      } else {
-        date = getDateTime(files[i]);
-      }
-      if (date == null) {
-        System.err.println("PointArchiverASCII:getPrecedingFile: Bad File Name " + files[i] + " in directory " + dir);
-        continue;
-      }
-      AbsTime thisdate = AbsTime.factory(date);
-      if (thisdate.isBefore(argdate)) {
-        RelTime thisdiff = Time.diff(argdate, thisdate);
-        if (beforediff == null || thisdiff.getValue() < beforediff.getValue()) {
-          beforediff = thisdiff;
-          beforename = files[i];
+  /**
+   * Get the index of archive files for the given directory, building it from a directory listing if this is the first time the
+   * directory has been accessed.
+   * 
+   * @param dir
+   *          Archive directory for the point.
+   * @return Map of file start epochs to file names.
+   */
+  private ConcurrentSkipListMap<Long, String> getFileIndex(String dir) {
+    ConcurrentSkipListMap<Long, String> res = itsFileIndex.get(dir);
+    if (res == null) {
+      ConcurrentSkipListMap<Long, String> newindex = new ConcurrentSkipListMap<Long, String>();
+      String[] files = (new File(dir)).list();
+      if (files != null) {
+        for (int i = 0; i < files.length; i++) {
+          if (files[i].startsWith(".")) {
+            // It's a hidden file so ignore it
+            continue;
+          }
+          Long epoch = getFileEpoch(files[i]);
+          if (epoch == null) {
+            System.err.println("PointArchiverASCII:getFileIndex: Bad File Name " + files[i] + " in directory " + dir);
+            continue;
+          }
+          newindex.put(epoch, files[i]);
         }
       }
+      res = itsFileIndex.putIfAbsent(dir, newindex);
+      if (res == null) {
+        res = newindex;
+      }
     }
-    return beforename;
+    return res;
+  }
+
+  /**
+   * Record the file in the directory's index, replacing any existing entry with the same start epoch.
+   * 
+   * @param dir
+   *          Archive directory for the point.
+   * @param fname
+   *          Name of the file, without the directory.
+   */
+  private void indexFile(String dir, String fname) {
+    Long epoch = getFileEpoch(fname);
+    if (epoch != null) {
+      getFileIndex(dir).put(epoch, fname);
+    }
+  }
+
+  /**
+   * Remove the file from the directory's index.
+   * 
+   * @param dir
+   *          Archive directory for the point.
+   * @param fname
+   *          Name of the file, without the directory.
+   */
+  private void unindexFile(String dir, String fname) {
+    Long epoch = getFileEpoch(fname);
+    ConcurrentSkipListMap<Long, String> index = itsFileIndex.get(dir);
+    if (epoch != null && index != null) {
+      index.remove(epoch, fname);
+    }
+  }
+
+  /**
+   * Get the start epoch encoded in an archive file name.
+   * 
+   * @param fname
+   *          Name of the file, which may be compressed.
+   * @return Epoch as an AbsTime value, or null if the name could not be parsed.
+   */
+  private Long getFileEpoch(String fname) {
+    Date date;
+    if (isCompressed(fname)) {
+      // Remove the ".zip" from the file name so we can parse it
+      date = getDateTime(fname.substring(0, fname.length() - 4));
+    } else {
+      date = getDateTime(fname);
+    }
+    if (date == null) {
+      return null;
+    }
+    return new Long(AbsTime.factory(date).getValue());
   }
 
   /**
@@ -813,31 +765,62 @@ public class PointArchiverASCII extends PointArchiver {
    * 
    * @param res
    *          Vector which holds the loaded data.
-   * @param fname
-   *          Full path to the file to load data from.
    * @param pm
    *          PointDescription we are reconstructing data for.
-   * @param pname
-   *          Name of the monitor point we are loading.
+   * @param fname
+   *          Full path to the file to load data from.
    * @param start
    *          The earliest time of interest, null to ignore.
    * @param end
    *          The most recent time of interest, null to ignore.
-   * @param truncate
-   *          Whether to truncate at the archive query limit.
+   * @param seek
+   *          Use the file's time index to skip records which are known to precede this time, null to read the whole file.
+   * @param limit
+   *          Stop loading once the result Vector holds this many records.
    */
-  private void loadFile(Vector<PointData> res, PointDescription pm, String fname, AbsTime start, AbsTime end, boolean truncate) {
+  private void loadFile(Vector<PointData> res, PointDescription pm, String fname, AbsTime start, AbsTime end, AbsTime seek, int limit) {
+    ZipFile zip = null;
+    BufferedReader reader = null;
     try {
-      // If the file's compressed we need to decompress it first
-      boolean hadtodecompress = false;
+      long offset = 0;
+      if (seek != null) {
+        offset = getSeekOffset(fname, seek);
+      }
       if (isCompressed(fname)) {
-        fname = decompress(fname);
-        hadtodecompress = true;
+        // Decompress the file on the fly as we read it
+        zip = new ZipFile(fname);
+        String entryname = fname.substring(fname.lastIndexOf(FSEP) + 1);
+        entryname = entryname.substring(0, entryname.length() - 4);
+        ZipEntry ze = zip.getEntry(entryname);
+        if (ze == null) {
+          System.err.println("PointArchiverASCII:loadFile: " + fname + " has no entry " + entryname);
+          return;
+        }
+        InputStream in = zip.getInputStream(ze);
+        // Compressed data can't be seeked but at least we avoid parsing the records
+        skipFully(in, offset);
+        reader = new BufferedReader(new InputStreamReader(in, "ISO-8859-1"), 65536);
+      } else {
+        InputStream in = new FileInputStream(fname);
+        skipFully(in, offset);
+        reader = new BufferedReader(new InputStreamReader(in));
       }
-      BufferedReader reader = new BufferedReader(new FileReader(fname));
 
-      while (reader.ready()) {
-        String line = reader.readLine();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (start != null) {
+          // Check the timestamp before going to the expense of decoding the record
+          int tab = line.indexOf('\t');
+          if (tab > 0) {
+            try {
+              if (AbsTime.factory(line.substring(0, tab)).isBefore(start)) {
+                continue; // Data's too early
+              }
+            } catch (Exception e) {
+              // Let the full parser deal with it
+            }
+          }
+        }
         // Read the next data record from the archive file
         PointData pd = getPDForString(pm, line);
         if (pd == null) {
@@ -854,93 +837,196 @@ public class PointArchiverASCII extends PointArchiver {
 
         res.add(pd);
 
-        if (truncate && res.size() >= MAXNUMRECORDS) {
+        if (res.size() >= limit) {
           break;
         }
       }
-      reader.close();
 
       // System.err.println("PointArchiverASCII:loadFile: "
       // + "LOADED " + num + " FROM " + fname);
-
-      if (hadtodecompress) {
-        // We need to delete the temporary file now
-        (new File(fname)).delete();
-      }
     } catch (Exception e) {
       System.err.println("PointArchiverASCII:loadFile: " + fname + " " + e.getMessage());
       e.printStackTrace();
+    } finally {
+      try {
+        if (reader != null) {
+          reader.close();
+        }
+        if (zip != null) {
+          zip.close();
+        }
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  /** Skip the specified number of bytes from the stream, or up to the end of the stream. */
+  private static void skipFully(InputStream in, long num) throws IOException {
+    while (num > 0) {
+      long skipped = in.skip(num);
+      if (skipped <= 0) {
+        // Skip may legitimately return zero, so check for the end of stream
+        if (in.read() == -1) {
+          return;
+        }
+        skipped = 1;
+      }
+      num -= skipped;
     }
   }
 
   /**
-   * Test if the specified filename corresponds to a compressed file. In practice this just means we check for a <i>.zip</i>
-   * extension.
+   * Get the name of the time index file for the given archive file. The index is a hidden file in the same directory and the same
+   * index is used for both the uncompressed and compressed forms of the file.
    * 
-   * @param filename
-   *          The file name to check.
-   * @return <code>True</code> if the file is compressed, <code>False</code> otherwise.
+   * @param fname
+   *          Full path to the archive file.
+   * @return Full path to the index file.
    */
-  private boolean isCompressed(String filename) {
-    return filename.endsWith(".zip");
+  private static String getTimeIndexName(String fname) {
+    int lastsep = fname.lastIndexOf(FSEP);
+    String dir = fname.substring(0, lastsep + 1);
+    String shortname = fname.substring(lastsep + 1);
+    if (shortname.endsWith(".zip")) {
+      shortname = shortname.substring(0, shortname.length() - 4);
+    }
+    return dir + "." + shortname + ".idx";
   }
 
   /**
-   * Decompress the specified file and return the path to a temporary file. The temporary file should generally be deleted by the
-   * caller once it is no longer required.
+   * Find the byte offset in the uncompressed file from which reading can start without missing any records at or after the
+   * specified time. This is the offset of the last indexed record at or before the time, found by a binary search of the file's
+   * time index. The index is loaded into memory the first time it is needed and reloaded if the index file changes.
    * 
-   * @param filename
-   *          Full path to the file to decompress.
-   * @return Name of temporary file containing the decompressed data.
+   * @param fname
+   *          Full path to the archive file.
+   * @param ts
+   *          The earliest time of interest.
+   * @return Byte offset into the uncompressed file, zero if the whole file needs to be read.
    */
-  private String decompress(String filename) {
-    File f = null;
-    InputStream compressed = null;
-    PrintWriter uncompressed = null;
-    String res = null;
+  private long getSeekOffset(String fname, AbsTime ts) {
+    TimeIndex index = getTimeIndex(fname);
+    if (index == null) {
+      return 0;
+    }
+    return index.getOffset(ts.getValue());
+  }
 
+  /**
+   * Get the time index for an archive file, loading it from disk if it isn't cached or has changed since it was loaded.
+   * 
+   * @param fname
+   *          Full path to the archive file.
+   * @return The index, or null if the file has no usable index.
+   */
+  private TimeIndex getTimeIndex(String fname) {
+    String indexname = getTimeIndexName(fname);
+    File indexfile = new File(indexname);
+    long length = indexfile.length();
+    long modified = indexfile.lastModified();
+    if (length == 0) {
+      synchronized (itsTimeIndices) {
+        itsTimeIndices.remove(indexname);
+      }
+      return null;
+    }
+    synchronized (itsTimeIndices) {
+      TimeIndex res = itsTimeIndices.get(indexname);
+      if (res != null && res.itsLength == length && res.itsModified == modified) {
+        return res;
+      }
+    }
+
+    TimeIndex res = new TimeIndex();
+    res.itsLength = length;
+    res.itsModified = modified;
+    BufferedReader reader = null;
     try {
-      ZipFile zip = new ZipFile(filename);
-      String foo = filename.substring(filename.lastIndexOf(FSEP) + 1);
-      foo = foo.substring(0, foo.length() - 4);
-      ZipEntry ze = zip.getEntry(foo);
-      compressed = zip.getInputStream(ze);
-      if (!theirTempDir.isDirectory()) {
-        // Ensure directory exists
-        theirTempDir.mkdirs();
+      reader = new BufferedReader(new FileReader(indexfile));
+      long last = Long.MIN_VALUE;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab <= 0) {
+          continue;
+        }
+        long time = AbsTime.factory(line.substring(0, tab)).getValue();
+        if (time < last) {
+          throw new IOException("Entries are out of order");
+        }
+        res.add(time, Long.parseLong(line.substring(tab + 1)));
+        last = time;
       }
-      f = File.createTempFile("foo", ".tmp", theirTempDir);
-      uncompressed = new PrintWriter(new BufferedWriter(new FileWriter(f)));
-      res = f.getPath();
-
-      // Extract data and copy to plain text file
-      final int blen = 4096;
-      byte[] bbuf = new byte[blen];
-      char[] cbuf = new char[blen];
-      int len;
-      while ((len = compressed.read(bbuf)) > 0) {
-        for (int i = 0; i < len; i++) {
-          cbuf[i] = (char) bbuf[i];
+    } catch (Exception e) {
+      // Corrupt index, so fall back to reading the whole file
+      theirLogger.warn("Error reading time index for " + fname + ": " + e);
+      res = null;
+    } finally {
+      try {
+        if (reader != null) {
+          reader.close();
         }
-        uncompressed.write(cbuf, 0, len);
+      } catch (IOException e) {
+      }
+    }
+    if (res != null) {
+      synchronized (itsTimeIndices) {
+        itsTimeIndices.put(indexname, res);
       }
+    }
+    return res;
+  }
 
-      compressed.close();
-      uncompressed.close();
-      zip.close();
-    } catch (Exception e) {
-      // if (compressed!=null) compressed.close();
-      // if (uncompressed!=null) uncompressed.close();
-      e.printStackTrace();
+  /**
+   * Update the time index of the active archive file before a batch of records is appended to it. An entry pointing to the first
+   * record in the batch is added if enough records have been written since the previous entry.
+   * 
+   * @param fname
+   *          Full path to the active archive file.
+   * @param offset
+   *          Current length of the file, which is where the batch will be written.
+   * @param data
+   *          The records about to be written.
+   */
+  private void updateTimeIndex(String fname, long offset, Vector<PointData> data) {
+    if (data.isEmpty()) {
+      return;
+    }
+    Integer count = itsIndexCounts.get(fname);
+    if (offset == 0) {
+      // New file so discard any stale index left over from a file of the same name
+      (new File(getTimeIndexName(fname))).delete();
+      count = null;
+    }
+    if (count == null || count.intValue() >= theirIndexInterval) {
+      try {
+        FileWriter f = new FileWriter(getTimeIndexName(fname), true);
+        f.write(data.firstElement().getTimestamp().toString(AbsTime.Format.HEX_BAT) + "\t" + offset + "\n");
+        f.close();
+        count = new Integer(0);
+      } catch (Exception e) {
+        theirLogger.warn("Error updating time index for " + fname + ": " + e);
+        count = new Integer(0);
+      }
     }
+    itsIndexCounts.put(fname, new Integer(count.intValue() + data.size()));
+  }
 
-    // System.err.println("PointArchiverASCII:decompress: Extracted "
-    // + filename + " to " + res);
-    return res;
+  /**
+   * Test if the specified filename corresponds to a compressed file. In practice this just means we check for a <i>.zip</i>
+   * extension.
+   * 
+   * @param filename
+   *          The file name to check.
+   * @return <code>True</code> if the file is compressed, <code>False</code> otherwise.
+   */
+  private boolean isCompressed(String filename) {
+    return filename.endsWith(".zip");
   }
 
   /**
    * Compress the specified file. The file location is not not changed but the file will be renamed with a <i>.zip</i> extension.
+   * The time index for the file is rebuilt while the data is being compressed.
    * 
    * @param filename
    *          The name of the file to be compressed.
@@ -961,15 +1047,50 @@ public class PointArchiverASCII extends PointArchiver {
       }
       compressed.putNextEntry(new ZipEntry(shortname));
 
-      // Copy data to compressed file
+      // Copy data to compressed file, noting the timestamp and offset of every Nth record for the index
+      StringBuffer index = new StringBuffer();
+      StringBuffer tsbuf = null;
+      long offset = 0;
+      long linestart = 0;
+      int numlines = 0;
+      boolean atlinestart = true;
       byte[] buf = new byte[4096];
       int len;
       while ((len = uncompressed.read(buf)) > 0) {
         compressed.write(buf, 0, len);
+        for (int i = 0; i < len; i++, offset++) {
+          byte b = buf[i];
+          if (atlinestart) {
+            atlinestart = false;
+            linestart = offset;
+            if (numlines % theirIndexInterval == 0) {
+              tsbuf = new StringBuffer();
+            }
+          }
+          if (b == '\n') {
+            atlinestart = true;
+            numlines++;
+            tsbuf = null;
+          } else if (tsbuf != null) {
+            if (b == '\t') {
+              index.append(tsbuf);
+              index.append('\t');
+              index.append(linestart);
+              index.append('\n');
+              tsbuf = null;
+            } else {
+              tsbuf.append((char) b);
+            }
+          }
+        }
       }
 
       compressed.close();
       uncompressed.close();
+
+      FileWriter f = new FileWriter(getTimeIndexName(filename), false);
+      f.write(index.toString());
+      f.close();
       // System.err.println("PointArchiverASCII:compress: Compressed " +
       // filename);
     } catch (Exception e) {
@@ -1064,7 +1185,7 @@ public class PointArchiverASCII extends PointArchiver {
     /*
      * if (args.length<1) { System.err.println("USAGE: Specify a file to be compressed"); System.exit(1); }
      * 
-     * System.out.println("Will compress " + args[0]); paa.compress(args[0]); paa.decompress(args[0]+".zip");
+     * System.out.println("Will compress " + args[0]); paa.compress(args[0]);
      */
   }
 
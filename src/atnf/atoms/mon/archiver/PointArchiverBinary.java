@@ -0,0 +1,628 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.archiver;
+
+import org.apache.log4j.Logger;
+import java.io.*;
+import java.util.*;
+import atnf.atoms.mon.*;
+import atnf.atoms.mon.util.*;
+import atnf.atoms.time.*;
+
+/**
+ * Archiver which stores data in compact, append-only binary segment files.
+ *
+ * <P>
+ * As with the ASCII archiver each point has a directory which corresponds to its hierarchical name, and data is written to a
+ * segment file until the file gets too large or too old, at which point a new segment is started. Each segment begins with a header
+ * which records the time range of the data it contains, followed by a series of blocks. A block is written each time the buffered
+ * data for the point is flushed and holds the records compressed by <tt>BinarySegmentCodec</tt>, prefixed by the block's own time
+ * range so that reads can skip blocks which are not of interest without decoding them.
+ *
+ * <P>
+ * The following configuration options are used:
+ * <ul>
+ * <li><tt>BinaryArchiveDir</tt> Base directory for the archive, defaults to <tt>ArchiveDir</tt>.
+ * <li><tt>ArchiveMaxSize</tt> Size in bytes at which a new segment will be started.
+ * <li><tt>ArchiveMaxAge</tt> Age in seconds at which a new segment will be started.
+ * <li><tt>ArchiveNumThreads</tt> Number of threads used to write data.
+ * </ul>
+ *
+ * @author David Brodrick
+ */
+public class PointArchiverBinary extends PointArchiver {
+  /** OS-dependant file separation character. */
+  private static final String FSEP = System.getProperty("file.separator");
+
+  /** File name extension for segment files. */
+  private static final String SEGEXT = ".mbs";
+
+  /** Magic number at the start of every segment file. */
+  private static final int SEGMAGIC = 0x4D4F4E42;
+
+  /** Magic number at the start of every block. */
+  private static final int BLOCKMAGIC = 0x424C4B31;
+
+  /** Version number of the segment format. */
+  private static final short SEGVERSION = 1;
+
+  /** Length of the segment header: magic, version, start time, end time, record count. */
+  private static final int SEGHEADERLEN = 4 + 2 + 8 + 8 + 4;
+
+  /** Offset of the end time field within the segment header. */
+  private static final int SEGENDOFFSET = 4 + 2 + 8;
+
+  /** Length of each block header: magic, record count, first time, last time, payload length. */
+  private static final int BLOCKHEADERLEN = 4 + 4 + 8 + 8 + 4;
+
+  /** Base directory for the data archive. */
+  private static String theirArchiveDir;
+
+  /** Maximum size for a segment file. */
+  private static int theirMaxFileSize = 1048576;
+
+  /** Max time-span for a segment file, in milliseconds. */
+  private static long theirMaxFileAge = 604800000l;
+
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(PointArchiverBinary.class.getName());
+
+  /** Cache of current segment file to write to for each point. */
+  private HashMap<String, String> itsFileNameCache = new HashMap<String, String>(1000, 1000);
+
+  /** Segment files which have been checked for incomplete blocks since we started. */
+  private HashSet<String> itsValidated = new HashSet<String>(1000);
+
+  static {
+    theirArchiveDir = MonitorConfig.getProperty("BinaryArchiveDir");
+    if (theirArchiveDir == null) {
+      theirArchiveDir = MonitorConfig.getProperty("ArchiveDir");
+      if (theirArchiveDir == null) {
+        theirLogger.error("Configuration option \"BinaryArchiveDir\" was not defined");
+      }
+    }
+
+    String temp = MonitorConfig.getProperty("ArchiveMaxSize");
+    if (temp != null) {
+      try {
+        theirMaxFileSize = Integer.parseInt(temp);
+      } catch (Exception e) {
+        theirLogger.error("Error parsing configuration option \"ArchiveMaxSize\"");
+      }
+    }
+
+    temp = MonitorConfig.getProperty("ArchiveMaxAge");
+    if (temp != null) {
+      try {
+        theirMaxFileAge = 1000l * Integer.parseInt(temp);
+      } catch (Exception e) {
+        theirLogger.error("Error parsing configuration option \"ArchiveMaxAge\"");
+      }
+    }
+  }
+
+  /** Summary of a block read from a segment file. */
+  private static class BlockHeader {
+    /** Number of records in the block. */
+    int count;
+
+    /** Timestamp of the first record. */
+    long first;
+
+    /** Timestamp of the last record. */
+    long last;
+
+    /** Length of the compressed payload which follows the header. */
+    int length;
+  }
+
+  /** Constructor. */
+  public PointArchiverBinary() {
+    super();
+  }
+
+  /**
+   * Purge all data for the given point that is older than the specified age in days.
+   *
+   * @param point
+   *          The point whos data we wish to purge.
+   */
+  protected void purgeOldData(PointDescription point) {
+    if (point.getArchiveLongevity() < 0) {
+      return;
+    }
+
+    String dir = getDir(point);
+    long cutoff = (new AbsTime()).getValue() - 86400000000l * point.getArchiveLongevity();
+    String active;
+    synchronized (itsFileNameCache) {
+      active = itsFileNameCache.get(point.getFullName());
+    }
+    TreeMap<Long, String> segments = getSegments(dir);
+    // Never remove the most recent segment, as it may still be active
+    if (!segments.isEmpty()) {
+      segments.remove(segments.lastKey());
+    }
+    Iterator<String> i = segments.values().iterator();
+    while (i.hasNext()) {
+      String fname = dir + FSEP + i.next();
+      if (fname.equals(active)) {
+        continue;
+      }
+      long[] range = readSegmentRange(fname);
+      if (range != null && range[1] < cutoff) {
+        (new File(fname)).delete();
+      }
+    }
+  }
+
+  /**
+   * Method to do the actual archiving.
+   *
+   * @param pm
+   *          The point whos data we wish to archive.
+   * @param data
+   *          Vector of data to be archived.
+   */
+  protected void saveNow(PointDescription pm, Vector<PointData> data) {
+    try {
+      synchronized (data) {
+        if (!data.isEmpty()) {
+          writeBlock(pm, data);
+        }
+        // We've now archived the data that was in the buffer
+        data.clear();
+      }
+    } catch (Exception e) {
+      itsLogger.error("While archiving: " + pm.getFullName() + ": " + e);
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Append the data as a new block in the active segment for the point, starting a new segment if required.
+   *
+   * @param pm
+   *          The point the data belongs to.
+   * @param data
+   *          Time ordered data to be written.
+   */
+  private void writeBlock(PointDescription pm, Vector<PointData> data) throws IOException {
+    // Remove any records which can't be encoded
+    Vector<PointData> good = new Vector<PointData>(data.size());
+    for (int i = 0; i < data.size(); i++) {
+      PointData pd = data.get(i);
+      if (BinarySegmentCodec.isSupported(pd)) {
+        good.add(pd);
+      } else {
+        itsLogger.warn("In saveNow: Unsupported type " + pd.getData().getClass() + " (for " + pm.getFullName() + ")");
+      }
+    }
+    if (good.isEmpty()) {
+      return;
+    }
+    byte[] payload = BinarySegmentCodec.encode(good);
+    long first = good.firstElement().getTimestamp().getValue();
+    long last = good.lastElement().getTimestamp().getValue();
+
+    String fname = getActiveSegment(pm, first);
+    RandomAccessFile raf = new RandomAccessFile(fname, "rw");
+    if (!validateSegment(fname, raf)) {
+      // Header is unusable, so move the segment aside and start a new one
+      raf.close();
+      File bad = new File(fname);
+      bad.renameTo(new File(fname + ".corrupt"));
+      synchronized (itsFileNameCache) {
+        itsFileNameCache.remove(pm.getFullName());
+      }
+      fname = getActiveSegment(pm, first);
+      raf = new RandomAccessFile(fname, "rw");
+    }
+    try {
+      long segend = -1;
+      if (raf.length() < SEGHEADERLEN) {
+        // New segment, write the header
+        raf.setLength(0);
+        raf.writeInt(SEGMAGIC);
+        raf.writeShort(SEGVERSION);
+        raf.writeLong(first);
+        raf.writeLong(last);
+        raf.writeInt(0);
+      } else {
+        raf.seek(SEGENDOFFSET);
+        segend = raf.readLong();
+      }
+      int segcount = 0;
+      raf.seek(SEGENDOFFSET + 8);
+      segcount = raf.readInt();
+
+      // Append the block
+      raf.seek(raf.length());
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(BLOCKHEADERLEN + payload.length);
+      DataOutputStream dout = new DataOutputStream(bout);
+      dout.writeInt(BLOCKMAGIC);
+      dout.writeInt(good.size());
+      dout.writeLong(first);
+      dout.writeLong(last);
+      dout.writeInt(payload.length);
+      dout.write(payload);
+      dout.flush();
+      raf.write(bout.toByteArray());
+
+      // Only now that the block is complete do we update the header
+      raf.seek(SEGENDOFFSET);
+      raf.writeLong(Math.max(segend, last));
+      raf.writeInt(segcount + good.size());
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Check an existing segment before we first append to it. If a crash left an incomplete block at the end of the segment then
+   * the segment is truncated back to the end of the last complete block, as blocks after a bad one could never be read.
+   *
+   * @param fname
+   *          Full path to the segment.
+   * @param raf
+   *          The open segment file.
+   * @return False if the segment header is invalid and the segment can't be appended to.
+   */
+  private boolean validateSegment(String fname, RandomAccessFile raf) throws IOException {
+    synchronized (itsValidated) {
+      if (itsValidated.contains(fname)) {
+        return true;
+      }
+    }
+    long length = raf.length();
+    if (length >= SEGHEADERLEN) {
+      raf.seek(0);
+      if (raf.readInt() != SEGMAGIC) {
+        theirLogger.error("validateSegment: " + fname + " is not a valid segment file");
+        return false;
+      }
+      // Walk the block headers to find the end of the last complete block
+      long end = SEGHEADERLEN;
+      while (end + BLOCKHEADERLEN <= length) {
+        raf.seek(end);
+        if (raf.readInt() != BLOCKMAGIC) {
+          break;
+        }
+        raf.seek(end + BLOCKHEADERLEN - 4);
+        int payload = raf.readInt();
+        if (payload < 0 || end + BLOCKHEADERLEN + payload > length) {
+          break;
+        }
+        end += BLOCKHEADERLEN + payload;
+      }
+      if (end < length) {
+        theirLogger.warn("validateSegment: Truncating incomplete block from " + fname + " (" + (length - end) + " bytes)");
+        raf.setLength(end);
+      }
+    }
+    synchronized (itsValidated) {
+      itsValidated.add(fname);
+    }
+    return true;
+  }
+
+  /**
+   * Get the segment file which new data for the point should be appended to, creating a new segment if the existing one is too
+   * large or too old.
+   *
+   * @param pm
+   *          The point to get the segment for.
+   * @param first
+   *          Timestamp of the first record to be written.
+   * @return Full path to the active segment.
+   */
+  private String getActiveSegment(PointDescription pm, long first) {
+    String path = getDir(pm);
+    File mydir = new File(path);
+    if (!mydir.isDirectory()) {
+      mydir.mkdirs();
+    }
+
+    String fname;
+    synchronized (itsFileNameCache) {
+      fname = itsFileNameCache.get(pm.getFullName());
+    }
+    if (fname == null || !(new File(fname)).exists()) {
+      // Find most recent segment on disk
+      TreeMap<Long, String> segments = getSegments(path);
+      if (!segments.isEmpty()) {
+        fname = path + FSEP + segments.lastEntry().getValue();
+      } else {
+        fname = null;
+      }
+    }
+
+    if (fname != null) {
+      File f = new File(fname);
+      Date segdate = PointArchiverASCII.getDateTime(f.getName());
+      if (segdate == null || segdate.before(new Date(System.currentTimeMillis() - theirMaxFileAge)) || f.length() > theirMaxFileSize) {
+        // Need to start a new segment
+        fname = null;
+      }
+    }
+
+    if (fname == null) {
+      fname = path + FSEP + PointArchiverASCII.getDateTime(AbsTime.factory(first).getAsDate()) + SEGEXT;
+    }
+
+    synchronized (itsFileNameCache) {
+      itsFileNameCache.put(pm.getFullName(), fname);
+    }
+    return fname;
+  }
+
+  /**
+   * Method to extract data from the archive.
+   *
+   * @param pm
+   *          Point to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @return Vector containing all data for the point over the time range.
+   */
+  protected Vector<PointData> extractDeep(PointDescription pm, AbsTime start, AbsTime end) {
+    Vector<PointData> res = new Vector<PointData>(1000, 1000);
+    String dir = getDir(pm);
+    long startval = start.getValue();
+    long endval = end.getValue();
+
+    Iterator<String> files = getSegments(dir).values().iterator();
+    while (files.hasNext() && res.size() < MAXNUMRECORDS) {
+      String fname = dir + FSEP + files.next();
+      long[] range = readSegmentRange(fname);
+      if (range == null || range[1] < startval) {
+        continue;
+      }
+      if (range[0] > endval) {
+        // Segments are ordered, so nothing more of interest
+        break;
+      }
+      loadSegment(res, pm, fname, startval, endval, true);
+    }
+    return res;
+  }
+
+  /**
+   * Return the last update which precedes the specified time. We interpret 'precedes' to mean data_time<=req_time.
+   *
+   * @param pm
+   *          Point to extract data for.
+   * @param ts
+   *          Find data preceding this timestamp.
+   * @return PointData for preceding update or null if none found.
+   */
+  protected PointData getPrecedingDeep(PointDescription pm, AbsTime ts) {
+    String dir = getDir(pm);
+    long tsval = ts.getValue();
+    TreeMap<Long, String> segments = getSegments(dir);
+    // Search back through the segments, most recent first
+    Iterator<String> files = segments.headMap(new Long(tsval), true).descendingMap().values().iterator();
+    while (files.hasNext()) {
+      String fname = dir + FSEP + files.next();
+      Vector<PointData> data = new Vector<PointData>();
+      loadSegment(data, pm, fname, Long.MIN_VALUE, tsval, false);
+      if (!data.isEmpty()) {
+        return data.lastElement();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Return the first update which follows the specified time. We interpret 'follows' to mean data_time>=req_time.
+   *
+   * @param pm
+   *          Point to extract data for.
+   * @param ts
+   *          Find data following this timestamp.
+   * @return PointData for following update or null if none found.
+   */
+  protected PointData getFollowingDeep(PointDescription pm, AbsTime ts) {
+    String dir = getDir(pm);
+    long tsval = ts.getValue();
+    Iterator<String> files = getSegments(dir).values().iterator();
+    while (files.hasNext()) {
+      String fname = dir + FSEP + files.next();
+      long[] range = readSegmentRange(fname);
+      if (range == null || range[1] < tsval) {
+        continue;
+      }
+      Vector<PointData> data = new Vector<PointData>();
+      loadSegment(data, pm, fname, tsval, Long.MAX_VALUE, false);
+      if (!data.isEmpty()) {
+        return data.firstElement();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Load data within the given time range from a segment. Blocks which lie wholly outside the range are skipped without being
+   * decoded.
+   *
+   * @param res
+   *          Vector which holds the loaded data.
+   * @param pm
+   *          PointDescription we are reconstructing data for.
+   * @param fname
+   *          Full path to the segment file.
+   * @param start
+   *          Earliest time of interest.
+   * @param end
+   *          Most recent time of interest.
+   * @param truncate
+   *          Whether to truncate at the archive query limit.
+   */
+  private void loadSegment(Vector<PointData> res, PointDescription pm, String fname, long start, long end, boolean truncate) {
+    DataInputStream in = null;
+    try {
+      File f = new File(fname);
+      long remaining = f.length();
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 65536));
+      if (remaining < SEGHEADERLEN || in.readInt() != SEGMAGIC) {
+        theirLogger.warn("loadSegment: " + fname + " is not a valid segment file");
+        return;
+      }
+      in.skipBytes(SEGHEADERLEN - 4);
+      remaining -= SEGHEADERLEN;
+
+      String name = pm.getFullName();
+      ArrayList<PointData> block = new ArrayList<PointData>();
+      BlockHeader hdr = new BlockHeader();
+      while (remaining >= BLOCKHEADERLEN) {
+        if (!readBlockHeader(in, hdr)) {
+          theirLogger.warn("loadSegment: Corrupt block in " + fname);
+          break;
+        }
+        remaining -= BLOCKHEADERLEN;
+        if (hdr.length > remaining) {
+          // Incomplete block, probably written during a crash
+          break;
+        }
+        remaining -= hdr.length;
+        if (hdr.first > end) {
+          // No more useful data in this segment
+          break;
+        }
+        if (hdr.last < start) {
+          // Skip this block entirely
+          skipFully(in, hdr.length);
+          continue;
+        }
+        byte[] payload = new byte[hdr.length];
+        in.readFully(payload);
+        block.clear();
+        BinarySegmentCodec.decode(payload, hdr.count, name, block);
+        for (int i = 0; i < block.size(); i++) {
+          PointData pd = block.get(i);
+          long ts = pd.getTimestamp().getValue();
+          if (ts < start) {
+            continue;
+          }
+          if (ts > end) {
+            break;
+          }
+          res.add(pd);
+          if (truncate && res.size() >= MAXNUMRECORDS) {
+            return;
+          }
+        }
+      }
+    } catch (Exception e) {
+      theirLogger.warn("loadSegment: " + fname + " " + e);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /** Read the next block header, returning false if it is not valid. */
+  private boolean readBlockHeader(DataInputStream in, BlockHeader hdr) throws IOException {
+    if (in.readInt() != BLOCKMAGIC) {
+      return false;
+    }
+    hdr.count = in.readInt();
+    hdr.first = in.readLong();
+    hdr.last = in.readLong();
+    hdr.length = in.readInt();
+    return hdr.count >= 0 && hdr.length >= 0;
+  }
+
+  /** Skip the specified number of bytes from the stream. */
+  private void skipFully(DataInputStream in, int len) throws IOException {
+    while (len > 0) {
+      int skipped = in.skipBytes(len);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      len -= skipped;
+    }
+  }
+
+  /**
+   * Read the time range from a segment header.
+   *
+   * @param fname
+   *          Full path to the segment file.
+   * @return Array containing the start and end times, or null if the header could not be read.
+   */
+  private long[] readSegmentRange(String fname) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(fname));
+      if (in.readInt() != SEGMAGIC) {
+        return null;
+      }
+      in.readShort();
+      long[] res = new long[2];
+      res[0] = in.readLong();
+      res[1] = in.readLong();
+      return res;
+    } catch (Exception e) {
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Get all segment files in the directory, sorted by the start time encoded in their names.
+   *
+   * @param dir
+   *          Archive directory for the point.
+   * @return Map of start epoch to file name.
+   */
+  private TreeMap<Long, String> getSegments(String dir) {
+    TreeMap<Long, String> res = new TreeMap<Long, String>();
+    String[] files = (new File(dir)).list();
+    if (files == null) {
+      return res;
+    }
+    for (int i = 0; i < files.length; i++) {
+      if (!files[i].endsWith(SEGEXT)) {
+        continue;
+      }
+      Date date = PointArchiverASCII.getDateTime(files[i]);
+      if (date == null) {
+        theirLogger.debug("getSegments: Bad file name " + files[i] + " in directory " + dir);
+        continue;
+      }
+      res.put(new Long(AbsTime.factory(date).getValue()), files[i]);
+    }
+    return res;
+  }
+
+  /**
+   * Get the save directory for the given point.
+   *
+   * @param pm
+   *          Point to get the archive directory for.
+   * @return Name of appropriate archive directory.
+   */
+  public static String getDir(PointDescription pm) {
+    String tempname = pm.getName();
+    tempname = tempname.replace(".", FSEP);
+    return theirArchiveDir + FSEP + tempname + FSEP + pm.getSource();
+  }
+}
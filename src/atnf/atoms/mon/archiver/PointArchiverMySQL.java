@@ -9,8 +9,10 @@ package atnf.atoms.mon.archiver;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import atnf.atoms.mon.*;
+import atnf.atoms.mon.util.*;
 import atnf.atoms.util.*;
 import atnf.atoms.time.*;
 
@@ -30,24 +32,151 @@ import atnf.atoms.time.*;
  * column. The appropriate object is instanciated when data is extracted from the archive, however this approach degrades space
  * efficiency.
  * 
+ * <P>
+ * Data is written by the archive flush threads, each of which borrows a connection from a pool of write connections and inserts
+ * the records for one point using a batched prepared statement. Archive queries use a separate pool of read connections so that
+ * they never have to wait for the writers. The sizes of the pools are set by the <i>MySQLWriteConnections</i> and
+ * <i>MySQLReadConnections</i> configuration options.
+ * 
  * @author David Brodrick
  */
 public class PointArchiverMySQL extends PointArchiver {
-  /** The connection to the MySQL server. */
-  protected Connection itsConnection = null;
+  /** Records are inserted in batches of this size, since MySQL can have maximum packet size limits. */
+  protected static final int MAXCHUNK = 100;
+
+  /** Connections which have been idle for longer than this (ms) are checked before being reused. */
+  private static final long VALIDATE_INTERVAL = 30000;
 
   /** The URL to connect to the server/database. */
-  protected String itsURL = "jdbc:mysql://localhost:3306/MoniCA?user=monica&tcpRcvBuf=100000&autoReconnect=true";
+  protected String itsURL = "jdbc:mysql://localhost:3306/MoniCA?user=monica&tcpRcvBuf=100000&autoReconnect=true&rewriteBatchedStatements=true";
+
+  /** Pool of connections used to write data to the archive. */
+  protected ConnectionPool itsWritePool;
+
+  /** Pool of connections used to read data from the archive. */
+  protected ConnectionPool itsReadPool;
+
+  /**
+   * Simple pool of connections to the database. Connections are opened on demand and connections which have been idle for a while
+   * are validated before being handed out again.
+   */
+  protected class ConnectionPool {
+    /** Connection holders which are not currently in use. */
+    private ArrayBlockingQueue<PooledConnection> itsIdle;
+
+    /**
+     * Constructor.
+     * 
+     * @param size
+     *          Maximum number of connections in the pool.
+     */
+    public ConnectionPool(int size) {
+      if (size < 1) {
+        size = 1;
+      }
+      itsIdle = new ArrayBlockingQueue<PooledConnection>(size);
+      for (int i = 0; i < size; i++) {
+        itsIdle.add(new PooledConnection());
+      }
+    }
+
+    /**
+     * Borrow a connection from the pool, blocking until one is available.
+     * 
+     * @return A live connection, which must be given back with <tt>release</tt>.
+     * @throws SQLException
+     *           If a connection to the server could not be established.
+     */
+    public PooledConnection take() throws SQLException {
+      PooledConnection res;
+      try {
+        res = itsIdle.take();
+      } catch (InterruptedException e) {
+        throw new SQLException("Interrupted while waiting for a connection");
+      }
+      try {
+        if (res.itsConnection != null && System.currentTimeMillis() - res.itsLastUsed > VALIDATE_INTERVAL && !res.itsConnection.isValid(1)) {
+          res.close();
+        }
+        if (res.itsConnection == null) {
+          res.itsConnection = DriverManager.getConnection(itsURL);
+        }
+      } catch (SQLException e) {
+        res.close();
+        itsIdle.add(res);
+        throw e;
+      }
+      return res;
+    }
+
+    /**
+     * Return a connection to the pool.
+     * 
+     * @param conn
+     *          The connection obtained from <tt>take</tt>, may be null.
+     * @param e
+     *          Exception encountered while using the connection, or null. The connection will be discarded if the exception indicates
+     *          it has failed.
+     */
+    public void release(PooledConnection conn, SQLException e) {
+      if (conn == null) {
+        return;
+      }
+      if (e != null && isConnectionError(e)) {
+        conn.close();
+      }
+      conn.itsLastUsed = System.currentTimeMillis();
+      itsIdle.add(conn);
+    }
+  }
+
+  /** Holder for a pooled connection. */
+  protected static class PooledConnection {
+    /** The connection, or null if not currently connected. */
+    public Connection itsConnection = null;
+
+    /** Time the connection was last returned to the pool. */
+    public long itsLastUsed = 0;
+
+    /** Close the connection, ignoring any errors. */
+    public void close() {
+      if (itsConnection != null) {
+        try {
+          itsConnection.close();
+        } catch (Exception e) {
+        }
+        itsConnection = null;
+      }
+    }
+  }
 
   /** Constructor. */
   public PointArchiverMySQL() {
     super();
 
+    int numwrite = 1;
+    int numread = 1;
+    try {
+      numwrite = Integer.parseInt(MonitorConfig.getProperty("MySQLWriteConnections", "1"));
+    } catch (Exception e) {
+      itsLogger.error("Error parsing configuration option \"MySQLWriteConnections\"");
+    }
+    try {
+      numread = Integer.parseInt(MonitorConfig.getProperty("MySQLReadConnections", "1"));
+    } catch (Exception e) {
+      itsLogger.error("Error parsing configuration option \"MySQLReadConnections\"");
+    }
+    if (numwrite < 1) {
+      numwrite = 1;
+    }
+    itsWritePool = new ConnectionPool(numwrite);
+    itsReadPool = new ConnectionPool(numread);
+
+    // Check that we can talk to the server
     try {
-      itsConnection = DriverManager.getConnection(itsURL);
+      itsWritePool.release(itsWritePool.take(), null);
     } catch (Exception e) {
       itsLogger.error("PointArchiverMySQL Constructor: " + e.getMessage());
-      itsConnection = null;
     }
   }
 
@@ -62,92 +191,173 @@ public class PointArchiverMySQL extends PointArchiver {
       return;
 
     String table = getTableName(point);
-    Statement stmt = null;
-
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
     try {
-      // Can't do anything if the server is not running
-      if (!checkConnection()) {
-        return;
-      }
-
-      // Build and execute the data request
+      conn = itsWritePool.take();
       long purgetime = (new AbsTime()).getValue() - point.getArchiveLongevity() * 86400000000l;
-      String cmd = "DELETE from " + table + " WHERE ts<" + purgetime + ";";
-      synchronized (itsConnection) {
-        stmt = itsConnection.createStatement();
-        stmt.execute(cmd);
-      }
-      stmt.close();
-
-    } catch (Exception e) {
+      stmt = conn.itsConnection.prepareStatement("DELETE from " + table + " WHERE ts<?;");
+      stmt.setLong(1, purgetime);
+      stmt.execute();
+    } catch (SQLException e) {
       itsLogger.warn("purgeOldData: " + e);
-      try {
-        if (stmt != null)
-          stmt.close();
-      } catch (Exception f) {
-      }
+      error = e;
+    } finally {
+      closeStatement(stmt);
+      itsWritePool.release(conn, error);
     }
   }
 
   /**
-   * Method to do the actual archiving.
+   * Method to do the actual archiving. The data is written using a connection borrowed from the write pool.
    * 
    * @param pm
    *          The point whos data we wish to archive.
    * @param data
    *          Vector of data to be archived.
    */
-  protected void saveNow(PointDescription pm, Vector<PointData> alldata) {
+  protected void saveNow(PointDescription pm, Vector<PointData> data) {
+    PooledConnection conn = null;
+    SQLException error = null;
+    try {
+      conn = itsWritePool.take();
+      synchronized (data) {
+        writeData(conn.itsConnection, pm, data);
+        // Finished archiving this data
+        data.clear();
+      }
+    } catch (SQLException e) {
+      error = e;
+      if (isConnectionError(e)) {
+        // Keep the data so it can be written once the server is reachable again
+        itsLogger.warn("insertData: " + pm.getFullName() + ": " + e);
+      } else {
+        // Retrying won't help, so discard the data rather than blocking the point's buffer
+        itsLogger.error("insertData: " + pm.getFullName() + ": Discarding " + data.size() + " records: " + e);
+        synchronized (data) {
+          data.clear();
+        }
+      }
+    } catch (Exception e) {
+      itsLogger.error("While archiving: " + pm.getFullName() + ": " + e);
+    } finally {
+      itsWritePool.release(conn, error);
+    }
+  }
+
+  /**
+   * Write the data for a point to the database, creating the point's table if required.
+   * 
+   * @param conn
+   *          Connection to write the data to.
+   * @param pm
+   *          The point whos data we wish to archive.
+   * @param alldata
+   *          The data to be written.
+   * @throws SQLException
+   *           If the data could not be written.
+   */
+  protected void writeData(Connection conn, PointDescription pm, Vector<PointData> alldata) throws SQLException {
     String table = getTableName(pm);
+    try {
+      insertData(conn, table, alldata);
+    } catch (SQLException e) {
+      if (!isMissingTable(e)) {
+        throw e;
+      }
+      createTable(conn, table);
+      insertData(conn, table, alldata);
+    }
+  }
 
-    // MySQL can have maximum packet size limits, so archive data in blocks
-    final int MAXCHUNK = 100;
-    synchronized (alldata) {
-      for (int start = 0; start < alldata.size(); start = start + MAXCHUNK) {
-        Statement stmt = null;
+  /**
+   * Insert the data into the table using batched prepared statements. If a batch fails for a reason other than the connection or
+   * a missing table, its records are inserted one at a time and any which are rejected are logged and skipped.
+   * 
+   * @param conn
+   *          Connection to write the data to.
+   * @param table
+   *          Name of the table for the point.
+   * @param alldata
+   *          The data to be written.
+   * @throws SQLException
+   *           If the data could not be written.
+   */
+  protected void insertData(Connection conn, String table, Vector<PointData> alldata) throws SQLException {
+    PreparedStatement stmt = null;
+    try {
+      stmt = conn.prepareStatement("INSERT IGNORE INTO " + table + " VALUES (?, ?, ?);");
+      Vector<PointData> batch = new Vector<PointData>(MAXCHUNK);
+      Vector<String[]> batchvals = new Vector<String[]>(MAXCHUNK);
+      for (int i = 0; i < alldata.size(); i++) {
+        PointData data = alldata.get(i);
+        // Get a string representation of the object type and value
+        String[] typeval;
         try {
-          // Build the full SQL command, adding each new row
-          String cmd = "INSERT IGNORE INTO " + table + " VALUES";
-
-          for (int i = start; i < (start + MAXCHUNK) && i < alldata.size(); i++) {
-            PointData data = (PointData) alldata.get(i);
-
-            // Get a string representation of the object type and value
-            String typeval = null;
-            try {
-              typeval = getStringForObject(data.getData());
-            } catch (IllegalArgumentException e) {
-              // Can't save this object
-              itsLogger.warn("insertData: " + e);
-              continue;
-            }
-
-            if (i != start) {
-              cmd = cmd + ",";
-            }
-            cmd = cmd + " (" + data.getTimestamp().getValue() + ", " + typeval + ")";
-          }
-          cmd = cmd + ";";
-          synchronized (itsConnection) {
-            stmt = itsConnection.createStatement();
-            stmt.execute(cmd);
-            stmt.close();
-          }
-        } catch (Exception e) {
+          typeval = getStringsForObject(data.getData());
+        } catch (IllegalArgumentException e) {
+          // Can't save this object
           itsLogger.warn("insertData: " + e);
-          checkConnection();
-          createTable(table);
-          try {
-            if (stmt != null) {
-              stmt.close();
-            }
-          } catch (Exception g) {
+          continue;
+        }
+        stmt.setLong(1, data.getTimestamp().getValue());
+        stmt.setString(2, typeval[0]);
+        stmt.setString(3, typeval[1]);
+        stmt.addBatch();
+        batch.add(data);
+        batchvals.add(typeval);
+        if (batch.size() == MAXCHUNK) {
+          executeBatch(stmt, table, batch, batchvals);
+        }
+      }
+      if (batch.size() > 0) {
+        executeBatch(stmt, table, batch, batchvals);
+      }
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  /**
+   * Execute the batched inserts, falling back to inserting the records one at a time if the batch is rejected. The batch lists are
+   * cleared once the records have been written or skipped.
+   * 
+   * @param stmt
+   *          Prepared insert statement holding the batch.
+   * @param table
+   *          Name of the table for the point.
+   * @param batch
+   *          The records in the batch.
+   * @param batchvals
+   *          The type and value strings for each record in the batch.
+   * @throws SQLException
+   *           If the connection failed or the table doesn't exist.
+   */
+  private void executeBatch(PreparedStatement stmt, String table, Vector<PointData> batch, Vector<String[]> batchvals) throws SQLException {
+    try {
+      stmt.executeBatch();
+    } catch (SQLException e) {
+      if (isConnectionError(e) || isMissingTable(e)) {
+        throw e;
+      }
+      stmt.clearBatch();
+      for (int i = 0; i < batch.size(); i++) {
+        try {
+          stmt.setLong(1, batch.get(i).getTimestamp().getValue());
+          stmt.setString(2, batchvals.get(i)[0]);
+          stmt.setString(3, batchvals.get(i)[1]);
+          stmt.executeUpdate();
+        } catch (SQLException e2) {
+          if (isConnectionError(e2) || isMissingTable(e2)) {
+            throw e2;
           }
+          itsLogger.warn("insertData: " + table + ": Skipping record " + batch.get(i) + ": " + e2);
         }
-      }      
-      // Finished archiving this data
-      alldata.clear();
+      }
     }
+    batch.clear();
+    batchvals.clear();
   }
 
   /**
@@ -162,46 +372,37 @@ public class PointArchiverMySQL extends PointArchiver {
    * @return Vector containing all data for the point over the time range.
    */
   protected Vector<PointData> extractDeep(PointDescription pm, AbsTime start, AbsTime end) {
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
     try {
-      // Can't do anything if the server is not running
-      if (!checkConnection()) {
-        return null;
-      }
-
-      // Allocate result vector
-      Vector<PointData> res = new Vector<PointData>(1000, 8000);
-      // Get the table name for this point
-      String table = getTableName(pm);
-
+      conn = itsReadPool.take();
       // Build and execute the data request
-      String cmd = "SELECT * from " + table + " WHERE ts>=" + start.getValue() + " AND ts<=" + end.getValue() + " ORDER BY ts " + "LIMIT " + MAXNUMRECORDS
-          + ";";
-
-      Statement stmt;
-      ResultSet rs;
-      synchronized (itsConnection) {
-        stmt = itsConnection.createStatement();
-        stmt.execute(cmd);
-        rs = stmt.getResultSet();
-      }
+      stmt = conn.itsConnection.prepareStatement("SELECT * from " + getTableName(pm) + " WHERE ts>=? AND ts<=? ORDER BY ts LIMIT ?;");
+      stmt.setLong(1, start.getValue());
+      stmt.setLong(2, end.getValue());
+      stmt.setInt(3, MAXNUMRECORDS);
+      ResultSet rs = stmt.executeQuery();
 
-      // Ensure we got some data
-      if (!rs.first()) {
-        return null;
-      }
-      do {
+      Vector<PointData> res = new Vector<PointData>(1000, 8000);
+      while (rs.next()) {
         PointData pd = getPointDataForRow(pm, rs);
         if (pd != null) {
           res.add(pd);
         }
-      } while (rs.next());
-
-      stmt.close();
-      // Finished - return the extracted data
+      }
+      // Ensure we got some data
+      if (res.isEmpty()) {
+        return null;
+      }
       return res;
-    } catch (Exception e) {
+    } catch (SQLException e) {
       itsLogger.warn("extract: " + e);
+      error = e;
       return null;
+    } finally {
+      closeStatement(stmt);
+      itsReadPool.release(conn, error);
     }
   }
 
@@ -215,39 +416,7 @@ public class PointArchiverMySQL extends PointArchiver {
    * @return PointData for preceding update or null if none found.
    */
   protected PointData getPrecedingDeep(PointDescription pm, AbsTime ts) {
-    try {
-      // Can't do anything if the server is not running
-      if (!checkConnection()) {
-        return null;
-      }
-
-      // Get the table name for this point
-      String table = getTableName(pm);
-
-      // Build and execute the data request
-      String cmd = "SELECT * from " + table + " WHERE ts<=" + ts.getValue() + " ORDER BY ts DESC LIMIT 1;";
-
-      Statement stmt;
-      ResultSet rs;
-      synchronized (itsConnection) {
-        stmt = itsConnection.createStatement();
-        stmt.execute(cmd);
-        rs = stmt.getResultSet();
-      }
-
-      // Ensure we got some data
-      if (!rs.first()) {
-        return null;
-      }
-      PointData res = getPointDataForRow(pm, rs);
-
-      stmt.close();
-      // Finished - return the extracted data
-      return res;
-    } catch (Exception e) {
-      itsLogger.warn("getPreceding: " + e);
-      return null;
-    }
+    return getSingle(pm, "SELECT * from " + getTableName(pm) + " WHERE ts<=? ORDER BY ts DESC LIMIT 1;", ts);
   }
 
   /**
@@ -260,38 +429,41 @@ public class PointArchiverMySQL extends PointArchiver {
    * @return PointData for following update or null if none found.
    */
   protected PointData getFollowingDeep(PointDescription pm, AbsTime ts) {
-    try {
-      // Can't do anything if the server is not running
-      if (!checkConnection()) {
-        return null;
-      }
-
-      // Get the table name for this point
-      String table = getTableName(pm);
-
-      // Build and execute the data request
-      String cmd = "SELECT * from " + table + " WHERE ts>=" + ts.getValue() + " ORDER BY TS LIMIT 1;";
-
-      ResultSet rs;
-      Statement stmt;
-      synchronized (itsConnection) {
-        stmt = itsConnection.createStatement();
-        stmt.execute(cmd);
-        rs = stmt.getResultSet();
-      }
+    return getSingle(pm, "SELECT * from " + getTableName(pm) + " WHERE ts>=? ORDER BY ts LIMIT 1;", ts);
+  }
 
+  /**
+   * Execute a query which takes a single timestamp argument and return the first resulting record.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param cmd
+   *          The SQL query.
+   * @param ts
+   *          Timestamp argument for the query.
+   * @return PointData for the first record or null if none found.
+   */
+  private PointData getSingle(PointDescription pm, String cmd, AbsTime ts) {
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
+    try {
+      conn = itsReadPool.take();
+      stmt = conn.itsConnection.prepareStatement(cmd);
+      stmt.setLong(1, ts.getValue());
+      ResultSet rs = stmt.executeQuery();
       // Ensure we got some data
-      if (!rs.first()) {
+      if (!rs.next()) {
         return null;
       }
-      PointData res = getPointDataForRow(pm, rs);
-
-      stmt.close();
-      // Finished - return the extracted data
-      return res;
-    } catch (Exception e) {
-      itsLogger.warn("getFollowing: " + e);
+      return getPointDataForRow(pm, rs);
+    } catch (SQLException e) {
+      itsLogger.warn("getSingle: " + e);
+      error = e;
       return null;
+    } finally {
+      closeStatement(stmt);
+      itsReadPool.release(conn, error);
     }
   }
 
@@ -321,67 +493,55 @@ public class PointArchiverMySQL extends PointArchiver {
   /**
    * Create the specified table if it doesn't already exist.
    * 
+   * @param conn
+   *          Connection to use.
    * @param table
    *          Name of the table to create.
    */
-  protected void createTable(String table) {
+  protected void createTable(Connection conn, String table) {
     Statement stmt = null;
     try {
       itsLogger.debug("createTable: Creating " + table);
-      synchronized (itsConnection) {
-        stmt = itsConnection.createStatement();
-        stmt.execute("CREATE table if not exists " + table + "(ts BIGINT, type CHAR(4), val VARCHAR(255), " + "PRIMARY KEY(`ts`)) ENGINE = MyISAM;");
-        stmt.close();
-      }
+      stmt = conn.createStatement();
+      stmt.execute("CREATE table if not exists " + table + "(ts BIGINT, type CHAR(4), val VARCHAR(255), " + "PRIMARY KEY(`ts`)) ENGINE = MyISAM;");
     } catch (Exception e) {
       itsLogger.error("createTable: " + e);
-      try {
-        if (stmt != null) {
-          stmt.close();
-        }
-      } catch (Exception g) {
-      }
+    } finally {
+      closeStatement(stmt);
     }
   }
 
-  /**
-   * Check if we are connected to the server and reconnect if required.
-   * 
-   * @return True if connected (or reconnected). False if not connected.
-   */
-  protected boolean checkConnection() {
-    boolean res = false;
-    Statement stmt = null;
+  /** Close the statement, ignoring any errors. */
+  protected static void closeStatement(Statement stmt) {
     try {
-      // Do a minimal query to see if connection is valid
-      // From Java 1.6 we could use itsConnection.isValid(1)
-      if (itsConnection != null) {
-        try {
-          synchronized (itsConnection) {
-            stmt = itsConnection.createStatement();
-            stmt.execute("select 1;");
-            stmt.close();
-          }
-        } catch (Exception f) {
-          itsConnection = null;
-          try {
-            if (stmt != null) {
-              stmt.close();
-            }
-          } catch (Exception g) {
-          }
-        }
-      }
-      if (itsConnection == null) {
-        itsConnection = DriverManager.getConnection(itsURL);
-      } else {
-        res = true;
+      if (stmt != null) {
+        stmt.close();
       }
     } catch (Exception e) {
-      itsLogger.warn("checkConnection: " + e);
-      itsConnection = null;
     }
-    return res;
+  }
+
+  /**
+   * Check if the exception indicates that the connection to the server has failed, as opposed to a problem with the query.
+   * 
+   * @param e
+   *          The exception to check.
+   * @return True if the connection should be discarded.
+   */
+  protected static boolean isConnectionError(SQLException e) {
+    String state = e.getSQLState();
+    return state != null && state.startsWith("08");
+  }
+
+  /**
+   * Check if the exception indicates that the table being accessed doesn't exist.
+   * 
+   * @param e
+   *          The exception to check.
+   * @return True if the table needs to be created.
+   */
+  protected static boolean isMissingTable(SQLException e) {
+    return e.getErrorCode() == 1146 || "42S02".equals(e.getSQLState());
   }
 
   /**
@@ -401,51 +561,63 @@ public class PointArchiverMySQL extends PointArchiver {
   }
 
   /**
-   * Get a string representation of the Object. The string includes a type specifier as well as an ASCII representation of the data.
-   * These fields are separated by tabs. The <i>getObjectForString</i> method is able to decode this representation and recover the
-   * original Object.
+   * Get a string representation of the Object. The result contains a type specifier and an ASCII representation of the data which
+   * are bound to the <i>type</i> and <i>val</i> columns. The <i>getObjectForString</i> method is able to decode this representation
+   * and recover the original Object.
    * <P>
    * <i>null</i> objects are properly handled.
    * 
    * @param data
    *          The Object to encode into ASCII text.
-   * @return An ASCII String representation of the data.
+   * @return Array containing the type and value strings, which will both be null for a null Object.
    */
-  protected String getStringForObject(Object data) throws IllegalArgumentException {
-    String res = null;
+  protected String[] getStringsForObject(Object data) throws IllegalArgumentException {
+    String type;
+    String val;
     if (data == null) {
-      res = "NULL, NULL";
+      type = null;
+      val = null;
     } else if (data instanceof Double) {
-      res = "'dbl', '" + ((Double) data).doubleValue() + "'";
+      type = "dbl";
+      val = "" + ((Double) data).doubleValue();
     } else if (data instanceof Float) {
-      res = "'flt', '" + ((Float) data).floatValue() + "'";
+      type = "flt";
+      val = "" + ((Float) data).floatValue();
     } else if (data instanceof Integer) {
-      res = "'int', '" + ((Integer) data).intValue() + "'";
+      type = "int";
+      val = "" + ((Integer) data).intValue();
     } else if (data instanceof String) {
-      res = "'str', '" + (String) data + "'";
+      type = "str";
+      val = (String) data;
     } else if (data instanceof HourAngle) {
-      res = "'hr', '" + ((Angle) data).getValue() + "'";
+      type = "hr";
+      val = "" + ((Angle) data).getValue();
     } else if (data instanceof Angle) {
-      res = "'ang', '" + ((Angle) data).getValue() + "'";
+      type = "ang";
+      val = "" + ((Angle) data).getValue();
     } else if (data instanceof Boolean) {
-      res = "'bool', '" + ((Boolean) data).booleanValue() + "'";
+      type = "bool";
+      val = "" + ((Boolean) data).booleanValue();
     } else if (data instanceof Short) {
-      res = "'shrt', '" + ((Short) data).shortValue() + "'";
+      type = "shrt";
+      val = "" + ((Short) data).shortValue();
     } else if (data instanceof Long) {
-      res = "'long', '" + ((Long) data).longValue() + "'";
+      type = "long";
+      val = "" + ((Long) data).longValue();
     } else if (data instanceof AbsTime) {
-      res = "'abst', '" + ((AbsTime) data).toString(AbsTime.Format.HEX_BAT) + "'";
+      type = "abst";
+      val = ((AbsTime) data).toString(AbsTime.Format.HEX_BAT);
     } else if (data instanceof RelTime) {
-      res = "'relt', '" + ((RelTime) data).toString(RelTime.Format.DECIMAL_BAT) + "'";
-      // } else if (data instanceof BigInteger) {
-      // res = "'big', '" + ((BigInteger)data).toString() + "'";
+      type = "relt";
+      val = ((RelTime) data).toString(RelTime.Format.DECIMAL_BAT);
     } else if (data instanceof EnumItem) {
-      res = "'enum', '" + ((EnumItem) data).toString() + "'";
+      type = "enum";
+      val = ((EnumItem) data).toString();
     } else {
       // Unhandled data type
       throw new IllegalArgumentException("Unsupported Type: " + data.getClass());
     }
-    return res;
+    return new String[] { type, val };
   }
 
   /**
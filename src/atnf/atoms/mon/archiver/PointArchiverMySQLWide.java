@@ -0,0 +1,750 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.archiver;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import atnf.atoms.mon.*;
+import atnf.atoms.mon.util.*;
+import atnf.atoms.util.*;
+import atnf.atoms.time.*;
+
+/**
+ * MySQL archiver which stores the data for all points in a single table, rather than one table per point.
+ * 
+ * <P>
+ * Each point is assigned a numeric ID in the <i>point_ids</i> table. Data is stored in the <i>point_data</i> table, keyed by the
+ * point ID and timestamp, with separate typed columns for floating point, integer and string values. The data table is partitioned
+ * by timestamp, with the length of each partition set by the <i>MySQLPartitionDays</i> configuration option. Partitions are
+ * created ahead of time and whole partitions are dropped once they are older than the longest archive longevity of any point, so
+ * purging old data does not require large deletes.
+ * 
+ * <P>
+ * Select this archiver with <tt>Archiver MySQLWide</tt>. The connection pools are configured in the same way as for the per-point
+ * table MySQL archiver.
+ * 
+ * @author David Brodrick
+ */
+public class PointArchiverMySQLWide extends PointArchiverMySQL {
+  /** Name of the table which maps point names to IDs. */
+  private static final String ID_TABLE = "point_ids";
+
+  /** Name of the table which holds the data. */
+  private static final String DATA_TABLE = "point_data";
+
+  /** Number of partitions to create beyond the current one. */
+  private static final int PARTITIONS_AHEAD = 2;
+
+  /** Minimum interval (ms) between checks of the partition layout. */
+  private static final long MAINTENANCE_INTERVAL = 3600000;
+
+  /** Length of each partition (us). */
+  private long itsPartitionLength = 86400000000l;
+
+  /** Upper bound of the most recent partition, data newer than this means more partitions are needed. */
+  private volatile long itsPartitionLimit = Long.MIN_VALUE;
+
+  /** Time (ms) the partition layout was last checked. */
+  private long itsLastMaintenance = 0;
+
+  /** Lock for partition maintenance. */
+  private Object itsPartitionLock = new Object();
+
+  /** Cache of point IDs, keyed by full point name. */
+  private ConcurrentHashMap<String, Integer> itsPointIDs = new ConcurrentHashMap<String, Integer>(1000);
+
+  /** Constructor. */
+  public PointArchiverMySQLWide() {
+    super();
+
+    try {
+      int days = Integer.parseInt(MonitorConfig.getProperty("MySQLPartitionDays", "1"));
+      if (days > 0) {
+        itsPartitionLength = days * 86400000000l;
+      }
+    } catch (Exception e) {
+      itsLogger.error("Error parsing configuration option \"MySQLPartitionDays\"");
+    }
+
+    // Ensure the tables exist and the partitions are ready for new data
+    PooledConnection conn = null;
+    SQLException error = null;
+    try {
+      conn = itsWritePool.take();
+      createTables(conn.itsConnection);
+      maintainPartitions(conn.itsConnection);
+    } catch (SQLException e) {
+      itsLogger.error("PointArchiverMySQLWide Constructor: " + e.getMessage());
+      error = e;
+    } finally {
+      itsWritePool.release(conn, error);
+    }
+  }
+
+  /**
+   * Purge all data for the given point that is older than the specified age in days. Partitions which are entirely older than the
+   * longest longevity of any point are dropped first, then any remaining old records for the point are deleted.
+   * 
+   * @param point
+   *          The point whos data we wish to purge.
+   */
+  protected void purgeOldData(PointDescription point) {
+    if (point.getArchiveLongevity() <= 0)
+      return;
+
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
+    try {
+      conn = itsWritePool.take();
+      if (System.currentTimeMillis() - itsLastMaintenance > MAINTENANCE_INTERVAL) {
+        maintainPartitions(conn.itsConnection);
+      }
+
+      Integer id = getPointID(conn.itsConnection, point, false);
+      if (id == null) {
+        // Point has never been archived
+        return;
+      }
+      long purgetime = (new AbsTime()).getValue() - point.getArchiveLongevity() * 86400000000l;
+      stmt = conn.itsConnection.prepareStatement("DELETE from " + DATA_TABLE + " WHERE point_id=? AND ts<?;");
+      stmt.setInt(1, id.intValue());
+      stmt.setLong(2, purgetime);
+      stmt.execute();
+    } catch (SQLException e) {
+      itsLogger.warn("purgeOldData: " + e);
+      error = e;
+    } finally {
+      closeStatement(stmt);
+      itsWritePool.release(conn, error);
+    }
+  }
+
+  /**
+   * Write the data for a point to the data table, creating the tables if required.
+   * 
+   * @param conn
+   *          Connection to write the data to.
+   * @param pm
+   *          The point whos data we wish to archive.
+   * @param alldata
+   *          The data to be written.
+   * @throws SQLException
+   *           If the data could not be written.
+   */
+  protected void writeData(Connection conn, PointDescription pm, Vector<PointData> alldata) throws SQLException {
+    if (alldata.isEmpty()) {
+      return;
+    }
+    if (alldata.lastElement().getTimestamp().getValue() >= itsPartitionLimit
+        && System.currentTimeMillis() - itsLastMaintenance > MAINTENANCE_INTERVAL / 60) {
+      // Need to create partitions for the new data
+      maintainPartitions(conn);
+    }
+    try {
+      insertData(conn, getPointID(conn, pm, true), alldata);
+    } catch (SQLException e) {
+      if (!isMissingTable(e)) {
+        throw e;
+      }
+      createTables(conn);
+      insertData(conn, getPointID(conn, pm, true), alldata);
+    }
+  }
+
+  /**
+   * Insert the data into the data table using batched prepared statements.
+   * 
+   * @param conn
+   *          Connection to write the data to.
+   * @param id
+   *          ID of the point.
+   * @param alldata
+   *          The data to be written.
+   * @throws SQLException
+   *           If the data could not be written.
+   */
+  protected void insertData(Connection conn, Integer id, Vector<PointData> alldata) throws SQLException {
+    if (id == null) {
+      throw new SQLException("No ID could be assigned to the point");
+    }
+    PreparedStatement stmt = null;
+    try {
+      stmt = conn.prepareStatement("INSERT IGNORE INTO " + DATA_TABLE + " (point_id, ts, type, dval, lval, sval) VALUES (?, ?, ?, ?, ?, ?);");
+      int batchsize = 0;
+      for (int i = 0; i < alldata.size(); i++) {
+        PointData data = alldata.get(i);
+        stmt.setInt(1, id.intValue());
+        stmt.setLong(2, data.getTimestamp().getValue());
+        try {
+          bindValue(stmt, 3, data.getData());
+        } catch (IllegalArgumentException e) {
+          // Can't save this object
+          itsLogger.warn("insertData: " + e);
+          continue;
+        }
+        stmt.addBatch();
+        batchsize++;
+        if (batchsize == MAXCHUNK) {
+          stmt.executeBatch();
+          batchsize = 0;
+        }
+      }
+      if (batchsize > 0) {
+        stmt.executeBatch();
+      }
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  /**
+   * Extract data from the archive.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @return Vector containing all data for the point over the time range.
+   */
+  protected Vector<PointData> extractDeep(PointDescription pm, AbsTime start, AbsTime end) {
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
+    try {
+      conn = itsReadPool.take();
+      Integer id = getPointID(conn.itsConnection, pm, false);
+      if (id == null) {
+        return null;
+      }
+      stmt = conn.itsConnection.prepareStatement("SELECT ts, type, dval, lval, sval from " + DATA_TABLE
+          + " WHERE point_id=? AND ts>=? AND ts<=? ORDER BY ts LIMIT ?;");
+      stmt.setInt(1, id.intValue());
+      stmt.setLong(2, start.getValue());
+      stmt.setLong(3, end.getValue());
+      stmt.setInt(4, MAXNUMRECORDS);
+      ResultSet rs = stmt.executeQuery();
+
+      Vector<PointData> res = new Vector<PointData>(1000, 8000);
+      while (rs.next()) {
+        PointData pd = getPointDataForRow(pm, rs);
+        if (pd != null) {
+          res.add(pd);
+        }
+      }
+      // Ensure we got some data
+      if (res.isEmpty()) {
+        return null;
+      }
+      return res;
+    } catch (SQLException e) {
+      itsLogger.warn("extract: " + e);
+      error = e;
+      return null;
+    } finally {
+      closeStatement(stmt);
+      itsReadPool.release(conn, error);
+    }
+  }
+
+  /**
+   * Extract data for many points from the archive with a single query per block of points. Data which is still waiting to be
+   * written is merged into the results in the same way as for the single point <tt>extract</tt> method.
+   * 
+   * @param points
+   *          The points to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @return Table mapping each point to its data. Points with no data over the time range are not included.
+   */
+  public Hashtable<PointDescription, Vector<PointData>> extract(Vector<PointDescription> points, AbsTime start, AbsTime end) {
+    Hashtable<PointDescription, Vector<PointData>> res = new Hashtable<PointDescription, Vector<PointData>>(points.size());
+    PooledConnection conn = null;
+    SQLException error = null;
+    try {
+      conn = itsReadPool.take();
+      for (int first = 0; first < points.size(); first += MAXCHUNK) {
+        int last = Math.min(first + MAXCHUNK, points.size());
+        extractBlock(conn.itsConnection, points.subList(first, last), start, end, res);
+      }
+    } catch (SQLException e) {
+      itsLogger.warn("extract: " + e);
+      error = e;
+    } finally {
+      itsReadPool.release(conn, error);
+    }
+
+    // Append any data which has not yet been written
+    for (int i = 0; i < points.size(); i++) {
+      PointDescription pm = points.get(i);
+      Vector<PointData> buffer = itsBuffer.get(pm);
+      if (buffer == null) {
+        continue;
+      }
+      Vector<PointData> thisres = res.get(pm);
+      synchronized (buffer) {
+        for (int j = 0; j < buffer.size(); j++) {
+          PointData pd = buffer.get(j);
+          AbsTime ts = pd.getTimestamp();
+          if (ts.isBefore(start) || (thisres != null && !ts.isAfter(thisres.lastElement().getTimestamp()))) {
+            continue;
+          }
+          if (ts.isAfter(end)) {
+            break;
+          }
+          if (thisres == null) {
+            thisres = new Vector<PointData>(buffer.size());
+            res.put(pm, thisres);
+          }
+          if (thisres.size() >= MAXNUMRECORDS) {
+            break;
+          }
+          thisres.add(pd);
+        }
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Extract data for a block of points with a single query.
+   * 
+   * @param conn
+   *          Connection to query.
+   * @param points
+   *          The points to extract data for.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @param res
+   *          Table to add the data for each point to.
+   * @throws SQLException
+   *           If the query failed.
+   */
+  private void extractBlock(Connection conn, List<PointDescription> points, AbsTime start, AbsTime end,
+      Hashtable<PointDescription, Vector<PointData>> res) throws SQLException {
+    // Find the ID for each point which has been archived
+    HashMap<Integer, PointDescription> ids = new HashMap<Integer, PointDescription>(points.size());
+    for (int i = 0; i < points.size(); i++) {
+      Integer id = getPointID(conn, points.get(i), false);
+      if (id != null) {
+        ids.put(id, points.get(i));
+      }
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    StringBuffer cmd = new StringBuffer("SELECT point_id, ts, type, dval, lval, sval from " + DATA_TABLE + " WHERE point_id IN (");
+    for (int i = 0; i < ids.size(); i++) {
+      if (i != 0) {
+        cmd.append(",");
+      }
+      cmd.append("?");
+    }
+    cmd.append(") AND ts>=? AND ts<=? ORDER BY point_id, ts;");
+
+    PreparedStatement stmt = null;
+    try {
+      stmt = conn.prepareStatement(cmd.toString());
+      int col = 1;
+      Iterator<Integer> i = ids.keySet().iterator();
+      while (i.hasNext()) {
+        stmt.setInt(col++, i.next().intValue());
+      }
+      stmt.setLong(col++, start.getValue());
+      stmt.setLong(col, end.getValue());
+      ResultSet rs = stmt.executeQuery();
+      while (rs.next()) {
+        PointDescription pm = ids.get(new Integer(rs.getInt("point_id")));
+        Vector<PointData> thisres = res.get(pm);
+        if (thisres == null) {
+          thisres = new Vector<PointData>(1000, 8000);
+          res.put(pm, thisres);
+        } else if (thisres.size() >= MAXNUMRECORDS) {
+          // Max size limit to prevent server bogging down
+          continue;
+        }
+        PointData pd = getPointDataForRow(pm, rs);
+        if (pd != null) {
+          thisres.add(pd);
+        }
+      }
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  /**
+   * Return the last update which precedes the specified time. We interpret 'precedes' to mean data_time<=req_time.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param ts
+   *          Find data preceding this timestamp.
+   * @return PointData for preceding update or null if none found.
+   */
+  protected PointData getPrecedingDeep(PointDescription pm, AbsTime ts) {
+    return getSingle(pm, "SELECT ts, type, dval, lval, sval from " + DATA_TABLE + " WHERE point_id=? AND ts<=? ORDER BY ts DESC LIMIT 1;", ts);
+  }
+
+  /**
+   * Return the first update which follows the specified time. We interpret 'follows' to mean data_time>=req_time.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param ts
+   *          Find data following this timestamp.
+   * @return PointData for following update or null if none found.
+   */
+  protected PointData getFollowingDeep(PointDescription pm, AbsTime ts) {
+    return getSingle(pm, "SELECT ts, type, dval, lval, sval from " + DATA_TABLE + " WHERE point_id=? AND ts>=? ORDER BY ts LIMIT 1;", ts);
+  }
+
+  /**
+   * Execute a query which takes the point ID and a single timestamp argument and return the first resulting record.
+   * 
+   * @param pm
+   *          Point to extract data for.
+   * @param cmd
+   *          The SQL query.
+   * @param ts
+   *          Timestamp argument for the query.
+   * @return PointData for the first record or null if none found.
+   */
+  private PointData getSingle(PointDescription pm, String cmd, AbsTime ts) {
+    PooledConnection conn = null;
+    SQLException error = null;
+    PreparedStatement stmt = null;
+    try {
+      conn = itsReadPool.take();
+      Integer id = getPointID(conn.itsConnection, pm, false);
+      if (id == null) {
+        return null;
+      }
+      stmt = conn.itsConnection.prepareStatement(cmd);
+      stmt.setInt(1, id.intValue());
+      stmt.setLong(2, ts.getValue());
+      ResultSet rs = stmt.executeQuery();
+      // Ensure we got some data
+      if (!rs.next()) {
+        return null;
+      }
+      return getPointDataForRow(pm, rs);
+    } catch (SQLException e) {
+      itsLogger.warn("getSingle: " + e);
+      error = e;
+      return null;
+    } finally {
+      closeStatement(stmt);
+      itsReadPool.release(conn, error);
+    }
+  }
+
+  /**
+   * Build a PointData from the database row.
+   * 
+   * @param pm
+   *          Point the data belongs to.
+   * @param rs
+   *          The database record/ResultSet.
+   * @return PointData representing the data. null if error.
+   */
+  protected PointData getPointDataForRow(PointDescription pm, ResultSet rs) {
+    PointData res = null;
+    try {
+      AbsTime ts = AbsTime.factory(rs.getLong("ts"));
+      String type = rs.getString("type");
+      Object oval = null;
+      if (type == null) {
+        oval = null;
+      } else if (type.equals("dbl")) {
+        oval = new Double(rs.getDouble("dval"));
+      } else if (type.equals("flt")) {
+        oval = new Float((float) rs.getDouble("dval"));
+      } else if (type.equals("ang")) {
+        oval = Angle.factory(rs.getDouble("dval"));
+      } else if (type.equals("hr")) {
+        oval = new HourAngle(rs.getDouble("dval"));
+      } else if (type.equals("int")) {
+        oval = new Integer((int) rs.getLong("lval"));
+      } else if (type.equals("shrt")) {
+        oval = new Short((short) rs.getLong("lval"));
+      } else if (type.equals("long")) {
+        oval = new Long(rs.getLong("lval"));
+      } else if (type.equals("bool")) {
+        oval = new Boolean(rs.getLong("lval") != 0);
+      } else if (type.equals("abst")) {
+        oval = AbsTime.factory(rs.getLong("lval"));
+      } else if (type.equals("relt")) {
+        oval = RelTime.factory(rs.getLong("lval"));
+      } else {
+        // String based types
+        oval = getObjectForString(type, rs.getString("sval"));
+      }
+      res = new PointData(pm.getFullName(), ts, oval);
+    } catch (Exception e) {
+      res = null;
+    }
+    return res;
+  }
+
+  /**
+   * Bind the type and value of the Object to the type, dval, lval and sval parameters of the statement.
+   * 
+   * @param stmt
+   *          The statement to bind the parameters of.
+   * @param col
+   *          Index of the type parameter, the value parameters must follow it.
+   * @param data
+   *          The Object to bind.
+   * @throws IllegalArgumentException
+   *           If the Object is of an unsupported type.
+   */
+  protected void bindValue(PreparedStatement stmt, int col, Object data) throws IllegalArgumentException, SQLException {
+    String type;
+    Double dval = null;
+    Long lval = null;
+    String sval = null;
+    if (data == null) {
+      type = null;
+    } else if (data instanceof Double) {
+      type = "dbl";
+      dval = (Double) data;
+    } else if (data instanceof Float) {
+      type = "flt";
+      dval = new Double(((Float) data).doubleValue());
+    } else if (data instanceof HourAngle) {
+      type = "hr";
+      dval = new Double(((Angle) data).getValue());
+    } else if (data instanceof Angle) {
+      type = "ang";
+      dval = new Double(((Angle) data).getValue());
+    } else if (data instanceof Integer) {
+      type = "int";
+      lval = new Long(((Integer) data).longValue());
+    } else if (data instanceof Short) {
+      type = "shrt";
+      lval = new Long(((Short) data).longValue());
+    } else if (data instanceof Long) {
+      type = "long";
+      lval = (Long) data;
+    } else if (data instanceof Boolean) {
+      type = "bool";
+      lval = new Long(((Boolean) data).booleanValue() ? 1 : 0);
+    } else if (data instanceof AbsTime) {
+      type = "abst";
+      lval = new Long(((AbsTime) data).getValue());
+    } else if (data instanceof RelTime) {
+      type = "relt";
+      lval = new Long(((RelTime) data).getValue());
+    } else if (data instanceof String) {
+      type = "str";
+      sval = (String) data;
+    } else if (data instanceof EnumItem) {
+      type = "enum";
+      sval = ((EnumItem) data).toString();
+    } else {
+      // Unhandled data type
+      throw new IllegalArgumentException("Unsupported Type: " + data.getClass());
+    }
+
+    if (type == null) {
+      stmt.setNull(col, Types.CHAR);
+    } else {
+      stmt.setString(col, type);
+    }
+    if (dval == null) {
+      stmt.setNull(col + 1, Types.DOUBLE);
+    } else {
+      stmt.setDouble(col + 1, dval.doubleValue());
+    }
+    if (lval == null) {
+      stmt.setNull(col + 2, Types.BIGINT);
+    } else {
+      stmt.setLong(col + 2, lval.longValue());
+    }
+    if (sval == null) {
+      stmt.setNull(col + 3, Types.VARCHAR);
+    } else {
+      stmt.setString(col + 3, sval);
+    }
+  }
+
+  /**
+   * Get the ID of the point, optionally assigning a new ID if the point has not been seen before.
+   * 
+   * @param conn
+   *          Connection to use.
+   * @param pm
+   *          The point to get the ID for.
+   * @param create
+   *          Whether to assign a new ID if none exists.
+   * @return The ID, or null if the point has no ID and <i>create</i> was false.
+   * @throws SQLException
+   *           If the ID table could not be accessed.
+   */
+  protected Integer getPointID(Connection conn, PointDescription pm, boolean create) throws SQLException {
+    String name = pm.getFullName();
+    Integer res = itsPointIDs.get(name);
+    if (res != null) {
+      return res;
+    }
+
+    PreparedStatement stmt = null;
+    try {
+      if (create) {
+        stmt = conn.prepareStatement("INSERT IGNORE INTO " + ID_TABLE + " (name) VALUES (?);");
+        stmt.setString(1, name);
+        stmt.execute();
+        stmt.close();
+      }
+      stmt = conn.prepareStatement("SELECT id from " + ID_TABLE + " WHERE name=?;");
+      stmt.setString(1, name);
+      ResultSet rs = stmt.executeQuery();
+      if (rs.next()) {
+        res = new Integer(rs.getInt(1));
+        itsPointIDs.put(name, res);
+      }
+    } finally {
+      closeStatement(stmt);
+    }
+    return res;
+  }
+
+  /**
+   * Create the ID and data tables if they don't already exist.
+   * 
+   * @param conn
+   *          Connection to use.
+   */
+  protected void createTables(Connection conn) {
+    Statement stmt = null;
+    try {
+      itsLogger.debug("createTables: Creating " + ID_TABLE + " and " + DATA_TABLE);
+      stmt = conn.createStatement();
+      stmt.execute("CREATE table if not exists " + ID_TABLE + "(id INT UNSIGNED NOT NULL AUTO_INCREMENT, name VARCHAR(255) NOT NULL, "
+          + "PRIMARY KEY(`id`), UNIQUE KEY(`name`)) ENGINE = InnoDB;");
+      long first = getPartitionStart((new AbsTime()).getValue());
+      stmt.execute("CREATE table if not exists " + DATA_TABLE + "(point_id INT UNSIGNED NOT NULL, ts BIGINT NOT NULL, type CHAR(4), "
+          + "dval DOUBLE, lval BIGINT, sval VARCHAR(255), PRIMARY KEY(`point_id`, `ts`)) ENGINE = InnoDB " + "PARTITION BY RANGE (ts) (PARTITION p"
+          + first + " VALUES LESS THAN (" + first + "), PARTITION pmax VALUES LESS THAN MAXVALUE);");
+    } catch (Exception e) {
+      itsLogger.error("createTables: " + e);
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  /**
+   * Ensure partitions exist for the current and next few periods, and drop any partitions which are wholly older than the longest
+   * archive longevity of any point.
+   * 
+   * @param conn
+   *          Connection to use.
+   */
+  protected void maintainPartitions(Connection conn) {
+    synchronized (itsPartitionLock) {
+      itsLastMaintenance = System.currentTimeMillis();
+      Statement stmt = null;
+      try {
+        // Find the upper bound of each of the existing partitions
+        Vector<Long> bounds = new Vector<Long>();
+        stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT PARTITION_DESCRIPTION from information_schema.PARTITIONS "
+            + "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='" + DATA_TABLE + "' ORDER BY PARTITION_ORDINAL_POSITION;");
+        while (rs.next()) {
+          String desc = rs.getString(1);
+          if (desc != null && !desc.equals("MAXVALUE")) {
+            bounds.add(new Long(desc));
+          }
+        }
+        if (bounds.isEmpty()) {
+          itsLogger.warn("maintainPartitions: " + DATA_TABLE + " is not partitioned");
+          itsPartitionLimit = Long.MAX_VALUE;
+          return;
+        }
+
+        // Split new partitions off the end of the table
+        long now = (new AbsTime()).getValue();
+        long highest = Math.max(bounds.lastElement().longValue(), getPartitionStart(now));
+        long target = getPartitionStart(now) + (PARTITIONS_AHEAD + 1) * itsPartitionLength;
+        if (bounds.lastElement().longValue() < target) {
+          StringBuffer cmd = new StringBuffer("ALTER TABLE " + DATA_TABLE + " REORGANIZE PARTITION pmax INTO (");
+          while (highest < target) {
+            highest += itsPartitionLength;
+            cmd.append("PARTITION p" + highest + " VALUES LESS THAN (" + highest + "), ");
+          }
+          cmd.append("PARTITION pmax VALUES LESS THAN MAXVALUE);");
+          stmt.execute(cmd.toString());
+          itsLogger.debug("maintainPartitions: Created partitions up to " + AbsTime.factory(highest));
+        }
+        itsPartitionLimit = highest;
+
+        // Drop partitions which only contain data that no point needs any more
+        int longevity = getMaxLongevity();
+        if (longevity > 0) {
+          long cutoff = now - longevity * 86400000000l;
+          StringBuffer cmd = null;
+          // Always keep the most recent partition
+          for (int i = 0; i < bounds.size() - 1 && bounds.get(i).longValue() <= cutoff; i++) {
+            if (cmd == null) {
+              cmd = new StringBuffer("ALTER TABLE " + DATA_TABLE + " DROP PARTITION ");
+            } else {
+              cmd.append(", ");
+            }
+            cmd.append("p" + bounds.get(i));
+          }
+          if (cmd != null) {
+            itsLogger.debug("maintainPartitions: " + cmd);
+            stmt.execute(cmd.toString());
+          }
+        }
+      } catch (Exception e) {
+        itsLogger.warn("maintainPartitions: " + e);
+      } finally {
+        closeStatement(stmt);
+      }
+    }
+  }
+
+  /**
+   * Get the longest archive longevity of all points which use this archiver.
+   * 
+   * @return Longevity in days, or -1 if any point keeps its data indefinitely.
+   */
+  private int getMaxLongevity() {
+    int res = -1;
+    PointDescription[] points = PointDescription.getAllUniquePoints();
+    for (int i = 0; i < points.length; i++) {
+      if (points[i].getArchiver() != this) {
+        continue;
+      }
+      int longevity = points[i].getArchiveLongevity();
+      if (longevity <= 0) {
+        return -1;
+      }
+      if (longevity > res) {
+        res = longevity;
+      }
+    }
+    return res;
+  }
+
+  /** Get the start of the partition period containing the given time. */
+  private long getPartitionStart(long ts) {
+    return ts - (ts % itsPartitionLength);
+  }
+}
@@ -0,0 +1,588 @@
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.archiver;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+import atnf.atoms.mon.*;
+import atnf.atoms.time.*;
+
+/**
+ * Maintains summaries of the archived data for each point over fixed time buckets, for instance one minute, one hour and one day,
+ * so that queries covering a long time range can be answered without reading every raw record.
+ *
+ * <P>
+ * Each bucket records the minimum, maximum, mean, count and first and last values of the data which fell within it. Only points
+ * with numeric values are summarised. Buckets are updated in memory as data is given to the archiver and are written to disk
+ * when the point's data is flushed. Each tier of each point is stored in its own file of fixed size records under a subdirectory
+ * of the rollup directory named for the bucket width in seconds.
+ *
+ * <P>
+ * Data which is older than the last record already summarised for a point is ignored, so data recovered from the write-ahead log
+ * is not counted twice. Buckets which end before a point's <tt>ArchiveLongevity</tt> are removed by <tt>purge</tt>, along with the
+ * raw data.
+ *
+ * @author David Brodrick
+ */
+public class RollupArchive {
+  /** Size in bytes of each record in a rollup file. */
+  private static final int RECORDSIZE = 69;
+
+  /** Logger. */
+  private static Logger theirLogger = Logger.getLogger(RollupArchive.class.getName());
+
+  /** Directory containing the rollup files. */
+  private File itsDir;
+
+  /** Width of the buckets in each tier (us), finest first. */
+  private long[] itsWidths;
+
+  /** Rollup state for each point which has been summarised. */
+  private ConcurrentHashMap<String, PointRollups> itsPoints = new ConcurrentHashMap<String, PointRollups>(1000);
+
+  /** Summary of the data for a point over a single bucket. */
+  public static class Rollup {
+    /** Start time of the bucket. */
+    public long itsStart;
+
+    /** Timestamp of the first record in the bucket. */
+    public long itsFirstTime;
+
+    /** Timestamp of the last record in the bucket. */
+    public long itsLastTime;
+
+    /** Number of records in the bucket. */
+    public int itsCount = 0;
+
+    /** True if any record in the bucket was in an alarm state. */
+    public boolean itsAlarm = false;
+
+    /** Minimum value. */
+    public double itsMin;
+
+    /** Maximum value. */
+    public double itsMax;
+
+    /** Sum of the values. */
+    public double itsSum;
+
+    /** Value of the first record. */
+    public double itsFirst;
+
+    /** Value of the last record. */
+    public double itsLast;
+
+    /** Offset of the record in the rollup file, or -1 if it has not been written yet. */
+    long itsOffset = -1;
+
+    /** True if the bucket has changed since it was last written. */
+    boolean itsDirty = false;
+
+    Rollup(long start) {
+      itsStart = start;
+    }
+
+    /** Get the mean of the values in the bucket. */
+    public double getMean() {
+      return itsSum / itsCount;
+    }
+
+    /** Add a record to the bucket. */
+    void add(long ts, double val, boolean alarm) {
+      if (itsCount == 0) {
+        itsFirstTime = ts;
+        itsFirst = val;
+        itsMin = val;
+        itsMax = val;
+      } else {
+        if (val < itsMin) {
+          itsMin = val;
+        }
+        if (val > itsMax) {
+          itsMax = val;
+        }
+      }
+      itsLastTime = ts;
+      itsLast = val;
+      itsSum += val;
+      itsCount++;
+      itsAlarm |= alarm;
+      itsDirty = true;
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeLong(itsStart);
+      out.writeLong(itsFirstTime);
+      out.writeLong(itsLastTime);
+      out.writeInt(itsCount);
+      out.writeBoolean(itsAlarm);
+      out.writeDouble(itsMin);
+      out.writeDouble(itsMax);
+      out.writeDouble(itsSum);
+      out.writeDouble(itsFirst);
+      out.writeDouble(itsLast);
+    }
+
+    static Rollup read(DataInput in, long offset) throws IOException {
+      Rollup res = new Rollup(in.readLong());
+      res.itsFirstTime = in.readLong();
+      res.itsLastTime = in.readLong();
+      res.itsCount = in.readInt();
+      res.itsAlarm = in.readBoolean();
+      res.itsMin = in.readDouble();
+      res.itsMax = in.readDouble();
+      res.itsSum = in.readDouble();
+      res.itsFirst = in.readDouble();
+      res.itsLast = in.readDouble();
+      res.itsOffset = offset;
+      return res;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param dir
+   *          Directory to hold the rollup files.
+   * @param widths
+   *          Width of the buckets in each tier, in seconds.
+   * @throws IOException
+   *           If the directory could not be created.
+   */
+  public RollupArchive(String dir, int[] widths) throws IOException {
+    itsDir = new File(dir);
+    if (!itsDir.isDirectory() && !itsDir.mkdirs()) {
+      throw new IOException("Could not create rollup directory " + dir);
+    }
+    int[] sorted = widths.clone();
+    Arrays.sort(sorted);
+    itsWidths = new long[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      itsWidths[i] = sorted[i] * 1000000l;
+      File tierdir = new File(itsDir, "" + sorted[i]);
+      if (!tierdir.isDirectory() && !tierdir.mkdirs()) {
+        throw new IOException("Could not create rollup directory " + tierdir);
+      }
+    }
+  }
+
+  /**
+   * Add new data for a point to the in-memory buckets. Data which can't be summarised is ignored.
+   *
+   * @param pm
+   *          The point the data belongs to.
+   * @param data
+   *          The new record.
+   */
+  public void update(PointDescription pm, PointData data) {
+    if (!data.isNumeric()) {
+      return;
+    }
+    PointRollups rollups = getPointRollups(pm.getFullName(), true);
+    rollups.add(data.getTimestamp().getValue(), data.doubleValue(), data.getAlarm());
+  }
+
+  /**
+   * Write any changed buckets for the point to disk.
+   *
+   * @param pm
+   *          The point to write the buckets for.
+   */
+  public void persist(PointDescription pm) {
+    PointRollups rollups = itsPoints.get(pm.getFullName());
+    if (rollups != null) {
+      rollups.persist();
+    }
+  }
+
+  /**
+   * Remove the buckets for a point which end before the cutoff time.
+   *
+   * @param pm
+   *          The point to purge the buckets for.
+   * @param cutoff
+   *          Buckets which end before this time are removed.
+   */
+  public void purge(PointDescription pm, AbsTime cutoff) {
+    PointRollups rollups = getPointRollups(pm.getFullName(), false);
+    if (rollups != null) {
+      rollups.purge(cutoff.getValue());
+    }
+  }
+
+  /**
+   * Select the coarsest tier which still has at least the specified number of buckets over the time range, without having so many
+   * buckets that they couldn't all be returned by one extraction.
+   *
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @param maxsamples
+   *          Number of samples required.
+   * @param maxbuckets
+   *          Limit on the number of buckets which may overlap the time range, which must be more than the number there are.
+   * @return Index of the tier, or -1 if no tier has a suitable number of buckets.
+   */
+  public int getTier(AbsTime start, AbsTime end, int maxsamples, int maxbuckets) {
+    long span = end.getValue() - start.getValue();
+    for (int i = itsWidths.length - 1; i >= 0; i--) {
+      long numbuckets = span / itsWidths[i];
+      if (numbuckets >= maxsamples) {
+        // The ends of the range may fall part way through a bucket
+        if (numbuckets + 2 < maxbuckets) {
+          return i;
+        }
+        break;
+      }
+    }
+    return -1;
+  }
+
+  /** Get the width (us) of the buckets in the specified tier. */
+  public long getWidth(int tier) {
+    return itsWidths[tier];
+  }
+
+  /**
+   * Get the buckets for a point from the specified tier which overlap the time range.
+   *
+   * @param pm
+   *          The point of interest.
+   * @param tier
+   *          Index of the tier to read.
+   * @param start
+   *          Earliest time in the range of interest.
+   * @param end
+   *          Most recent time in the range of interest.
+   * @param limit
+   *          Maximum number of buckets to return.
+   * @return The buckets in time order, or null if there are no rollups for the point.
+   */
+  public Vector<Rollup> extract(PointDescription pm, int tier, AbsTime start, AbsTime end, int limit) {
+    PointRollups rollups = getPointRollups(pm.getFullName(), false);
+    if (rollups == null) {
+      return null;
+    }
+    return rollups.extract(tier, start.getValue(), end.getValue(), limit);
+  }
+
+  /**
+   * Get the start time of the first bucket for a point in the specified tier.
+   *
+   * @param pm
+   *          The point of interest.
+   * @param tier
+   *          Index of the tier.
+   * @return The start time, or null if there are no rollups for the point.
+   */
+  public AbsTime getEarliest(PointDescription pm, int tier) {
+    PointRollups rollups = getPointRollups(pm.getFullName(), false);
+    if (rollups == null) {
+      return null;
+    }
+    return rollups.getEarliest(tier);
+  }
+
+  /**
+   * Get the rollup state for a point.
+   *
+   * @param name
+   *          Full name of the point.
+   * @param create
+   *          Whether to create the state if no rollup files exist for the point yet.
+   * @return The rollup state, or null if there is none and <tt>create</tt> was false.
+   */
+  private PointRollups getPointRollups(String name, boolean create) {
+    PointRollups res = itsPoints.get(name);
+    if (res == null) {
+      if (!create && !getFile(name, 0).exists()) {
+        return null;
+      }
+      res = new PointRollups(name);
+      PointRollups prev = itsPoints.putIfAbsent(name, res);
+      if (prev != null) {
+        res = prev;
+      }
+    }
+    return res;
+  }
+
+  /** Get the rollup file for a point and tier. */
+  private File getFile(String name, int tier) {
+    return new File(new File(itsDir, "" + (itsWidths[tier] / 1000000)), name);
+  }
+
+  /** Rollup state for all tiers of a single point. */
+  private class PointRollups {
+    /** Full name of the point. */
+    private String itsName;
+
+    /** The bucket currently being filled in each tier. */
+    private Rollup[] itsCurrent = new Rollup[itsWidths.length];
+
+    /** Buckets which have been completed but not yet written, for each tier. */
+    private Vector<Vector<Rollup>> itsCompleted = new Vector<Vector<Rollup>>(itsWidths.length);
+
+    /** Set once the last bucket of each tier has been loaded from disk. */
+    private boolean itsLoaded = false;
+
+    PointRollups(String name) {
+      itsName = name;
+      for (int i = 0; i < itsWidths.length; i++) {
+        itsCompleted.add(new Vector<Rollup>());
+      }
+    }
+
+    /** Add a record to the current bucket of each tier. */
+    public synchronized void add(long ts, double val, boolean alarm) {
+      load();
+      for (int i = 0; i < itsWidths.length; i++) {
+        Rollup cur = itsCurrent[i];
+        if (cur != null && ts <= cur.itsLastTime) {
+          // Already summarised or out of order
+          continue;
+        }
+        long bucket = ts - (ts % itsWidths[i]);
+        if (cur == null || bucket > cur.itsStart) {
+          if (cur != null && cur.itsDirty) {
+            itsCompleted.get(i).add(cur);
+          }
+          cur = new Rollup(bucket);
+          itsCurrent[i] = cur;
+        }
+        cur.add(ts, val, alarm);
+      }
+    }
+
+    /** Write all changed buckets to disk. */
+    public synchronized void persist() {
+      for (int i = 0; i < itsWidths.length; i++) {
+        Vector<Rollup> completed = itsCompleted.get(i);
+        Rollup cur = itsCurrent[i];
+        if (completed.isEmpty() && (cur == null || !cur.itsDirty)) {
+          continue;
+        }
+        RandomAccessFile raf = null;
+        try {
+          raf = new RandomAccessFile(getFile(itsName, i), "rw");
+          for (int j = 0; j < completed.size(); j++) {
+            write(raf, completed.get(j));
+          }
+          completed.clear();
+          if (cur != null && cur.itsDirty) {
+            write(raf, cur);
+          }
+        } catch (IOException e) {
+          theirLogger.warn("Error writing rollups for " + itsName + ": " + e);
+        } finally {
+          try {
+            if (raf != null) {
+              raf.close();
+            }
+          } catch (IOException e) {
+          }
+        }
+      }
+    }
+
+    /** Read buckets which overlap the time range from the specified tier. */
+    public synchronized Vector<Rollup> extract(int tier, long start, long end, int limit) {
+      persist();
+      Vector<Rollup> res = new Vector<Rollup>();
+      File f = getFile(itsName, tier);
+      if (!f.exists()) {
+        return res;
+      }
+      RandomAccessFile raf = null;
+      try {
+        raf = new RandomAccessFile(f, "r");
+        long num = raf.length() / RECORDSIZE;
+        // Binary search for the first bucket which ends after the start time
+        long first = start - (start % itsWidths[tier]);
+        long lo = 0;
+        long hi = num;
+        while (lo < hi) {
+          long mid = (lo + hi) >>> 1;
+          raf.seek(mid * RECORDSIZE);
+          if (raf.readLong() < first) {
+            lo = mid + 1;
+          } else {
+            hi = mid;
+          }
+        }
+        if (lo < num) {
+          byte[] bytes = new byte[(int) Math.min(num - lo, limit) * RECORDSIZE];
+          raf.seek(lo * RECORDSIZE);
+          raf.readFully(bytes);
+          DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+          for (long i = lo; i < num && res.size() < limit; i++) {
+            Rollup r = Rollup.read(in, i * RECORDSIZE);
+            if (r.itsStart > end) {
+              break;
+            }
+            res.add(r);
+          }
+        }
+      } catch (IOException e) {
+        theirLogger.warn("Error reading rollups for " + itsName + ": " + e);
+      } finally {
+        try {
+          if (raf != null) {
+            raf.close();
+          }
+        } catch (IOException e) {
+        }
+      }
+      return res;
+    }
+
+    /** Remove the buckets which end before the cutoff time from each tier. */
+    public synchronized void purge(long cutoff) {
+      load();
+      persist();
+      for (int i = 0; i < itsWidths.length; i++) {
+        File f = getFile(itsName, i);
+        if (!f.exists()) {
+          continue;
+        }
+        File temp = new File(f.getPath() + ".tmp");
+        RandomAccessFile raf = null;
+        RandomAccessFile out = null;
+        try {
+          raf = new RandomAccessFile(f, "r");
+          long num = raf.length() / RECORDSIZE;
+          long keep = 0;
+          while (keep < num) {
+            raf.seek(keep * RECORDSIZE);
+            if (raf.readLong() + itsWidths[i] > cutoff) {
+              break;
+            }
+            keep++;
+          }
+          if (keep == 0) {
+            continue;
+          }
+          // Copy the buckets which are being kept to a new file
+          out = new RandomAccessFile(temp, "rw");
+          out.setLength(0);
+          byte[] buf = new byte[RECORDSIZE * 1000];
+          raf.seek(keep * RECORDSIZE);
+          long remaining = (num - keep) * RECORDSIZE;
+          while (remaining > 0) {
+            int len = (int) Math.min(buf.length, remaining);
+            raf.readFully(buf, 0, len);
+            out.write(buf, 0, len);
+            remaining -= len;
+          }
+          out.close();
+          out = null;
+          raf.close();
+          raf = null;
+          if (!f.delete() || !temp.renameTo(f)) {
+            throw new IOException("Could not replace " + f);
+          }
+          Rollup cur = itsCurrent[i];
+          if (cur != null && cur.itsOffset >= 0) {
+            cur.itsOffset -= keep * RECORDSIZE;
+            if (cur.itsOffset < 0) {
+              cur.itsOffset = -1;
+            }
+          }
+          theirLogger.debug("Purged " + keep + " rollups for " + itsName);
+        } catch (IOException e) {
+          theirLogger.warn("Error purging rollups for " + itsName + ": " + e);
+        } finally {
+          try {
+            if (raf != null) {
+              raf.close();
+            }
+            if (out != null) {
+              out.close();
+            }
+          } catch (IOException e) {
+          }
+        }
+      }
+    }
+
+    /** Get the start time of the first bucket in the specified tier. */
+    public synchronized AbsTime getEarliest(int tier) {
+      persist();
+      AbsTime res = null;
+      RandomAccessFile raf = null;
+      try {
+        File f = getFile(itsName, tier);
+        if (f.exists() && f.length() >= RECORDSIZE) {
+          raf = new RandomAccessFile(f, "r");
+          res = AbsTime.factory(raf.readLong());
+        }
+      } catch (IOException e) {
+        theirLogger.warn("Error reading rollups for " + itsName + ": " + e);
+      } finally {
+        try {
+          if (raf != null) {
+            raf.close();
+          }
+        } catch (IOException e) {
+        }
+      }
+      return res;
+    }
+
+    /** Load the last bucket of each tier from disk so that it can continue to be filled. */
+    private void load() {
+      if (itsLoaded) {
+        return;
+      }
+      itsLoaded = true;
+      for (int i = 0; i < itsWidths.length; i++) {
+        RandomAccessFile raf = null;
+        try {
+          File f = getFile(itsName, i);
+          if (!f.exists()) {
+            continue;
+          }
+          raf = new RandomAccessFile(f, "rw");
+          long num = raf.length() / RECORDSIZE;
+          // Discard any partially written record
+          raf.setLength(num * RECORDSIZE);
+          if (num > 0) {
+            raf.seek((num - 1) * RECORDSIZE);
+            itsCurrent[i] = Rollup.read(raf, (num - 1) * RECORDSIZE);
+          }
+        } catch (IOException e) {
+          theirLogger.warn("Error loading rollups for " + itsName + ": " + e);
+        } finally {
+          try {
+            if (raf != null) {
+              raf.close();
+            }
+          } catch (IOException e) {
+          }
+        }
+      }
+    }
+
+    /** Write a bucket to its place in the file. */
+    private void write(RandomAccessFile raf, Rollup r) throws IOException {
+      if (r.itsOffset < 0) {
+        r.itsOffset = raf.length();
+      }
+      ByteArrayOutputStream buf = new ByteArrayOutputStream(RECORDSIZE);
+      r.write(new DataOutputStream(buf));
+      raf.seek(r.itsOffset);
+      raf.write(buf.toByteArray());
+      r.itsDirty = false;
+    }
+  }
+}
@@ -20,54 +20,14 @@ public class DataMaintainer implements Runnable
   }
 
   /**
-   * Comparator to compare PointDescriptions and/or AbsTimes. We need to use
-   * this Comparator with the SortedLinkedList class.
+   * Queue of points scheduled by time of next collection. Collection times are in server time, so the clock error is taken into
+   * account when scheduling.
    */
-  private static class TimeComp implements Comparator
-  {
-    /** Return a timestamp for any known class type. */
-    private long getTimeStamp(Object o)
-    {
-      if (o instanceof PointDescription) {
-        return ((PointDescription) o).getNextEpoch();
-      } else if (o instanceof AbsTime) {
-        return ((AbsTime) o).getValue();
-      } else if (o == null) {
-        return 0;
-      } else {
-        System.err.println("ExternalSystem: TimeComp: compare: UNKNOWN TYPE (" + o.getClass() + ")");
-        return 0;
-      }
-    }
-
-    /** Compare PointDescriptions and/or AbsTimes. */
-    public int compare(Object o1, Object o2)
-    {
-      long val1 = getTimeStamp(o1);
-      long val2 = getTimeStamp(o2);
-
-      if (val1 > val2) {
-        return 1;
-      }
-      if (val1 < val2) {
-        return -1;
-      }
-      return 0;
+  protected static CollectionScheduler.Queue theirQueue = new CollectionScheduler.Queue() {
+    protected long getClockOffset() {
+      return ClockErrorMonitor.getClockError().getValue();
     }
-
-    /** Test if equivalent to the given Comparator. */
-    public boolean equals(Object o)
-    {
-      if (o instanceof TimeComp) {
-        return true;
-      } else {
-        return false;
-      }
-    }
-  }
-
-  /** Queue of points sorted by time of next collection. */
-  protected static SortedLinkedList theirQueue = new SortedLinkedList(new TimeComp());
+  };
 
   /** All points currently being collected. */
   protected static HashMap<String, PointDescription> theirPoints = new HashMap<String, PointDescription>();
@@ -95,10 +55,7 @@ public class DataMaintainer implements Runnable
     synchronized (theirPoints) {
       theirPoints.put(pd.getFullName(), pd);
     }
-    synchronized (theirQueue) {
-      theirQueue.add(pd);
-      theirQueue.notifyAll();
-    }
+    theirQueue.schedule(pd);
   }
 
   /** Unschedules a point. */
@@ -108,9 +65,7 @@ public class DataMaintainer implements Runnable
     synchronized (theirPoints) {
       theirPoints.remove(thisname);
     }
-    synchronized (theirQueue) {
-      theirQueue.remove(pd);
-    }
+    theirQueue.remove(pd);
     synchronized (theirLastData) {
       theirLastData.remove(thisname);
     }
@@ -310,19 +265,12 @@ public class DataMaintainer implements Runnable
   public void run()
   {
     while (true) {      
-      Vector<PointDescription> getpoints = null;
-      AbsTime nextTime = AbsTime.factory("ASAP");
-      synchronized (theirQueue) {
-        try {
-          // Wait for notification if no points are waiting
-          while (theirQueue.size() == 0) {
-            theirQueue.wait();
-          }
-        } catch (Exception e) {
-        }
-
-        // Get the points which are ready for collection
-        getpoints = theirQueue.headSet(AbsTime.factory().add(ClockErrorMonitor.getClockError()));
+      // Wait for points to fall due for collection
+      Vector<PointDescription> getpoints;
+      try {
+        getpoints = theirQueue.take(0);
+      } catch (InterruptedException e) {
+        continue;
       }
 
       if (getpoints.size() > 0) {
@@ -377,39 +325,14 @@ public class DataMaintainer implements Runnable
         // Need to reinsert the points to reschedule collection
         for (int i = 0; i < getpoints.size(); i++) {
           // Ensure point subscription hasn't been cancelled in meantime
-          synchronized (theirQueue) {
-            if (theirPoints.containsKey(getpoints.get(i).getFullName()) && !theirQueue.contains(getpoints.get(i))) {
-              theirQueue.add(getpoints.get(i));
-            }
+          boolean subscribed;
+          synchronized (theirPoints) {
+            subscribed = theirPoints.containsKey(getpoints.get(i).getFullName());
           }
-        }
-      }      
-      
-      try {
-        synchronized (theirQueue) {
-          if (theirQueue.size() > 0) {
-            PointDescription pm = (PointDescription) theirQueue.first();
-            nextTime = AbsTime.factory(pm.getNextEpoch());
-          }
-        }
-        AbsTime timenow = AbsTime.factory().add(ClockErrorMonitor.getClockError());
-        if (nextTime.isAfter(timenow)) {
-          final RelTime maxsleep = RelTime.factory(100000);
-          // We need to wait before we collect the next point.
-          // Work out how long we need to wait for
-          RelTime waittime = Time.diff(nextTime, timenow);
-          if (waittime.getValue() > maxsleep.getValue()) {
-            // We don't want to sleep longer than this, in case points
-            // have been inserted or removed in the mean time
-            maxsleep.sleep();
-          } else {
-            // Sleep for the correct amount of time
-            waittime.sleep();
+          if (subscribed && !theirQueue.contains(getpoints.get(i))) {
+            theirQueue.schedule(getpoints.get(i));
           }
         }
-      } catch (Exception e) {
-        System.err.println("PointCollector::run(): " + e.getMessage());
-        e.printStackTrace();
       }
     }
   }
@@ -0,0 +1,384 @@
+//
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.comms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * A client connection to a line based server which is multiplexed by a <tt>Selector</tt>. The selector thread calls
+ * <tt>readAvailable</tt> when the channel is readable, which splits the input into lines. The thread handling the client's requests
+ * then obtains the lines with <tt>readLine</tt> and replies through the <tt>PrintWriter</tt> returned by <tt>getWriter</tt>.
+ *
+ * <P>
+ * Lines are terminated by a line feed, a carriage return or a carriage return followed by a line feed, and are decoded with the
+ * platform's default character set, the same as <tt>BufferedReader.readLine</tt>. Replies are buffered until the writer is flushed
+ * or the buffer becomes large, and the buffer is reused for the life of the connection.
+ *
+ * @author David Brodrick
+ */
+public class LineConnection {
+  /** Size of the buffer used to read from the channel. */
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  /** Reply size (bytes) at which buffered output is sent without waiting for a flush. */
+  private static final int MAX_OUTPUT = 65536;
+
+  /** The channel to the client. */
+  private SocketChannel itsChannel;
+
+  /** The selector which the channel is registered with. */
+  private Selector itsSelector;
+
+  /** Our key with the selector. */
+  private SelectionKey itsKey;
+
+  /** Connections waiting for the selector to watch for them becoming writable. */
+  private Queue<LineConnection> itsWriteRequests;
+
+  /** Maximum time (ms) to wait for the client to send a line or accept output. */
+  private long itsTimeout;
+
+  /** Buffer for reading from the channel. */
+  private ByteBuffer itsReadBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+  /** Bytes of the line currently being received. */
+  private byte[] itsLineBytes = new byte[256];
+
+  /** Number of bytes in <i>itsLineBytes</i>. */
+  private int itsLineLength = 0;
+
+  /** Set if the last character received was a carriage return, so that a following line feed should be ignored. */
+  private boolean itsSkipLF = false;
+
+  /** Complete lines which have been received but not yet read. */
+  private LinkedList<String> itsLines = new LinkedList<String>();
+
+  /** Set once the client has closed its end of the connection. */
+  private boolean itsEOF = false;
+
+  /** Set once the connection has been closed. */
+  private volatile boolean itsClosed = false;
+
+  /** Set while a thread is assigned to handle the client's requests. */
+  private boolean itsScheduled = false;
+
+  /** Buffer for output, reused for the life of the connection. */
+  private byte[] itsOutput = new byte[8192];
+
+  /** Number of bytes in <i>itsOutput</i>. */
+  private int itsOutputLength = 0;
+
+  /** Output which is being written to the channel, or null if none. */
+  private ByteBuffer itsPending = null;
+
+  /** Lock guarding the received lines and the connection state. */
+  private Object itsLock = new Object();
+
+  /** Lock used while writing output. */
+  private Object itsWriteLock = new Object();
+
+  /** Writer for replies to the client. */
+  private PrintWriter itsWriter;
+
+  /**
+   * Constructor.
+   *
+   * @param channel
+   *          The non-blocking channel to the client.
+   * @param selector
+   *          The selector which the channel will be registered with.
+   * @param writerequests
+   *          Queue to which the connection adds itself when the selector needs to wait for the channel to become writable.
+   * @param timeout
+   *          Maximum time (ms) to wait for the client to send the rest of a request or to accept a reply.
+   */
+  public LineConnection(SocketChannel channel, Selector selector, Queue<LineConnection> writerequests, long timeout) {
+    itsChannel = channel;
+    itsSelector = selector;
+    itsWriteRequests = writerequests;
+    itsTimeout = timeout;
+    itsWriter = new PrintWriter(new ChannelOutputStream());
+  }
+
+  /** Set the key obtained by registering the channel with the selector. */
+  public void setKey(SelectionKey key) {
+    itsKey = key;
+  }
+
+  /** Get the key for the channel. */
+  public SelectionKey getKey() {
+    return itsKey;
+  }
+
+  /** Get the channel to the client. */
+  public SocketChannel getChannel() {
+    return itsChannel;
+  }
+
+  /** Get the writer for replies to the client. */
+  public PrintWriter getWriter() {
+    return itsWriter;
+  }
+
+  /**
+   * Read whatever is available from the channel. This is called by the selector thread.
+   *
+   * @return True if a thread should be assigned to handle the client's requests because new lines are available or the client has
+   *         disconnected, and no thread is currently assigned.
+   */
+  public boolean readAvailable() {
+    boolean newlines = false;
+    boolean eof = false;
+    try {
+      while (true) {
+        itsReadBuffer.clear();
+        int n = itsChannel.read(itsReadBuffer);
+        if (n < 0) {
+          eof = true;
+          break;
+        } else if (n == 0) {
+          break;
+        }
+        byte[] buf = itsReadBuffer.array();
+        for (int i = 0; i < n; i++) {
+          byte b = buf[i];
+          if (itsSkipLF) {
+            itsSkipLF = false;
+            if (b == '\n') {
+              continue;
+            }
+          }
+          if (b == '\n' || b == '\r') {
+            String line = new String(itsLineBytes, 0, itsLineLength);
+            itsLineLength = 0;
+            itsSkipLF = (b == '\r');
+            synchronized (itsLock) {
+              itsLines.add(line);
+            }
+            newlines = true;
+          } else {
+            if (itsLineLength == itsLineBytes.length) {
+              byte[] temp = new byte[2 * itsLineBytes.length];
+              System.arraycopy(itsLineBytes, 0, temp, 0, itsLineLength);
+              itsLineBytes = temp;
+            }
+            itsLineBytes[itsLineLength++] = b;
+          }
+        }
+        if (n < itsReadBuffer.capacity()) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      eof = true;
+    }
+
+    synchronized (itsLock) {
+      if (eof) {
+        if (itsLineLength > 0) {
+          // Unterminated last line is still returned, as BufferedReader does
+          itsLines.add(new String(itsLineBytes, 0, itsLineLength));
+          itsLineLength = 0;
+        }
+        itsEOF = true;
+        if (itsKey != null && itsKey.isValid()) {
+          itsKey.interestOps(itsKey.interestOps() & ~SelectionKey.OP_READ);
+        }
+      }
+      if (newlines || eof) {
+        itsLock.notifyAll();
+        if (!itsScheduled) {
+          itsScheduled = true;
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the next line from the client, waiting for it to arrive if required.
+   *
+   * @return The line, without the line terminator, or null if the client disconnected, the connection was closed or the client took
+   *         too long to send the line.
+   */
+  public String readLine() {
+    synchronized (itsLock) {
+      long deadline = System.currentTimeMillis() + itsTimeout;
+      while (itsLines.isEmpty() && !itsEOF && !itsClosed) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          return null;
+        }
+        try {
+          itsLock.wait(wait);
+        } catch (InterruptedException e) {
+          return null;
+        }
+      }
+      if (itsLines.isEmpty()) {
+        return null;
+      }
+      return itsLines.removeFirst();
+    }
+  }
+
+  /**
+   * Release the thread handling the client's requests if there are no further lines to process. Once released, the next call to
+   * <tt>readAvailable</tt> which receives a line will request a thread again.
+   *
+   * @return True if the thread was released, false if there are lines waiting or the client has disconnected.
+   */
+  public boolean release() {
+    synchronized (itsLock) {
+      if (itsLines.isEmpty() && !itsEOF && !itsClosed) {
+        itsScheduled = false;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /** Close the connection. */
+  public void close() {
+    synchronized (itsLock) {
+      if (itsClosed) {
+        return;
+      }
+      itsClosed = true;
+      itsLock.notifyAll();
+    }
+    synchronized (itsWriteLock) {
+      itsWriteLock.notifyAll();
+    }
+    if (itsKey != null) {
+      itsKey.cancel();
+    }
+    try {
+      itsChannel.close();
+    } catch (IOException e) {
+    }
+    itsSelector.wakeup();
+  }
+
+  /** Check if the connection has been closed. */
+  public boolean isClosed() {
+    return itsClosed;
+  }
+
+  /** Called by the selector thread to ask to be notified when the channel becomes writable. */
+  public void watchWritable() {
+    synchronized (itsWriteLock) {
+      if (itsPending != null && itsKey != null && itsKey.isValid()) {
+        itsKey.interestOps(itsKey.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+  }
+
+  /** Called by the selector thread when the channel becomes writable. */
+  public void writeReady() {
+    synchronized (itsWriteLock) {
+      try {
+        if (itsPending != null) {
+          itsChannel.write(itsPending);
+          if (!itsPending.hasRemaining()) {
+            itsPending = null;
+          }
+        }
+      } catch (IOException e) {
+        itsPending = null;
+        close();
+      }
+      if (itsPending == null) {
+        if (itsKey.isValid()) {
+          itsKey.interestOps(itsKey.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        itsWriteLock.notifyAll();
+      }
+    }
+  }
+
+  /** Send the buffered output, waiting until it has all been written to the channel. */
+  private void sendOutput() throws IOException {
+    synchronized (itsWriteLock) {
+      if (itsOutputLength == 0) {
+        return;
+      }
+      itsPending = ByteBuffer.wrap(itsOutput, 0, itsOutputLength);
+      itsChannel.write(itsPending);
+      if (itsPending.hasRemaining()) {
+        // Socket buffer is full, let the selector tell us when there's space
+        itsWriteRequests.add(this);
+        itsSelector.wakeup();
+        long deadline = System.currentTimeMillis() + itsTimeout;
+        while (itsPending != null && !isClosed()) {
+          long wait = deadline - System.currentTimeMillis();
+          if (wait <= 0) {
+            break;
+          }
+          try {
+            itsWriteLock.wait(wait);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+        if (itsPending != null) {
+          itsPending = null;
+          itsOutputLength = 0;
+          close();
+          throw new IOException("Timed out writing to client");
+        }
+      }
+      itsPending = null;
+      itsOutputLength = 0;
+    }
+  }
+
+  /** Stream which collects output in the reusable buffer and sends it when flushed. */
+  private class ChannelOutputStream extends OutputStream {
+    public void write(int b) throws IOException {
+      synchronized (itsWriteLock) {
+        ensureSpace(1);
+        itsOutput[itsOutputLength++] = (byte) b;
+      }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (itsWriteLock) {
+        ensureSpace(len);
+        System.arraycopy(b, off, itsOutput, itsOutputLength, len);
+        itsOutputLength += len;
+        if (itsOutputLength >= MAX_OUTPUT) {
+          sendOutput();
+        }
+      }
+    }
+
+    public void flush() throws IOException {
+      sendOutput();
+    }
+
+    /** Grow the output buffer if required. */
+    private void ensureSpace(int len) {
+      if (itsOutputLength + len > itsOutput.length) {
+        byte[] temp = new byte[Math.max(2 * itsOutput.length, itsOutputLength + len)];
+        System.arraycopy(itsOutput, 0, temp, 0, itsOutputLength);
+        itsOutput = temp;
+      }
+    }
+  }
+}
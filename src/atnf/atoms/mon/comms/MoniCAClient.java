@@ -40,6 +40,27 @@ public abstract class MoniCAClient {
   //public abstract String[] getAllPointNames() throws Exception;
   public abstract Vector<String> getAllPointNames() throws Exception;
 
+  /**
+   * Get the immediate children of a node in the point name hierarchy. Children which contain further points are returned with a
+   * trailing full stop.
+   * 
+   * @param node
+   *          The node of interest, for instance <tt>site.ups</tt>, or an empty string for the top level.
+   * @return Names of the children, in sorted order.
+   */
+  public abstract Vector<String> getPointNameChildren(String node) throws Exception;
+
+  /**
+   * Get the names of all points (including aliases) which match a pattern.
+   * 
+   * @param pattern
+   *          A glob pattern such as <tt>site.*.ups.*.voltage</tt>, or a regular expression which must match the whole name.
+   * @param regex
+   *          True if the pattern is a regular expression, false if it is a glob pattern.
+   * @return Names of the matching points, in sorted order.
+   */
+  public abstract Vector<String> findPointNames(String pattern, boolean regex) throws Exception;
+
   /**
    * Get the point with the specified name.
    * 
@@ -235,6 +256,33 @@ public abstract class MoniCAClient {
     return res;
   }
 
+  /**
+   * Return archived data for the given point, reduced to at most <i>maxsamples</i> records by the server using the named
+   * downsampling algorithm.
+   * 
+   * @param pointname
+   *          Point to get data for.
+   * @param start
+   *          The oldest data to be retrieved.
+   * @param end
+   *          The most recent data to be retrieved.
+   * @param maxsamples
+   *          Maximum number of records to be returned.
+   * @param algorithm
+   *          Name of the downsampling algorithm, for instance "first", "m4" or "lttb".
+   * @return Data from the archive between the specified times.
+   */
+  public Vector<PointData> getArchiveData(String pointname, AbsTime start, AbsTime end, int maxsamples, String algorithm) throws Exception {
+    Vector<String> pointnames = new Vector<String>(1);
+    pointnames.add(pointname);
+    Vector<Vector<PointData>> data = getArchiveData(pointnames, start, end, maxsamples, algorithm);
+    Vector<PointData> res = null;
+    if (data != null && data.size() > 0) {
+      res = data.get(0);
+    }
+    return res;
+  }
+
   /**
    * Return archived data for the given points.
    * 
@@ -265,6 +313,27 @@ public abstract class MoniCAClient {
    */
   public abstract Vector<Vector<PointData>> getArchiveData(Vector<String> pointnames, AbsTime start, AbsTime end, int maxsamples) throws Exception;
 
+  /**
+   * Return archived data for the given points, reduced to at most <i>maxsamples</i> records for each point by the server using the
+   * named downsampling algorithm. Clients which don't support this ignore the algorithm and use the server's default.
+   * 
+   * @param pointnames
+   *          Names of points to get data for.
+   * @param start
+   *          The oldest data to be retrieved.
+   * @param end
+   *          The most recent data to be retrieved.
+   * @param maxsamples
+   *          Maximum number of records to be returned.
+   * @param algorithm
+   *          Name of the downsampling algorithm, for instance "first", "m4" or "lttb".
+   * @return Data from the archive between the specified times, for each point.
+   */
+  public Vector<Vector<PointData>> getArchiveData(Vector<String> pointnames, AbsTime start, AbsTime end, int maxsamples, String algorithm)
+      throws Exception {
+    return getArchiveData(pointnames, start, end, maxsamples);
+  }
+
   /**
    * Set a new value for the specified point. This requires authentication. The username and password are encrypted prior to
    * transmission over the network.
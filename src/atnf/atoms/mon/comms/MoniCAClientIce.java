@@ -9,10 +9,12 @@
 package atnf.atoms.mon.comms;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.UUID;
 import java.util.Vector;
 
 import atnf.atoms.mon.Alarm;
@@ -53,6 +55,12 @@ public class MoniCAClientIce extends MoniCAClient {
   /** Maximum number of point definitions to request in a single fetch. */
   protected int theirMaxPointsReq = Integer.parseInt(System.getProperty("MoniCA.MaxPoints", "1000"));
 
+  /** Whether the server supports returning archive data a page at a time. */
+  protected boolean itsUsePaging = true;
+
+  /** Whether the server supports downsampling algorithms. */
+  protected boolean itsUseDecimation = true;
+
   /**
    * Connect using the specified properties to find the MoniCA server via a locator.
    */
@@ -136,6 +144,53 @@ public class MoniCAClientIce extends MoniCAClient {
     return names;
   }
 
+  /**
+   * Get the immediate children of a node in the point name hierarchy. Children which contain further points are returned with a
+   * trailing full stop.
+   * 
+   * @param node
+   *          The node of interest, for instance <tt>site.ups</tt>, or an empty string for the top level.
+   * @return Names of the children, in sorted order.
+   */
+  public Vector<String> getPointNameChildren(String node) throws Exception {
+    Vector<String> res;
+    try {
+      if (!isConnected()) {
+        connect();
+      }
+      res = new Vector<String>(Arrays.asList(itsIceClient.getPointNameChildren(node)));
+    } catch (Exception e) {
+      System.err.println("MoniCAClientIce.getPointNameChildren:" + e.getClass());
+      disconnect();
+      throw e;
+    }
+    return res;
+  }
+
+  /**
+   * Get the names of all points (including aliases) which match a pattern.
+   * 
+   * @param pattern
+   *          A glob pattern such as <tt>site.*.ups.*.voltage</tt>, or a regular expression which must match the whole name.
+   * @param regex
+   *          True if the pattern is a regular expression, false if it is a glob pattern.
+   * @return Names of the matching points, in sorted order.
+   */
+  public Vector<String> findPointNames(String pattern, boolean regex) throws Exception {
+    Vector<String> res;
+    try {
+      if (!isConnected()) {
+        connect();
+      }
+      res = new Vector<String>(Arrays.asList(itsIceClient.findPointNames(pattern, regex)));
+    } catch (Exception e) {
+      System.err.println("MoniCAClientIce.findPointNames:" + e.getClass());
+      disconnect();
+      throw e;
+    }
+    return res;
+  }
+
   /**
    * Get the point with the specified name. The populateClientFields method should be invoked on each point prior to returning the
    * result.
@@ -409,6 +464,16 @@ public class MoniCAClientIce extends MoniCAClient {
       // data each time, so we need to iterate until all data has been retrieved
       for (int thispoint = 0; thispoint < pointnames.size(); thispoint++) {
         String thisname = pointnames.get(thispoint);
+        if (maxsamples <= 1 && itsUsePaging) {
+          // Let the server page through the data with a cursor
+          try {
+            res.add(getArchiveDataPaged(thisname, start, end));
+            continue;
+          } catch (Ice.OperationNotExistException e) {
+            // Older server, fall back to querying with advancing start times
+            itsUsePaging = false;
+          }
+        }
         Vector<PointData> thisdata = new Vector<PointData>();
         AbsTime thisstart = start;
         while (true) {
@@ -442,6 +507,84 @@ public class MoniCAClientIce extends MoniCAClient {
     return res;
   }
 
+  /**
+   * Return archived data for the given points, reduced to at most <i>maxsamples</i> records for each point by the server using the
+   * named downsampling algorithm. The server reduces all of the data in the time range, so each point only needs one request. If
+   * the server doesn't support downsampling algorithms then its default is used.
+   * 
+   * @param pointnames
+   *          Names of points to get data for.
+   * @param start
+   *          The oldest data to be retrieved.
+   * @param end
+   *          The most recent data to be retrieved.
+   * @param maxsamples
+   *          Maximum number of records to be returned.
+   * @param algorithm
+   *          Name of the downsampling algorithm, for instance "first", "m4" or "lttb".
+   * @return Data from the archive between the specified times, for each point.
+   */
+  public Vector<Vector<PointData>> getArchiveData(Vector<String> pointnames, AbsTime start, AbsTime end, int maxsamples, String algorithm)
+      throws Exception {
+    if (maxsamples <= 1 || algorithm == null || !itsUseDecimation) {
+      return getArchiveData(pointnames, start, end, maxsamples);
+    }
+    Vector<Vector<PointData>> res = new Vector<Vector<PointData>>(pointnames.size());
+    try {
+      if (!isConnected()) {
+        connect();
+      }
+      String[] namesarray = pointnames.toArray(new String[0]);
+      PointDataIce[][] icedata = itsIceClient.getArchiveDataDecimated(namesarray, start.getValue(), end.getValue(), maxsamples, algorithm);
+      for (int i = 0; i < namesarray.length; i++) {
+        Vector<PointData> thisdata = MoniCAIceUtil.getPointDataFromIce(icedata[i]);
+        // Reinsert name fields dropped by server to minimise bandwidth
+        for (int j = 0; j < thisdata.size(); j++) {
+          thisdata.get(j).setName(namesarray[i]);
+        }
+        res.add(thisdata);
+      }
+    } catch (Ice.OperationNotExistException e) {
+      // Older server, so use its default algorithm
+      itsUseDecimation = false;
+      return getArchiveData(pointnames, start, end, maxsamples);
+    } catch (Exception e) {
+      System.err.println("MoniCAClientIce.getArchiveData:" + e);
+      disconnect();
+      throw e;
+    }
+    return res;
+  }
+
+  /**
+   * Get the archive data for a point by requesting successive pages from the server's cursor.
+   * 
+   * @param pointname
+   *          Name of the point to get data for.
+   * @param start
+   *          The oldest data to be retrieved.
+   * @param end
+   *          The most recent data to be retrieved.
+   * @return Data from the archive between the specified times.
+   */
+  protected Vector<PointData> getArchiveDataPaged(String pointname, AbsTime start, AbsTime end) {
+    Vector<PointData> res = new Vector<PointData>();
+    String cursor = UUID.randomUUID().toString();
+    for (int page = 0;; page++) {
+      PointDataIce[] icedata = itsIceClient.getArchiveDataPage(cursor, pointname, start.getValue(), end.getValue(), page);
+      if (icedata == null || icedata.length == 0) {
+        break;
+      }
+      Vector<PointData> newdata = MoniCAIceUtil.getPointDataFromIce(icedata);
+      // Reinsert name fields dropped by server to minimise bandwidth
+      for (int j = 0; j < newdata.size(); j++) {
+        newdata.get(j).setName(pointname);
+      }
+      res.addAll(newdata);
+    }
+    return res;
+  }
+
   /**
    * Set new values for the specified points. This requires authentication. The username and password are encrypted prior to
    * transmission over the network.
@@ -8,11 +8,14 @@
 
 package atnf.atoms.mon.comms;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.Vector;
 import java.util.Date;
+import java.util.regex.PatternSyntaxException;
 
 import Ice.Current;
 import atnf.atoms.mon.*;
@@ -35,6 +38,15 @@ public final class MoniCAIceI extends _MoniCAIceDisp {
   /** Port the server will listen on. */
   protected static int theirPort;
 
+  /** Time (ms) after which an unused archive cursor is discarded. */
+  protected static long theirCursorTimeout = 300000;
+
+  /** Maximum number of archive cursors which may be open at once. */
+  protected static int theirMaxCursors = 1000;
+
+  /** Open archive cursors, indexed by the identifier chosen by the client. */
+  protected static HashMap<String, CursorState> theirCursors = new HashMap<String, CursorState>();
+
   static {
     // Determine which port the server should listen on
     try {
@@ -43,6 +55,69 @@ public final class MoniCAIceI extends _MoniCAIceDisp {
       theirLogger.fatal("Error parsing IcePort configuration parameter: " + e);
       System.exit(1);
     }
+    try {
+      theirCursorTimeout = 1000 * Long.parseLong(MonitorConfig.getProperty("ArchiveCursorTimeout", "300"));
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ArchiveCursorTimeout configuration parameter: " + e);
+    }
+    try {
+      theirMaxCursors = Integer.parseInt(MonitorConfig.getProperty("ArchiveMaxCursors", "1000"));
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ArchiveMaxCursors configuration parameter: " + e);
+    }
+  }
+
+  /** State of an archive query which is being returned a page at a time. */
+  protected static class CursorState {
+    public String itsName;
+
+    public long itsStart;
+
+    public long itsEnd;
+
+    public ArchiveCursor itsCursor;
+
+    /** Number of the most recently returned page, or -1 if none. */
+    public int itsPage = -1;
+
+    /** The most recently returned page, so that it can be resent if the client retries. */
+    public PointDataIce[] itsLastPage = null;
+
+    /** Time (ms) the cursor was last used. */
+    public volatile long itsLastAccess = System.currentTimeMillis();
+
+    public CursorState(String name, long start, long end) {
+      itsName = name;
+      itsStart = start;
+      itsEnd = end;
+      restart();
+    }
+
+    /** Go back to the start of the data. */
+    public void restart() {
+      itsCursor = new ArchiveCursor(PointDescription.getPoint(itsName), AbsTime.factory(itsStart), AbsTime.factory(itsEnd));
+      itsPage = -1;
+      itsLastPage = null;
+    }
+
+    public boolean matches(String name, long start, long end) {
+      return itsName.equals(name) && itsStart == start && itsEnd == end;
+    }
+
+    /** Get the next page of data, which is empty once all of the data has been returned. */
+    public PointDataIce[] nextPage() {
+      Vector<PointData> data = itsCursor.nextChunk();
+      if (data == null) {
+        data = new Vector<PointData>(0);
+      }
+      itsPage++;
+      itsLastPage = MoniCAIceUtil.getPointDataAsIce(data);
+      // Blank the name to minimise network traffic
+      for (int i = 0; i < itsLastPage.length; i++) {
+        itsLastPage[i].name = "";
+      }
+      return itsLastPage;
+    }
   }
 
   public MoniCAIceI() {
@@ -84,6 +159,24 @@ public final class MoniCAIceI extends _MoniCAIceDisp {
     return res;
   }
 
+  /** Get the immediate children of a node in the point name hierarchy. */
+  public String[] getPointNameChildren(String node, Ice.Current __current) {
+    return PointDescription.getChildNames(node);
+  }
+
+  /** Get the names of all points (including aliases) which match a glob pattern or regular expression. */
+  public String[] findPointNames(String pattern, boolean regex, Ice.Current __current) {
+    if (!regex) {
+      return PointDescription.findPointNames(pattern);
+    }
+    try {
+      return PointDescription.findPointNamesRegex(pattern);
+    } catch (PatternSyntaxException e) {
+      theirLogger.debug("findPointNames: Invalid regular expression \"" + pattern + "\" from " + getRemoteInfo(__current));
+      return new String[0];
+    }
+  }
+
   /** Get all unique points on the system. */
   public PointDescriptionIce[] getAllPoints(Ice.Current __current) {
     // Get all unique points
@@ -165,15 +258,43 @@ public final class MoniCAIceI extends _MoniCAIceDisp {
     return stringsetups;
   }
 
-  /** Return historical data for the specified points. */
+  /**
+   * Return historical data for the specified points. The points are retrieved in parallel by the <tt>ArchiveQueryPool</tt>. If
+   * the data isn't ready within <tt>ArchiveRequestTimeout</tt> seconds, or the time in milliseconds given by the "timeout" entry
+   * of the request context, the retrieval is abandoned so that a client which has given up waiting doesn't keep the archive busy.
+   */
   public PointDataIce[][] getArchiveData(String[] names, long start, long end, long maxsamples, Ice.Current __current) {
+    return getArchiveDataDecimated(names, start, end, maxsamples, null, __current);
+  }
+
+  /**
+   * Return historical data for the specified points, reduced to at most <i>maxsamples</i> records for each point with the named
+   * <tt>Downsampler</tt> algorithm. The "first" algorithm is used if the named one isn't available.
+   */
+  public PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm,
+      Ice.Current __current) {
+    if (algorithm != null && !Downsampler.isSupported(algorithm)) {
+      theirLogger.warn("getArchiveData: Unknown downsampling algorithm \"" + algorithm + "\" requested by " + getRemoteInfo(__current));
+      algorithm = Downsampler.FIRST;
+    }
     AbsTime absstart = AbsTime.factory(start);
     AbsTime absend = AbsTime.factory(end);
-    PointDataIce[][] res = new PointDataIce[names.length][];
+    PointDescription[] points = new PointDescription[names.length];
     for (int i = 0; i < names.length; i++) {
       checkPoint(names[i], __current);
-      // Get the requested data from the buffer/archive
-      Vector<PointData> thisdata = PointBuffer.getPointData(names[i], absstart, absend, (int) maxsamples);
+      points[i] = PointDescription.getPoint(names[i]);
+    }
+    // Get the requested data from the buffer/archive
+    Vector<PointData>[] alldata;
+    try {
+      alldata = ArchiveQueryPool.getPointData(points, absstart, absend, (int) maxsamples, algorithm, getRequestTimeout(__current));
+    } catch (Exception e) {
+      theirLogger.warn("getArchiveData: Abandoned request for " + names.length + " points from " + getRemoteInfo(__current) + ": " + e);
+      throw new Ice.UnknownException("Archive request abandoned: " + e);
+    }
+    PointDataIce[][] res = new PointDataIce[names.length][];
+    for (int i = 0; i < names.length; i++) {
+      Vector<PointData> thisdata = alldata[i];
       if (thisdata == null) {
         // Ice doesn't like null, so replace with empty return structure
         thisdata = new Vector<PointData>(0);
@@ -193,6 +314,96 @@ public final class MoniCAIceI extends _MoniCAIceDisp {
     return res;
   }
 
+  /** Get the time (ms) the client is prepared to wait for an archive request, or 0 for no limit. */
+  private static long getRequestTimeout(Ice.Current __current) {
+    if (__current != null && __current.ctx != null) {
+      String timeout = __current.ctx.get("timeout");
+      if (timeout != null) {
+        try {
+          return Long.parseLong(timeout);
+        } catch (NumberFormatException e) {
+          theirLogger.debug("getRequestTimeout: Bad timeout in request context: " + timeout);
+        }
+      }
+    }
+    return ArchiveQueryPool.getDefaultTimeout();
+  }
+
+  /**
+   * Return one page of the historical data for a point. The client chooses a unique identifier for the query and requests pages
+   * 0, 1, 2.. in turn until an empty page is returned. The server keeps a cursor for each query, so each page continues from where
+   * the last one finished without the query being repeated. A page may be requested again, for instance if the reply was lost, and
+   * if the cursor has expired it is recreated and advanced to the requested page.
+   */
+  public PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page, Ice.Current __current) {
+    checkPoint(name, __current);
+    if (page < 0 || PointDescription.getPoint(name) == null) {
+      return new PointDataIce[0];
+    }
+    CursorState state;
+    synchronized (theirCursors) {
+      purgeCursors();
+      state = theirCursors.get(cursor);
+      if (state == null || !state.matches(name, start, end)) {
+        state = new CursorState(name, start, end);
+        theirCursors.put(cursor, state);
+      }
+    }
+    PointDataIce[] res;
+    synchronized (state) {
+      state.itsLastAccess = System.currentTimeMillis();
+      if (page == state.itsPage) {
+        // Client is retrying the last request
+        res = state.itsLastPage;
+      } else {
+        if (page < state.itsPage) {
+          // Client has gone back, so start again
+          theirLogger.debug("getArchiveDataPage: Restarting cursor for " + name + " at page " + page);
+          state.restart();
+        }
+        res = state.nextPage();
+        while (state.itsPage < page && res.length > 0) {
+          res = state.nextPage();
+        }
+        if (state.itsPage < page) {
+          // Asked for a page beyond the end of the data
+          state.itsPage = page;
+        }
+      }
+    }
+    if (res.length == 0) {
+      // All data has been returned so the cursor is no longer needed
+      synchronized (theirCursors) {
+        if (theirCursors.get(cursor) == state) {
+          theirCursors.remove(cursor);
+        }
+      }
+    }
+    return res;
+  }
+
+  /** Remove cursors which haven't been used recently and, if there are too many, the least recently used ones. */
+  private static void purgeCursors() {
+    long now = System.currentTimeMillis();
+    String oldest = null;
+    long oldesttime = Long.MAX_VALUE;
+    Iterator<Map.Entry<String, CursorState>> i = theirCursors.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry<String, CursorState> entry = i.next();
+      long lastaccess = entry.getValue().itsLastAccess;
+      if (now - lastaccess > theirCursorTimeout) {
+        i.remove();
+      } else if (lastaccess < oldesttime) {
+        oldest = entry.getKey();
+        oldesttime = lastaccess;
+      }
+    }
+    if (theirCursors.size() >= theirMaxCursors && oldest != null) {
+      theirLogger.warn("getArchiveDataPage: Too many open cursors, discarding " + oldest);
+      theirCursors.remove(oldest);
+    }
+  }
+
   /** Return the latest values for the given points. */
   public PointDataIce[] getData(String[] names, Ice.Current __current) {
     PointDataIce[] temp = new PointDataIce[names.length];
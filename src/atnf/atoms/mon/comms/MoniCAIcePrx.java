@@ -58,6 +58,42 @@ public interface MoniCAIcePrx extends Ice.ObjectPrx
 
     public String[] end_getAllPointNamesChunk(Ice.AsyncResult __result);
 
+    public String[] getPointNameChildren(String node);
+
+    public String[] getPointNameChildren(String node, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, Callback_MoniCAIce_getPointNameChildren __cb);
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getPointNameChildren __cb);
+
+    public String[] end_getPointNameChildren(Ice.AsyncResult __result);
+
+    public String[] findPointNames(String pattern, boolean regex);
+
+    public String[] findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, Callback_MoniCAIce_findPointNames __cb);
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, Callback_MoniCAIce_findPointNames __cb);
+
+    public String[] end_findPointNames(Ice.AsyncResult __result);
+
     public PointDescriptionIce[] getPoints(String[] names);
 
     public PointDescriptionIce[] getPoints(String[] names, java.util.Map<String, String> __ctx);
@@ -148,6 +184,24 @@ public interface MoniCAIcePrx extends Ice.ObjectPrx
 
     public PointDataIce[][] end_getArchiveData(Ice.AsyncResult __result);
 
+    public PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm);
+
+    public PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, Callback_MoniCAIce_getArchiveDataDecimated __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getArchiveDataDecimated __cb);
+
+    public PointDataIce[][] end_getArchiveDataDecimated(Ice.AsyncResult __result);
+
     public PointDataIce[] getData(String[] names);
 
     public PointDataIce[] getData(String[] names, java.util.Map<String, String> __ctx);
@@ -184,6 +238,24 @@ public interface MoniCAIcePrx extends Ice.ObjectPrx
 
     public PointDataIce[] end_getBefore(Ice.AsyncResult __result);
 
+    public PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page);
+
+    public PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, Callback_MoniCAIce_getArchiveDataPage __cb);
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getArchiveDataPage __cb);
+
+    public PointDataIce[] end_getArchiveDataPage(Ice.AsyncResult __result);
+
     public PointDataIce[] getAfter(String[] names, long t);
 
     public PointDataIce[] getAfter(String[] names, long t, java.util.Map<String, String> __ctx);
@@ -967,6 +967,275 @@ public final class MoniCAIcePrxHelper extends Ice.ObjectPrxHelperBase implements
         }
     }
 
+    private static final String __getPointNameChildren_name = "getPointNameChildren";
+
+    public String[] getPointNameChildren(String node)
+    {
+        return getPointNameChildren(node, null, false);
+    }
+
+    public String[] getPointNameChildren(String node, java.util.Map<String, String> __ctx)
+    {
+        return getPointNameChildren(node, __ctx, true);
+    }
+
+    private String[] getPointNameChildren(String node, java.util.Map<String, String> __ctx, boolean __explicitCtx)
+    {
+        if(__explicitCtx && __ctx == null)
+        {
+            __ctx = _emptyContext;
+        }
+        final Ice.Instrumentation.InvocationObserver __observer = IceInternal.ObserverHelper.get(this, "getPointNameChildren", __ctx);
+        int __cnt = 0;
+        try
+        {
+            while(true)
+            {
+                Ice._ObjectDel __delBase = null;
+                try
+                {
+                    __checkTwowayOnly("getPointNameChildren");
+                    __delBase = __getDelegate(false);
+                    _MoniCAIceDel __del = (_MoniCAIceDel)__delBase;
+                    return __del.getPointNameChildren(node, __ctx, __observer);
+                }
+                catch(IceInternal.LocalExceptionWrapper __ex)
+                {
+                    __cnt = __handleExceptionWrapperRelaxed(__delBase, __ex, null, __cnt, __observer);
+                }
+                catch(Ice.LocalException __ex)
+                {
+                    __cnt = __handleException(__delBase, __ex, null, __cnt, __observer);
+                }
+            }
+        }
+        finally
+        {
+            if(__observer != null)
+            {
+                __observer.detach();
+            }
+        }
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node)
+    {
+        return begin_getPointNameChildren(node, null, false, null);
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx)
+    {
+        return begin_getPointNameChildren(node, __ctx, true, null);
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, Ice.Callback __cb)
+    {
+        return begin_getPointNameChildren(node, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx, Ice.Callback __cb)
+    {
+        return begin_getPointNameChildren(node, __ctx, true, __cb);
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, Callback_MoniCAIce_getPointNameChildren __cb)
+    {
+        return begin_getPointNameChildren(node, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getPointNameChildren __cb)
+    {
+        return begin_getPointNameChildren(node, __ctx, true, __cb);
+    }
+
+    private Ice.AsyncResult begin_getPointNameChildren(String node, java.util.Map<String, String> __ctx, boolean __explicitCtx, IceInternal.CallbackBase __cb)
+    {
+        __checkAsyncTwowayOnly(__getPointNameChildren_name);
+        IceInternal.OutgoingAsync __result = new IceInternal.OutgoingAsync(this, __getPointNameChildren_name, __cb);
+        try
+        {
+            __result.__prepare(__getPointNameChildren_name, Ice.OperationMode.Idempotent, __ctx, __explicitCtx);
+            IceInternal.BasicStream __os = __result.__startWriteParams(Ice.FormatType.DefaultFormat);
+            __os.writeString(node);
+            __result.__endWriteParams();
+            __result.__send(true);
+        }
+        catch(Ice.LocalException __ex)
+        {
+            __result.__exceptionAsync(__ex);
+        }
+        return __result;
+    }
+
+    public String[] end_getPointNameChildren(Ice.AsyncResult __result)
+    {
+        Ice.AsyncResult.__check(__result, this, __getPointNameChildren_name);
+        boolean __ok = __result.__wait();
+        try
+        {
+            if(!__ok)
+            {
+                try
+                {
+                    __result.__throwUserException();
+                }
+                catch(Ice.UserException __ex)
+                {
+                    throw new Ice.UnknownUserException(__ex.ice_name(), __ex);
+                }
+            }
+            IceInternal.BasicStream __is = __result.__startReadParams();
+            String[] __ret;
+            __ret = stringarrayHelper.read(__is);
+            __result.__endReadParams();
+            return __ret;
+        }
+        catch(Ice.LocalException ex)
+        {
+            Ice.Instrumentation.InvocationObserver __obsv = __result.__getObserver();
+            if(__obsv != null)
+            {
+                __obsv.failed(ex.ice_name());
+            }
+            throw ex;
+        }
+    }
+
+    private static final String __findPointNames_name = "findPointNames";
+
+    public String[] findPointNames(String pattern, boolean regex)
+    {
+        return findPointNames(pattern, regex, null, false);
+    }
+
+    public String[] findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx)
+    {
+        return findPointNames(pattern, regex, __ctx, true);
+    }
+
+    private String[] findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, boolean __explicitCtx)
+    {
+        if(__explicitCtx && __ctx == null)
+        {
+            __ctx = _emptyContext;
+        }
+        final Ice.Instrumentation.InvocationObserver __observer = IceInternal.ObserverHelper.get(this, "findPointNames", __ctx);
+        int __cnt = 0;
+        try
+        {
+            while(true)
+            {
+                Ice._ObjectDel __delBase = null;
+                try
+                {
+                    __checkTwowayOnly("findPointNames");
+                    __delBase = __getDelegate(false);
+                    _MoniCAIceDel __del = (_MoniCAIceDel)__delBase;
+                    return __del.findPointNames(pattern, regex, __ctx, __observer);
+                }
+                catch(IceInternal.LocalExceptionWrapper __ex)
+                {
+                    __cnt = __handleExceptionWrapperRelaxed(__delBase, __ex, null, __cnt, __observer);
+                }
+                catch(Ice.LocalException __ex)
+                {
+                    __cnt = __handleException(__delBase, __ex, null, __cnt, __observer);
+                }
+            }
+        }
+        finally
+        {
+            if(__observer != null)
+            {
+                __observer.detach();
+            }
+        }
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex)
+    {
+        return begin_findPointNames(pattern, regex, null, false, null);
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx)
+    {
+        return begin_findPointNames(pattern, regex, __ctx, true, null);
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, Ice.Callback __cb)
+    {
+        return begin_findPointNames(pattern, regex, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, Ice.Callback __cb)
+    {
+        return begin_findPointNames(pattern, regex, __ctx, true, __cb);
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, Callback_MoniCAIce_findPointNames __cb)
+    {
+        return begin_findPointNames(pattern, regex, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, Callback_MoniCAIce_findPointNames __cb)
+    {
+        return begin_findPointNames(pattern, regex, __ctx, true, __cb);
+    }
+
+    private Ice.AsyncResult begin_findPointNames(String pattern, boolean regex, java.util.Map<String, String> __ctx, boolean __explicitCtx, IceInternal.CallbackBase __cb)
+    {
+        __checkAsyncTwowayOnly(__findPointNames_name);
+        IceInternal.OutgoingAsync __result = new IceInternal.OutgoingAsync(this, __findPointNames_name, __cb);
+        try
+        {
+            __result.__prepare(__findPointNames_name, Ice.OperationMode.Idempotent, __ctx, __explicitCtx);
+            IceInternal.BasicStream __os = __result.__startWriteParams(Ice.FormatType.DefaultFormat);
+            __os.writeString(pattern);
+            __os.writeBool(regex);
+            __result.__endWriteParams();
+            __result.__send(true);
+        }
+        catch(Ice.LocalException __ex)
+        {
+            __result.__exceptionAsync(__ex);
+        }
+        return __result;
+    }
+
+    public String[] end_findPointNames(Ice.AsyncResult __result)
+    {
+        Ice.AsyncResult.__check(__result, this, __findPointNames_name);
+        boolean __ok = __result.__wait();
+        try
+        {
+            if(!__ok)
+            {
+                try
+                {
+                    __result.__throwUserException();
+                }
+                catch(Ice.UserException __ex)
+                {
+                    throw new Ice.UnknownUserException(__ex.ice_name(), __ex);
+                }
+            }
+            IceInternal.BasicStream __is = __result.__startReadParams();
+            String[] __ret;
+            __ret = stringarrayHelper.read(__is);
+            __result.__endReadParams();
+            return __ret;
+        }
+        catch(Ice.LocalException ex)
+        {
+            Ice.Instrumentation.InvocationObserver __obsv = __result.__getObserver();
+            if(__obsv != null)
+            {
+                __obsv.failed(ex.ice_name());
+            }
+            throw ex;
+        }
+    }
+
     private static final String __getAllPoints_name = "getAllPoints";
 
     public PointDescriptionIce[] getAllPoints()
@@ -1504,6 +1773,145 @@ public final class MoniCAIcePrxHelper extends Ice.ObjectPrxHelperBase implements
         }
     }
 
+    private static final String __getArchiveDataDecimated_name = "getArchiveDataDecimated";
+
+    public PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm)
+    {
+        return getArchiveDataDecimated(names, start, end, maxsamples, algorithm, null, false);
+    }
+
+    public PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx)
+    {
+        return getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __ctx, true);
+    }
+
+    private PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, boolean __explicitCtx)
+    {
+        if(__explicitCtx && __ctx == null)
+        {
+            __ctx = _emptyContext;
+        }
+        final Ice.Instrumentation.InvocationObserver __observer = IceInternal.ObserverHelper.get(this, "getArchiveDataDecimated", __ctx);
+        int __cnt = 0;
+        try
+        {
+            while(true)
+            {
+                Ice._ObjectDel __delBase = null;
+                try
+                {
+                    __checkTwowayOnly("getArchiveDataDecimated");
+                    __delBase = __getDelegate(false);
+                    _MoniCAIceDel __del = (_MoniCAIceDel)__delBase;
+                    return __del.getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __ctx, __observer);
+                }
+                catch(IceInternal.LocalExceptionWrapper __ex)
+                {
+                    __cnt = __handleExceptionWrapperRelaxed(__delBase, __ex, null, __cnt, __observer);
+                }
+                catch(Ice.LocalException __ex)
+                {
+                    __cnt = __handleException(__delBase, __ex, null, __cnt, __observer);
+                }
+            }
+        }
+        finally
+        {
+            if(__observer != null)
+            {
+                __observer.detach();
+            }
+        }
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, null, false, null);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __ctx, true, null);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, Ice.Callback __cb)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, Ice.Callback __cb)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __ctx, true, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, Callback_MoniCAIce_getArchiveDataDecimated __cb)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getArchiveDataDecimated __cb)
+    {
+        return begin_getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __ctx, true, __cb);
+    }
+
+    private Ice.AsyncResult begin_getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, java.util.Map<String, String> __ctx, boolean __explicitCtx, IceInternal.CallbackBase __cb)
+    {
+        __checkAsyncTwowayOnly(__getArchiveDataDecimated_name);
+        IceInternal.OutgoingAsync __result = new IceInternal.OutgoingAsync(this, __getArchiveDataDecimated_name, __cb);
+        try
+        {
+            __result.__prepare(__getArchiveDataDecimated_name, Ice.OperationMode.Idempotent, __ctx, __explicitCtx);
+            IceInternal.BasicStream __os = __result.__startWriteParams(Ice.FormatType.DefaultFormat);
+            stringarrayHelper.write(__os, names);
+            __os.writeLong(start);
+            __os.writeLong(end);
+            __os.writeLong(maxsamples);
+            __os.writeString(algorithm);
+            __result.__endWriteParams();
+            __result.__send(true);
+        }
+        catch(Ice.LocalException __ex)
+        {
+            __result.__exceptionAsync(__ex);
+        }
+        return __result;
+    }
+
+    public PointDataIce[][] end_getArchiveDataDecimated(Ice.AsyncResult __result)
+    {
+        Ice.AsyncResult.__check(__result, this, __getArchiveDataDecimated_name);
+        boolean __ok = __result.__wait();
+        try
+        {
+            if(!__ok)
+            {
+                try
+                {
+                    __result.__throwUserException();
+                }
+                catch(Ice.UserException __ex)
+                {
+                    throw new Ice.UnknownUserException(__ex.ice_name(), __ex);
+                }
+            }
+            IceInternal.BasicStream __is = __result.__startReadParams();
+            PointDataIce[][] __ret;
+            __ret = pointdatasetarrayHelper.read(__is);
+            __is.readPendingObjects();
+            __result.__endReadParams();
+            return __ret;
+        }
+        catch(Ice.LocalException ex)
+        {
+            Ice.Instrumentation.InvocationObserver __obsv = __result.__getObserver();
+            if(__obsv != null)
+            {
+                __obsv.failed(ex.ice_name());
+            }
+            throw ex;
+        }
+    }
+
     private static final String __getBefore_name = "getBefore";
 
     public PointDataIce[] getBefore(String[] names, long t)
@@ -1640,6 +2048,145 @@ public final class MoniCAIcePrxHelper extends Ice.ObjectPrxHelperBase implements
         }
     }
 
+    private static final String __getArchiveDataPage_name = "getArchiveDataPage";
+
+    public PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page)
+    {
+        return getArchiveDataPage(cursor, name, start, end, page, null, false);
+    }
+
+    public PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx)
+    {
+        return getArchiveDataPage(cursor, name, start, end, page, __ctx, true);
+    }
+
+    private PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, boolean __explicitCtx)
+    {
+        if(__explicitCtx && __ctx == null)
+        {
+            __ctx = _emptyContext;
+        }
+        final Ice.Instrumentation.InvocationObserver __observer = IceInternal.ObserverHelper.get(this, "getArchiveDataPage", __ctx);
+        int __cnt = 0;
+        try
+        {
+            while(true)
+            {
+                Ice._ObjectDel __delBase = null;
+                try
+                {
+                    __checkTwowayOnly("getArchiveDataPage");
+                    __delBase = __getDelegate(false);
+                    _MoniCAIceDel __del = (_MoniCAIceDel)__delBase;
+                    return __del.getArchiveDataPage(cursor, name, start, end, page, __ctx, __observer);
+                }
+                catch(IceInternal.LocalExceptionWrapper __ex)
+                {
+                    __cnt = __handleExceptionWrapperRelaxed(__delBase, __ex, null, __cnt, __observer);
+                }
+                catch(Ice.LocalException __ex)
+                {
+                    __cnt = __handleException(__delBase, __ex, null, __cnt, __observer);
+                }
+            }
+        }
+        finally
+        {
+            if(__observer != null)
+            {
+                __observer.detach();
+            }
+        }
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, null, false, null);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, __ctx, true, null);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, Ice.Callback __cb)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, Ice.Callback __cb)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, __ctx, true, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, Callback_MoniCAIce_getArchiveDataPage __cb)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, Callback_MoniCAIce_getArchiveDataPage __cb)
+    {
+        return begin_getArchiveDataPage(cursor, name, start, end, page, __ctx, true, __cb);
+    }
+
+    private Ice.AsyncResult begin_getArchiveDataPage(String cursor, String name, long start, long end, int page, java.util.Map<String, String> __ctx, boolean __explicitCtx, IceInternal.CallbackBase __cb)
+    {
+        __checkAsyncTwowayOnly(__getArchiveDataPage_name);
+        IceInternal.OutgoingAsync __result = new IceInternal.OutgoingAsync(this, __getArchiveDataPage_name, __cb);
+        try
+        {
+            __result.__prepare(__getArchiveDataPage_name, Ice.OperationMode.Idempotent, __ctx, __explicitCtx);
+            IceInternal.BasicStream __os = __result.__startWriteParams(Ice.FormatType.DefaultFormat);
+            __os.writeString(cursor);
+            __os.writeString(name);
+            __os.writeLong(start);
+            __os.writeLong(end);
+            __os.writeInt(page);
+            __result.__endWriteParams();
+            __result.__send(true);
+        }
+        catch(Ice.LocalException __ex)
+        {
+            __result.__exceptionAsync(__ex);
+        }
+        return __result;
+    }
+
+    public PointDataIce[] end_getArchiveDataPage(Ice.AsyncResult __result)
+    {
+        Ice.AsyncResult.__check(__result, this, __getArchiveDataPage_name);
+        boolean __ok = __result.__wait();
+        try
+        {
+            if(!__ok)
+            {
+                try
+                {
+                    __result.__throwUserException();
+                }
+                catch(Ice.UserException __ex)
+                {
+                    throw new Ice.UnknownUserException(__ex.ice_name(), __ex);
+                }
+            }
+            IceInternal.BasicStream __is = __result.__startReadParams();
+            PointDataIce[] __ret;
+            __ret = pointdatasetHelper.read(__is);
+            __is.readPendingObjects();
+            __result.__endReadParams();
+            return __ret;
+        }
+        catch(Ice.LocalException ex)
+        {
+            Ice.Instrumentation.InvocationObserver __obsv = __result.__getObserver();
+            if(__obsv != null)
+            {
+                __obsv.failed(ex.ice_name());
+            }
+            throw ex;
+        }
+    }
+
     private static final String __getCurrentAlarms_name = "getCurrentAlarms";
 
     public AlarmIce[] getCurrentAlarms()
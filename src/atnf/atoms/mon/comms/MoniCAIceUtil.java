@@ -141,6 +141,19 @@ public class MoniCAIceUtil {
     if (pd==null) return null;
     //Have to convert to string/type pair for cross language compatibility
     DataValue value;
+    //Primitive values can be converted without creating a wrapper
+    switch (pd.getValueType()) {
+    case PointData.TYPE_FLOAT:
+      return new PointDataIce(pd.getName(), pd.getTimestamp().getValue(), new DataValueFloat(DataType.DTFloat, (float)pd.doubleValue()), pd.getAlarm());
+    case PointData.TYPE_DOUBLE:
+      return new PointDataIce(pd.getName(), pd.getTimestamp().getValue(), new DataValueDouble(DataType.DTDouble, pd.doubleValue()), pd.getAlarm());
+    case PointData.TYPE_LONG:
+      return new PointDataIce(pd.getName(), pd.getTimestamp().getValue(), new DataValueLong(DataType.DTLong, pd.longValue()), pd.getAlarm());
+    case PointData.TYPE_INT:
+      return new PointDataIce(pd.getName(), pd.getTimestamp().getValue(), new DataValueInt(DataType.DTInt, (int)pd.longValue()), pd.getAlarm());
+    case PointData.TYPE_BOOLEAN:
+      return new PointDataIce(pd.getName(), pd.getTimestamp().getValue(), new DataValueBoolean(DataType.DTBoolean, pd.booleanValue()), pd.getAlarm());
+    }
     Object data = pd.getData();
     //Lookup type of data object and assign appropriate values
     if (data instanceof Float) {
@@ -192,19 +205,32 @@ public class MoniCAIceUtil {
   {
     String name = icedata.name;
     AbsTime ts = AbsTime.factory(icedata.timestamp);
-    Object value;
+    boolean alarm = icedata.alarm;
+    //Primitive values are stored without creating a wrapper
     if (icedata.value.type==DataType.DTFloat) {
-      value = new Float(((DataValueFloat)icedata.value).value);
+      PointData res = new PointData(name, ts, null, alarm);
+      res.setData(((DataValueFloat)icedata.value).value);
+      return res;
     } else if (icedata.value.type==DataType.DTDouble) {
-      value = new Double(((DataValueDouble)icedata.value).value);
+      PointData res = new PointData(name, ts, null, alarm);
+      res.setData(((DataValueDouble)icedata.value).value);
+      return res;
     } else if (icedata.value.type==DataType.DTInt) {
-      value = new Integer(((DataValueInt)icedata.value).value);
+      PointData res = new PointData(name, ts, null, alarm);
+      res.setData(((DataValueInt)icedata.value).value);
+      return res;
     } else if (icedata.value.type==DataType.DTLong) {
-      value = new Long(((DataValueLong)icedata.value).value);      
-    } else if (icedata.value.type==DataType.DTString) {
-      value = ((DataValueString)icedata.value).value;
+      PointData res = new PointData(name, ts, null, alarm);
+      res.setData(((DataValueLong)icedata.value).value);
+      return res;
     } else if (icedata.value.type==DataType.DTBoolean) {
-      value = new Boolean(((DataValueBoolean)icedata.value).value);
+      PointData res = new PointData(name, ts, null, alarm);
+      res.setData(((DataValueBoolean)icedata.value).value);
+      return res;
+    }
+    Object value;
+    if (icedata.value.type==DataType.DTString) {
+      value = ((DataValueString)icedata.value).value;
     } else if (icedata.value.type==DataType.DTAbsTime) {
       value = AbsTime.factory(((DataValueAbsTime)icedata.value).value);
     } else if (icedata.value.type==DataType.DTRelTime) {
@@ -220,7 +246,6 @@ public class MoniCAIceUtil {
     } else {
       value = null;
     }
-    boolean alarm = icedata.alarm;
     return new PointData(name, ts, value, alarm);
   }
   
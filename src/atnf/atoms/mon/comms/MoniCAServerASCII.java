@@ -8,22 +8,35 @@
 
 package atnf.atoms.mon.comms;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.log4j.Logger;
 
 import atnf.atoms.mon.Alarm;
 import atnf.atoms.mon.AlarmManager;
+import atnf.atoms.mon.ArchiveCursor;
+import atnf.atoms.mon.ArchiveQueryPool;
+import atnf.atoms.mon.Downsampler;
 import atnf.atoms.mon.KeyKeeper;
 import atnf.atoms.mon.PointBuffer;
 import atnf.atoms.mon.PointData;
@@ -40,6 +53,12 @@ import atnf.atoms.time.RelTime;
 /**
  * Provides a simple ASCII interface for clients to obtain monitor data.
  * 
+ * <P>
+ * The main server thread multiplexes all client connections with a <tt>Selector</tt>. When a client sends a request it is handed to
+ * a pool of <tt>ASCIIThreads</tt> threads, which release the client again once there are no further requests waiting, so idle and
+ * short-lived connections don't tie up a thread each. A client which stops part way through a multi-line request, or which stops
+ * reading replies, is disconnected after <tt>ASCIIRequestTimeout</tt> seconds.
+ * 
  * @author David Brodrick
  */
 public class MoniCAServerASCII extends Thread {
@@ -52,8 +71,8 @@ public class MoniCAServerASCII extends Thread {
   /** Indicates if the thread should keep running (true) or stop (false). */
   protected boolean itsRunning = true;
 
-  /** The socket used to listen for requests from our client. */
-  protected Socket itsSocket = null;
+  /** The connection to our client, or null for the main server. */
+  protected LineConnection itsConnection = null;
 
   /** The name of the client, including host and port number. */
   protected String itsClientName = null;
@@ -65,7 +84,7 @@ public class MoniCAServerASCII extends Thread {
   protected PrintWriter itsWriter = null;
 
   /** For reading instructions from the client. */
-  protected BufferedReader itsReader = null;
+  protected LineConnection itsReader = null;
 
   /** Handles RSA encryption. */
   private RSA itsRSA = null;
@@ -73,8 +92,39 @@ public class MoniCAServerASCII extends Thread {
   /** List of all currently running servers. */
   protected static Vector<MoniCAServerASCII> theirServers = new Vector<MoniCAServerASCII>();
 
-  /** Server socket SO timeout (ms). */
-  protected static int theirServerSocketTimeout = 100;
+  /** Number of threads which process client requests. */
+  protected static int theirNumThreads = 16;
+
+  /** Maximum time (ms) to wait for a client to send the rest of a request or accept a reply. */
+  protected static long theirRequestTimeout = 30000;
+
+  /** Threads which process client requests. */
+  protected static ThreadPoolExecutor theirWorkers = null;
+
+  /** The selector used by the main server, or null if it isn't running. */
+  protected Selector itsSelector = null;
+
+  /** Connections waiting for the selector to watch for them becoming writable. */
+  protected ConcurrentLinkedQueue<LineConnection> itsWriteRequests = new ConcurrentLinkedQueue<LineConnection>();
+
+  /** Static block to parse configuration parameters. */
+  static {
+    try {
+      theirNumThreads = Integer.parseInt(MonitorConfig.getProperty("ASCIIThreads", "16"));
+      if (theirNumThreads < 1) {
+        theirNumThreads = 1;
+      }
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ASCIIThreads configuration parameter: " + e);
+      theirNumThreads = 16;
+    }
+    try {
+      theirRequestTimeout = (long) (1000 * Double.parseDouble(MonitorConfig.getProperty("ASCIIRequestTimeout", "30")));
+    } catch (Exception e) {
+      theirLogger.warn("Error parsing ASCIIRequestTimeout configuration parameter: " + e);
+      theirRequestTimeout = 30000;
+    }
+  }
 
   /** Starts up the main server thread which waits for client connections. */
   public MoniCAServerASCII() {
@@ -86,25 +136,28 @@ public class MoniCAServerASCII extends Thread {
   }
 
   /**
-   * Starts up a server thread to handle requests from a new client.
+   * Create a handler for requests from a new client. The handler doesn't have a thread of its own, instead <i>processConnection</i>
+   * is run by one of the worker threads whenever the client has sent a request.
    * 
-   * @param socket
-   *          The socket connection to the new client.
+   * @param connection
+   *          The connection to the new client.
    */
-  public MoniCAServerASCII(Socket socket) throws IOException {
-    super("MonitorServerASCII/" + socket.getInetAddress().getHostAddress());
+  public MoniCAServerASCII(LineConnection connection) {
+    super("MonitorServerASCII/" + connection.getChannel().socket().getInetAddress().getHostAddress());
     synchronized (theirServers) {
       theirServers.add(this);
     }
-    theirNumClients++;
+    Socket socket = connection.getChannel().socket();
+    synchronized (MoniCAServerASCII.class) {
+      theirNumClients++;
+    }
     itsClientHost = socket.getInetAddress().getHostAddress();
     itsClientName = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
     // System.out.println("MonitorServerASCII: New Connection from " +
     // itsClientName);
-    itsSocket = socket;
-    itsReader = new BufferedReader(new InputStreamReader(itsSocket.getInputStream()));
-    itsWriter = new PrintWriter(itsSocket.getOutputStream());
-    start();
+    itsConnection = connection;
+    itsReader = connection;
+    itsWriter = connection.getWriter();
   }
 
   /** Return the number of clients connected. */
@@ -115,21 +168,30 @@ public class MoniCAServerASCII extends Thread {
   /** Make all servers exit. */
   public static void stopAll() {
     synchronized (theirServers) {
-      Iterator<MoniCAServerASCII> i = theirServers.iterator();
+      // Copy since client handlers remove themselves as they close
+      Iterator<MoniCAServerASCII> i = new Vector<MoniCAServerASCII>(theirServers).iterator();
       while (i.hasNext()) {
         i.next().stopRunning();
       }
     }
     try {
-      Thread.sleep(2 * theirServerSocketTimeout);
+      Thread.sleep(200);
     } catch (InterruptedException e) {
     }
   }
 
-  /** Stop the running thread. */
+  /** Stop the running thread, or disconnect the client. */
   public void stopRunning() {
     itsRunning = false;
-    interrupt();
+    if (itsConnection != null) {
+      itsConnection.close();
+    } else {
+      Selector selector = itsSelector;
+      if (selector != null) {
+        selector.wakeup();
+      }
+      interrupt();
+    }
   }
 
   /** Main loop to parse and service client requests. */
@@ -138,6 +200,10 @@ public class MoniCAServerASCII extends Thread {
     while (itsRunning) {
       try {
         synchronized (itsReader) {
+          if (itsReader.release()) {
+            // No more requests for now, the selector will reschedule us when there are
+            return;
+          }
           String line = itsReader.readLine();
           if (line == null) {
             // Connection broke..
@@ -152,7 +218,13 @@ public class MoniCAServerASCII extends Thread {
           } else if (line.equalsIgnoreCase("since")) {
             since();
           } else if (line.equalsIgnoreCase("between")) {
-            between();
+            between(false);
+          } else if (line.equalsIgnoreCase("betweenstream")) {
+            between(true);
+          } else if (line.equalsIgnoreCase("betweenmulti")) {
+            betweenmulti();
+          } else if (line.equalsIgnoreCase("betweensampled")) {
+            betweensampled();
           } else if (line.equalsIgnoreCase("preceding") || line.equalsIgnoreCase("preceeding")) {
             // Original interface had spelling error
             preceding();
@@ -160,6 +232,12 @@ public class MoniCAServerASCII extends Thread {
             following();
           } else if (line.equalsIgnoreCase("names")) {
             names();
+          } else if (line.equalsIgnoreCase("children")) {
+            children();
+          } else if (line.equalsIgnoreCase("find")) {
+            find(false);
+          } else if (line.equalsIgnoreCase("findregex")) {
+            find(true);
           } else if (line.equalsIgnoreCase("details")) {
             details();
           } else if (line.equalsIgnoreCase("set")) {
@@ -188,16 +266,17 @@ public class MoniCAServerASCII extends Thread {
         itsRunning = false;
       }
     }
-    // System.out.println("MonitorServerASCII: Lost Connection to " + itsSocket.getInetAddress().getHostAddress());
+    // System.out.println("MonitorServerASCII: Lost Connection to " + itsClientName);
     try {
-      itsReader.close();
       itsWriter.close();
-      if (!itsSocket.isClosed()) {
-        itsSocket.close();
-      }
+      itsConnection.close();
     } catch (Exception e) {
       theirLogger.warn("When closing socket: " + e);
     }
+    synchronized (MoniCAServerASCII.class) {
+      theirNumClients--;
+    }
+    theirServers.remove(this);
   }
 
   /** Return the names of all monitor points. */
@@ -221,7 +300,66 @@ public class MoniCAServerASCII extends Thread {
     }
   }
 
-  protected void between() {
+  /**
+   * Return the immediate children of a node in the point name hierarchy. The node is given on the next line, or an empty line for the
+   * top level. Children which contain further points are returned with a trailing full stop.
+   */
+  protected void children() {
+    try {
+      String node = itsReader.readLine().trim();
+      sendNames(PointDescription.getChildNames(node));
+    } catch (Exception e) {
+      theirLogger.error("Problem in children request from " + itsClientName + ": " + e);
+      itsRunning = false;
+    }
+  }
+
+  /**
+   * Return the names of all points which match the glob pattern or regular expression given on the next line.
+   * 
+   * @param regex
+   *          True if the pattern is a regular expression, false if it is a glob pattern.
+   */
+  protected void find(boolean regex) {
+    try {
+      String pattern = itsReader.readLine().trim();
+      String[] names;
+      try {
+        if (regex) {
+          names = PointDescription.findPointNamesRegex(pattern);
+        } else {
+          names = PointDescription.findPointNames(pattern);
+        }
+      } catch (PatternSyntaxException e) {
+        itsWriter.println("? Invalid regular expression");
+        itsWriter.flush();
+        return;
+      }
+      sendNames(names);
+    } catch (Exception e) {
+      theirLogger.error("Problem in find request from " + itsClientName + ": " + e);
+      itsRunning = false;
+    }
+  }
+
+  /** Send the number of names followed by each name. */
+  private void sendNames(String[] names) {
+    itsWriter.println(names.length);
+    for (int i = 0; i < names.length; i++) {
+      itsWriter.println(names[i]);
+    }
+    itsWriter.flush();
+  }
+
+  /**
+   * Return the data for a point between two times. Normally the number of samples is sent followed by the samples, which requires
+   * all of the data to be collected first. When streaming, the data is sent in chunks as it is read from the archive, each
+   * preceded by the number of samples in the chunk, and a final count of zero marks the end of the data.
+   *
+   * @param stream
+   *          True to send the data in chunks.
+   */
+  protected void between(boolean stream) {
     try {
       String tempstr = itsReader.readLine().trim();
       // Line should say <TIMESTAMP> <TIMESTAMP> <POINTNAME> [alarms]
@@ -276,6 +414,19 @@ public class MoniCAServerASCII extends Thread {
         }
       }
 
+      if (stream) {
+        ArchiveCursor cursor = new ArchiveCursor(PointDescription.getPoint(mpname), starttime, endtime);
+        Vector<PointData> chunk;
+        while ((chunk = cursor.nextChunk()) != null) {
+          itsWriter.println(chunk.size());
+          sendBetweenData(chunk, withalarms);
+          itsWriter.flush();
+        }
+        itsWriter.println("0");
+        itsWriter.flush();
+        return;
+      }
+
       // Get data between the specified times
       Vector<PointData> data = PointBuffer.getPointData(mpname, starttime, endtime, 0);
       if (data == null) {
@@ -283,18 +434,8 @@ public class MoniCAServerASCII extends Thread {
         itsWriter.println("0");
       } else {
         // Tell the client how many samples we are going to send
-        int numdata = data.size();
-        itsWriter.println(numdata);
-        // Send each sample
-        for (int i = 0; i < numdata; i++) {
-          PointData pd = (PointData) data.get(i);
-          itsWriter.print(pd.getTimestamp().toString(AbsTime.Format.HEX_BAT) + "\t" + pd.getData());
-          if (withalarms) {
-            itsWriter.println("\t" + pd.getAlarm());
-          } else {
-            itsWriter.println();
-          }
-        }
+        itsWriter.println(data.size());
+        sendBetweenData(data, withalarms);
       }
 
       itsWriter.flush();
@@ -305,6 +446,169 @@ public class MoniCAServerASCII extends Thread {
     }
   }
 
+  /**
+   * Return the data for several points between two times. The first line gives the two timestamps, optionally followed by "alarms",
+   * the next line the number of points and then each point name is on its own line. The points are retrieved in parallel and the
+   * reply for each point, in the order requested, is the name and number of samples followed by the samples.
+   */
+  protected void betweenmulti() {
+    try {
+      String tempstr = itsReader.readLine().trim();
+      // Line should say <TIMESTAMP> <TIMESTAMP> [alarms]
+      StringTokenizer st = new StringTokenizer(tempstr);
+      // Next line tells us how many points are going to be specified
+      int numpoints = Integer.parseInt(itsReader.readLine().trim());
+      String[] names = new String[numpoints];
+      for (int i = 0; i < numpoints; i++) {
+        names[i] = itsReader.readLine().trim();
+      }
+      if (st.countTokens() < 2) {
+        itsWriter.println("? Need two BAT timestamps");
+        itsWriter.flush();
+        return;
+      }
+
+      AbsTime starttime = null;
+      AbsTime endtime = null;
+      try {
+        starttime = AbsTime.factory(st.nextToken());
+        endtime = AbsTime.factory(st.nextToken());
+      } catch (Exception e) {
+        itsWriter.println("? BAT timestamp couldn't be parsed");
+        itsWriter.flush();
+        return;
+      }
+      if (endtime.isBefore(starttime)) {
+        AbsTime temp = endtime;
+        endtime = starttime;
+        starttime = temp;
+      }
+      boolean withalarms = false;
+      if (st.hasMoreTokens()) {
+        if (st.nextToken().toLowerCase().equals("alarms")) {
+          withalarms = true;
+        }
+      }
+
+      PointDescription[] points = new PointDescription[numpoints];
+      for (int i = 0; i < numpoints; i++) {
+        checkPoint(names[i]);
+        points[i] = PointDescription.getPoint(names[i]);
+      }
+      Vector<PointData>[] alldata;
+      try {
+        alldata = ArchiveQueryPool.getPointData(points, starttime, endtime, 0, null, ArchiveQueryPool.getDefaultTimeout());
+      } catch (TimeoutException e) {
+        itsWriter.println("? Timed out retrieving data");
+        itsWriter.flush();
+        return;
+      }
+      for (int i = 0; i < numpoints; i++) {
+        if (points[i] == null) {
+          itsWriter.println("? Named point doesn't exist");
+        } else if (alldata[i] == null) {
+          itsWriter.println(names[i] + "\t0");
+        } else {
+          itsWriter.println(names[i] + "\t" + alldata[i].size());
+          sendBetweenData(alldata[i], withalarms);
+        }
+      }
+      itsWriter.flush();
+    } catch (Exception e) {
+      theirLogger.error("Problem in betweenmulti request from " + itsClientName + ": " + e);
+      itsRunning = false;
+    }
+  }
+
+  /**
+   * Return the data for a point between two times, reduced by the server to a maximum number of samples. The request line is
+   * <tt>&lt;TIMESTAMP&gt; &lt;TIMESTAMP&gt; &lt;POINTNAME&gt; &lt;MAXSAMPLES&gt; &lt;ALGORITHM&gt; [alarms]</tt>, where the algorithm is one of
+   * those provided by <tt>Downsampler</tt>, and the reply is the same as for <tt>between</tt>.
+   */
+  protected void betweensampled() {
+    try {
+      String tempstr = itsReader.readLine().trim();
+      StringTokenizer st = new StringTokenizer(tempstr);
+      if (st.countTokens() < 5) {
+        itsWriter.println("? Need two BAT timestamps, a point name, the number of samples and the algorithm");
+        itsWriter.flush();
+        return;
+      }
+
+      AbsTime starttime = null;
+      AbsTime endtime = null;
+      try {
+        starttime = AbsTime.factory(st.nextToken());
+        endtime = AbsTime.factory(st.nextToken());
+      } catch (Exception e) {
+        itsWriter.println("? BAT timestamp couldn't be parsed");
+        itsWriter.flush();
+        return;
+      }
+      if (endtime.isBefore(starttime)) {
+        AbsTime temp = endtime;
+        endtime = starttime;
+        starttime = temp;
+      }
+
+      String mpname = st.nextToken();
+      checkPoint(mpname);
+      PointDescription pm = PointDescription.getPoint(mpname);
+      if (pm == null) {
+        itsWriter.println("? Named point doesn't exist");
+        itsWriter.flush();
+        return;
+      }
+
+      int maxsamples;
+      try {
+        maxsamples = Integer.parseInt(st.nextToken());
+      } catch (NumberFormatException e) {
+        itsWriter.println("? Number of samples couldn't be parsed");
+        itsWriter.flush();
+        return;
+      }
+      String algorithm = st.nextToken();
+      if (!Downsampler.isSupported(algorithm)) {
+        itsWriter.println("? Unknown downsampling algorithm");
+        itsWriter.flush();
+        return;
+      }
+
+      boolean withalarms = false;
+      if (st.hasMoreTokens()) {
+        if (st.nextToken().toLowerCase().equals("alarms")) {
+          withalarms = true;
+        }
+      }
+
+      Vector<PointData> data = PointBuffer.getPointData(pm, starttime, endtime, maxsamples, algorithm);
+      if (data == null) {
+        itsWriter.println("0");
+      } else {
+        itsWriter.println(data.size());
+        sendBetweenData(data, withalarms);
+      }
+      itsWriter.flush();
+    } catch (Exception e) {
+      theirLogger.error("Problem in betweensampled request from " + itsClientName + ": " + e);
+      itsRunning = false;
+    }
+  }
+
+  /** Send each sample of the data for a between request. */
+  private void sendBetweenData(Vector<PointData> data, boolean withalarms) {
+    for (int i = 0; i < data.size(); i++) {
+      PointData pd = data.get(i);
+      itsWriter.print(pd.getTimestamp().toString(AbsTime.Format.HEX_BAT) + "\t" + pd.getData());
+      if (withalarms) {
+        itsWriter.println("\t" + pd.getAlarm());
+      } else {
+        itsWriter.println();
+      }
+    }
+  }
+
   protected void since() {
     try {
       String tempstr = itsReader.readLine().trim();
@@ -841,44 +1145,105 @@ public class MoniCAServerASCII extends Thread {
     }
   }
 
+  /** Get the pool of threads which process client requests, creating it if required. */
+  private static synchronized ThreadPoolExecutor getWorkers() {
+    if (theirWorkers == null) {
+      theirWorkers = new ThreadPoolExecutor(theirNumThreads, theirNumThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private int itsCount = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "MonitorServerASCII Worker " + itsCount++);
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return theirWorkers;
+  }
+
+  /** Hand the client's requests to a worker thread. */
+  private static void schedule(final MoniCAServerASCII client) {
+    getWorkers().execute(new Runnable() {
+      public void run() {
+        client.processConnection();
+      }
+    });
+  }
+
   /**
-   * Starting point for threads. If this object was created without a specified socket then we start a server thread which awaits
-   * client connections and spawns new instances to service new clients. If a socket was specified at construction then we know that
-   * we are supposed to service a particular client and we leap to the <i>processConnection</i> method to do so.
+   * Main loop of the server thread, which accepts client connections and reads their requests. Client handlers run
+   * <i>processConnection</i> on the worker threads.
    */
   public void run() {
+    ServerSocketChannel ssc = null;
     try {
-      if (itsSocket == null) {
-        // No socket specified - we are the main server
-        // Get the port to listen on for new client connections
-        int port = Integer.parseInt(MonitorConfig.getProperty("ASCIIPort"));
-        // Create the server socket to listen with
-        ServerSocket ss = new ServerSocket(port);
-        ss.setSoTimeout(theirServerSocketTimeout);
-
-        // Keep looping until we need to stop
-        while (itsRunning) {
-          try {
-            // Await a new client connection
-            Socket soc = ss.accept();
-            // Got a new client connection, spawn a server to service it
-            if (soc != null) {
-              new MoniCAServerASCII(soc);
+      // Get the port to listen on for new client connections
+      int port = Integer.parseInt(MonitorConfig.getProperty("ASCIIPort"));
+      // Create the server socket to listen with
+      itsSelector = Selector.open();
+      ssc = ServerSocketChannel.open();
+      ssc.socket().setReuseAddress(true);
+      ssc.socket().bind(new InetSocketAddress(port));
+      ssc.configureBlocking(false);
+      ssc.register(itsSelector, SelectionKey.OP_ACCEPT);
+    } catch (IOException ie) {
+      // Couldn't open the server port
+      theirLogger.error("Can't open server port: " + ie);
+      theirServers.remove(this);
+      return;
+    }
+
+    // Keep looping until we need to stop
+    while (itsRunning) {
+      try {
+        itsSelector.select();
+
+        // Watch for space to send output to clients with full socket buffers
+        LineConnection writer;
+        while ((writer = itsWriteRequests.poll()) != null) {
+          writer.watchWritable();
+        }
+
+        Iterator<SelectionKey> keys = itsSelector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            // Got a new client connection, create a handler to service it
+            SocketChannel sc = ssc.accept();
+            if (sc != null) {
+              sc.configureBlocking(false);
+              LineConnection conn = new LineConnection(sc, itsSelector, itsWriteRequests, theirRequestTimeout);
+              MoniCAServerASCII client = new MoniCAServerASCII(conn);
+              conn.setKey(sc.register(itsSelector, SelectionKey.OP_READ, client));
+            }
+            continue;
+          }
+          MoniCAServerASCII client = (MoniCAServerASCII) key.attachment();
+          if (key.isWritable()) {
+            client.itsConnection.writeReady();
+          }
+          if (key.isValid() && key.isReadable()) {
+            if (client.itsConnection.readAvailable()) {
+              schedule(client);
             }
-          } catch (IOException ie) {
           }
         }
-        ss.close();
-
-      } else {
-        // We aren't the main server: we need to service a particular client
-        processConnection();
-        // Keep track of how many servers/clients there are
-        theirNumClients--;
+      } catch (CancelledKeyException e) {
+        // Client disconnected while we were handling it
+      } catch (IOException e) {
+        theirLogger.warn("Error handling client connections: " + e);
       }
-    } catch (IOException ie) {
-      // Couldn't open the server port
-      theirLogger.error("Can't open server port: " + ie);
+    }
+
+    try {
+      ssc.close();
+      itsSelector.close();
+    } catch (IOException e) {
     }
     theirServers.remove(this);
   }
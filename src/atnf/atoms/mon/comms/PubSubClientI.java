@@ -126,6 +126,20 @@ public class PubSubClientI extends _PubSubClientDisp {
 
     /** Subscribe to the given points. */
     public void subscribe(String[] pointnames) throws Exception
+    {
+        subscribe(pointnames, false);
+    }
+
+    /**
+     * Subscribe to the given points.
+     * 
+     * @param pointnames
+     *            Names of the points of interest.
+     * @param latestonly
+     *            If true the server only sends the latest value when several
+     *            updates for a point are waiting to be delivered.
+     */
+    public void subscribe(String[] pointnames, boolean latestonly) throws Exception
     {
         // Obtain the topic or create
         TopicManagerPrx topicManager;
@@ -156,7 +170,11 @@ public class PubSubClientI extends _PubSubClientDisp {
         req.topicname = itsTopicName;
         req.pointnames = pointnames;
 
-        itsPubSubControl.subscribe(req);
+        if (latestonly) {
+            itsPubSubControl.subscribeLatestOnly(req);
+        } else {
+            itsPubSubControl.subscribe(req);
+        }
     }
 
     /** Callback from Ice when new data is published on our topic. */
@@ -40,6 +40,24 @@ public interface PubSubControlPrx extends Ice.ObjectPrx
 
     public void end_subscribe(Ice.AsyncResult __result);
 
+    public void subscribeLatestOnly(PubSubRequest req);
+
+    public void subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, Ice.Callback __cb);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, Callback_PubSubControl_subscribeLatestOnly __cb);
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, Callback_PubSubControl_subscribeLatestOnly __cb);
+
+    public void end_subscribeLatestOnly(Ice.AsyncResult __result);
+
     public void unsubscribe(String topicname);
 
     public void unsubscribe(String topicname, java.util.Map<String, String> __ctx);
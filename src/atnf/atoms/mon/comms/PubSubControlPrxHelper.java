@@ -230,6 +230,110 @@ public final class PubSubControlPrxHelper extends Ice.ObjectPrxHelperBase implem
         __end(__result, __subscribe_name);
     }
 
+    private static final String __subscribeLatestOnly_name = "subscribeLatestOnly";
+
+    public void subscribeLatestOnly(PubSubRequest req)
+    {
+        subscribeLatestOnly(req, null, false);
+    }
+
+    public void subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx)
+    {
+        subscribeLatestOnly(req, __ctx, true);
+    }
+
+    private void subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, boolean __explicitCtx)
+    {
+        if(__explicitCtx && __ctx == null)
+        {
+            __ctx = _emptyContext;
+        }
+        final Ice.Instrumentation.InvocationObserver __observer = IceInternal.ObserverHelper.get(this, "subscribeLatestOnly", __ctx);
+        int __cnt = 0;
+        try
+        {
+            while(true)
+            {
+                Ice._ObjectDel __delBase = null;
+                try
+                {
+                    __delBase = __getDelegate(false);
+                    _PubSubControlDel __del = (_PubSubControlDel)__delBase;
+                    __del.subscribeLatestOnly(req, __ctx, __observer);
+                    return;
+                }
+                catch(IceInternal.LocalExceptionWrapper __ex)
+                {
+                    __handleExceptionWrapper(__delBase, __ex, __observer);
+                }
+                catch(Ice.LocalException __ex)
+                {
+                    __cnt = __handleException(__delBase, __ex, null, __cnt, __observer);
+                }
+            }
+        }
+        finally
+        {
+            if(__observer != null)
+            {
+                __observer.detach();
+            }
+        }
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req)
+    {
+        return begin_subscribeLatestOnly(req, null, false, null);
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx)
+    {
+        return begin_subscribeLatestOnly(req, __ctx, true, null);
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, Ice.Callback __cb)
+    {
+        return begin_subscribeLatestOnly(req, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, Ice.Callback __cb)
+    {
+        return begin_subscribeLatestOnly(req, __ctx, true, __cb);
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, Callback_PubSubControl_subscribeLatestOnly __cb)
+    {
+        return begin_subscribeLatestOnly(req, null, false, __cb);
+    }
+
+    public Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, Callback_PubSubControl_subscribeLatestOnly __cb)
+    {
+        return begin_subscribeLatestOnly(req, __ctx, true, __cb);
+    }
+
+    private Ice.AsyncResult begin_subscribeLatestOnly(PubSubRequest req, java.util.Map<String, String> __ctx, boolean __explicitCtx, IceInternal.CallbackBase __cb)
+    {
+        IceInternal.OutgoingAsync __result = new IceInternal.OutgoingAsync(this, __subscribeLatestOnly_name, __cb);
+        try
+        {
+            __result.__prepare(__subscribeLatestOnly_name, Ice.OperationMode.Normal, __ctx, __explicitCtx);
+            IceInternal.BasicStream __os = __result.__startWriteParams(Ice.FormatType.DefaultFormat);
+            req.__write(__os);
+            __result.__endWriteParams();
+            __result.__send(true);
+        }
+        catch(Ice.LocalException __ex)
+        {
+            __result.__exceptionAsync(__ex);
+        }
+        return __result;
+    }
+
+    public void end_subscribeLatestOnly(Ice.AsyncResult __result)
+    {
+        __end(__result, __subscribeLatestOnly_name);
+    }
+
     private static final String __unsubscribe_name = "unsubscribe";
 
     public void unsubscribe(String topicname)
@@ -26,6 +26,7 @@ import Ice.Communicator;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 import atnf.atoms.time.*;
 import atnf.atoms.mon.*;
 import atnf.atoms.mon.util.MonitorConfig;
@@ -77,10 +78,47 @@ public class PubSubManager {
     /** Time the client last sent a keep-alive signal. */
     public AbsTime itsLastKeepAliveTime = new AbsTime();
 
+    /** If set then only the latest update for each point is delivered from each batch. */
+    protected boolean itsLatestOnly;
+
+    /** Updates waiting to be delivered, in the order they were received. */
+    protected LinkedList<PointData> itsQueue = new LinkedList<PointData>();
+
+    /** Set while a delivery of this client's updates is scheduled or running. */
+    protected boolean itsDeliveryScheduled = false;
+
+    /** Number of updates which have been dropped since this was last logged. */
+    protected int itsNumDropped = 0;
+
+    /** Set once the client has been destroyed. */
+    protected boolean itsDestroyed = false;
+
+    /** Task which delivers the queued updates. */
+    protected Runnable itsDeliveryTask = new Runnable() {
+      public void run() {
+        deliver();
+      }
+    };
+
     /** Constructor. */
     public PubSubClientInfo(String topic, String[] points) throws Exception {
+      this(topic, points, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param topic
+     *          Name of the topic created by the client.
+     * @param points
+     *          Names of the points the client is subscribing to.
+     * @param latestonly
+     *          If true then when several updates for a point are waiting to be delivered only the latest one is sent.
+     */
+    public PubSubClientInfo(String topic, String[] points, boolean latestonly) throws Exception {
       itsTopicName = topic;
       itsPointNames = points;
+      itsLatestOnly = latestonly;
 
       // Ensure all points exist before subscribing
       for (int i = 0; i < itsPointNames.length; i++) {
@@ -118,26 +156,122 @@ public class PubSubManager {
       }
     }
 
-    /** Callback for when a listened-to point updates. */
-    public void onPointEvent(Object source, final PointEvent evt) {
-      // Use an anonymous thread to publish the data
-      new Thread("PubSub Delivery Thread") {
-        public void run() {
-          try {
-            PointData[] pd = new PointData[] { evt.getPointData() };
-            PointDataIce[] pdice = MoniCAIceUtil.getPointDataAsIce(pd);
-            itsClient.updateData(pdice);
-          } catch (Exception e) {
-            itsLogger.error("Error publishing data to topic " + itsTopicName + ": " + e);
-            // This client is now broken
-            PubSubClientInfo.this.destroy();
+    /**
+     * Callback for when a listened-to point updates. The update is queued and delivered, along with any others which arrive in the
+     * following <tt>PubSubBatchWindow</tt>, by the shared pool of delivery threads.
+     */
+    public void onPointEvent(Object source, PointEvent evt) {
+      PointData pd = evt.getPointData();
+      if (pd == null) {
+        return;
+      }
+      synchronized (this) {
+        if (itsDestroyed) {
+          return;
+        }
+        if (itsQueue.size() >= itsQueueSize) {
+          if (itsOverflowPolicy == OVERFLOW_DROP_OLDEST) {
+            itsQueue.removeFirst();
+            itsNumDropped++;
+          } else if (itsOverflowPolicy == OVERFLOW_DROP_NEWEST) {
+            itsNumDropped++;
+            return;
+          } else if (itsOverflowPolicy == OVERFLOW_BLOCK) {
+            while (itsQueue.size() >= itsQueueSize && !itsDestroyed) {
+              try {
+                wait();
+              } catch (InterruptedException e) {
+                return;
+              }
+            }
+            if (itsDestroyed) {
+              return;
+            }
+          } else {
+            itsLogger.warn("Disconnecting topic " + itsTopicName + " because it has " + itsQueue.size() + " undelivered updates");
+            itsDestroyed = true;
+            itsQueue.clear();
+            notifyAll();
+            itsDeliverers.execute(new Runnable() {
+              public void run() {
+                removeClient(PubSubClientInfo.this);
+              }
+            });
+            return;
           }
         }
-      }.start();
+        itsQueue.add(pd);
+        if (!itsDeliveryScheduled) {
+          itsDeliveryScheduled = true;
+          itsDeliverers.schedule(itsDeliveryTask, itsBatchWindow, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+
+    /** Deliver the next batch of queued updates to the client. */
+    protected void deliver() {
+      Vector<PointData> batch = new Vector<PointData>();
+      int dropped;
+      synchronized (this) {
+        if (itsDestroyed) {
+          itsDeliveryScheduled = false;
+          return;
+        }
+        while (!itsQueue.isEmpty() && batch.size() < itsMaxBatch) {
+          batch.add(itsQueue.removeFirst());
+        }
+        dropped = itsNumDropped;
+        itsNumDropped = 0;
+        // Wake up any producers waiting for space
+        notifyAll();
+      }
+      if (dropped > 0) {
+        itsLogger.warn("Dropped " + dropped + " updates for slow topic " + itsTopicName);
+      }
+
+      if (itsLatestOnly) {
+        // Keep the latest update for each point, in the order the points last updated
+        LinkedHashMap<String, PointData> latest = new LinkedHashMap<String, PointData>();
+        for (int i = 0; i < batch.size(); i++) {
+          latest.remove(batch.get(i).getName());
+          latest.put(batch.get(i).getName(), batch.get(i));
+        }
+        batch = new Vector<PointData>(latest.values());
+      }
+
+      try {
+        itsClient.updateData(MoniCAIceUtil.getPointDataAsIce(batch));
+      } catch (Exception e) {
+        itsLogger.error("Error publishing data to topic " + itsTopicName + ": " + e);
+        // This client is now broken
+        synchronized (this) {
+          itsDestroyed = true;
+          itsQueue.clear();
+          itsDeliveryScheduled = false;
+          notifyAll();
+        }
+        removeClient(this);
+        return;
+      }
+
+      synchronized (this) {
+        if (!itsQueue.isEmpty() && !itsDestroyed) {
+          // Already have a backlog so carry on without waiting for the window
+          itsDeliverers.execute(itsDeliveryTask);
+        } else {
+          itsDeliveryScheduled = false;
+        }
+      }
     }
 
     /** Release all resources used by this client. */
     public void destroy() {
+      synchronized (this) {
+        itsDestroyed = true;
+        itsQueue.clear();
+        notifyAll();
+      }
+
       // Destroy the topic
       if (itsTopic != null) {
         try {
@@ -170,9 +304,19 @@ public class PubSubManager {
   public class PubSubControlI extends _PubSubControlDisp {
     /** Handle a new subscription request. */
     public void subscribe(PubSubRequest req, Ice.Current curr) {
+      subscribe(req, false);
+    }
+
+    /** Handle a new subscription request where the client only wants the latest update for each point. */
+    public void subscribeLatestOnly(PubSubRequest req, Ice.Current curr) {
+      subscribe(req, true);
+    }
+
+    /** Establish the subscriptions for a new client. */
+    private void subscribe(PubSubRequest req, boolean latestonly) {
       itsLogger.debug("Received new subscription request for topic " + req.topicname + " with " + req.pointnames.length + " points");
       try {
-        PubSubClientInfo newclient = new PubSubClientInfo(req.topicname, req.pointnames);
+        PubSubClientInfo newclient = new PubSubClientInfo(req.topicname, req.pointnames, latestonly);
         synchronized (itsClients) {
           itsClients.put(req.topicname, newclient);
         }
@@ -265,6 +409,39 @@ public class PubSubManager {
   /** Map of all clients currently subscribed to updates. */
   protected HashMap<String, PubSubClientInfo> itsClients = new HashMap<String, PubSubClientInfo>();
 
+  /** Overflow policy which discards the oldest queued update. */
+  public static final int OVERFLOW_DROP_OLDEST = 0;
+
+  /** Overflow policy which discards the new update. */
+  public static final int OVERFLOW_DROP_NEWEST = 1;
+
+  /** Overflow policy which blocks the thread delivering the new update until there is space. */
+  public static final int OVERFLOW_BLOCK = 2;
+
+  /** Overflow policy which disconnects the client. */
+  public static final int OVERFLOW_DISCONNECT = 3;
+
+  /** Names of the overflow policies, as used in the configuration file. */
+  protected static final String[] theirOverflowPolicyNames = { "dropoldest", "dropnewest", "block", "disconnect" };
+
+  /** Number of threads used to deliver updates to clients. */
+  protected int itsNumDeliverers = 4;
+
+  /** Maximum number of undelivered updates queued for each client. */
+  protected int itsQueueSize = 10000;
+
+  /** Time (ms) to wait after an update arrives for more updates to deliver in the same batch. */
+  protected long itsBatchWindow = 50;
+
+  /** Maximum number of updates delivered in a single batch. */
+  protected int itsMaxBatch = 1000;
+
+  /** What to do when a client's queue is full. */
+  protected int itsOverflowPolicy = OVERFLOW_DROP_OLDEST;
+
+  /** Threads which deliver updates to clients. */
+  protected ScheduledThreadPoolExecutor itsDeliverers;
+
   /**
    * The maximum time between keep-alives before we consider a subscriber dead.
    */
@@ -295,6 +472,59 @@ public class PubSubManager {
       return;
     }
 
+    try {
+      itsNumDeliverers = Integer.parseInt(MonitorConfig.getProperty("PubSubDeliveryThreads", "4"));
+      if (itsNumDeliverers < 1) {
+        itsNumDeliverers = 1;
+      }
+    } catch (Exception e) {
+      itsLogger.warn("Error parsing PubSubDeliveryThreads configuration parameter: " + e);
+    }
+    try {
+      itsQueueSize = Integer.parseInt(MonitorConfig.getProperty("PubSubQueueSize", "10000"));
+      if (itsQueueSize < 1) {
+        itsQueueSize = 1;
+      }
+    } catch (Exception e) {
+      itsLogger.warn("Error parsing PubSubQueueSize configuration parameter: " + e);
+    }
+    try {
+      itsBatchWindow = Long.parseLong(MonitorConfig.getProperty("PubSubBatchWindow", "50"));
+      if (itsBatchWindow < 0) {
+        itsBatchWindow = 0;
+      }
+    } catch (Exception e) {
+      itsLogger.warn("Error parsing PubSubBatchWindow configuration parameter: " + e);
+    }
+    try {
+      itsMaxBatch = Integer.parseInt(MonitorConfig.getProperty("PubSubMaxBatch", "1000"));
+      if (itsMaxBatch < 1) {
+        itsMaxBatch = 1;
+      }
+    } catch (Exception e) {
+      itsLogger.warn("Error parsing PubSubMaxBatch configuration parameter: " + e);
+    }
+    tempstr = MonitorConfig.getProperty("PubSubOverflowPolicy", theirOverflowPolicyNames[OVERFLOW_DROP_OLDEST]);
+    itsOverflowPolicy = -1;
+    for (int i = 0; i < theirOverflowPolicyNames.length; i++) {
+      if (theirOverflowPolicyNames[i].equalsIgnoreCase(tempstr.trim())) {
+        itsOverflowPolicy = i;
+      }
+    }
+    if (itsOverflowPolicy == -1) {
+      itsLogger.warn("Unknown PubSubOverflowPolicy \"" + tempstr + "\", using " + theirOverflowPolicyNames[OVERFLOW_DROP_OLDEST]);
+      itsOverflowPolicy = OVERFLOW_DROP_OLDEST;
+    }
+    itsDeliverers = new ScheduledThreadPoolExecutor(itsNumDeliverers, new ThreadFactory() {
+      private int itsCount = 0;
+
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "PubSub Delivery " + itsCount++);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
     try {
       // TODO: Need to deal with this better. Probably have a thread to
       // manage reconnections.
@@ -308,6 +538,16 @@ public class PubSubManager {
     new AbandonedClientPurger().start();
   }
 
+  /** Destroy a client whose topic is broken or which couldn't keep up, and forget about it. */
+  protected void removeClient(PubSubClientInfo client) {
+    client.destroy();
+    synchronized (itsClients) {
+      if (itsClients.get(client.itsTopicName) == client) {
+        itsClients.remove(client.itsTopicName);
+      }
+    }
+  }
+
   /**
    * Connect to the IceStorm Topic so that we can start publishing data.
    */
@@ -105,6 +105,16 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         return getAllPointNamesChunk(start, num, null);
     }
 
+    public final String[] getPointNameChildren(String node)
+    {
+        return getPointNameChildren(node, null);
+    }
+
+    public final String[] findPointNames(String pattern, boolean regex)
+    {
+        return findPointNames(pattern, regex, null);
+    }
+
     public final PointDescriptionIce[] getAllPoints()
     {
         return getAllPoints(null);
@@ -125,11 +135,21 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         return getArchiveData(names, start, end, maxsamples, null);
     }
 
+    public final PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm)
+    {
+        return getArchiveDataDecimated(names, start, end, maxsamples, algorithm, null);
+    }
+
     public final PointDataIce[] getBefore(String[] names, long t)
     {
         return getBefore(names, t, null);
     }
 
+    public final PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page)
+    {
+        return getArchiveDataPage(cursor, name, start, end, page, null);
+    }
+
     public final AlarmIce[] getCurrentAlarms()
     {
         return getCurrentAlarms(null);
@@ -197,6 +217,36 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         return Ice.DispatchStatus.DispatchOK;
     }
 
+    public static Ice.DispatchStatus ___getPointNameChildren(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
+    {
+        __checkMode(Ice.OperationMode.Idempotent, __current.mode);
+        IceInternal.BasicStream __is = __inS.startReadParams();
+        String node;
+        node = __is.readString();
+        __inS.endReadParams();
+        String[] __ret = __obj.getPointNameChildren(node, __current);
+        IceInternal.BasicStream __os = __inS.__startWriteParams(Ice.FormatType.DefaultFormat);
+        stringarrayHelper.write(__os, __ret);
+        __inS.__endWriteParams(true);
+        return Ice.DispatchStatus.DispatchOK;
+    }
+
+    public static Ice.DispatchStatus ___findPointNames(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
+    {
+        __checkMode(Ice.OperationMode.Idempotent, __current.mode);
+        IceInternal.BasicStream __is = __inS.startReadParams();
+        String pattern;
+        boolean regex;
+        pattern = __is.readString();
+        regex = __is.readBool();
+        __inS.endReadParams();
+        String[] __ret = __obj.findPointNames(pattern, regex, __current);
+        IceInternal.BasicStream __os = __inS.__startWriteParams(Ice.FormatType.DefaultFormat);
+        stringarrayHelper.write(__os, __ret);
+        __inS.__endWriteParams(true);
+        return Ice.DispatchStatus.DispatchOK;
+    }
+
     public static Ice.DispatchStatus ___getPoints(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
     {
         __checkMode(Ice.OperationMode.Idempotent, __current.mode);
@@ -277,6 +327,29 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         return Ice.DispatchStatus.DispatchOK;
     }
 
+    public static Ice.DispatchStatus ___getArchiveDataDecimated(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
+    {
+        __checkMode(Ice.OperationMode.Idempotent, __current.mode);
+        IceInternal.BasicStream __is = __inS.startReadParams();
+        String[] names;
+        long start;
+        long end;
+        long maxsamples;
+        String algorithm;
+        names = stringarrayHelper.read(__is);
+        start = __is.readLong();
+        end = __is.readLong();
+        maxsamples = __is.readLong();
+        algorithm = __is.readString();
+        __inS.endReadParams();
+        PointDataIce[][] __ret = __obj.getArchiveDataDecimated(names, start, end, maxsamples, algorithm, __current);
+        IceInternal.BasicStream __os = __inS.__startWriteParams(Ice.FormatType.DefaultFormat);
+        pointdatasetarrayHelper.write(__os, __ret);
+        __os.writePendingObjects();
+        __inS.__endWriteParams(true);
+        return Ice.DispatchStatus.DispatchOK;
+    }
+
     public static Ice.DispatchStatus ___getData(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
     {
         __checkMode(Ice.OperationMode.Idempotent, __current.mode);
@@ -309,6 +382,29 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         return Ice.DispatchStatus.DispatchOK;
     }
 
+    public static Ice.DispatchStatus ___getArchiveDataPage(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
+    {
+        __checkMode(Ice.OperationMode.Idempotent, __current.mode);
+        IceInternal.BasicStream __is = __inS.startReadParams();
+        String cursor;
+        String name;
+        long start;
+        long end;
+        int page;
+        cursor = __is.readString();
+        name = __is.readString();
+        start = __is.readLong();
+        end = __is.readLong();
+        page = __is.readInt();
+        __inS.endReadParams();
+        PointDataIce[] __ret = __obj.getArchiveDataPage(cursor, name, start, end, page, __current);
+        IceInternal.BasicStream __os = __inS.__startWriteParams(Ice.FormatType.DefaultFormat);
+        pointdatasetHelper.write(__os, __ret);
+        __os.writePendingObjects();
+        __inS.__endWriteParams(true);
+        return Ice.DispatchStatus.DispatchOK;
+    }
+
     public static Ice.DispatchStatus ___getAfter(MoniCAIce __obj, IceInternal.Incoming __inS, Ice.Current __current)
     {
         __checkMode(Ice.OperationMode.Idempotent, __current.mode);
@@ -478,6 +574,7 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         "acknowledgeAlarms",
         "addPoints",
         "addSetup",
+        "findPointNames",
         "getAfter",
         "getAllAlarms",
         "getAllPointNames",
@@ -486,12 +583,15 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
         "getAllPointsChunk",
         "getAllSetups",
         "getArchiveData",
+        "getArchiveDataDecimated",
+        "getArchiveDataPage",
         "getBefore",
         "getCurrentAlarms",
         "getCurrentTime",
         "getData",
         "getEncryptionInfo",
         "getLeapSeconds",
+        "getPointNameChildren",
         "getPoints",
         "ice_id",
         "ice_ids",
@@ -525,85 +625,101 @@ public abstract class _MoniCAIceDisp extends Ice.ObjectImpl implements MoniCAIce
             }
             case 3:
             {
-                return ___getAfter(this, in, __current);
+                return ___findPointNames(this, in, __current);
             }
             case 4:
             {
-                return ___getAllAlarms(this, in, __current);
+                return ___getAfter(this, in, __current);
             }
             case 5:
             {
-                return ___getAllPointNames(this, in, __current);
+                return ___getAllAlarms(this, in, __current);
             }
             case 6:
             {
-                return ___getAllPointNamesChunk(this, in, __current);
+                return ___getAllPointNames(this, in, __current);
             }
             case 7:
             {
-                return ___getAllPoints(this, in, __current);
+                return ___getAllPointNamesChunk(this, in, __current);
             }
             case 8:
             {
-                return ___getAllPointsChunk(this, in, __current);
+                return ___getAllPoints(this, in, __current);
             }
             case 9:
             {
-                return ___getAllSetups(this, in, __current);
+                return ___getAllPointsChunk(this, in, __current);
             }
             case 10:
             {
-                return ___getArchiveData(this, in, __current);
+                return ___getAllSetups(this, in, __current);
             }
             case 11:
             {
-                return ___getBefore(this, in, __current);
+                return ___getArchiveData(this, in, __current);
             }
             case 12:
             {
-                return ___getCurrentAlarms(this, in, __current);
+                return ___getArchiveDataDecimated(this, in, __current);
             }
             case 13:
             {
-                return ___getCurrentTime(this, in, __current);
+                return ___getArchiveDataPage(this, in, __current);
             }
             case 14:
             {
-                return ___getData(this, in, __current);
+                return ___getBefore(this, in, __current);
             }
             case 15:
             {
-                return ___getEncryptionInfo(this, in, __current);
+                return ___getCurrentAlarms(this, in, __current);
             }
             case 16:
             {
-                return ___getLeapSeconds(this, in, __current);
+                return ___getCurrentTime(this, in, __current);
             }
             case 17:
             {
-                return ___getPoints(this, in, __current);
+                return ___getData(this, in, __current);
             }
             case 18:
             {
-                return ___ice_id(this, in, __current);
+                return ___getEncryptionInfo(this, in, __current);
             }
             case 19:
             {
-                return ___ice_ids(this, in, __current);
+                return ___getLeapSeconds(this, in, __current);
             }
             case 20:
             {
-                return ___ice_isA(this, in, __current);
+                return ___getPointNameChildren(this, in, __current);
             }
             case 21:
             {
-                return ___ice_ping(this, in, __current);
+                return ___getPoints(this, in, __current);
             }
             case 22:
             {
-                return ___setData(this, in, __current);
+                return ___ice_id(this, in, __current);
             }
             case 23:
+            {
+                return ___ice_ids(this, in, __current);
+            }
+            case 24:
+            {
+                return ___ice_isA(this, in, __current);
+            }
+            case 25:
+            {
+                return ___ice_ping(this, in, __current);
+            }
+            case 26:
+            {
+                return ___setData(this, in, __current);
+            }
+            case 27:
             {
                 return ___shelveAlarms(this, in, __current);
             }
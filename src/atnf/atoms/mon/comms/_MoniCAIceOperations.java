@@ -26,6 +26,10 @@ public interface _MoniCAIceOperations
 
     String[] getAllPointNamesChunk(int start, int num, Ice.Current __current);
 
+    String[] getPointNameChildren(String node, Ice.Current __current);
+
+    String[] findPointNames(String pattern, boolean regex, Ice.Current __current);
+
     PointDescriptionIce[] getPoints(String[] names, Ice.Current __current);
 
     PointDescriptionIce[] getAllPoints(Ice.Current __current);
@@ -36,10 +40,14 @@ public interface _MoniCAIceOperations
 
     PointDataIce[][] getArchiveData(String[] names, long start, long end, long maxsamples, Ice.Current __current);
 
+    PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm, Ice.Current __current);
+
     PointDataIce[] getData(String[] names, Ice.Current __current);
 
     PointDataIce[] getBefore(String[] names, long t, Ice.Current __current);
 
+    PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page, Ice.Current __current);
+
     PointDataIce[] getAfter(String[] names, long t, Ice.Current __current);
 
     boolean setData(String[] names, PointDataIce[] values, String username, String passwd, Ice.Current __current);
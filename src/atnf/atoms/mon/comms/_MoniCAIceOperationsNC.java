@@ -26,6 +26,10 @@ public interface _MoniCAIceOperationsNC
 
     String[] getAllPointNamesChunk(int start, int num);
 
+    String[] getPointNameChildren(String node);
+
+    String[] findPointNames(String pattern, boolean regex);
+
     PointDescriptionIce[] getPoints(String[] names);
 
     PointDescriptionIce[] getAllPoints();
@@ -36,10 +40,14 @@ public interface _MoniCAIceOperationsNC
 
     PointDataIce[][] getArchiveData(String[] names, long start, long end, long maxsamples);
 
+    PointDataIce[][] getArchiveDataDecimated(String[] names, long start, long end, long maxsamples, String algorithm);
+
     PointDataIce[] getData(String[] names);
 
     PointDataIce[] getBefore(String[] names, long t);
 
+    PointDataIce[] getArchiveDataPage(String cursor, String name, long start, long end, int page);
+
     PointDataIce[] getAfter(String[] names, long t);
 
     boolean setData(String[] names, PointDataIce[] values, String username, String passwd);
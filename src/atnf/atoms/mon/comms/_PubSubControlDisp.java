@@ -80,6 +80,11 @@ public abstract class _PubSubControlDisp extends Ice.ObjectImpl implements PubSu
         subscribe(req, null);
     }
 
+    public final void subscribeLatestOnly(PubSubRequest req)
+    {
+        subscribeLatestOnly(req, null);
+    }
+
     public final void unsubscribe(String topicname)
     {
         unsubscribe(topicname, null);
@@ -98,6 +103,19 @@ public abstract class _PubSubControlDisp extends Ice.ObjectImpl implements PubSu
         return Ice.DispatchStatus.DispatchOK;
     }
 
+    public static Ice.DispatchStatus ___subscribeLatestOnly(PubSubControl __obj, IceInternal.Incoming __inS, Ice.Current __current)
+    {
+        __checkMode(Ice.OperationMode.Normal, __current.mode);
+        IceInternal.BasicStream __is = __inS.startReadParams();
+        PubSubRequest req;
+        req = new PubSubRequest();
+        req.__read(__is);
+        __inS.endReadParams();
+        __obj.subscribeLatestOnly(req, __current);
+        __inS.__writeEmptyParams();
+        return Ice.DispatchStatus.DispatchOK;
+    }
+
     public static Ice.DispatchStatus ___unsubscribe(PubSubControl __obj, IceInternal.Incoming __inS, Ice.Current __current)
     {
         __checkMode(Ice.OperationMode.Normal, __current.mode);
@@ -130,6 +148,7 @@ public abstract class _PubSubControlDisp extends Ice.ObjectImpl implements PubSu
         "ice_ping",
         "keepalive",
         "subscribe",
+        "subscribeLatestOnly",
         "unsubscribe"
     };
 
@@ -168,6 +187,10 @@ public abstract class _PubSubControlDisp extends Ice.ObjectImpl implements PubSu
                 return ___subscribe(this, in, __current);
             }
             case 6:
+            {
+                return ___subscribeLatestOnly(this, in, __current);
+            }
+            case 7:
             {
                 return ___unsubscribe(this, in, __current);
             }
@@ -24,6 +24,8 @@ public interface _PubSubControlOperations
 {
     void subscribe(PubSubRequest req, Ice.Current __current);
 
+    void subscribeLatestOnly(PubSubRequest req, Ice.Current __current);
+
     void unsubscribe(String topicname, Ice.Current __current);
 
     void keepalive(String topicname, Ice.Current __current);
@@ -24,6 +24,8 @@ public interface _PubSubControlOperationsNC
 {
     void subscribe(PubSubRequest req);
 
+    void subscribeLatestOnly(PubSubRequest req);
+
     void unsubscribe(String topicname);
 
     void keepalive(String topicname);
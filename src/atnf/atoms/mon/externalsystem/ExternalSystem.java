@@ -9,7 +9,8 @@
 package atnf.atoms.mon.externalsystem;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -25,57 +26,24 @@ import org.apache.log4j.Logger;
  * written out. They are essentially 'drivers' designed to interact with a specific system external to MoniCA. Specific behavior can
  * be realised by implementing the <i>getData</i> and <i>putData</i> methods.
  * 
+ * <P>
+ * Normally <i>getData</i> is called on the collection thread with all of the points which are due, so one slow request holds up
+ * every other point on the system. Sub-classes whose <i>getData</i> can safely be called from several threads at once can override
+ * <i>supportsConcurrentCollection</i>, in which case each point can instead be collected on its own thread from a pool belonging to
+ * the system. This is enabled by the <tt>CollectionConcurrency</tt> option, which sets the maximum number of points collected at
+ * once, and <tt>CollectionTimeout</tt> sets the number of seconds after which a collection is abandoned and null data fired for the
+ * point. Either can be set for an individual system by appending a hyphen and the system name, for instance
+ * <tt>CollectionConcurrency-pingcheck</tt>.
+ * 
  * @author David Brodrick
  * @author Le Cuong Nguyen
  */
 public class ExternalSystem implements Runnable {
   /**
-   * Comparator to compare PointDescriptions and/or AbsTimes. We need to use this Comparator with the SortedLinkedList class.
+   * The points which need to be collected, scheduled in order of time of next collection by the shared
+   * <tt>CollectionScheduler</tt>.
    */
-  private class TimeComp implements Comparator {
-    /** Return a timestamp for any known class type. */
-    private long getTimeStamp(Object o) {
-      if (o instanceof PointDescription) {
-        return ((PointDescription) o).getNextEpoch();
-      } else if (o instanceof AbsTime) {
-        return ((AbsTime) o).getValue();
-      } else if (o == null) {
-        return 0;
-      } else {
-        System.err.println("ExternalSystem: TimeComp: compare: UNKNOWN TYPE (" + o.getClass() + ")");
-        return 0;
-      }
-    }
-
-    /** Compare PointDescriptions and/or AbsTimes. */
-    public int compare(Object o1, Object o2) {
-      long val1 = getTimeStamp(o1);
-      long val2 = getTimeStamp(o2);
-
-      if (val1 > val2) {
-        return 1;
-      }
-      if (val1 < val2) {
-        return -1;
-      }
-      return 0;
-    }
-
-    /** Test if equivalent to the given Comparator. */
-    public boolean equals(Object o) {
-      if (o instanceof TimeComp) {
-        return true;
-      } else {
-        return false;
-      }
-    }
-  }
-
-  /**
-   * List of all the points which need to be collected. A SortedLinkedList is used to keep the list sorted in order of time of next
-   * collection.
-   */
-  protected SortedLinkedList itsPoints = new SortedLinkedList(new TimeComp());
+  protected CollectionScheduler.Queue itsPoints = new CollectionScheduler.Queue();
 
   /**
    * Points which are currently being collected asynchronously. We need to keep track of them so we do not schedule them for
@@ -83,6 +51,12 @@ public class ExternalSystem implements Runnable {
    */
   private Set<PointDescription> itsAsyncPoints = Collections.newSetFromMap(new ConcurrentHashMap<PointDescription, Boolean>());
 
+  /**
+   * Points whose concurrent collection is still running, including collections which have timed out but whose <i>getData</i> call
+   * hasn't yet returned. These points aren't collected again until the earlier call returns.
+   */
+  private Set<PointDescription> itsRunningPoints = Collections.newSetFromMap(new ConcurrentHashMap<PointDescription, Boolean>());
+
   /** Allows access to the thread running this collector */
   protected Thread itsThread = null;
 
@@ -101,6 +75,18 @@ public class ExternalSystem implements Runnable {
   /** Flag to indicate if thread should continue running. */
   protected boolean itsKeepRunning = true;
 
+  /** Maximum number of points collected concurrently, or 0 to collect points serially on the collection thread. */
+  protected int itsMaxConcurrent = 0;
+
+  /** Time (ms) after which a concurrent collection is abandoned. */
+  protected long itsCollectionTimeout = 30000;
+
+  /** Threads used for concurrent collection, or null if collection is serial. */
+  private volatile ThreadPoolExecutor itsCollectors = null;
+
+  /** Timer used to abandon concurrent collections which take too long. */
+  private static ScheduledExecutorService theirTimeoutTimer = null;
+
   /** Static map of all ExternalSystems. */
   protected static HashMap<String, ExternalSystem> theirExternalSystems = new HashMap<String, ExternalSystem>();
 
@@ -152,6 +138,9 @@ public class ExternalSystem implements Runnable {
   /** Start the data collection thread. */
   public synchronized void startCollection() {
     itsKeepRunning = true;
+    if (supportsConcurrentCollection()) {
+      configureConcurrentCollection();
+    }
     itsThread = new Thread(this, "ExternalSystem " + itsName);
     itsThread.setDaemon(true);
     itsThread.start();
@@ -161,8 +150,170 @@ public class ExternalSystem implements Runnable {
    * Stop the data collection thread. This method actually just sets a flag to stop the collection and doesn't actually wait until
    * collection has been stopped.
    */
-  public void stopCollection() {
+  public synchronized void stopCollection() {
     itsKeepRunning = false;
+    if (itsCollectors != null) {
+      itsCollectors.shutdown();
+      itsCollectors = null;
+    }
+  }
+
+  /**
+   * Check if <i>getData</i> can be called for different points from several threads at once. Sub-classes which support this
+   * should override this method to return true.
+   */
+  protected boolean supportsConcurrentCollection() {
+    return false;
+  }
+
+  /** Read the concurrent collection options and create the thread pool if required. */
+  private void configureConcurrentCollection() {
+    try {
+      itsMaxConcurrent = Integer.parseInt(MonitorConfig.getProperty("CollectionConcurrency-" + itsName, MonitorConfig.getProperty(
+          "CollectionConcurrency", "0")));
+    } catch (Exception e) {
+      theirLogger.warn("(" + itsName + ") Error parsing CollectionConcurrency configuration parameter: " + e);
+      itsMaxConcurrent = 0;
+    }
+    try {
+      itsCollectionTimeout = 1000 * Long.parseLong(MonitorConfig.getProperty("CollectionTimeout-" + itsName, MonitorConfig.getProperty(
+          "CollectionTimeout", "30")));
+    } catch (Exception e) {
+      theirLogger.warn("(" + itsName + ") Error parsing CollectionTimeout configuration parameter: " + e);
+      itsCollectionTimeout = 30000;
+    }
+
+    if (itsMaxConcurrent > 0 && itsCollectors == null) {
+      itsCollectors = new ThreadPoolExecutor(itsMaxConcurrent, itsMaxConcurrent, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private int itsCount = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "ExternalSystem " + itsName + " collector " + itsCount++);
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      // Release the threads when the system is idle
+      itsCollectors.allowCoreThreadTimeOut(true);
+      synchronized (ExternalSystem.class) {
+        if (theirTimeoutTimer == null) {
+          theirTimeoutTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "ExternalSystem Timeouts");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+        }
+      }
+      theirLogger.info("(" + itsName + ") Collecting up to " + itsMaxConcurrent + " points concurrently");
+    }
+  }
+
+  /**
+   * Collect each of the points on a thread from the pool. The points are flagged as being collected asynchronously so that they are
+   * only rescheduled once their collection has completed or timed out. A point whose previous collection is still running is
+   * skipped until the next time it is due.
+   */
+  private void collectConcurrently(ThreadPoolExecutor collectors, PointDescription[] points) {
+    for (int i = 0; i < points.length; i++) {
+      if (itsRunningPoints.contains(points[i])) {
+        theirLogger.debug("(" + itsName + ") Previous collection of " + points[i].getFullName() + " is still running");
+        continue;
+      }
+      asynchCollecting(points[i]);
+      new CollectionTask(points[i]).submit(collectors);
+    }
+  }
+
+  /**
+   * Collects a single point, firing null data if the collection doesn't complete within the timeout. The timeout starts when the
+   * task is submitted, so a collection which is still waiting for a thread can also time out.
+   */
+  private class CollectionTask implements Runnable {
+    private PointDescription itsPoint;
+
+    /** Set once the collection has completed or been abandoned. */
+    private AtomicBoolean itsFinished = new AtomicBoolean(false);
+
+    /** Thread performing the collection, or null when it isn't running. */
+    private Thread itsCollector = null;
+
+    /** Timer which abandons the collection, or null before the task has been submitted. */
+    private ScheduledFuture<?> itsTimeout = null;
+
+    public CollectionTask(PointDescription point) {
+      itsPoint = point;
+    }
+
+    /** Start the timeout and queue the task on the pool. */
+    public void submit(ThreadPoolExecutor collectors) {
+      itsTimeout = theirTimeoutTimer.schedule(new Runnable() {
+        public void run() {
+          if (finish(true)) {
+            // Try to unblock the collector, although not all I/O can be interrupted
+            synchronized (CollectionTask.this) {
+              if (itsCollector != null) {
+                itsCollector.interrupt();
+              }
+            }
+          }
+        }
+      }, itsCollectionTimeout, TimeUnit.MILLISECONDS);
+      try {
+        collectors.execute(this);
+      } catch (RejectedExecutionException e) {
+        // Collection is being stopped
+        itsTimeout.cancel(false);
+        finish(false);
+      }
+    }
+
+    public void run() {
+      synchronized (this) {
+        if (itsFinished.get()) {
+          // Timed out while waiting for a thread
+          return;
+        }
+        itsCollector = Thread.currentThread();
+        itsRunningPoints.add(itsPoint);
+      }
+      try {
+        getData(new PointDescription[] { itsPoint });
+      } catch (Exception e) {
+        theirLogger.error("(" + itsName + ") " + e);
+        itsConnected = false;
+      } finally {
+        itsRunningPoints.remove(itsPoint);
+      }
+      itsTimeout.cancel(false);
+      finish(false);
+      synchronized (this) {
+        itsCollector = null;
+      }
+      // Clear any interrupt from the timeout before the thread is reused
+      Thread.interrupted();
+    }
+
+    /**
+     * Mark the collection as finished and reschedule the point, unless this was already done.
+     * 
+     * @param timedout
+     *          True if the collection has been abandoned, in which case null data is fired for the point.
+     * @return True if this call finished the collection.
+     */
+    public boolean finish(boolean timedout) {
+      if (!itsFinished.compareAndSet(false, true)) {
+        return false;
+      }
+      if (timedout) {
+        theirLogger.warn("(" + itsName + ") Collection of " + itsPoint.getFullName() + " timed out");
+        itsPoint.firePointEvent(new PointEvent(ExternalSystem.this, new PointData(itsPoint.getFullName()), true));
+      }
+      asynchReturn(itsPoint);
+      return true;
+    }
   }
 
   /**
@@ -192,16 +343,24 @@ public class ExternalSystem implements Runnable {
 
   /** Get the number of Transactions performed by this ExternalSystem. */
   public long getNumTransactions() {
-    synchronized (itsPoints) {
-      return itsNumTransactions;
-    }
+    return itsNumTransactions;
   }
 
   /** Get the number of points allocated to this ExternalSystem. */
   public int getNumPoints() {
-    synchronized (itsPoints) {
-      return itsPoints.size();
-    }
+    return itsPoints.size();
+  }
+
+  /**
+   * Get the lateness of the most recent collection of a point, ie the time between when the point was due to be collected and when
+   * it was handed to this system for collection.
+   * 
+   * @param p
+   *          The point of interest.
+   * @return The lateness in microseconds, or -1 if the point has not been collected by this system.
+   */
+  public long getLateness(PointDescription p) {
+    return itsPoints.getLateness(p);
   }
 
   /**
@@ -211,10 +370,7 @@ public class ExternalSystem implements Runnable {
    *          The point to start monitoring.
    */
   public void addPoint(PointDescription p) {
-    synchronized (itsPoints) {
-      itsPoints.add(p);
-      itsPoints.notifyAll();
-    }
+    itsPoints.schedule(p);
   }
 
   /**
@@ -224,11 +380,8 @@ public class ExternalSystem implements Runnable {
    *          The points to start monitoring.
    */
   public void addPoints(Object[] v) {
-    synchronized (itsPoints) {
-      for (int i = 0; i < v.length; i++) {
-        itsPoints.add(v[i]);
-      }
-      itsPoints.notifyAll();
+    for (int i = 0; i < v.length; i++) {
+      itsPoints.schedule((PointDescription) v[i]);
     }
   }
 
@@ -249,10 +402,7 @@ public class ExternalSystem implements Runnable {
    *          The point to stop monitoring.
    */
   public void removePoint(PointDescription p) {
-    synchronized (itsPoints) {
-      itsPoints.remove(p);
-      itsPoints.notifyAll();
-    }
+    itsPoints.remove(p);
   }
 
   /**
@@ -275,7 +425,6 @@ public class ExternalSystem implements Runnable {
   protected void asynchReturn(PointDescription point) {
     point.isCollecting(false);
     addPoint(point);
-    itsThread.interrupt();
   }
 
   /** Return any Transactions which are associated with this ExternalSystem. */
@@ -371,24 +520,12 @@ public class ExternalSystem implements Runnable {
         }
       }
 
-      // We're connected, need to determine which points need collecting
-      Vector<PointDescription> thesepoints = null;
-      synchronized (itsPoints) {
-        try {
-          // Wait for notification if there are no points
-          while (itsPoints.isEmpty()) {
-            itsPoints.wait();
-          }
-        } catch (Exception e) {
-          continue;
-        }
-
-        // Calculate the latest epoch we're prepared to collect now
-        AbsTime cutoff = AbsTime.factory();
-        cutoff.add(50000); // Fudge factor for better efficiency
-
-        // Get the set of all points within the time bracket
-        thesepoints = itsPoints.headSet(cutoff);
+      // Wait for points to fall due for collection
+      Vector<PointDescription> thesepoints;
+      try {
+        thesepoints = itsPoints.take(0);
+      } catch (InterruptedException e) {
+        continue;
       }
 
       if (!thesepoints.isEmpty()) {
@@ -396,7 +533,10 @@ public class ExternalSystem implements Runnable {
         for (int i = 0; i < thesepoints.size(); i++) {
           parray[i] = thesepoints.get(i);
         }
-        if (itsConnected) {
+        ThreadPoolExecutor collectors = itsCollectors;
+        if (itsConnected && collectors != null) {
+          collectConcurrently(collectors, parray);
+        } else if (itsConnected) {
           try {
             // Call the sub-class specific method to do the real work
             getData(parray);
@@ -420,31 +560,14 @@ public class ExternalSystem implements Runnable {
             e.printStackTrace();
           }
         }
-        // Insert the points back into our list
-        synchronized (itsPoints) {
-          for (int i = 0; i < parray.length; i++) {
-            // We can only reschedule points which aren't being collected asynchronously
-            if (!itsAsyncPoints.remove(parray[i])) {
-              addPoint(parray[i]);
-            }
+        // Insert the points back into our schedule
+        for (int i = 0; i < parray.length; i++) {
+          // We can only reschedule points which aren't being collected asynchronously
+          if (!itsAsyncPoints.remove(parray[i])) {
+            addPoint(parray[i]);
           }
         }
       }
-
-      // We may need to wait before we collect the next point.
-      try {
-        PointDescription headpoint = (PointDescription) itsPoints.first();
-        if (headpoint != null) {
-          AbsTime nextTime = headpoint.getNextEpoch_AbsTime();
-          AbsTime timenow = AbsTime.factory();
-          if (nextTime.isAfter(timenow)) {
-            RelTime waittime = Time.diff(nextTime, timenow);
-            waittime.sleep();
-          }
-        }
-      } catch (Exception e) {
-        // Sleep was interrupted because asych point needs rescheduling
-      }
     }
   }
 }
@@ -23,7 +23,14 @@ import org.apache.log4j.*;
  * 
  * <P>
  * The constructor requires <i>hostname:port ModbusID ModbusFunction StartAddress</i> arguments. A timeout (ms) argument may
- * optionally be specified.
+ * optionally be specified, followed by an optional maximum gap argument.
+ * 
+ * <P>
+ * Each time points are collected, the points which use the same unit ID and function code are sorted by address and adjacent or
+ * overlapping ranges are merged into a single read request, up to the protocol limit of 125 registers or 2000 coils/inputs. The
+ * response is then sliced back into the values for each point. The maximum gap argument, which defaults to 0, sets how many
+ * unrequested addresses may also be read in order to merge two ranges. If a merged read fails, for instance because the device
+ * rejects one of the addresses, the points are read individually instead.
  * 
  * <P>
  * NB: If control points are being used, at least one polling point should be defined as this will ensure the socket is reconnected
@@ -56,6 +63,66 @@ public class ModbusInterface extends ExternalSystem {
 
   private boolean itsDebug = false;
 
+  /** Maximum number of registers which can be read in one request. */
+  private static final int MAX_REGISTERS = 125;
+
+  /** Maximum number of coils or discrete inputs which can be read in one request. */
+  private static final int MAX_BITS = 2000;
+
+  /** Maximum number of unrequested addresses which may be read in order to merge the reads for two points. */
+  private int itsMaxGap = 0;
+
+  /** The range of addresses to read for a point. */
+  private static class PointRead implements Comparable<PointRead> {
+    public PointDescription itsPoint;
+
+    public int itsUnitID;
+
+    public int itsFCode;
+
+    public int itsAddress;
+
+    public int itsCount;
+
+    /** Whether the point's value is an array, rather than a single value. */
+    public boolean itsUseArray;
+
+    public int compareTo(PointRead other) {
+      if (itsUnitID != other.itsUnitID) {
+        return itsUnitID < other.itsUnitID ? -1 : 1;
+      }
+      if (itsFCode != other.itsFCode) {
+        return itsFCode < other.itsFCode ? -1 : 1;
+      }
+      if (itsAddress != other.itsAddress) {
+        return itsAddress < other.itsAddress ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+
+  /** A contiguous range of addresses, read with a single request, which covers the ranges for one or more points. */
+  private static class BlockRead {
+    public int itsUnitID;
+
+    public int itsFCode;
+
+    public int itsStart;
+
+    /** One past the last address in the block. */
+    public int itsEnd;
+
+    public Vector<PointRead> itsReads = new Vector<PointRead>();
+
+    public BlockRead(PointRead first) {
+      itsUnitID = first.itsUnitID;
+      itsFCode = first.itsFCode;
+      itsStart = first.itsAddress;
+      itsEnd = first.itsAddress + first.itsCount;
+      itsReads.add(first);
+    }
+  }
+
   public ModbusInterface(String[] args) {
     super(args[0] + ":" + args[1]);
     itsHost = args[0];
@@ -63,6 +130,9 @@ public class ModbusInterface extends ExternalSystem {
     if (args.length > 2) {
       itsTimeout = Integer.parseInt(args[2]);
     }
+    if (args.length > 3) {
+      itsMaxGap = Integer.parseInt(args[3]);
+    }
   }
 
   /**
@@ -362,9 +432,8 @@ public class ModbusInterface extends ExternalSystem {
 
     // theirLogger.info("(" + itsHost + ":" + itsPort + "): Monitoring = " + points.length);
 
-    int numberToRead = 1;
-    boolean useArray = false;
-
+    // Work out which addresses each point needs
+    Vector<PointRead> reads = new Vector<PointRead>(points.length);
     for (int i = 0; i < points.length; i++) {
       PointDescription pm = points[i];
       TransactionStrings tds = (TransactionStrings) getMyTransactions(pm.getInputTransactions()).get(0);
@@ -374,99 +443,160 @@ public class ModbusInterface extends ExternalSystem {
         theirLogger.error("Modbus.getData requires either 3 or 4 arguments");
         throw new IllegalArgumentException("Modbus.getData: requires 3 or 4 arguments");
       }
+      PointRead read = new PointRead();
+      read.itsPoint = pm;
+      read.itsUnitID = Integer.parseInt(tds.getString(0));
+      read.itsFCode = Integer.parseInt(tds.getString(1));
+      read.itsAddress = Integer.parseInt(tds.getString(2));
+      read.itsCount = 1;
       if (tds.getNumStrings() == 4) {
-        numberToRead = Integer.parseInt(tds.getString(3));
-        useArray = true;
+        read.itsCount = Integer.parseInt(tds.getString(3));
+        read.itsUseArray = true;
       }
-      int UnitID = Integer.parseInt(tds.getString(0));
-      int FCode = Integer.parseInt(tds.getString(1));
-      int StartAddress = Integer.parseInt(tds.getString(2));
+      if (read.itsFCode < 1 || read.itsFCode > 4) {
+        theirLogger.warn("Modbus.getData: Unknown Modbus monitor function code: " + read.itsFCode);
+        pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), null), true));
+      } else {
+        reads.add(read);
+      }
+    }
 
+    Vector<BlockRead> blocks = planBlocks(reads);
+    for (int i = 0; i < blocks.size(); i++) {
+      BlockRead block = blocks.get(i);
       try {
-        switch (FCode) {
-        case 1:
-          // Read Coils
-          ReadCoilsResponse rc_response = readCoils(UnitID, StartAddress, numberToRead);
-          if (rc_response != null) {
-            if (!useArray) {
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), new Boolean(rc_response.getCoilStatus(0))), true));
-            } else {
-              Boolean[] rc_Array = new Boolean[numberToRead];
-              for (int j = 0; j < (numberToRead); j++)
-                rc_Array[j] = new Boolean(rc_response.getCoilStatus(j));
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), rc_Array), true));
-            }
-          } else {
-            // No response
-            pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
-          }
-          break;
-        case 2:
-          // Read Discrete Inputs
-          ReadInputDiscretesResponse di_response = readDiscreteInputs(UnitID, StartAddress, numberToRead);
-          if (di_response != null) {
-            if (!useArray) {
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), new Boolean(di_response.getDiscreteStatus(0))), true));
-            } else {
-              Boolean[] di_Array = new Boolean[numberToRead];
-              for (int j = 0; j < (numberToRead); j++)
-                di_Array[j] = new Boolean(di_response.getDiscreteStatus(j));
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), di_Array), true));
-            }
-          } else {
-            // No response
-            pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
+        int[] values = readValues(block.itsUnitID, block.itsFCode, block.itsStart, block.itsEnd - block.itsStart);
+        if (values == null && block.itsReads.size() > 1) {
+          // The merged read failed, so fall back to reading each point on its own
+          for (int j = 0; j < block.itsReads.size(); j++) {
+            PointRead read = block.itsReads.get(j);
+            fireValues(read, readValues(read.itsUnitID, read.itsFCode, read.itsAddress, read.itsCount), read.itsAddress);
           }
-          break;
-        case 3:
-          // Read Holding Registers (jamod library terminology uses multiple instead of holding)
-          ReadMultipleRegistersResponse rhr_response = readHoldingRegisters(UnitID, StartAddress, numberToRead);
-          if (rhr_response != null) {
-            if (!useArray) {
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), new Integer(rhr_response.getRegisterValue(0))), true));
-            } else {
-              Integer[] rhr_Array = new Integer[numberToRead];
-              for (int j = 0; j < (numberToRead); j++)
-                rhr_Array[j] = new Integer(rhr_response.getRegisterValue(j));
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), rhr_Array), true));
-            }
-          } else {
-            // No response
-            pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
+        } else {
+          for (int j = 0; j < block.itsReads.size(); j++) {
+            fireValues(block.itsReads.get(j), values, block.itsStart);
           }
-          break;
-        case 4:
-          // Read Input Registers
-          ReadInputRegistersResponse rir_response = readInputRegisters(UnitID, StartAddress, numberToRead);
-          if (rir_response != null) {
-            if (!useArray) {
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), new Integer(rir_response.getRegisterValue(0))), true));
-            } else {
-              Integer[] rir_Array = new Integer[numberToRead];
-              for (int j = 0; j < (numberToRead); j++)
-                rir_Array[j] = new Integer(rir_response.getRegisterValue(j));
-              pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), rir_Array), true));
-            }
-          } else {
-            // No response
-            pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
-          }
-          break;
-        default:
-          theirLogger.warn("Modbus.getData: Unknown Modbus monitor function code: " + FCode);
-          pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName(), null), true));
-          break;
         }
       } catch (Exception f) {
-        theirLogger.error("(" + itsHost + ":" + itsPort + "): getData for point " + pm.getFullName() + ": " + f);
+        theirLogger.error("(" + itsHost + ":" + itsPort + "): getData for unit " + block.itsUnitID + " function " + block.itsFCode
+            + " addresses " + block.itsStart + "-" + (block.itsEnd - 1) + ": " + f);
         disconnect();
         return;
       }
+    }
+  }
+
+  /**
+   * Merge the reads for points with the same unit ID and function code into as few requests as possible.
+   * 
+   * @param reads
+   *          The reads required for each point.
+   * @return The requests to make.
+   */
+  private Vector<BlockRead> planBlocks(Vector<PointRead> reads) {
+    Collections.sort(reads);
+    Vector<BlockRead> res = new Vector<BlockRead>();
+    BlockRead block = null;
+    for (int i = 0; i < reads.size(); i++) {
+      PointRead read = reads.get(i);
+      int max = read.itsFCode <= 2 ? MAX_BITS : MAX_REGISTERS;
+      if (block != null && block.itsUnitID == read.itsUnitID && block.itsFCode == read.itsFCode
+          && read.itsAddress <= block.itsEnd + itsMaxGap && Math.max(block.itsEnd, read.itsAddress + read.itsCount) - block.itsStart <= max) {
+        block.itsEnd = Math.max(block.itsEnd, read.itsAddress + read.itsCount);
+        block.itsReads.add(read);
+      } else {
+        block = new BlockRead(read);
+        res.add(block);
+      }
+    }
+    return res;
+  }
 
+  /**
+   * Read a range of addresses from the device.
+   * 
+   * @return The register values, or 1/0 for coils and discrete inputs which are on/off, or null if there was no response.
+   */
+  private int[] readValues(int uid, int fcode, int start, int count) throws Exception {
+    int[] res = null;
+    switch (fcode) {
+    case 1:
+      // Read Coils
+      ReadCoilsResponse rc_response = readCoils(uid, start, count);
+      if (rc_response != null) {
+        res = new int[count];
+        for (int j = 0; j < count; j++)
+          res[j] = rc_response.getCoilStatus(j) ? 1 : 0;
+      }
+      break;
+    case 2:
+      // Read Discrete Inputs
+      ReadInputDiscretesResponse di_response = readDiscreteInputs(uid, start, count);
+      if (di_response != null) {
+        res = new int[count];
+        for (int j = 0; j < count; j++)
+          res[j] = di_response.getDiscreteStatus(j) ? 1 : 0;
+      }
+      break;
+    case 3:
+      // Read Holding Registers (jamod library terminology uses multiple instead of holding)
+      ReadMultipleRegistersResponse rhr_response = readHoldingRegisters(uid, start, count);
+      if (rhr_response != null) {
+        res = new int[count];
+        for (int j = 0; j < count; j++)
+          res[j] = rhr_response.getRegisterValue(j);
+      }
+      break;
+    case 4:
+      // Read Input Registers
+      ReadInputRegistersResponse rir_response = readInputRegisters(uid, start, count);
+      if (rir_response != null) {
+        res = new int[count];
+        for (int j = 0; j < count; j++)
+          res[j] = rir_response.getRegisterValue(j);
+      }
+      break;
     }
     // Increment the transaction counter for this ExternalSystem
     itsNumTransactions++;
+    return res;
+  }
 
+  /**
+   * Fire an event with the point's value(s) sliced out of the values which were read.
+   * 
+   * @param read
+   *          The point and its range of addresses.
+   * @param values
+   *          The values which were read, or null if there was no response.
+   * @param start
+   *          The address of the first value.
+   */
+  private void fireValues(PointRead read, int[] values, int start) {
+    PointDescription pm = read.itsPoint;
+    PointData pd = new PointData(pm.getFullName());
+    boolean isbits = read.itsFCode <= 2;
+    int offset = read.itsAddress - start;
+    if (values == null) {
+      // No response
+    } else if (!read.itsUseArray) {
+      if (isbits) {
+        pd.setData(values[offset] != 0);
+      } else {
+        pd.setData(values[offset]);
+      }
+    } else if (isbits) {
+      Boolean[] array = new Boolean[read.itsCount];
+      for (int j = 0; j < read.itsCount; j++)
+        array[j] = new Boolean(values[offset + j] != 0);
+      pd.setData(array);
+    } else {
+      Integer[] array = new Integer[read.itsCount];
+      for (int j = 0; j < read.itsCount; j++)
+        array[j] = new Integer(values[offset + j]);
+      pd.setData(array);
+    }
+    pm.firePointEvent(new PointEvent(this, pd, true));
   }
 
   /**
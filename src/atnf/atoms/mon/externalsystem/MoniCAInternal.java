@@ -8,8 +8,11 @@
 
 package atnf.atoms.mon.externalsystem;
 
+import java.util.Iterator;
+
 import atnf.atoms.time.AbsTime;
 import atnf.atoms.time.DUTC;
+import atnf.atoms.time.RelTime;
 import atnf.atoms.time.Time;
 import atnf.atoms.mon.*;
 import atnf.atoms.mon.transaction.*;
@@ -26,6 +29,11 @@ import atnf.atoms.mon.transaction.*;
  * <li><b>points</b> Return the current number of points defined on the server.
  * <li><b>systems</b> Return the current number of external systems defined on the system.
  * <li><b>uptime</b> The elapsed time since the server was started.
+ * <li><b>queue-</b><i>stage</i> The number of updates waiting to be processed by the named stage of the <tt>PointEventPipeline</tt>,
+ * for instance <tt>queue-alarm</tt>, <tt>queue-archive</tt> or <tt>queue-distribute</tt>.
+ * <li><b>queue-derived</b> The number of derived point recalculations waiting to be run by the <tt>DerivedPointEvaluator</tt>.
+ * <li><b>lateness-</b><i>point</i> How late the most recent collection of the named point was handed to its external system by
+ * the <tt>CollectionScheduler</tt>, for instance <tt>lateness-site.environment.weather.Temperature</tt>.
  * </ul>
  * 
  * @author David Brodrick
@@ -59,6 +67,26 @@ class MoniCAInternal extends ExternalSystem {
           pd.setData(Time.diff(new AbsTime(), itsStartTime));
         } else if (thistrans.getString().equals("dUTC")) {
           pd.setData(DUTC.get());
+        } else if (thistrans.getString().equals("queue-derived")) {
+          pd.setData(new Integer(DerivedPointEvaluator.getQueueDepth()));
+        } else if (thistrans.getString().startsWith("lateness-")) {
+          PointDescription target = PointDescription.getPoint(thistrans.getString().substring(9));
+          if (target != null) {
+            // Report the worst lateness of any system which collects the point
+            long lateness = -1;
+            Iterator<ExternalSystem> systems = ExternalSystem.getAllExternalSystems().iterator();
+            while (systems.hasNext()) {
+              lateness = Math.max(lateness, systems.next().getLateness(target));
+            }
+            if (lateness >= 0) {
+              pd.setData(RelTime.factory(lateness));
+            }
+          }
+        } else if (thistrans.getString().startsWith("queue-")) {
+          int depth = PointEventPipeline.getQueueDepth(thistrans.getString().substring(6));
+          if (depth >= 0) {
+            pd.setData(new Integer(depth));
+          }
         }
 
         desc.firePointEvent(new PointEvent(this, pd, true));
@@ -28,6 +28,15 @@ extends ExternalSystem
   }
 
 
+  /** Hosts are independent, so they can be pinged concurrently. */
+  protected
+  boolean
+  supportsConcurrentCollection()
+  {
+    return true;
+  }
+
+
   /** Ping the relevant servers and return the status. */
   protected
   void
@@ -50,7 +59,9 @@ extends ExternalSystem
       }
 
       //Increment the transaction counter for this ExternalSystem
-      itsNumTransactions++;
+      synchronized (this) {
+        itsNumTransactions++;
+      }
 
       //Fire off the updated value for this monitor point
       pm.firePointEvent(new PointEvent(this, new
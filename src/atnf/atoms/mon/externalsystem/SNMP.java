@@ -1,5 +1,8 @@
 package atnf.atoms.mon.externalsystem;
 
+import java.io.IOException;
+import java.util.*;
+
 import org.apache.log4j.Logger;
 import org.snmp4j.*;
 import org.snmp4j.smi.*;
@@ -26,6 +29,8 @@ import atnf.atoms.mon.transaction.TransactionStrings;
  * <li><b>SNMP Version:</b> "v1", "v2c" or "v3".
  * <li><b>Ident:</b> The username or community, depending on which SNMP version
  * you are using.
+ * <li><b>Max OIDs:</b> Optional maximum number of OIDs to request in a single
+ * PDU, default 32.
  * </ul>
  * 
  * <P>
@@ -49,6 +54,15 @@ import atnf.atoms.mon.transaction.TransactionStrings;
  * output transactions field, and must contain an additional string being the 
  * SNMP data type to write the value as. For instance:
  * <tt>Strings-"snmp-192.168.1.113:161""1.3.6.1.4.1.32111.1.1.2.5.0""Integer32"</tt>
+ *
+ * <P>
+ * All of the OIDs which are due for collection are requested together, using
+ * as few GET PDUs as possible. For SNMPv2c and v3, when several OIDs are due
+ * from the same table column and their indices are mostly contiguous, the
+ * column is instead walked with GETBULK requests. If the agent reports that a
+ * response would be too big the request is split, and with SNMPv1 an OID which
+ * the agent doesn't recognise is dropped and the remaining OIDs requested
+ * again.
  * 
  * @author David Brodrick
  */
@@ -79,12 +93,24 @@ public class SNMP extends ExternalSystem {
   /** The SNMP version to use. */
   protected SNMPVersion itsVersion;
 
+  /** Maximum number of OIDs to request in a single PDU. */
+  protected int itsMaxOIDs = 32;
+
+  /** Minimum number of OIDs due from the same table column for it to be collected using GETBULK. */
+  private static final int BULK_MIN_OIDS = 4;
+
   public SNMP(String[] args) {
     super("snmp-" + args[0] + ":" + args[1]);
     itsHostName = args[0];
     itsPort = Integer.parseInt(args[1]);
     itsVersion = SNMPVersion.valueOf(SNMPVersion.class, args[2]);
     itsIdent = args[3];
+    if (args.length > 4) {
+      itsMaxOIDs = Integer.parseInt(args[4]);
+      if (itsMaxOIDs < 1) {
+        itsMaxOIDs = 1;
+      }
+    }
 
     try {
       TransportMapping transport = new DefaultUdpTransportMapping();
@@ -158,52 +184,193 @@ public class SNMP extends ExternalSystem {
   }
   
   public void getData(PointDescription[] points) throws Exception {
+    // Find which points want each OID
+    HashMap<OID, Vector<PointDescription>> wanted = new HashMap<OID, Vector<PointDescription>>();
     for (int i = 0; i < points.length; i++) {
       PointDescription pm = points[i];
       TransactionStrings tds = (TransactionStrings) getMyTransactions(pm.getInputTransactions()).get(0);
-      ResponseEvent response;
-
+      if (tds.getNumStrings() < 1) {
+        theirLogger.error("(" + itsHostName + "): Expect OID argument in Transaction for point \"" + pm.getFullName() + "\"");
+        pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
+        continue;
+      }
       try {
-        // Check we have correct number of arguments
-        if (tds.getNumStrings() < 1) {
-          theirLogger.error("(" + itsHostName + "): Expect OID argument in Transaction for point \"" + pm.getFullName() + "\"");
-          throw new IllegalArgumentException("Missing OID argument in Transaction");
-        }
-        // Create an OID from the string argument
         OID oid = new OID(tds.getString());
+        Vector<PointDescription> thesepoints = wanted.get(oid);
+        if (thesepoints == null) {
+          thesepoints = new Vector<PointDescription>();
+          wanted.put(oid, thesepoints);
+        }
+        thesepoints.add(pm);
+      } catch (Exception e) {
+        theirLogger.error("(" + itsHostName + "): Invalid OID \"" + tds.getString() + "\" for point " + pm.getFullName());
+        pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
+      }
+    }
 
-        // Send the SNMP request
-        PDU pdu = DefaultPDUFactory.createPDU(itsTarget, PDU.GET);
-        pdu.add(new VariableBinding(oid));
-        response = itsSNMP.send(pdu, itsTarget); 
+    // Collect the values, in lexicographic order so that table columns are adjacent
+    Vector<OID> oids = new Vector<OID>(wanted.keySet());
+    Collections.sort(oids, new Comparator<OID>() {
+      public int compare(OID a, OID b) {
+        return a.compareTo(b);
+      }
+    });
+    HashMap<OID, Variable> results = new HashMap<OID, Variable>();
+    try {
+      if (itsVersion != SNMPVersion.v1) {
+        getBulk(oids, results);
+        oids.removeAll(results.keySet());
+      }
+      for (int i = 0; i < oids.size(); i += itsMaxOIDs) {
+        get(oids.subList(i, Math.min(i + itsMaxOIDs, oids.size())), results);
+      }
+    } catch (Exception e) {
+      // This is triggered when the SNMP host is unreachable, the points without values will get null data
+      theirLogger.error("Caught error: " + e + " while collecting from " + itsHostName);
+    }
 
-        // Process response
-        PDU responsePDU = response.getResponse();
+    // Fire events for each point, with null data if no value was obtained
+    Iterator<OID> i = wanted.keySet().iterator();
+    while (i.hasNext()) {
+      OID oid = i.next();
+      Variable value = results.get(oid);
+      Vector<PointDescription> thesepoints = wanted.get(oid);
+      for (int j = 0; j < thesepoints.size(); j++) {
+        PointDescription pm = thesepoints.get(j);
         PointData newdata;
-      
-        //theirLogger.debug(itsHostName + " PDU error status: " + responsePDU.getErrorStatus());
-
-        if (responsePDU == null || responsePDU.getErrorStatus() != SnmpConstants.SNMP_ERROR_SUCCESS || !responsePDU.get(0).getOid().equals(oid)) {
-          // Response timed out or was in error, so fire event with null data
+        if (value == null) {
           newdata = new PointData(pm.getFullName());
         } else {
           // Fire event with new data value (always as a string)
-          newdata = new PointData(pm.getFullName(), responsePDU.get(0).getVariable().toString());
+          newdata = new PointData(pm.getFullName(), value.toString());
         }
         pm.firePointEvent(new PointEvent(this, newdata, true));
+      }
+    }
+  }
 
-        // Increment the transaction counter for this ExternalSystem
-        itsNumTransactions++;
-      } catch (Exception e) {
-        // This is triggered when the SNMP host is unreachable.
-        // need to fire PointEvent with null data, otherwise OutOfMemory error brings down MoniCA.`
-        theirLogger.fatal("Caught error: " + e + " for point " + pm.getFullName());
-        pm.firePointEvent(new PointEvent(this, new PointData(pm.getFullName()), true));
+  /**
+   * Request the values of OIDs using GET requests, splitting the request if the agent reports the response would be too big.
+   * 
+   * @param oids
+   *          The OIDs to request.
+   * @param results
+   *          Map to add the values which were obtained to.
+   */
+  protected void get(List<OID> oids, HashMap<OID, Variable> results) throws IOException {
+    PDU pdu = DefaultPDUFactory.createPDU(itsTarget, PDU.GET);
+    for (int i = 0; i < oids.size(); i++) {
+      pdu.add(new VariableBinding(oids.get(i)));
+    }
+    ResponseEvent response = itsSNMP.send(pdu, itsTarget);
+    // Increment the transaction counter for this ExternalSystem
+    itsNumTransactions++;
+
+    PDU responsePDU = response.getResponse();
+    if (responsePDU == null) {
+      // Response timed out
+      return;
+    }
+    if (responsePDU.getErrorStatus() == SnmpConstants.SNMP_ERROR_TOO_BIG && oids.size() > 1) {
+      int half = oids.size() / 2;
+      get(oids.subList(0, half), results);
+      get(oids.subList(half, oids.size()), results);
+      return;
+    }
+    if (responsePDU.getErrorStatus() != SnmpConstants.SNMP_ERROR_SUCCESS) {
+      int bad = responsePDU.getErrorIndex() - 1;
+      if (bad >= 0 && bad < oids.size() && oids.size() > 1) {
+        // Only the indicated OID was in error (SNMPv1), so request the others again without it
+        Vector<OID> rest = new Vector<OID>(oids);
+        rest.remove(bad);
+        get(rest, results);
+      }
+      return;
+    }
+    for (int i = 0; i < responsePDU.size() && i < oids.size(); i++) {
+      VariableBinding vb = responsePDU.get(i);
+      if (vb.getOid().equals(oids.get(i)) && !vb.getVariable().isException()) {
+        results.put(oids.get(i), vb.getVariable());
+      }
+    }
+  }
+
+  /**
+   * Walk the table columns which have several OIDs due using GETBULK requests.
+   * 
+   * @param oids
+   *          The OIDs to request, in lexicographic order.
+   * @param results
+   *          Map to add the values which were obtained to. This may include values for OIDs which weren't requested.
+   */
+  protected void getBulk(Vector<OID> oids, HashMap<OID, Variable> results) throws IOException {
+    int i = 0;
+    while (i < oids.size()) {
+      // Find the run of OIDs which are in the same column
+      OID first = oids.get(i);
+      OID column = new OID(first);
+      column.removeLast();
+      int j = i + 1;
+      while (j < oids.size() && oids.get(j).size() == first.size() && oids.get(j).startsWith(column)) {
+        j++;
+      }
+      OID last = oids.get(j - 1);
+      int count = j - i;
+      long span = last.lastUnsigned() - first.lastUnsigned() + 1;
+      // Only walk the column if we won't be fetching lots of rows which aren't wanted
+      if (count >= BULK_MIN_OIDS && span <= 2 * count) {
+        OID start = new OID(column);
+        if (first.last() > 0) {
+          start.append(first.last() - 1);
+        }
+        walkColumn(column, start, last, (int) span, results);
       }
+      i = j;
+    }
+  }
+
+  /**
+   * Walk part of a table column using GETBULK requests.
+   * 
+   * @param column
+   *          The OID of the column.
+   * @param start
+   *          The OID to start after.
+   * @param last
+   *          The last OID of interest.
+   * @param rows
+   *          The expected number of rows.
+   * @param results
+   *          Map to add the values to.
+   */
+  private void walkColumn(OID column, OID start, OID last, int rows, HashMap<OID, Variable> results) throws IOException {
+    while (rows > 0) {
+      PDU pdu = DefaultPDUFactory.createPDU(itsTarget, PDU.GETBULK);
+      pdu.add(new VariableBinding(start));
+      pdu.setNonRepeaters(0);
+      pdu.setMaxRepetitions(Math.min(rows, itsMaxOIDs));
+      ResponseEvent response = itsSNMP.send(pdu, itsTarget);
+      // Increment the transaction counter for this ExternalSystem
+      itsNumTransactions++;
 
+      PDU responsePDU = response.getResponse();
+      if (responsePDU == null || responsePDU.getErrorStatus() != SnmpConstants.SNMP_ERROR_SUCCESS || responsePDU.size() == 0) {
+        // Any OIDs we didn't get will be requested individually
+        return;
+      }
+      for (int i = 0; i < responsePDU.size(); i++) {
+        VariableBinding vb = responsePDU.get(i);
+        if (vb.getVariable().isException() || !vb.getOid().startsWith(column) || vb.getOid().compareTo(last) > 0) {
+          // Reached the end of the column or the part of interest
+          return;
+        }
+        results.put(vb.getOid(), vb.getVariable());
+        start = vb.getOid();
+        rows--;
+      }
     }
   }
-  
+
   protected AbstractVariable getSNMPVariable(String typecode, PointData pd) {
     if (pd==null || pd.getData()==null) {
       return null;
@@ -19,7 +19,7 @@ import atnf.atoms.mon.util.*;
  * 
  * @author David Brodrick
  */
-public class TransactionListen extends Transaction implements PointListener {
+public class TransactionListen extends Transaction implements PointListener, PointDependent {
   /** The number of points we are listening to. */
   protected int itsNumPoints;
 
@@ -71,6 +71,11 @@ public class TransactionListen extends Transaction implements PointListener {
     itsParent.firePointEvent(evt2);
   }
 
+  /** Get the names of the points we listen to. */
+  public String[] getDependencies() {
+    return itsNames;
+  }
+
   /** TimerTask used to subscribe to monitor point updates via timer. */
   private class SubscriptionTask extends TimerTask {
     public void run() {
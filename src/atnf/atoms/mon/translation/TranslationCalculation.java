@@ -52,6 +52,14 @@ public class TranslationCalculation extends TranslationListener {
     itsParser.parseExpression(expr);
   }
 
+  /**
+   * With several inputs the output is a function of their latest values and is timestamped when it is calculated, so stale inputs
+   * can be skipped. With a single input each output corresponds to an input update, so every update is calculated.
+   */
+  protected boolean canCoalesce() {
+    return itsNumPoints > 1;
+  }
+
   /**
    * Provide the current input values to the expression parser, calculate result and clear all input variables so that fresh values
    * will be used next time.
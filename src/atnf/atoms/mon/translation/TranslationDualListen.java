@@ -10,6 +10,7 @@
 package atnf.atoms.mon.translation;
 
 import atnf.atoms.mon.PointData;
+import atnf.atoms.mon.PointDependent;
 import atnf.atoms.mon.PointDescription;
 import atnf.atoms.mon.util.MonitorUtils;
 
@@ -40,6 +41,7 @@ import atnf.atoms.mon.util.MonitorUtils;
 public abstract class
 TranslationDualListen
 extends Translation
+implements PointDependent
 {
   /** Name of argument point 1. */
   String itsMP1 = null;
@@ -179,6 +181,18 @@ extends Translation
   doCalculations(Object val1, Object val2);
 
 
+  /** Get the names of the two points we use. */
+  public
+  String[]
+  getDependencies()
+  {
+    if (itsMP1==null || itsMP2==null) {
+      return new String[0];
+    }
+    return new String[]{itsMP1, itsMP2};
+  }
+
+
   public static String[] getArgs()
   {
      return itsArgs;
@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Vector;
 
 import atnf.atoms.mon.PointData;
+import atnf.atoms.mon.PointDependent;
 import atnf.atoms.mon.PointDescription;
 import atnf.atoms.mon.util.MonitorUtils;
 
@@ -36,6 +37,7 @@ import atnf.atoms.mon.util.MonitorUtils;
 public class
 TranslationLinearCombo
 extends Translation
+implements PointDependent
 {
   /** Names of the listened-to monitor points. */
   private Vector<String> itsPoints = new Vector<String>();
@@ -114,6 +116,15 @@ extends Translation
   }
 
 
+  /** Get the names of the points we combine. */
+  public
+  String[]
+  getDependencies()
+  {
+    return itsPoints.toArray(new String[0]);
+  }
+
+
   public static String[] getArgs()
   {
      return itsArgs;
@@ -45,10 +45,16 @@ import atnf.atoms.time.AbsTime;
  * last calculation was performed. Sub-classes can implement a <i>matchData</i>
  * method with more specialised behavior, such as checking that both data have
  * identical timestamps before allowing an output value to be calculated.
+ * <P>
+ * When the <tt>DerivedPointEvaluator</tt> is enabled, sub-classes whose output
+ * only depends on the latest input values can override <i>canCoalesce</i> so
+ * that the recalculation is queued rather than performed on the thread which
+ * delivered the update. If further updates arrive before the recalculation
+ * runs then a single recalculation is performed using the latest values.
  * 
  * @author David Brodrick
  */
-public abstract class TranslationListener extends Translation implements PointListener {
+public abstract class TranslationListener extends Translation implements PointListener, PointDependent {
   /** The number of points we are listening to. */
   protected int itsNumPoints;
 
@@ -64,6 +70,12 @@ public abstract class TranslationListener extends Translation implements PointLi
   /** Timer used to subscribe to listened-to points. */
   protected static Timer theirTimer = new Timer();
 
+  /** The most recent update from any of the listened-to points. */
+  protected PointData itsLastUpdate;
+
+  /** Set while a recalculation is queued with the <tt>DerivedPointEvaluator</tt>. */
+  private boolean itsRecalcPending = false;
+
   /** Base-class constructor. */
   public TranslationListener(PointDescription parent, String[] init) {
     super(parent, init);
@@ -142,14 +154,22 @@ public abstract class TranslationListener extends Translation implements PointLi
       return;
     }
 
-    // Find the index of the point
-    String fullname = pd.getName();
+    // Find the index of the point, by reference if it was delivered by the subscribed point
     int i = 0;
     for (; i < itsNumPoints; i++) {
-      if (itsNames[i].equals(fullname)) {
+      if (itsPoints[i] == source) {
         break;
       }
     }
+    String fullname = pd.getName();
+    if (i == itsNumPoints) {
+      // Otherwise match the name
+      for (i = 0; i < itsNumPoints; i++) {
+        if (itsNames[i].equals(fullname)) {
+          break;
+        }
+      }
+    }
     if (i == itsNumPoints) {
       Logger logger = Logger.getLogger(this.getClass().getName());
       logger.warn("(" + itsParent.getFullName() + ") received unsolicited data from " + fullname);
@@ -158,24 +178,74 @@ public abstract class TranslationListener extends Translation implements PointLi
 
     // Everything looks good
     itsValues[i] = pd;
+    itsLastUpdate = pd;
 
-    // Check whether now is an appropriate time to recalculate output
-    if (matchData()) {
-      // Recalculate output and fire update event
-      Object resval = doCalculations();
-      AbsTime ts;
-      if (itsNumPoints==1) {
-    	  // Only listening to a single point so preserve the timestamp
-    	  ts = pd.getTimestamp();
-      } else {
-    	  // Mutliple points, therefore original timestamp is not clearly defined
-    	  ts = new AbsTime();
+    if (DerivedPointEvaluator.isEnabled() && canCoalesce()) {
+      // Queue a recalculation unless one is already waiting to use the new value
+      if (!itsRecalcPending) {
+        itsRecalcPending = true;
+        DerivedPointEvaluator.submit(itsParent, new Runnable() {
+          public void run() {
+            recalculate();
+          }
+        });
       }
-      PointData res = new PointData(itsParent.getFullName(), ts, resval);
+    } else {
+      recalculate();
+    }
+  }
+
+  /**
+   * Recalculate the output from the latest input values, if appropriate. The output is calculated while holding the lock but the
+   * event is fired after releasing it, as firing may block waiting for space in the pipeline and the workers which would make space
+   * may be waiting to deliver an input update to us.
+   */
+  protected void recalculate() {
+    PointData res = calculate();
+    if (res != null) {
       itsParent.firePointEvent(new PointEvent(this, res, true));
     }
   }
 
+  /**
+   * Calculate the output from the latest input values.
+   *
+   * @return The new output, or null if now is not an appropriate time to recalculate.
+   */
+  private synchronized PointData calculate() {
+    itsRecalcPending = false;
+
+    // Check whether now is an appropriate time to recalculate output
+    if (!matchData()) {
+      return null;
+    }
+    // Recalculate output
+    Object resval = doCalculations();
+    AbsTime ts;
+    if (itsNumPoints==1) {
+      // Only listening to a single point so preserve the timestamp
+      ts = itsLastUpdate.getTimestamp();
+    } else {
+      // Mutliple points, therefore original timestamp is not clearly defined
+      ts = new AbsTime();
+    }
+    return new PointData(itsParent.getFullName(), ts, resval);
+  }
+
+  /**
+   * Check whether several input updates may be combined into a single recalculation. This is only safe when the output depends
+   * on nothing but the latest input values, so by default every update is calculated. Sub-classes for which skipping stale inputs
+   * is safe can override this to return <tt>true</tt>.
+   */
+  protected boolean canCoalesce() {
+    return false;
+  }
+
+  /** Get the names of the points we listen to. */
+  public String[] getDependencies() {
+    return itsNames;
+  }
+
   /** TimerTask used to subscribe to monitor point updates via timer. */
   private class SubscriptionTask extends TimerTask {
     public void run() {
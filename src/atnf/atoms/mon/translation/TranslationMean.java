@@ -54,27 +54,25 @@ public class TranslationMean extends TranslationDataBuffer {
   /** Calculate the average and return an averaged value. */
   public PointData translate(PointData data) {
     // Check data type and update buffer
-    if (data.getData() == null) {
+    if (!data.isValid()) {
       updateBuffer(null);
-    } else if (!(data.getData() instanceof Number)) {
+    } else if (!data.isNumeric()) {
       theirLogger.warn(getClass().getCanonicalName() + ": " + itsParent.getFullName() + ": Can't use non-numeric data");
       updateBuffer(null);
     } else {
       updateBuffer(data);
     }
 
-    // If insufficient data then can't calculate result
-    Double m = null;
-    if (itsBuffer.size() >= itsMinSamples) {
-      // Get the mean
-      m = new Double(getMean());
-    }
-
     // Get a timestamp for this data
     AbsTime tstamp = data.getTimestamp();
 
-    // Return result
-    return new PointData(itsParent.getFullName(), tstamp, m);
+    // If insufficient data then can't calculate result
+    if (itsBuffer.size() < itsMinSamples) {
+      return new PointData(itsParent.getFullName(), tstamp, null);
+    }
+
+    // Return the mean
+    return new PointData(itsParent.getFullName(), tstamp, getMean());
   }
 
   /** Return the mean of the data in the buffer. */
@@ -84,11 +82,11 @@ public class TranslationMean extends TranslationDataBuffer {
 
     // Translate the data to an array of doubles
     for (int i = 0; i < size; i++) {
-      Object thisdata = ((PointData) itsBuffer.get(i)).getData();
-      if (thisdata instanceof Number) {
-        data[i] = ((Number) thisdata).doubleValue();
-      } else if (thisdata instanceof Angle) {
-        data[i] = ((Angle) thisdata).getValue();
+      PointData thisdata = (PointData) itsBuffer.get(i);
+      if (thisdata.isNumeric()) {
+        data[i] = thisdata.doubleValue();
+      } else if (thisdata.getData() instanceof Angle) {
+        data[i] = ((Angle) thisdata.getData()).getValue();
       }
     }
 
@@ -37,6 +37,11 @@ public class TranslationWetBulb extends TranslationListener {
     super(parent, init);
   }
 
+  /** The output only depends on the latest inputs, so stale inputs can be skipped. */
+  protected boolean canCoalesce() {
+    return true;
+  }
+
   /** Get the mixing ratio for the given parameters. */  
   private static double getR(double td, double tw, double pres) {
     double rw=0.622/(1.631*pres*Math.exp((-17.67*tw)/(tw+243.5))-1);
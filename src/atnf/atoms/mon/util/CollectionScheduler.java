@@ -0,0 +1,273 @@
+//
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.util;
+
+import java.util.*;
+
+import atnf.atoms.mon.PointDescription;
+import atnf.atoms.time.AbsTime;
+
+/**
+ * Schedules the collection of points according to the time returned by their <tt>getNextEpoch</tt> method.
+ *
+ * <P>
+ * A single scheduler thread is shared by all collectors. It keeps every scheduled point in a heap ordered by collection time, so
+ * scheduling a point costs O(log n) regardless of how many points there are. When a point falls due it is moved to the ready list of
+ * the <tt>Queue</tt> it was scheduled on, and the collector which owns the queue picks up all of its ready points with
+ * <tt>take</tt>. Rescheduling or removing a point simply marks its old heap entry as cancelled.
+ *
+ * <P>
+ * The lateness of each point, the time between when it was due and when it was handed to its collector, is recorded so that
+ * overloaded collectors can be identified.
+ *
+ * @author David Brodrick
+ */
+public class CollectionScheduler extends Thread {
+  /** The shared scheduler instance. */
+  private static CollectionScheduler theirScheduler = null;
+
+  /** Scheduled points ordered by collection time, including cancelled entries. */
+  private PriorityQueue<Entry> itsHeap = new PriorityQueue<Entry>(1000);
+
+  /** Points due within this many microseconds are handed over together, so that they can be collected in one batch. */
+  private static final long BATCH_WINDOW = 50000;
+
+  /** Sequence number used to keep points due at the same time in the order they were scheduled. */
+  private long itsSequence = 0;
+
+  /** A point which has been scheduled on a queue. */
+  private static class Entry implements Comparable<Entry> {
+    public final PointDescription itsPoint;
+
+    public final Queue itsQueue;
+
+    /** Time (us, local clock) at which the point is due. */
+    public final long itsDeadline;
+
+    public final long itsSequence;
+
+    /** Set if the point has since been rescheduled or removed. */
+    public boolean itsCancelled = false;
+
+    public Entry(PointDescription point, Queue queue, long deadline, long sequence) {
+      itsPoint = point;
+      itsQueue = queue;
+      itsDeadline = deadline;
+      itsSequence = sequence;
+    }
+
+    public int compareTo(Entry other) {
+      if (itsDeadline != other.itsDeadline) {
+        return itsDeadline < other.itsDeadline ? -1 : 1;
+      }
+      if (itsSequence != other.itsSequence) {
+        return itsSequence < other.itsSequence ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * The set of points belonging to one collector. Points are added with <tt>schedule</tt> and returned by <tt>take</tt> once they
+   * are due.
+   */
+  public static class Queue {
+    /** Current heap entry for each scheduled point. */
+    private HashMap<PointDescription, Entry> itsEntries = new HashMap<PointDescription, Entry>();
+
+    /** Points which are due for collection. */
+    private Vector<PointDescription> itsReady = new Vector<PointDescription>();
+
+    /** Most recent lateness (us) of each point. */
+    private HashMap<PointDescription, Long> itsLateness = new HashMap<PointDescription, Long>();
+
+    /**
+     * Offset (us) to add to the local clock to obtain the time base used for the points' collection epochs. Sub-classes can override
+     * this if the epochs refer to a remote clock.
+     */
+    protected long getClockOffset() {
+      return 0;
+    }
+
+    /**
+     * Schedule the point for collection at the time given by its <tt>getNextEpoch</tt> method, replacing any existing schedule
+     * for the point.
+     *
+     * @param point
+     *          The point to schedule.
+     */
+    public void schedule(PointDescription point) {
+      getScheduler().add(this, point);
+    }
+
+    /**
+     * Stop collecting the point.
+     *
+     * @param point
+     *          The point to remove.
+     */
+    public void remove(PointDescription point) {
+      synchronized (getScheduler()) {
+        Entry old = itsEntries.remove(point);
+        if (old != null) {
+          old.itsCancelled = true;
+        }
+      }
+      synchronized (this) {
+        itsReady.remove(point);
+        itsLateness.remove(point);
+      }
+    }
+
+    /** Check if the point is scheduled or waiting to be collected. */
+    public boolean contains(PointDescription point) {
+      synchronized (getScheduler()) {
+        if (itsEntries.containsKey(point)) {
+          return true;
+        }
+      }
+      synchronized (this) {
+        return itsReady.contains(point);
+      }
+    }
+
+    /** Get the number of points which are scheduled or waiting to be collected. */
+    public int size() {
+      int res;
+      synchronized (getScheduler()) {
+        res = itsEntries.size();
+      }
+      synchronized (this) {
+        return res + itsReady.size();
+      }
+    }
+
+    /**
+     * Get all of the points which are due for collection, waiting for some to fall due if required.
+     *
+     * @param timeout
+     *          Maximum time to wait (ms), or 0 to wait indefinitely.
+     * @return The due points, which may be empty if the timeout expired.
+     * @throws InterruptedException
+     *           If the calling thread was interrupted while waiting.
+     */
+    public synchronized Vector<PointDescription> take(long timeout) throws InterruptedException {
+      if (itsReady.isEmpty()) {
+        wait(timeout);
+      }
+      Vector<PointDescription> res = itsReady;
+      itsReady = new Vector<PointDescription>();
+      return res;
+    }
+
+    /**
+     * Get the lateness of the most recent collection of the point.
+     *
+     * @param point
+     *          The point of interest.
+     * @return The time (us) between when the point was due and when it was handed to the collector, or -1 if unknown.
+     */
+    public synchronized long getLateness(PointDescription point) {
+      Long res = itsLateness.get(point);
+      if (res == null) {
+        return -1;
+      }
+      return res.longValue();
+    }
+
+    /** Called by the scheduler when a point falls due. */
+    private synchronized void ready(PointDescription point, long lateness) {
+      itsReady.add(point);
+      itsLateness.put(point, new Long(lateness));
+      if (itsReady.size() == 1) {
+        notifyAll();
+      }
+    }
+  }
+
+  private CollectionScheduler() {
+    super("Collection Scheduler");
+    setDaemon(true);
+  }
+
+  /** Get the shared scheduler, starting it if required. */
+  private static synchronized CollectionScheduler getScheduler() {
+    if (theirScheduler == null) {
+      theirScheduler = new CollectionScheduler();
+      theirScheduler.start();
+    }
+    return theirScheduler;
+  }
+
+  /** Add or reschedule a point on the given queue. */
+  private synchronized void add(Queue queue, PointDescription point) {
+    Entry old = queue.itsEntries.get(point);
+    if (old != null) {
+      old.itsCancelled = true;
+    }
+    Entry e = new Entry(point, queue, point.getNextEpoch() - queue.getClockOffset(), itsSequence++);
+    queue.itsEntries.put(point, e);
+    itsHeap.add(e);
+    if (itsHeap.peek() == e) {
+      // New head of the heap so we may need to wake up earlier
+      notifyAll();
+    }
+  }
+
+  /** Main loop which hands points to their queues as they fall due. */
+  public void run() {
+    Vector<Entry> due = new Vector<Entry>();
+    while (true) {
+      long now;
+      synchronized (this) {
+        while (true) {
+          Entry head = itsHeap.peek();
+          now = AbsTime.factory().getValue();
+          if (head != null && head.itsCancelled) {
+            itsHeap.poll();
+          } else if (head == null) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+            }
+          } else if (head.itsDeadline > now + BATCH_WINDOW) {
+            long waittime = (head.itsDeadline - BATCH_WINDOW - now) / 1000;
+            try {
+              if (waittime > 0) {
+                wait(waittime);
+              } else {
+                // Due in less than a millisecond
+                wait(0, 500000);
+              }
+            } catch (InterruptedException e) {
+            }
+          } else {
+            break;
+          }
+        }
+
+        // Collect everything which is now due
+        while (!itsHeap.isEmpty() && itsHeap.peek().itsDeadline <= now + BATCH_WINDOW) {
+          Entry e = itsHeap.poll();
+          if (!e.itsCancelled) {
+            e.itsQueue.itsEntries.remove(e.itsPoint);
+            due.add(e);
+          }
+        }
+      }
+
+      // Hand the points over without holding our own lock
+      for (int i = 0; i < due.size(); i++) {
+        Entry e = due.get(i);
+        e.itsQueue.ready(e.itsPoint, Math.max(0, now - e.itsDeadline));
+      }
+      due.clear();
+    }
+  }
+}
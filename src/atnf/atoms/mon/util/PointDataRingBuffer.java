@@ -0,0 +1,367 @@
+//
+// Copyright (C) CSIRO Australia Telescope National Facility
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Library General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+
+package atnf.atoms.mon.util;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import atnf.atoms.mon.PointData;
+import atnf.atoms.time.AbsTime;
+
+/**
+ * Bounded, time-ordered ring buffer of recent updates for a single point.
+ *
+ * <P>
+ * The buffer has a single writer and any number of readers. The writer serialises on the buffer's monitor, but readers never take
+ * a lock. Every record is identified by a monotonically increasing sequence number and the writer publishes records in three
+ * steps: it first reserves the next sequence number, then stores the record in its slot and finally advances the published tail.
+ * A reader takes a consistent view of the sequence counters, reads the slots it needs and then re-checks the reservation counter to
+ * confirm none of those slots were recycled while it was looking. If they were, the read is simply retried.
+ *
+ * <P>
+ * Records are kept in timestamp order so that range, preceding and following lookups can be answered by binary search. A record
+ * which is older than the most recent buffered record is not buffered, since readers rely on the buffer holding every update after
+ * its oldest record.
+ *
+ * <P>
+ * The slots are allocated as the buffer fills, so points which update rarely don't need storage for the full capacity. When the
+ * writer grows the storage it copies the buffered records into the new slots before publishing them, and never writes to the old
+ * slots again, so readers which are still using the old slots see a consistent view.
+ *
+ * @author David Brodrick
+ */
+public class PointDataRingBuffer {
+  /** Number of slots allocated when the buffer is created. */
+  private static final int INITIAL_SLOTS = 16;
+
+  /** Storage slots for the buffered records, which grow up to the capacity as required. */
+  private volatile AtomicReferenceArray<PointData> itsSlots;
+
+  /** Maximum number of records to retain. */
+  private final int itsCapacity;
+
+  /** Sequence number of the oldest record which is still considered to be buffered. */
+  private volatile long itsHead = 0;
+
+  /** Sequence number following the most recently published record. */
+  private volatile long itsTail = 0;
+
+  /** Sequence number following the record currently being written, if any. */
+  private volatile long itsReserved = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity
+   *          The maximum number of records to retain.
+   */
+  public PointDataRingBuffer(int capacity) {
+    if (capacity < 1) {
+      capacity = 1;
+    }
+    itsCapacity = capacity;
+    itsSlots = new AtomicReferenceArray<PointData>(Math.min(capacity, INITIAL_SLOTS));
+  }
+
+  /** Get the maximum number of records that can be held by the buffer. */
+  public int getCapacity() {
+    return itsCapacity;
+  }
+
+  /**
+   * Add a new record to the buffer. Records older than the age cutoff are expired from the buffer. If the new record is older than
+   * the most recent buffered record then it is not buffered, so that the buffer always remains in time order.
+   *
+   * @param data
+   *          The new record.
+   * @param agecutoff
+   *          Records with timestamps before or equal to this epoch will be expired, or null for no age limit.
+   * @return False if the record was out of order and was not buffered.
+   */
+  public synchronized boolean add(PointData data, AbsTime agecutoff) {
+    AtomicReferenceArray<PointData> slots = itsSlots;
+    long tail = itsTail;
+    long head = itsHead;
+    if (tail > head && data.getTimestamp().isBefore(slot(slots, tail - 1).getTimestamp())) {
+      // Out of order data
+      return false;
+    }
+
+    if (tail + 1 - head > slots.length() && slots.length() < itsCapacity) {
+      // Grow the storage, copying the buffered records before the new slots are published
+      AtomicReferenceArray<PointData> newslots = new AtomicReferenceArray<PointData>(Math.min(itsCapacity, 2 * slots.length()));
+      for (long i = head; i < tail; i++) {
+        newslots.set(index(newslots, i), slot(slots, i));
+      }
+      itsSlots = newslots;
+      slots = newslots;
+    }
+
+    // Reserve the slot then store the record
+    itsReserved = tail + 1;
+    slots.set(index(slots, tail), data);
+
+    // Expire records which no longer fit or which are too old
+    if (tail + 1 - head > slots.length()) {
+      head = tail + 1 - slots.length();
+    }
+    if (agecutoff != null) {
+      while (head < tail && slot(slots, head).getTimestamp().isBeforeOrEquals(agecutoff)) {
+        head++;
+      }
+    }
+    itsHead = head;
+
+    // Finally publish the new record
+    itsTail = tail + 1;
+    return true;
+  }
+
+  /** Check if the buffer contains any records. */
+  public boolean isEmpty() {
+    return itsTail <= itsHead;
+  }
+
+  /**
+   * Return the most recent record.
+   *
+   * @return The latest record, or null if the buffer is empty.
+   */
+  public PointData getLatest() {
+    while (true) {
+      long tail = itsTail;
+      AtomicReferenceArray<PointData> slots = itsSlots;
+      long lo = getLowerBound(slots, tail);
+      if (lo >= tail) {
+        if (tail == itsTail) {
+          return null;
+        }
+        // Writer moved on while we were looking, try again
+        continue;
+      }
+      PointData res = slot(slots, tail - 1);
+      if (isIntact(slots, tail - 1)) {
+        return res;
+      }
+    }
+  }
+
+  /**
+   * Return the oldest record.
+   *
+   * @return The earliest buffered record, or null if the buffer is empty.
+   */
+  public PointData getFirst() {
+    while (true) {
+      long tail = itsTail;
+      AtomicReferenceArray<PointData> slots = itsSlots;
+      long lo = getLowerBound(slots, tail);
+      if (lo >= tail) {
+        if (tail == itsTail) {
+          return null;
+        }
+        // Writer moved on while we were looking, try again
+        continue;
+      }
+      PointData res = slot(slots, lo);
+      if (isIntact(slots, lo)) {
+        return res;
+      }
+    }
+  }
+
+  /**
+   * Return the last record with a timestamp before or equal to the given time.
+   *
+   * @param ts
+   *          The reference time.
+   * @return The matching record, or null if all buffered data is after the reference time or the buffer is empty.
+   */
+  public PointData getPreceding(AbsTime ts) {
+    while (true) {
+      long tail = itsTail;
+      AtomicReferenceArray<PointData> slots = itsSlots;
+      long lo = getLowerBound(slots, tail);
+      if (lo >= tail) {
+        if (tail == itsTail) {
+          return null;
+        }
+        // Writer moved on while we were looking, try again
+        continue;
+      }
+      // Index of first record strictly after the reference time
+      long i = upperBound(slots, lo, tail, ts);
+      PointData res = null;
+      if (i > lo) {
+        res = slot(slots, i - 1);
+      }
+      if (isIntact(slots, lo)) {
+        return res;
+      }
+    }
+  }
+
+  /**
+   * Return the first record with a timestamp after or equal to the given time.
+   *
+   * @param ts
+   *          The reference time.
+   * @return The matching record, or null if all buffered data is before the reference time or the buffer is empty.
+   */
+  public PointData getFollowing(AbsTime ts) {
+    while (true) {
+      long tail = itsTail;
+      AtomicReferenceArray<PointData> slots = itsSlots;
+      long lo = getLowerBound(slots, tail);
+      if (lo >= tail) {
+        if (tail == itsTail) {
+          return null;
+        }
+        // Writer moved on while we were looking, try again
+        continue;
+      }
+      // Index of first record at or after the reference time
+      long i = lowerBound(slots, lo, tail, ts);
+      PointData res = null;
+      if (i < tail) {
+        res = slot(slots, i);
+      }
+      if (isIntact(slots, lo)) {
+        return res;
+      }
+    }
+  }
+
+  /**
+   * Return a copy of all buffered records, oldest first.
+   *
+   * @return Array of records, which will be empty if there is no buffered data.
+   */
+  public PointData[] getAll() {
+    while (true) {
+      long tail = itsTail;
+      AtomicReferenceArray<PointData> slots = itsSlots;
+      long lo = getLowerBound(slots, tail);
+      if (lo >= tail) {
+        if (tail == itsTail) {
+          return new PointData[0];
+        }
+        // Writer moved on while we were looking, try again
+        continue;
+      }
+      PointData[] res = new PointData[(int) (tail - lo)];
+      for (long i = lo; i < tail; i++) {
+        res[(int) (i - lo)] = slot(slots, i);
+      }
+      if (isIntact(slots, lo)) {
+        return res;
+      }
+    }
+  }
+
+  /**
+   * Return all records between the specified times, inclusive.
+   *
+   * @param start
+   *          The earliest time in the range of interest.
+   * @param end
+   *          The most recent time in the range of interest.
+   * @return Vector of records, or null if no buffered data was in the range.
+   */
+  public Vector<PointData> getRange(AbsTime start, AbsTime end) {
+    return getRange(getAll(), start, end);
+  }
+
+  /**
+   * Return all records from a copy obtained from <tt>getAll</tt> which lie between the specified times, inclusive.
+   *
+   * @param data
+   *          Time-ordered records to search.
+   * @param start
+   *          The earliest time in the range of interest.
+   * @param end
+   *          The most recent time in the range of interest.
+   * @return Vector of records, or null if no data was in the range.
+   */
+  public static Vector<PointData> getRange(PointData[] data, AbsTime start, AbsTime end) {
+    // Binary search for the first record at or after the start time
+    int lo = 0;
+    int hi = data.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (data[mid].getTimestamp().isBefore(start)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    Vector<PointData> res = null;
+    for (int i = lo; i < data.length && data[i].getTimestamp().isBeforeOrEquals(end); i++) {
+      if (res == null) {
+        res = new Vector<PointData>(data.length - lo);
+      }
+      res.add(data[i]);
+    }
+    return res;
+  }
+
+  /** Get the record with the given sequence number. */
+  private static PointData slot(AtomicReferenceArray<PointData> slots, long seq) {
+    return slots.get(index(slots, seq));
+  }
+
+  /** Map a sequence number to a slot index. */
+  private static int index(AtomicReferenceArray<PointData> slots, long seq) {
+    return (int) (seq % slots.length());
+  }
+
+  /**
+   * Get the oldest sequence number which can be safely read given the specified tail. The reservation counter is read after the
+   * tail so that any slot being recycled by the writer is excluded.
+   */
+  private long getLowerBound(AtomicReferenceArray<PointData> slots, long tail) {
+    long lo = itsReserved - slots.length();
+    long head = itsHead;
+    if (head > lo) {
+      lo = head;
+    }
+    return lo;
+  }
+
+  /** Check that the slot with the given sequence number has not been recycled since we started reading. */
+  private boolean isIntact(AtomicReferenceArray<PointData> slots, long seq) {
+    return itsReserved - slots.length() <= seq;
+  }
+
+  /** Find the first sequence number in the range whose timestamp is at or after the reference time. */
+  private static long lowerBound(AtomicReferenceArray<PointData> slots, long lo, long hi, AbsTime ts) {
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (slot(slots, mid).getTimestamp().isBefore(ts)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** Find the first sequence number in the range whose timestamp is strictly after the reference time. */
+  private static long upperBound(AtomicReferenceArray<PointData> slots, long lo, long hi, AbsTime ts) {
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (slot(slots, mid).getTimestamp().isBeforeOrEquals(ts)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}